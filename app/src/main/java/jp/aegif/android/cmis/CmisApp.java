@@ -20,11 +20,13 @@ import java.util.List;
 import java.util.Map;
 
 import android.app.Application;
+import android.content.ComponentCallbacks2;
 import jp.aegif.android.cmis.repo.CmisItemCollection;
 import jp.aegif.android.cmis.repo.CmisPropertyFilter;
 import jp.aegif.android.cmis.repo.CmisRepository;
 import jp.aegif.android.cmis.repo.DownloadItem;
 import jp.aegif.android.cmis.utils.MimetypeUtils;
+import jp.aegif.android.cmis.utils.NetworkMonitor;
 
 public class CmisApp extends Application {
 
@@ -43,6 +45,23 @@ public class CmisApp extends Application {
 	public void onCreate() {
 		super.onCreate();
 		mimetypesMap = MimetypeUtils.createIconMap();
+		NetworkMonitor.init(this);
+	}
+
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+		if (repository != null) {
+			repository.trimMemory(level);
+		}
+	}
+
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+		if (repository != null) {
+			repository.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+		}
 	}
 	
 	public CmisRepository getRepository() {
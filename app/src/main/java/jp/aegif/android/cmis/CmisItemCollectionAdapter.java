@@ -104,8 +104,8 @@ public class CmisItemCollectionAdapter extends ArrayAdapter<CmisItem> {
 	}
 
 	private void appendInfoDocumentSize(CmisItem doc, List<String> infos) {
-		if (doc.getSize() != null) {
-			infos.add(ActionUtils.convertAndFormatSize((Activity) context, doc.getSize()));
+		if (doc.getContentLength() >= 0) {
+			infos.add(ActionUtils.convertAndFormatSize((Activity) context, doc.getContentLength()));
 		}
 	}
 
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import android.app.Activity;
+import android.content.ActivityNotFoundException;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.view.View;
+import android.view.View.OnClickListener;
+import android.widget.Button;
+import android.widget.TextView;
+import jp.aegif.android.cmis.repo.CmisRepository;
+import jp.aegif.android.cmis.repo.CollectionCache;
+import jp.aegif.android.cmis.utils.ActionUtils;
+import jp.aegif.android.cmis.utils.NetworkStats;
+import jp.aegif.android.cmis.utils.NetworkStats.Summary;
+import jp.aegif.android.cmis.utils.StorageException;
+import jp.aegif.android.cmis.utils.StorageUtils;
+
+/**
+ * Shows the request timings recorded by {@link NetworkStats} and exports them
+ * as JSON.
+ */
+public class DiagnosticsActivity extends Activity {
+
+	private static final String EXPORT_FILE = "cmis-diagnostics.json";
+
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+
+		setContentView(R.layout.diagnostics);
+
+		((Button) findViewById(R.id.diagnostics_export)).setOnClickListener(new OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				export();
+			}
+		});
+
+		((Button) findViewById(R.id.diagnostics_clear)).setOnClickListener(new OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				NetworkStats.clear();
+				display();
+			}
+		});
+	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+		display();
+	}
+
+	private void display() {
+		TextView summaryView = (TextView) findViewById(R.id.diagnostics_summary);
+		if (NetworkStats.getRecords().isEmpty()) {
+			summaryView.setText(R.string.diagnostics_empty);
+			return;
+		}
+		StringBuilder builder = new StringBuilder();
+		appendSummaries(builder, getText(R.string.diagnostics_by_server), NetworkStats.getSummariesByServer());
+		builder.append("\n");
+		appendSummaries(builder, getText(R.string.diagnostics_by_operation), NetworkStats.getSummariesByOperation());
+		CmisRepository repository = ((CmisApp) getApplication()).getRepository();
+		if (repository != null) {
+			CollectionCache cache = repository.getCollectionCache();
+			builder.append("\n").append(getText(R.string.diagnostics_memory_cache)).append("\n");
+			builder.append("  listings  ").append(cache.getCount());
+			builder.append("  bytes ").append(cache.getSize()).append("\n");
+			builder.append("  hits      ").append(cache.getHitCount());
+			builder.append("  misses ").append(cache.getMissCount()).append("\n");
+		}
+		try {
+			builder.append("\n").append(getText(R.string.diagnostics_disk_cache)).append("\n");
+			builder.append("  listings  ").append(StorageUtils.getFeedCacheCount(getApplication()));
+			builder.append("  bytes ").append(StorageUtils.getFeedCacheSize(getApplication())).append("\n");
+		} catch (StorageException e) {
+			builder.append("  -\n");
+		}
+		summaryView.setText(builder.toString());
+	}
+
+	private void appendSummaries(StringBuilder builder, CharSequence title, Map<String, Summary> summaries) {
+		builder.append(title).append("\n");
+		for (Summary summary : summaries.values()) {
+			builder.append(summary.getName()).append("\n");
+			builder.append("  requests  ").append(summary.getCount());
+			builder.append("  cache ").append(summary.getCacheHits()).append("\n");
+			builder.append("  total ms  p50 ").append(summary.getTotalPercentile(50));
+			builder.append("  p90 ").append(summary.getTotalPercentile(90));
+			builder.append("  p99 ").append(summary.getTotalPercentile(99)).append("\n");
+			builder.append("  ttfb ms   p50 ").append(summary.getFirstBytePercentile(50));
+			builder.append("  p90 ").append(summary.getFirstBytePercentile(90)).append("\n");
+			builder.append("  parse ms  p50 ").append(summary.getParsePercentile(50));
+			builder.append("  p90 ").append(summary.getParsePercentile(90)).append("\n");
+			builder.append("  bytes     ").append(summary.getBytes()).append("\n");
+		}
+	}
+
+	private void export() {
+		Writer writer = null;
+		try {
+			File exportFile = new File(StorageUtils.getDownloadRoot(getApplication()), EXPORT_FILE);
+			exportFile.getParentFile().mkdirs();
+			writer = new OutputStreamWriter(new FileOutputStream(exportFile), "UTF-8");
+			writer.write(NetworkStats.toJson().toString(2));
+			writer.close();
+			writer = null;
+
+			ActionUtils.displayMessage(this, getText(R.string.diagnostics_exported) + exportFile.getAbsolutePath());
+
+			Intent shareIntent = new Intent(Intent.ACTION_SEND);
+			shareIntent.setType("application/json");
+			shareIntent.putExtra(Intent.EXTRA_STREAM, Uri.fromFile(exportFile));
+			startActivity(Intent.createChooser(shareIntent, getText(R.string.diagnostics_export)));
+		} catch (ActivityNotFoundException e) {
+			// the file is exported anyway
+		} catch (Exception e) {
+			ActionUtils.displayMessage(this, R.string.generic_error);
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (Exception e) {
+				}
+			}
+		}
+	}
+}
@@ -49,7 +49,7 @@ public class DocumentDetailsActivity extends ListActivity {
 		
 		activity = this;
 		
-		item = (CmisItemLazy) getIntent().getExtras().getSerializable("item");
+		item = (CmisItemLazy) getIntent().getExtras().getParcelable("item");
 		
 		setTitleFromIntent();
 		displayActionIcons();
@@ -101,8 +101,8 @@ public class DownloadAdapter extends ArrayAdapter<DownloadItem> {
 	}
 
 	private void appendInfoDocumentSize(DownloadItem doc, List<String> infos) {
-		if (doc.getItem().getSize() != null) {
-			infos.add(ActionUtils.convertAndFormatSize((Activity) context, doc.getItem().getSize()));
+		if (doc.getItem().getContentLength() >= 0) {
+			infos.add(ActionUtils.convertAndFormatSize((Activity) context, doc.getItem().getContentLength()));
 		}
 	}
 	
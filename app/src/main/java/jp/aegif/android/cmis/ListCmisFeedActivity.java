@@ -54,15 +54,14 @@ import jp.aegif.android.cmis.repo.CmisRepository;
 import jp.aegif.android.cmis.repo.QueryType;
 import jp.aegif.android.cmis.utils.ActionUtils;
 import jp.aegif.android.cmis.utils.FeedLoadException;
-import jp.aegif.android.cmis.utils.FeedUtils;
 import jp.aegif.android.cmis.utils.IntentIntegrator;
 import jp.aegif.android.cmis.utils.IntentResult;
-import jp.aegif.android.cmis.utils.StorageUtils;
 import jp.aegif.android.cmis.utils.UIUtils;
 
 public class ListCmisFeedActivity extends ListActivity {
 
 	private static final String TAG = "ListCmisFeedActivity";
+	private static final String STATE_NAVIGATION = "navigation";
 	
 	private List<String> workspaces;
 	private CharSequence[] cs;
@@ -121,6 +120,12 @@ public class ListCmisFeedActivity extends ListActivity {
 				this.currentStack = save.getCurrentStack();
 				firstStart = false;
 				new FeedDisplayTask(this, getRepository(), null, item, items).execute();
+			} else if (savedInstanceState != null && savedInstanceState.containsKey(STATE_NAVIGATION)) {
+				// the process was killed : back to the folder that was displayed
+				ListCmisFeedActivitySave saved = savedInstanceState.getParcelable(STATE_NAVIGATION);
+				this.item = saved.getItem();
+				this.itemParent = saved.getItemParent();
+				this.currentStack = saved.getCurrentStack();
 			}
 			
 			if (initRepository() == false){
@@ -162,6 +167,19 @@ public class ListCmisFeedActivity extends ListActivity {
 		return new ListCmisFeedActivitySave(item, itemParent, getItems(), currentStack);
 	}
 	
+	/**
+	 * The only place the navigation stack is parcelled : the retained
+	 * instance and the CmisApp copy are kept by reference. The listing is
+	 * left out, it comes back from the cache.
+	 */
+	@Override
+	protected void onSaveInstanceState(Bundle outState) {
+		super.onSaveInstanceState(outState);
+		if (item != null) {
+			outState.putParcelable(STATE_NAVIGATION, new ListCmisFeedActivitySave(item, itemParent, null, currentStack));
+		}
+	}
+	
 	@Override
 	protected void onDestroy() {
 		if (activityIsCalledWithSearchAction() == false){
@@ -259,7 +277,7 @@ public class ListCmisFeedActivity extends ListActivity {
 				// Start this activity from favorite
 				Bundle extras = getIntent().getExtras();
 				if (extras != null) {
-					if (extras.get("item") != null) {
+					if (item == null && extras.get("item") != null) {
 						item = (CmisItemLazy) extras.get("item");
 					}
 				}
@@ -359,7 +377,7 @@ public class ListCmisFeedActivity extends ListActivity {
 		}
 		getRepository().generateParams(activity, false);
 		try {
-			if (StorageUtils.deleteFeedFile(getApplication(), getRepository().getServer().getWorkspace(), item.getDownLink())){
+			if (getRepository().expireCollection(item.getDownLink())){
 				new FeedDisplayTask(ListCmisFeedActivity.this, getRepository(), item).execute(item.getDownLink());
 			} else {
 				displayError(R.string.application_not_available);
@@ -526,7 +544,7 @@ public class ListCmisFeedActivity extends ListActivity {
 	private void chooseWorkspace(){
 		try {
 			Server server = getRepository().getServer();
-			workspaces = FeedUtils.getRootFeedsFromRepo(server.getUrl(), server.getUsername(), server.getPassword());
+			workspaces = getRepository().getServiceDocument().getWorkspaceNames();
 			cs = workspaces.toArray(new CharSequence[workspaces.size()]);
 			
 			AlertDialog.Builder builder = new AlertDialog.Builder(this);
@@ -17,11 +17,22 @@ package jp.aegif.android.cmis;
 
 import java.util.ArrayList;
 
-import android.app.ListActivity;
+import android.os.BadParcelableException;
+import android.os.Parcel;
+import android.os.Parcelable;
 import jp.aegif.android.cmis.repo.CmisItemCollection;
 import jp.aegif.android.cmis.repo.CmisItemLazy;
+import jp.aegif.android.cmis.utils.CompactInput;
+import jp.aegif.android.cmis.utils.CompactOutput;
 
-public class ListCmisFeedActivitySave extends ListActivity {
+/**
+ * Navigation state of a {@link ListCmisFeedActivity}. Kept as is across
+ * configuration changes, parcelled in the saved instance state otherwise :
+ * the listing itself is not parcelled, it comes back from the cache.
+ */
+public class ListCmisFeedActivitySave implements Parcelable {
+
+	private static final int PARCEL_VERSION = 2;
 
 	public CmisItemLazy getItem() {
 		return item;
@@ -47,5 +58,82 @@ public class ListCmisFeedActivitySave extends ListActivity {
 	private CmisItemCollection items;
 	private ArrayList<CmisItemLazy> currentStack =  new ArrayList<CmisItemLazy>();
 	
-	
-}
\ No newline at end of file
+	private ListCmisFeedActivitySave(Parcel in) {
+		try {
+			CompactInput input = new CompactInput(in.createByteArray());
+			int version = input.readInt();
+			if (version != PARCEL_VERSION) {
+				throw new BadParcelableException("Unsupported navigation version " + version);
+			}
+			int size = input.readInt();
+			currentStack = new ArrayList<CmisItemLazy>(Math.max(0, size));
+			for (int i = 0; i < size; i++) {
+				currentStack.add(CmisItemLazy.readLazy(input));
+			}
+			item = readItem(input);
+			itemParent = readItem(input);
+		} catch (IllegalArgumentException e) {
+			throw new BadParcelableException(e);
+		} catch (IndexOutOfBoundsException e) {
+			throw new BadParcelableException(e);
+		}
+	}
+
+	/**
+	 * The whole stack is encoded at once, the items share most of their
+	 * links. The activity finds the current items in the stack by identity :
+	 * they are written as their index in the stack when they are in it.
+	 */
+	@Override
+	public void writeToParcel(Parcel dest, int flags) {
+		CompactOutput out = new CompactOutput();
+		out.writeInt(PARCEL_VERSION);
+		out.writeInt(currentStack.size());
+		for (CmisItemLazy stacked : currentStack) {
+			stacked.writeLazy(out);
+		}
+		writeItem(out, item);
+		writeItem(out, itemParent);
+		dest.writeByteArray(out.toByteArray());
+	}
+
+	private void writeItem(CompactOutput out, CmisItemLazy written) {
+		if (written == null) {
+			out.writeInt(0);
+			return;
+		}
+		int index = currentStack.size() - 1;
+		while (index >= 0 && currentStack.get(index) != written) {
+			index--;
+		}
+		out.writeInt(index + 2);
+		if (index < 0) {
+			written.writeLazy(out);
+		}
+	}
+
+	private CmisItemLazy readItem(CompactInput in) {
+		int index = in.readInt() - 2;
+		if (index == -2) {
+			return null;
+		} else if (index < 0) {
+			return CmisItemLazy.readLazy(in);
+		}
+		return currentStack.get(index);
+	}
+
+	@Override
+	public int describeContents() {
+		return 0;
+	}
+
+	public static final Parcelable.Creator<ListCmisFeedActivitySave> CREATOR = new Parcelable.Creator<ListCmisFeedActivitySave>() {
+		public ListCmisFeedActivitySave createFromParcel(Parcel in) {
+			return new ListCmisFeedActivitySave(in);
+		}
+
+		public ListCmisFeedActivitySave[] newArray(int size) {
+			return new ListCmisFeedActivitySave[size];
+		}
+	};
+}
@@ -45,7 +45,6 @@ import jp.aegif.android.cmis.repo.CmisRepository;
 import jp.aegif.android.cmis.repo.QueryType;
 import jp.aegif.android.cmis.utils.ActionUtils;
 import jp.aegif.android.cmis.utils.FeedLoadException;
-import jp.aegif.android.cmis.utils.StorageUtils;
 import jp.aegif.android.cmis.utils.UIUtils;
 
 public class SearchActivity extends ListActivity {
@@ -131,7 +130,7 @@ public class SearchActivity extends ListActivity {
 			@Override
 			public void onClick(View v) {
 				try {
-					if (StorageUtils.deleteFeedFile(getApplication(), getRepository().getServer().getWorkspace(), searchFeed)){
+					if (getRepository().expireCollection(searchFeed)){
 						Log.d(TAG, "SearchFeed : " + searchFeed);
 						if (savedSearch != null){
 							queryString = savedSearch.getName();
@@ -36,6 +36,8 @@ import jp.aegif.android.cmis.database.Database;
 import jp.aegif.android.cmis.database.ServerDAO;
 import jp.aegif.android.cmis.model.Server;
 import jp.aegif.android.cmis.repo.QueryType;
+import jp.aegif.android.cmis.utils.StorageException;
+import jp.aegif.android.cmis.utils.StorageUtils;
 import jp.aegif.android.cmis.utils.UIUtils;
 
 public class ServerActivity extends ListActivity {
@@ -91,6 +93,9 @@ public class ServerActivity extends ListActivity {
 		menuItem = menu.add(Menu.NONE, 2, 0, R.string.menu_item_filter);
 		menuItem.setIcon(R.drawable.filter);
 		
+		menuItem = menu.add(Menu.NONE, 4, 0, R.string.menu_item_diagnostics);
+		menuItem.setIcon(R.drawable.info);
+		
 		menuItem = menu.add(Menu.NONE, 3, 0, R.string.quit);
 		menuItem.setIcon(R.drawable.quit);
 		
@@ -112,6 +117,9 @@ public class ServerActivity extends ListActivity {
 			intent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
 			startActivity(intent);
 			return true;
+		case 4:
+			startActivity(new Intent(this, DiagnosticsActivity.class));
+			return true;
 		}
 		return super.onOptionsItemSelected(item);
 	}
@@ -230,8 +238,16 @@ public class ServerActivity extends ListActivity {
 	public void deleteServer(long id){
 		Database db = Database.create(this);
 		ServerDAO serverDao = new ServerDAO(db.open());
+		Server deleted = serverDao.findById(id);
 
 		if (serverDao.delete(id)) {
+			if (deleted != null) {
+				try {
+					StorageUtils.deleteAccountFiles(getApplication(), deleted);
+				} catch (StorageException e) {
+					// storage unavailable : nothing to delete from it now
+				}
+			}
 			Toast.makeText(this, this.getString(R.string.server_delete),
 					Toast.LENGTH_LONG).show();
 			createServerList();
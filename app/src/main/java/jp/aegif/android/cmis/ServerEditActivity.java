@@ -23,6 +23,7 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
@@ -32,6 +33,8 @@ import jp.aegif.android.cmis.database.ServerDAO;
 import jp.aegif.android.cmis.model.Server;
 import jp.aegif.android.cmis.utils.ActionUtils;
 import jp.aegif.android.cmis.utils.FeedUtils;
+import jp.aegif.android.cmis.utils.StorageException;
+import jp.aegif.android.cmis.utils.StorageUtils;
 
 public class ServerEditActivity extends Activity {
 	
@@ -84,6 +87,9 @@ public class ServerEditActivity extends Activity {
 					    finish();
 					   	startActivity(intent);
 					} else if (isEdit) {
+						if (!TextUtils.equals(currentServer.getUrl(), serverUrlEditText.getText().toString()) || !TextUtils.equals(currentServer.getUsername(), userEditText.getText().toString())) {
+							deleteAccountFiles(currentServer);
+						}
 						ServerDAO serverDao = new ServerDAO(database.open());
 						
 						serverDao.update(
@@ -115,6 +121,18 @@ public class ServerEditActivity extends Activity {
 		});
 	}
 	
+	/**
+	 * The listings cached for the previous account must not show up for the
+	 * new one.
+	 */
+	private void deleteAccountFiles(Server server) {
+		try {
+			StorageUtils.deleteAccountFiles(getApplication(), server);
+		} catch (StorageException e) {
+			// storage unavailable : nothing to delete from it now
+		}
+	}
+	
 	private void chooseWorkspace(){
 		try {
 			workspaces = FeedUtils.getRootFeedsFromRepo(getEditTextValue(serverUrlEditText), getEditTextValue(userEditText), getEditTextValue(passwordEditText));
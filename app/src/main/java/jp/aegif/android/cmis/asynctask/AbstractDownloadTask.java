@@ -8,8 +8,8 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
-import android.app.Activity;
 import android.app.ProgressDialog;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnCancelListener;
 import android.os.AsyncTask;
@@ -20,14 +20,19 @@ import jp.aegif.android.cmis.repo.CmisRepository;
 import jp.aegif.android.cmis.repo.DownloadItem;
 import jp.aegif.android.cmis.utils.ActionUtils;
 import jp.aegif.android.cmis.utils.HttpUtils;
+import jp.aegif.android.cmis.utils.NetworkStats;
 import jp.aegif.android.cmis.utils.NotificationUtils;
+import jp.aegif.android.cmis.utils.NetworkStats.Operation;
 import jp.aegif.android.cmis.utils.StorageException;
 import jp.aegif.android.cmis.utils.StorageUtils;
+import jp.aegif.android.cmis.utils.TransportRequest;
+import jp.aegif.android.cmis.utils.TransportResponse;
 
 public abstract class AbstractDownloadTask extends AsyncTask<CmisItemLazy, Integer, File> {
 
 	private final CmisRepository repository;
-	private final Activity activity;
+	private final Context context;
+	private final CmisApp application;
 	private ProgressDialog progressDialog;
 	private Boolean isDownload;
 	private CmisItemLazy item;
@@ -43,19 +48,26 @@ public abstract class AbstractDownloadTask extends AsyncTask<CmisItemLazy, Integ
     
     public int state;
 	private int downloaded;
-	private int size;
+	private long size;
 	private int notifCount = 0;
 	private int percent;
+	private TransportRequest request;
 	
 	
 
-	public AbstractDownloadTask(CmisRepository repository, Activity activity) {
-		 this(repository, activity, false);
+	public AbstractDownloadTask(CmisRepository repository, Context context) {
+		 this(repository, context, false);
 	}
 	
-	public AbstractDownloadTask(CmisRepository repository, Activity activity, Boolean isDownload) {
+	/**
+	 * @param context
+	 *            the activity showing the progress, or only the application
+	 *            for a download in the background
+	 */
+	public AbstractDownloadTask(CmisRepository repository, Context context, Boolean isDownload) {
 		this.repository = repository;
-		this.activity = activity;
+		this.context = context;
+		this.application = (CmisApp) context.getApplicationContext();
 		this.isDownload = isDownload;
 	}
 	
@@ -69,27 +81,27 @@ public abstract class AbstractDownloadTask extends AsyncTask<CmisItemLazy, Integ
 			state = DOWNLOADING;
 			downloaded = 0;
 			
-			progressDialog = new ProgressDialog(activity);
+			progressDialog = new ProgressDialog(context);
 			progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
-			progressDialog.setMessage(this.activity.getText(R.string.download));
+			progressDialog.setMessage(this.context.getText(R.string.download));
 			progressDialog.setOnCancelListener(new OnCancelListener() {
 						@Override
 						public void onCancel(DialogInterface dialog) {
 							AbstractDownloadTask.this.cancel(true);
 							state = CANCELLED;
-							//NotificationUtils.cancelDownloadNotification(activity);
+							//NotificationUtils.cancelDownloadNotification(context);
 							dialog.dismiss();
 						}
 					});
 			progressDialog.setCancelable(true);
-			progressDialog.setTitle(this.activity.getText(R.string.download));
-			progressDialog.setMessage(this.activity.getText(R.string.download_progress));
+			progressDialog.setTitle(this.context.getText(R.string.download));
+			progressDialog.setMessage(this.context.getText(R.string.download_progress));
 			progressDialog.setProgress(0);
 			progressDialog.setMax(100);
 			progressDialog.show();
 			
 		} else {
-			ActionUtils.displayMessage(activity, R.string.download_progress);
+			ActionUtils.displayMessage(context, R.string.download_progress);
 		}
 	}
 
@@ -97,7 +109,7 @@ public abstract class AbstractDownloadTask extends AsyncTask<CmisItemLazy, Integ
 	protected File doInBackground(CmisItemLazy... params) {
 		item = params[0];
 		
-		List<DownloadItem> dl = ((CmisApp) activity.getApplication()).getDownloadedFiles();
+		List<DownloadItem> dl = application.getDownloadedFiles();
 		if (dl == null) {
 			dl = new ArrayList<DownloadItem>();
 		}
@@ -105,15 +117,15 @@ public abstract class AbstractDownloadTask extends AsyncTask<CmisItemLazy, Integ
 		
 		if (item != null) {
 			//progressDialog.setMax(Integer.parseInt(item.getSize()));
-			size = Integer.parseInt(item.getSize());
+			size = item.getContentLength();
 			try {
 				if (isDownload){
-					return retreiveContent(item, ((CmisApp) activity.getApplication()).getPrefs().getDownloadFolder());
+					return retreiveContent(item, application.getPrefs().getDownloadFolder());
 				} else {
 					return retreiveContent(item);
 				}
 			} catch (Exception e) {
-				ActionUtils.displayMessage(activity, R.string.generic_error);
+				ActionUtils.displayMessage(context, R.string.generic_error);
 				return null;
 			}
 		}
@@ -144,13 +156,13 @@ public abstract class AbstractDownloadTask extends AsyncTask<CmisItemLazy, Integ
 	@Override
 	protected void onProgressUpdate(Integer... values) {
 		super.onProgressUpdate(values);
-		percent = Math.round(((float) values[0] / Float.parseFloat(item.getSize())) * 100);
+		percent = size > 0 ? Math.round(values[0] * 100f / size) : 0;
 		if (isDownload == false){
 			progressDialog.setProgress(percent);
 		} else {
 			if (notifCount == NB_NOTIF){
-				String message = activity.getText(R.string.progress) + " : " + percent + " %";
-				NotificationUtils.updateDownloadNotification(activity, message);
+				String message = context.getText(R.string.progress) + " : " + percent + " %";
+				NotificationUtils.updateDownloadNotification(context, message);
 				notifCount = 0;
 			} else {
 				notifCount++;
@@ -163,30 +175,46 @@ public abstract class AbstractDownloadTask extends AsyncTask<CmisItemLazy, Integ
 	
 	
 	private File retreiveContent(CmisItemLazy item) throws StorageException {
-		File contentFile = StorageUtils.getStorageFile(activity.getApplication(), repository.getServer().getWorkspace(), StorageUtils.TYPE_CONTENT, item.getId(), item.getTitle());
+		File contentFile = StorageUtils.getStorageFile(application, repository.getServer().getWorkspace(), StorageUtils.TYPE_CONTENT, item.getId(), item.getTitle());
 		return retreiveContent(item, contentFile);
 	}
 	
 	private File retreiveContent(CmisItemLazy item, String downloadFolder) throws StorageException {
-		File contentFile = item.getContentDownload(activity.getApplication(), downloadFolder);
+		File contentFile = item.getContentDownload(application, downloadFolder);
 		return retreiveContent(item, contentFile);
 	}
 	
 	private File retreiveContent(CmisItemLazy item, File contentFile) throws StorageException {
 		OutputStream os = null;
+		TransportResponse response = null;
 		InputStream in = null;
+		String workspace = repository.getServer().getWorkspace();
+		Operation operation = isDownload ? Operation.DOWNLOAD : Operation.CONTENT;
+		
+		if (StorageUtils.isContentValid(application, workspace, item, contentFile, isDownload)) {
+			// same change token, date and length as when it was downloaded
+			NetworkStats.addCacheHit(repository.getHostname(), operation, item.getContentUrl(), 0);
+			state = COMPLETE;
+			return contentFile;
+		}
+		StorageUtils.deleteContentMetadata(application, workspace, item, isDownload);
 		
 		try {
 			contentFile.getParentFile().mkdirs();
 			contentFile.createNewFile();
 			os = new BufferedOutputStream(new FileOutputStream(contentFile));
 
-			in = HttpUtils.getWebRessourceAsStream(item.getContentUrl(), repository.getServer().getUsername(), repository.getServer().getPassword());
+			request = new TransportRequest(item.getContentUrl(), operation);
+			response = HttpUtils.getTransport(repository.getServer()).execute(request);
+			in = response.getContent();
 			byte[] buffer = new byte[MAX_BUFFER_SIZE];
 			
 			 while (state == DOWNLOADING) {
-                if (size - downloaded < MAX_BUFFER_SIZE) {
-                	buffer = new byte[size - downloaded];
+                if (size >= 0 && downloaded >= size) {
+                    break;
+                }
+                if (size >= 0 && size - downloaded < MAX_BUFFER_SIZE) {
+                	buffer = new byte[(int) (size - downloaded)];
                 }
                 
                 int read = in.read(buffer);
@@ -201,6 +229,9 @@ public abstract class AbstractDownloadTask extends AsyncTask<CmisItemLazy, Integ
 			if (state == DOWNLOADING) {
                 state = COMPLETE;
                 stateChanged();
+                os.close();
+                os = null;
+                StorageUtils.storeContentMetadata(application, workspace, item, contentFile, isDownload);
             }
 			
 			return contentFile;
@@ -214,11 +245,17 @@ public abstract class AbstractDownloadTask extends AsyncTask<CmisItemLazy, Integ
                 } catch (Exception e) {}
             }
             
-            // Close connection to server.
+            // Close connection to server. An unfinished transfer is aborted
+            // instead of being drained into the pool.
+            if (state != COMPLETE && request != null) {
+            	request.cancel();
+            }
             if (in != null) {
                 try {
                 	in.close();
                 } catch (Exception e) {}
+            } else if (response != null) {
+            	response.close();
             }
         }
 		return null;
@@ -15,6 +15,8 @@
  */
 package jp.aegif.android.cmis.asynctask;
 
+import java.util.List;
+
 import android.app.ListActivity;
 import android.content.pm.ActivityInfo;
 import android.os.AsyncTask;
@@ -22,6 +24,7 @@ import android.util.Log;
 import android.view.View;
 import android.view.animation.Animation;
 import android.view.animation.AnimationUtils;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.GridView;
 import android.widget.ListView;
@@ -31,25 +34,46 @@ import jp.aegif.android.cmis.CmisItemCollectionAdapter;
 import jp.aegif.android.cmis.GridAdapter;
 import jp.aegif.android.cmis.Prefs;
 import jp.aegif.android.cmis.R;
+import jp.aegif.android.cmis.repo.CmisItem;
 import jp.aegif.android.cmis.repo.CmisItemCollection;
+import jp.aegif.android.cmis.repo.CmisItemCollection.EntryListener;
 import jp.aegif.android.cmis.repo.CmisItemLazy;
 import jp.aegif.android.cmis.repo.CmisRepository;
 import jp.aegif.android.cmis.utils.FeedLoadException;
 import jp.aegif.android.cmis.utils.StorageException;
 
-public class FeedDisplayTask extends AsyncTask<String, Void, CmisItemCollection> {
+/**
+ * Loads a listing and displays it. Entries are shown in batches while the
+ * feed is still being downloaded, the final collection only completes them.
+ */
+public class FeedDisplayTask extends AsyncTask<String, FeedDisplayTask.Batch, CmisItemCollection> implements EntryListener {
 
 	private static final String TAG = "FeedDisplayTask";
 	
+	/** The task filling the screen, only touched on the UI thread. */
+	private static FeedDisplayTask running;
+	
 	private final ListActivity activity;
 	private final CmisRepository repository;
 	private final String title;
 	private String feedParams = "";
+	private String feedUrl;
 	private View layout;
 	private CmisItemLazy item;
 	private CmisItemCollection items;
 	private ListView layoutListing;
 	private GridView layoutGrid;
+	private ArrayAdapter<CmisItem> progressAdapter;
+
+	static class Batch {
+		private final int start;
+		private final List<CmisItem> entries;
+
+		Batch(int start, List<CmisItem> entries) {
+			this.start = start;
+			this.entries = entries;
+		}
+	}
 
 	public FeedDisplayTask(ListActivity activity, CmisRepository repository, String title) {
 		this(activity, repository, title, null, null);
@@ -72,6 +96,17 @@ public class FeedDisplayTask extends AsyncTask<String, Void, CmisItemCollection>
 	protected void onPreExecute() {
 		activity.setProgressBarIndeterminateVisibility(true);
 		
+		// rows can be opened while loading : the listing being loaded is
+		// not wanted anymore
+		if (running != null && running.activity == activity) {
+			running.cancel(true);
+		}
+		running = this;
+		
+		if (items == null && repository != null && repository.isParamsStale()){
+			// the network switched to or from lean mode
+			repository.generateParams(activity);
+		}
 		if (items == null && repository != null && repository.getUseFeedParams()){
 				feedParams = repository.getFeedParams();
 		}
@@ -101,10 +136,12 @@ public class FeedDisplayTask extends AsyncTask<String, Void, CmisItemCollection>
 			} else {
 				String feed = params[0];
 				if (feed == null || feed.length() == 0) {
-					return repository.getRootCollection(feedParams);
+					feedUrl = repository.getFeedRootCollection() + feedParams;
 				} else {
-					return repository.getCollectionFromFeed(feed + feedParams);
+					feedUrl = feed + feedParams;
 				}
+				// a stale copy is shown at once, see FeedRevalidateTask
+				return repository.getCollectionFromFeed(feedUrl, this, true);
 			}
 		} catch (FeedLoadException fle) {
 			Log.d(TAG, fle.getMessage());
@@ -117,8 +154,63 @@ public class FeedDisplayTask extends AsyncTask<String, Void, CmisItemCollection>
 		}
 	}
 
+	@Override
+	public void onEntriesParsed(int start, List<CmisItem> entries) {
+		publishProgress(new Batch(start, entries));
+	}
+
+	@Override
+	protected void onProgressUpdate(Batch... batches) {
+		if (progressAdapter == null) {
+			// first rows : show them instead of the animation
+			Prefs prefs = ((CmisApp) activity.getApplication()).getPrefs();
+			if(prefs != null && prefs.getDataView() == Prefs.GRIDVIEW){
+				progressAdapter = new GridAdapter(activity, R.layout.feed_grid_row, CmisItemCollection.emptyCollection());
+				layoutGrid.setAdapter(progressAdapter);
+				layoutGrid.setVisibility(View.VISIBLE);
+			} else {
+				progressAdapter = new CmisItemCollectionAdapter(activity, R.layout.feed_list_row, CmisItemCollection.emptyCollection());
+				layoutListing.setAdapter(progressAdapter);
+				layoutListing.setVisibility(View.VISIBLE);
+			}
+			layout.setVisibility(View.GONE);
+		}
+		progressAdapter.setNotifyOnChange(false);
+		for (Batch batch : batches) {
+			if (batch.start == 0) {
+				progressAdapter.clear();
+			}
+			for (CmisItem entry : batch.entries) {
+				progressAdapter.add(entry);
+			}
+		}
+		progressAdapter.notifyDataSetChanged();
+	}
+
+	/**
+	 * Completes the rows shown while loading with the final collection. They
+	 * are the same items unless the feed had to be read twice, or failed.
+	 */
+	private void completeProgressAdapter(CmisItemCollection itemCollection) {
+		List<CmisItem> list = itemCollection.getItems();
+		int count = progressAdapter.getCount();
+		progressAdapter.setNotifyOnChange(false);
+		if (count > list.size() || (count > 0 && progressAdapter.getItem(count - 1) != list.get(count - 1))) {
+			progressAdapter.clear();
+			count = 0;
+		}
+		for (int i = count; i < list.size(); i++) {
+			progressAdapter.add(list.get(i));
+		}
+		progressAdapter.notifyDataSetChanged();
+	}
+
 	@Override
 	protected void onPostExecute(CmisItemCollection itemCollection) {
+		if (running == this) {
+			running = null;
+		}
+		
 		if (items == null){
 			if (title != null){
 				itemCollection.setTitle(title);
@@ -130,7 +222,9 @@ public class FeedDisplayTask extends AsyncTask<String, Void, CmisItemCollection>
 		((CmisApp) activity.getApplication()).setItems(itemCollection);
 		
 		Prefs prefs = ((CmisApp) activity.getApplication()).getPrefs();
-		if(prefs != null && prefs.getDataView() == Prefs.GRIDVIEW){
+		if (progressAdapter != null){
+			completeProgressAdapter(itemCollection);
+		} else if(prefs != null && prefs.getDataView() == Prefs.GRIDVIEW){
 			GridView gridview = (GridView) activity.findViewById(R.id.gridview);
 		    gridview.setAdapter(new GridAdapter(activity, R.layout.feed_grid_row, itemCollection));
 		} else {
@@ -183,10 +277,12 @@ public class FeedDisplayTask extends AsyncTask<String, Void, CmisItemCollection>
 		activity.getWindow().setTitle(itemCollection.getTitle() + title_paging);
 		
 		//Setting BreadCrumb
-		if (item != null && item.getPath() != null){
-			((TextView) activity.findViewById(R.id.path)).setText(item.getPath());
+		String path = (item != null && item.getPath() != null) ? item.getPath() : "/";
+		TextView pathView = (TextView) activity.findViewById(R.id.path);
+		if (itemCollection.isStale()){
+			pathView.setText(FeedRevalidateTask.getStalePath(activity, path, itemCollection));
 		} else {
-			((TextView) activity.findViewById(R.id.path)).setText("/");
+			pathView.setText(path);
 		}
 		
 		//Show Data & Hide  Animation
@@ -208,10 +304,20 @@ public class FeedDisplayTask extends AsyncTask<String, Void, CmisItemCollection>
 		
 		//Allow screen rotation
 		activity.setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_SENSOR);
+		
+		if (items == null && itemCollection.isStale()){
+			new FeedRevalidateTask(activity, repository, feedUrl, path, itemCollection).execute();
+		}
 	}
 
 	@Override
 	protected void onCancelled() {
+		if (running == this) {
+			running = null;
+		} else if (running != null && running.activity == activity) {
+			// replaced by another listing, still loading
+			return;
+		}
 		activity.setProgressBarIndeterminateVisibility(false);
 		activity.setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_SENSOR);
 	}
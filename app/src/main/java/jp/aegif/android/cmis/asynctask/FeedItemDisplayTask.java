@@ -12,6 +12,7 @@ import jp.aegif.android.cmis.repo.CmisItem;
 import jp.aegif.android.cmis.utils.ActionUtils;
 import jp.aegif.android.cmis.utils.FeedLoadException;
 import jp.aegif.android.cmis.utils.FeedUtils;
+import jp.aegif.android.cmis.utils.NetworkStats.Operation;
 
 public class FeedItemDisplayTask extends AsyncTask<String, Void, CmisItem> {
 
@@ -46,7 +47,7 @@ public class FeedItemDisplayTask extends AsyncTask<String, Void, CmisItem> {
 	@Override
 	protected CmisItem doInBackground(String... params) {
 		try {
-			Document doc = FeedUtils.readAtomFeed(url, server.getUsername(), server.getPassword());
+			Document doc = FeedUtils.readAtomFeed(server, url, Operation.ENTRY);
 			return CmisItem.createFromFeed(doc.getRootElement());
 		} catch (FeedLoadException fle) {
 			return null;
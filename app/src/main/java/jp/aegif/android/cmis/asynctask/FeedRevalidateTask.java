@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.asynctask;
+
+import android.app.ListActivity;
+import android.os.AsyncTask;
+import android.text.format.DateUtils;
+import android.util.Log;
+import android.view.View;
+import android.widget.GridView;
+import android.widget.ListView;
+import android.widget.TextView;
+import jp.aegif.android.cmis.CmisApp;
+import jp.aegif.android.cmis.CmisItemCollectionAdapter;
+import jp.aegif.android.cmis.GridAdapter;
+import jp.aegif.android.cmis.Prefs;
+import jp.aegif.android.cmis.R;
+import jp.aegif.android.cmis.repo.CmisItemCollection;
+import jp.aegif.android.cmis.repo.CmisRepository;
+import jp.aegif.android.cmis.utils.FeedLoadException;
+import jp.aegif.android.cmis.utils.StorageException;
+
+/**
+ * Revalidates a stale listing shown by {@link FeedDisplayTask} and swaps the
+ * rows in place when it is still on screen. On failure the stale rows stay,
+ * with their age in the breadcrumb.
+ */
+public class FeedRevalidateTask extends AsyncTask<Void, Void, CmisItemCollection> {
+
+	private static final String TAG = "FeedRevalidateTask";
+
+	private final ListActivity activity;
+	private final CmisRepository repository;
+	private final String feedUrl;
+	private final String path;
+	private final CmisItemCollection staleCollection;
+
+	public FeedRevalidateTask(ListActivity activity, CmisRepository repository, String feedUrl, String path, CmisItemCollection staleCollection) {
+		super();
+		this.activity = activity;
+		this.repository = repository;
+		this.feedUrl = feedUrl;
+		this.path = path;
+		this.staleCollection = staleCollection;
+	}
+
+	/**
+	 * Breadcrumb of a stale listing : the path and when it was downloaded.
+	 */
+	static String getStalePath(ListActivity activity, String path, CmisItemCollection collection) {
+		CharSequence age = DateUtils.getRelativeTimeSpanString(collection.getFetchedAt());
+		return path + "  (" + activity.getString(R.string.listing_stale, age) + ")";
+	}
+
+	@Override
+	protected CmisItemCollection doInBackground(Void... params) {
+		try {
+			return repository.revalidateCollection(feedUrl, staleCollection);
+		} catch (FeedLoadException fle) {
+			Log.d(TAG, fle.getMessage());
+			return null;
+		} catch (StorageException e) {
+			Log.d(TAG, e.getMessage());
+			return null;
+		}
+	}
+
+	@Override
+	protected void onPostExecute(CmisItemCollection itemCollection) {
+		CmisApp app = (CmisApp) activity.getApplication();
+		if (itemCollection == null || app.getItems() != staleCollection) {
+			// offline, or the user moved on
+			return;
+		}
+		itemCollection.setTitle(staleCollection.getTitle());
+		app.setItems(itemCollection);
+		repository.setNumItems(itemCollection.getNumItems());
+
+		if (itemCollection != staleCollection) {
+			// keep the scroll position
+			Prefs prefs = app.getPrefs();
+			if (prefs != null && prefs.getDataView() == Prefs.GRIDVIEW) {
+				GridView gridview = (GridView) activity.findViewById(R.id.gridview);
+				int position = gridview.getFirstVisiblePosition();
+				gridview.setAdapter(new GridAdapter(activity, R.layout.feed_grid_row, itemCollection));
+				gridview.setSelection(position);
+			} else {
+				ListView listView = activity.getListView();
+				int position = listView.getFirstVisiblePosition();
+				View first = listView.getChildAt(0);
+				int top = first != null ? first.getTop() : 0;
+				listView.setAdapter(new CmisItemCollectionAdapter(activity, R.layout.feed_list_row, itemCollection));
+				listView.setSelectionFromTop(position, top);
+			}
+			if (itemCollection.getItems().size() == 0) {
+				activity.findViewById(R.id.empty).setVisibility(View.VISIBLE);
+			} else {
+				activity.findViewById(R.id.empty).setVisibility(View.GONE);
+			}
+		}
+		((TextView) activity.findViewById(R.id.path)).setText(path);
+	}
+}
@@ -13,6 +13,7 @@ import android.widget.SimpleAdapter;
 import jp.aegif.android.cmis.CmisApp;
 import jp.aegif.android.cmis.DocumentDetailsActivity;
 import jp.aegif.android.cmis.R;
+import jp.aegif.android.cmis.repo.CmisItemLazy;
 import jp.aegif.android.cmis.repo.CmisProperty;
 import jp.aegif.android.cmis.repo.CmisPropertyFilter;
 import jp.aegif.android.cmis.repo.CmisRepository;
@@ -69,6 +70,9 @@ public class ItemPropertiesDisplayTask extends AsyncTask<String, Void, List<Map<
 				 }
 			} else {
 				List<CmisProperty> propList = getPropertiesFromIntent();
+				if (isLeanFromIntent()) {
+					propList = getFullProperties(propList);
+				}
 				CmisTypeDefinition typeDefinition = getRepository().getTypeDefinition(getObjectTypeIdFromIntent());
 				
 				if (propertiesFilters == null){
@@ -104,6 +108,26 @@ public class ItemPropertiesDisplayTask extends AsyncTask<String, Void, List<Map<
 		pg.dismiss();
 	}
 	
+	/**
+	 * Lean listings hold a few properties only : the entry is loaded again,
+	 * the listed properties are kept when it fails.
+	 */
+	private List<CmisProperty> getFullProperties(List<CmisProperty> propList) {
+		CmisItemLazy item = activity.getIntent().getParcelableExtra("item");
+		if (item == null || item.getSelfUrl() == null) {
+			return propList;
+		}
+		try {
+			return new ArrayList<CmisProperty>(getRepository().getEntry(item.getSelfUrl()).getProperties().values());
+		} catch (FeedLoadException fle) {
+			return propList;
+		}
+	}
+
+	private boolean isLeanFromIntent() {
+		return activity.getIntent().getBooleanExtra("lean", false);
+	}
+
 	private String getObjectTypeIdFromIntent() {
 		return activity.getIntent().getStringExtra("objectTypeId");
 	}
@@ -3,8 +3,6 @@ package jp.aegif.android.cmis.asynctask;
 import java.util.ArrayList;
 import java.util.Map;
 
-import org.dom4j.Element;
-
 import android.app.Activity;
 import android.app.ProgressDialog;
 import android.content.Intent;
@@ -13,8 +11,9 @@ import jp.aegif.android.cmis.R;
 import jp.aegif.android.cmis.ServerInfoActivity;
 import jp.aegif.android.cmis.model.Server;
 import jp.aegif.android.cmis.repo.CmisProperty;
+import jp.aegif.android.cmis.repo.CmisRepository;
+import jp.aegif.android.cmis.repo.CmisServiceDocument;
 import jp.aegif.android.cmis.utils.FeedLoadException;
-import jp.aegif.android.cmis.utils.FeedUtils;
 
 public class ServerInfoLoadingTask extends AsyncTask<String, Void, Map<String, ArrayList<CmisProperty>>> {
 
@@ -36,11 +35,10 @@ public class ServerInfoLoadingTask extends AsyncTask<String, Void, Map<String, A
 	@Override
 	protected Map<String, ArrayList<CmisProperty>> doInBackground(String... params) {
 		try {
-			Element workspace;
 			Map<String, ArrayList<CmisProperty>> properties = null;
 			try {
-				workspace = FeedUtils.getWorkspace(server.getWorkspace(), server.getUrl(), server.getUsername(), server.getPassword());
-				properties = FeedUtils.getCmisRepositoryProperties(workspace);
+				CmisServiceDocument.Workspace workspace = CmisRepository.loadServiceDocument(activity.getApplication(), server).getWorkspace(server.getWorkspace());
+				properties = workspace.getProperties();
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
@@ -15,7 +15,6 @@ import jp.aegif.android.cmis.model.Server;
 import jp.aegif.android.cmis.repo.CmisRepository;
 import jp.aegif.android.cmis.utils.ActionUtils;
 import jp.aegif.android.cmis.utils.FeedLoadException;
-import jp.aegif.android.cmis.utils.StorageException;
 
 public class ServerSearchInitTask extends AsyncTask<String, Void, CmisRepository> {
 
@@ -63,15 +62,11 @@ public class ServerSearchInitTask extends AsyncTask<String, Void, CmisRepository
 		try {
 			repo.generateParams(currentActivity);
 			((CmisApp) currentActivity.getApplication()).setRepository(repo);
-			repo.clearCache(repo.getServer().getWorkspace());
 			Intent i = new Intent(currentActivity, SearchActivity.class);
 			i.putExtras(intent);
 			currentActivity.startActivity(i);
 			currentActivity.finish();
 			pg.dismiss();
-		} catch (StorageException e) {
-			ActionUtils.displayMessage(currentActivity, R.string.generic_error);
-			pg.dismiss();
 		} catch (Exception e) {
 			ActionUtils.displayMessage(currentActivity, R.string.generic_error);
 			currentActivity.finish();
@@ -0,0 +1,472 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cached listings in a binary, column oriented file : one column per field
+ * of the items, all the strings once in a table, then the properties. The
+ * file is mapped and an item is only decoded when the list asks for it, so
+ * opening a large folder does not depend on its size.
+ * 
+ * <pre>
+ * header        magic, version, rows, flags, numItems, strings, descriptors, property ints
+ * strings       offsets of the strings in the string data (strings + 1)
+ * descriptors   4 string refs per descriptor : type, id, local name, display name
+ * columns       one string ref per row for each of the STRING_COLUMNS
+ * dates         modification date per row, NO_DATE when unknown
+ * lengths       content length per row
+ * properties    start of each row in the property ints (rows + 1)
+ * property ints per property : descriptor, number of values, value refs
+ * string data   UTF-8
+ * </pre>
+ * 
+ * A string ref is -1 for null. The feed item, when there is one, is the
+ * last row.
+ */
+public class CmisCollectionFile {
+
+	private static final int MAGIC = 0x434d4c53; // CMLS
+	/** Layout of the file, to increment when it changes. */
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8 * 4;
+	private static final int FLAG_FEED_ITEM = 1;
+	private static final long NO_DATE = Long.MIN_VALUE;
+	private static final int NULL = -1;
+	/** Decoded item with its arrays, decoded string : see CmisItem. */
+	private static final int ITEM_SIZE = 144;
+	private static final int STRING_SIZE = 40;
+
+	private static final int TITLE = 0;
+	private static final int DOWN_LINK = 1;
+	private static final int AUTHOR = 2;
+	private static final int CONTENT_URL = 3;
+	private static final int SELF_URL = 4;
+	private static final int PARENT_URL = 5;
+	private static final int ID = 6;
+	private static final int MIME_TYPE = 7;
+	private static final int SIZE = 8;
+	private static final int PATH = 9;
+	private static final int BASE_TYPE = 10;
+	private static final int STRING_COLUMNS = 11;
+
+	private CmisCollectionFile() {
+	}
+
+	/**
+	 * Writes the collection next to the file, then renames it over the file :
+	 * a reader sees the previous listing or the new one, never a part. The
+	 * data is synced before the rename so a crash can not leave the renamed
+	 * file empty.
+	 */
+	public static void write(CmisItemCollection collection, File file) throws IOException {
+		byte[] data = encode(collection);
+		File tempFile = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tempFile);
+		try {
+			out.write(data);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if (!tempFile.renameTo(file)) {
+			tempFile.delete();
+			throw new IOException("Can not rename " + tempFile);
+		}
+	}
+
+	/**
+	 * Opens a listing written by {@link #write}. The items are read from the
+	 * file when they are first asked for.
+	 * 
+	 * @throws IOException
+	 *             when the file is missing, truncated or of another version
+	 */
+	public static CmisItemCollection read(File file, CmisPropertyDescriptors descriptors) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		ByteBuffer buffer;
+		try {
+			FileChannel channel = raf.getChannel();
+			// the mapping stays valid once the file is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+		try {
+			Rows rows = new Rows(buffer, descriptors);
+			CmisItemCollection collection = CmisItemCollection.create(rows.subList(0, rows.itemCount), rows.numItems);
+			if (rows.hasFeedItem) {
+				collection.setFeedItem(rows.get(rows.itemCount));
+			}
+			collection.setEstimatedSize(rows.getEstimatedSize());
+			return collection;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated listing " + file);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Malformed listing " + file);
+		}
+	}
+
+	private static byte[] encode(CmisItemCollection collection) throws IOException {
+		List<CmisItem> items = new ArrayList<CmisItem>(collection.getItems());
+		boolean hasFeedItem = collection.getFeedItem() != null;
+		if (hasFeedItem) {
+			items.add(collection.getFeedItem());
+		}
+		int rowCount = items.size();
+
+		StringTable strings = new StringTable();
+		Map<CmisPropertyDescriptor, Integer> descriptorIndexes = new IdentityHashMap<CmisPropertyDescriptor, Integer>();
+		List<CmisPropertyDescriptor> descriptorList = new ArrayList<CmisPropertyDescriptor>();
+		int[][] columns = new int[STRING_COLUMNS][rowCount];
+		long[] dates = new long[rowCount];
+		long[] lengths = new long[rowCount];
+		int[] propertyStarts = new int[rowCount + 1];
+		IntList propertyInts = new IntList();
+
+		for (int row = 0; row < rowCount; row++) {
+			CmisItem item = items.get(row);
+			columns[TITLE][row] = strings.ref(item.title);
+			columns[DOWN_LINK][row] = strings.ref(item.downLink);
+			columns[AUTHOR][row] = strings.ref(item.author);
+			columns[CONTENT_URL][row] = strings.ref(item.contentUrl);
+			columns[SELF_URL][row] = strings.ref(item.selfUrl);
+			columns[PARENT_URL][row] = strings.ref(item.parentUrl);
+			columns[ID][row] = strings.ref(item.id);
+			columns[MIME_TYPE][row] = strings.ref(item.mimeType);
+			columns[SIZE][row] = strings.ref(item.size);
+			columns[PATH][row] = strings.ref(item.path);
+			columns[BASE_TYPE][row] = strings.ref(item.baseType);
+			dates[row] = item.modificationDate != null ? item.modificationDate.getTime() : NO_DATE;
+			lengths[row] = item.contentLength;
+
+			propertyStarts[row] = propertyInts.size();
+			CmisPropertyDescriptor[] itemDescriptors = item.getPropertyDescriptors();
+			Object[] values = item.getPropertyValues();
+			for (int i = 0; i < itemDescriptors.length; i++) {
+				Integer index = descriptorIndexes.get(itemDescriptors[i]);
+				if (index == null) {
+					index = descriptorList.size();
+					descriptorIndexes.put(itemDescriptors[i], index);
+					descriptorList.add(itemDescriptors[i]);
+				}
+				propertyInts.add(index);
+				Object value = values[i];
+				if (value == null) {
+					propertyInts.add(0);
+				} else if (value instanceof String) {
+					propertyInts.add(1);
+					propertyInts.add(strings.ref((String) value));
+				} else {
+					String[] multiple = (String[]) value;
+					propertyInts.add(multiple.length);
+					for (String v : multiple) {
+						propertyInts.add(strings.ref(v));
+					}
+				}
+			}
+		}
+		propertyStarts[rowCount] = propertyInts.size();
+
+		int[] descriptorRefs = new int[descriptorList.size() * 4];
+		for (int i = 0; i < descriptorList.size(); i++) {
+			CmisPropertyDescriptor descriptor = descriptorList.get(i);
+			descriptorRefs[4 * i] = strings.ref(descriptor.getType());
+			descriptorRefs[4 * i + 1] = strings.ref(descriptor.getDefinitionId());
+			descriptorRefs[4 * i + 2] = strings.ref(descriptor.getLocalName());
+			descriptorRefs[4 * i + 3] = strings.ref(descriptor.getDisplayName());
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + 64 * rowCount + strings.data.size());
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(rowCount);
+		out.writeInt(hasFeedItem ? FLAG_FEED_ITEM : 0);
+		out.writeInt(collection.getNumItems());
+		out.writeInt(strings.offsets.size() - 1);
+		out.writeInt(descriptorList.size());
+		out.writeInt(propertyInts.size());
+		strings.offsets.writeTo(out);
+		for (int ref : descriptorRefs) {
+			out.writeInt(ref);
+		}
+		for (int[] column : columns) {
+			for (int ref : column) {
+				out.writeInt(ref);
+			}
+		}
+		for (long date : dates) {
+			out.writeLong(date);
+		}
+		for (long length : lengths) {
+			out.writeLong(length);
+		}
+		for (int start : propertyStarts) {
+			out.writeInt(start);
+		}
+		propertyInts.writeTo(out);
+		strings.data.writeTo(out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * The items of a mapped file, decoded on first access. The decoded items
+	 * and strings are kept : the same item is returned every time, equal
+	 * strings are the same instance.
+	 */
+	private static class Rows extends AbstractList<CmisItem> {
+
+		private final ByteBuffer buffer;
+		private final CmisPropertyDescriptors descriptors;
+		private final int rowCount;
+		private final int itemCount;
+		private final boolean hasFeedItem;
+		private final int numItems;
+		private final int stringCount;
+		private final int descriptorCount;
+		private final int stringOffsets;
+		private final int descriptorRefs;
+		private final int columns;
+		private final int dates;
+		private final int lengths;
+		private final int propertyStarts;
+		private final int propertyInts;
+		private final int stringData;
+		private final CmisItem[] items;
+		private final String[] strings;
+		private final CmisPropertyDescriptor[] resolvedDescriptors;
+
+		Rows(ByteBuffer buffer, CmisPropertyDescriptors descriptors) throws IOException {
+			this.buffer = buffer;
+			this.descriptors = descriptors;
+			if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a cached listing");
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported listing version " + buffer.getInt(4));
+			}
+			rowCount = buffer.getInt(8);
+			hasFeedItem = (buffer.getInt(12) & FLAG_FEED_ITEM) != 0;
+			itemCount = hasFeedItem ? rowCount - 1 : rowCount;
+			numItems = buffer.getInt(16);
+			stringCount = buffer.getInt(20);
+			descriptorCount = buffer.getInt(24);
+			int propertyIntCount = buffer.getInt(28);
+			if (itemCount < 0 || stringCount < 0 || descriptorCount < 0 || propertyIntCount < 0) {
+				throw new IOException("Malformed listing header");
+			}
+
+			stringOffsets = HEADER_SIZE;
+			descriptorRefs = stringOffsets + 4 * (stringCount + 1);
+			columns = descriptorRefs + 16 * descriptorCount;
+			dates = columns + 4 * STRING_COLUMNS * rowCount;
+			lengths = dates + 8 * rowCount;
+			propertyStarts = lengths + 8 * rowCount;
+			propertyInts = propertyStarts + 4 * (rowCount + 1);
+			stringData = propertyInts + 4 * propertyIntCount;
+			if (stringData < 0 || stringData > buffer.capacity() || stringData + buffer.getInt(stringOffsets + 4 * stringCount) != buffer.capacity()) {
+				throw new IOException("Truncated listing");
+			}
+
+			items = new CmisItem[rowCount];
+			strings = new String[stringCount];
+			resolvedDescriptors = new CmisPropertyDescriptor[descriptorCount];
+		}
+
+		@Override
+		public int size() {
+			return rowCount;
+		}
+
+		/**
+		 * Heap taken once every row is decoded : the items, their references
+		 * and the strings, each of them decoded once.
+		 */
+		long getEstimatedSize() {
+			long stringChars = buffer.capacity() - stringData;
+			return ITEM_SIZE * rowCount + 4L * (STRING_COLUMNS * rowCount + buffer.getInt(28)) + STRING_SIZE * stringCount + 2 * stringChars;
+		}
+
+		@Override
+		public synchronized CmisItem get(int row) {
+			if (row < 0 || row >= rowCount) {
+				throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+			}
+			CmisItem item = items[row];
+			if (item == null) {
+				item = decode(row);
+				items[row] = item;
+			}
+			return item;
+		}
+
+		private CmisItem decode(int row) {
+			CmisItem item = new CmisItem();
+			item.title = column(TITLE, row);
+			item.downLink = column(DOWN_LINK, row);
+			item.author = column(AUTHOR, row);
+			item.contentUrl = column(CONTENT_URL, row);
+			item.selfUrl = column(SELF_URL, row);
+			item.parentUrl = column(PARENT_URL, row);
+			item.id = column(ID, row);
+			item.mimeType = column(MIME_TYPE, row);
+			item.size = column(SIZE, row);
+			item.path = column(PATH, row);
+			item.baseType = column(BASE_TYPE, row);
+			long date = buffer.getLong(dates + 8 * row);
+			item.modificationDate = date != NO_DATE ? new Date(date) : null;
+			item.contentLength = buffer.getLong(lengths + 8 * row);
+
+			int position = propertyInts + 4 * buffer.getInt(propertyStarts + 4 * row);
+			int end = propertyInts + 4 * buffer.getInt(propertyStarts + 4 * (row + 1));
+			List<CmisPropertyDescriptor> itemDescriptors = new ArrayList<CmisPropertyDescriptor>();
+			List<Object> values = new ArrayList<Object>();
+			while (position < end) {
+				itemDescriptors.add(descriptor(buffer.getInt(position)));
+				int count = buffer.getInt(position + 4);
+				position += 8;
+				if (count == 0) {
+					values.add(null);
+				} else if (count == 1) {
+					values.add(string(buffer.getInt(position)));
+				} else {
+					String[] multiple = new String[count];
+					for (int i = 0; i < count; i++) {
+						multiple[i] = string(buffer.getInt(position + 4 * i));
+					}
+					values.add(multiple);
+				}
+				position += 4 * count;
+			}
+			item.setProperties(itemDescriptors.toArray(new CmisPropertyDescriptor[itemDescriptors.size()]), values.toArray());
+			return item;
+		}
+
+		private String column(int column, int row) {
+			return string(buffer.getInt(columns + 4 * (column * rowCount + row)));
+		}
+
+		private CmisPropertyDescriptor descriptor(int index) {
+			CmisPropertyDescriptor descriptor = resolvedDescriptors[index];
+			if (descriptor == null) {
+				int refs = descriptorRefs + 16 * index;
+				descriptor = descriptors.get(string(buffer.getInt(refs)), string(buffer.getInt(refs + 4)), string(buffer.getInt(refs + 8)),
+						string(buffer.getInt(refs + 12)));
+				resolvedDescriptors[index] = descriptor;
+			}
+			return descriptor;
+		}
+
+		private String string(int ref) {
+			if (ref == NULL) {
+				return null;
+			}
+			String value = strings[ref];
+			if (value == null) {
+				int start = buffer.getInt(stringOffsets + 4 * ref);
+				int end = buffer.getInt(stringOffsets + 4 * (ref + 1));
+				byte[] utf8 = new byte[end - start];
+				ByteBuffer slice = buffer.duplicate();
+				slice.position(stringData + start);
+				slice.get(utf8);
+				value = fromUtf8(utf8);
+				strings[ref] = value;
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Distinct strings of a listing, in order of first use.
+	 */
+	private static class StringTable {
+
+		private final Map<String, Integer> refs = new HashMap<String, Integer>();
+		private final IntList offsets = new IntList();
+		private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+		StringTable() {
+			offsets.add(0);
+		}
+
+		int ref(String value) throws UnsupportedEncodingException {
+			if (value == null) {
+				return NULL;
+			}
+			Integer ref = refs.get(value);
+			if (ref == null) {
+				byte[] utf8 = value.getBytes("UTF-8");
+				data.write(utf8, 0, utf8.length);
+				ref = offsets.size() - 1;
+				offsets.add(data.size());
+				refs.put(value, ref);
+			}
+			return ref;
+		}
+	}
+
+	private static class IntList {
+
+		private int[] values = new int[64];
+		private int size = 0;
+
+		void add(int value) {
+			if (size == values.length) {
+				int[] resized = new int[size * 2];
+				System.arraycopy(values, 0, resized, 0, size);
+				values = resized;
+			}
+			values[size++] = value;
+		}
+
+		int size() {
+			return size;
+		}
+
+		void writeTo(DataOutputStream out) throws IOException {
+			for (int i = 0; i < size; i++) {
+				out.writeInt(values[i]);
+			}
+		}
+	}
+
+	private static String fromUtf8(byte[] utf8) {
+		try {
+			return new String(utf8, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -15,14 +15,23 @@
  */
 package jp.aegif.android.cmis.repo;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.dom4j.Element;
+import org.dom4j.QName;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import jp.aegif.android.cmis.utils.CompactInput;
+import jp.aegif.android.cmis.utils.CompactOutput;
+import jp.aegif.android.cmis.utils.DateUtils;
 import jp.aegif.android.cmis.utils.FeedUtils;
 
 public class CmisItem extends CmisItemLazy {
@@ -30,36 +39,176 @@ public class CmisItem extends CmisItemLazy {
 	
 	public CmisItem(CmisItem item) {
 		super(item);
+		propertyDescriptors = item.propertyDescriptors;
+		propertyValues = item.propertyValues;
 	}
 	
-	private CmisItem() {
+	CmisItem() {
 	}
 
-	/**
-	 * 
-	 */
-	private static final long serialVersionUID = 1L;
+	private static final QName CMISRA_OBJECT = QName.get("object", FeedUtils.CMISRA_NS);
+	private static final QName CMIS_PROPERTIES = QName.get("properties", FeedUtils.CMIS_NS);
+	private static final QName CMIS_VALUE = QName.get("value", FeedUtils.CMIS_NS);
 	
 
+	private static final CmisPropertyDescriptor[] NO_DESCRIPTORS = new CmisPropertyDescriptor[0];
+	private static final Object[] NO_VALUES = new Object[0];
+
+	/** Item with its fields and date, String with its char array, empty array. */
+	private static final int ITEM_SIZE = 112;
+	private static final int STRING_SIZE = 40;
+	private static final int ARRAY_SIZE = 16;
+
+	/**
+	 * Properties as read from the feed : the descriptors are shared by all the
+	 * items of the repository, see {@link CmisPropertyDescriptors}. Listings
+	 * only need a few of them, copied to fields while parsing. A value is a
+	 * String, a String[] when the property has several values, or null.
+	 */
+	private CmisPropertyDescriptor[] propertyDescriptors;
+	private Object[] propertyValues;
 	private Map<String, CmisProperty> properties;
 
+	/**
+	 * Builds the properties on first use : in practice only for the items
+	 * whose details are displayed.
+	 */
 	public Map<String, CmisProperty> getProperties() {
+		if (properties == null) {
+			CmisPropertyDescriptor[] descriptors = propertyDescriptors;
+			Map<String, CmisProperty> map = new HashMap<String, CmisProperty>(FeedUtils.mapCapacity(descriptors.length));
+			for (int i = 0; i < descriptors.length; i++) {
+				map.put(descriptors[i].getDefinitionId(), newProperty(descriptors[i], propertyValues[i]));
+			}
+			properties = map;
+		}
 		return properties;
 	}
 
+	int getPropertyCount() {
+		return propertyDescriptors.length;
+	}
+
+	/**
+	 * Rough heap footprint of the item : its strings are counted even when
+	 * they are shared with other items, the descriptors are not.
+	 */
+	long getEstimatedSize() {
+		long bytes = ITEM_SIZE + ARRAY_SIZE * 2 + 8L * propertyDescriptors.length + estimateSize(title) + estimateSize(downLink)
+				+ estimateSize(author) + estimateSize(contentUrl) + estimateSize(selfUrl) + estimateSize(parentUrl) + estimateSize(id)
+				+ estimateSize(mimeType) + estimateSize(size) + estimateSize(path) + estimateSize(baseType);
+		for (Object value : propertyValues) {
+			if (value instanceof String[]) {
+				bytes += ARRAY_SIZE;
+				for (String v : (String[]) value) {
+					bytes += 4 + estimateSize(v);
+				}
+			} else {
+				bytes += estimateSize((String) value);
+			}
+		}
+		return bytes;
+	}
+
+	private static long estimateSize(String value) {
+		return value != null ? STRING_SIZE + 2L * value.length() : 0;
+	}
+
+	/**
+	 * The arrays themselves, not to be modified : for {@link CmisCollectionFile}.
+	 */
+	CmisPropertyDescriptor[] getPropertyDescriptors() {
+		return propertyDescriptors;
+	}
+
+	Object[] getPropertyValues() {
+		return propertyValues;
+	}
+
+	void setProperties(CmisPropertyDescriptor[] descriptors, Object[] values) {
+		propertyDescriptors = descriptors.length > 0 ? descriptors : NO_DESCRIPTORS;
+		propertyValues = values.length > 0 ? values : NO_VALUES;
+		properties = null;
+	}
+
+	/**
+	 * Value of a property, without building the properties.
+	 */
+	public String getPropertyValue(String definitionId) {
+		int index = indexOfProperty(definitionId);
+		return index >= 0 ? firstValue(propertyValues[index]) : null;
+	}
+
+	@Override
+	public String getChangeToken() {
+		return changeToken != null ? changeToken : getPropertyValue(CmisProperty.OBJECT_CHANGETOKEN);
+	}
+
+	@Override
+	public String getContentStreamId() {
+		return contentStreamId != null ? contentStreamId : getPropertyValue(CmisProperty.CONTENT_STREAMID);
+	}
+
+	/**
+	 * True if the item has the property, even without value.
+	 */
+	public boolean hasProperty(String definitionId) {
+		return indexOfProperty(definitionId) >= 0;
+	}
+
+	private static CmisProperty newProperty(CmisPropertyDescriptor descriptor, Object value) {
+		if (value instanceof String[]) {
+			return new CmisProperty(descriptor, ((String[]) value).clone());
+		}
+		return new CmisProperty(descriptor, (String) value);
+	}
+
+	private static String firstValue(Object value) {
+		if (value instanceof String[]) {
+			return ((String[]) value)[0];
+		}
+		return (String) value;
+	}
+
+	private static Object addValue(Object value, String added) {
+		if (value == null) {
+			return added;
+		} else if (value instanceof String) {
+			return new String[] { (String) value, added };
+		}
+		String[] values = (String[]) value;
+		String[] resized = resize(values, values.length + 1);
+		resized[values.length] = added;
+		return resized;
+	}
+
+	private int indexOfProperty(String definitionId) {
+		CmisPropertyDescriptor[] descriptors = propertyDescriptors;
+		for (int i = 0; i < descriptors.length; i++) {
+			if (definitionId.equals(descriptors[i].getDefinitionId())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
 	public static CmisItem createFromFeed(Element entry) {
+		return createFromFeed(entry, CmisPropertyDescriptors.getShared());
+	}
+
+	public static CmisItem createFromFeed(Element entry, CmisPropertyDescriptors descriptors) {
 		CmisItem cmi = new CmisItem();
-		cmi.parseEntry(entry);
+		cmi.parseEntry(entry, descriptors);
 		return cmi;
 	}
 
-	private void parseEntry(Element entry) {
+	private void parseEntry(Element entry, CmisPropertyDescriptors descriptors) {
 		title = entry.element("title").getText();
 		id = entry.element("id").getText();
 		downLink = "";
 		contentUrl = "";
 		mimeType = "";
-		author = getAuthorName(entry);
+		author = descriptors.intern(getAuthorName(entry));
 		modificationDate = getModificationDate(entry);
 
 		Element contentElement = entry.element("content");
@@ -69,36 +218,242 @@ public class CmisItem extends CmisItemLazy {
 			if (mimeType == null){
 				mimeType = "";
 			}
+			mimeType = descriptors.intern(mimeType);
 		}
 
-		for (Element link : (List<Element>) entry.elements("link")) {
-			if (CmisModel.ITEM_LINK_DOWN.equals(link.attribute("rel").getText())) {
-				if (link.attribute("type").getText().startsWith("application/atom+xml")) {
-					downLink = link.attribute("href").getText();
+		for (Object node : entry.elements("link")) {
+			Element link = (Element) node;
+			String rel = link.attributeValue("rel");
+			if (CmisModel.ITEM_LINK_DOWN.equals(rel)) {
+				String type = link.attributeValue("type");
+				if (type != null && type.startsWith("application/atom+xml")) {
+					downLink = link.attributeValue("href");
 				}
-			} else if (CmisModel.ITEM_LINK_SELF.equals(link.attribute("rel").getText())) {
-				selfUrl = link.attribute("href").getText();
-			} else if (CmisModel.ITEM_LINK_UP.equals(link.attribute("rel").getText())) {
-				parentUrl = link.attribute("href").getText();
+			} else if (CmisModel.ITEM_LINK_SELF.equals(rel)) {
+				selfUrl = link.attributeValue("href");
+			} else if (CmisModel.ITEM_LINK_UP.equals(rel)) {
+				parentUrl = link.attributeValue("href");
 			}
 		}
 		
-		properties = FeedUtils.getCmisPropertiesForEntry(entry);
-		
-		if (properties.get(CmisProperty.CONTENT_STREAMLENGTH) != null){
-			size = properties.get(CmisProperty.CONTENT_STREAMLENGTH).getValue();
-		} else {
-			size = null;
+		propertyDescriptors = NO_DESCRIPTORS;
+		propertyValues = NO_VALUES;
+		Element objectElement = entry.element(CMISRA_OBJECT);
+		if (objectElement != null) {
+			Element propertiesElement = objectElement.element(CMIS_PROPERTIES);
+			if (propertiesElement != null) {
+				parseProperties(propertiesElement, descriptors);
+			}
 		}
-		if (properties.get(CmisProperty.FOLDER_PATH) != null){
-			path = properties.get(CmisProperty.FOLDER_PATH).getValue();
+		readProperties();
+	}
+
+	private void parseProperties(Element propertiesElement, CmisPropertyDescriptors descriptors) {
+		List<?> elements = propertiesElement.elements();
+		propertyDescriptors = new CmisPropertyDescriptor[elements.size()];
+		propertyValues = new Object[elements.size()];
+		int i = 0;
+		for (Object node : elements) {
+			Element property = (Element) node;
+			CmisPropertyDescriptor descriptor = descriptors.get(property.getName(), property.attributeValue("propertyDefinitionId"),
+					property.attributeValue("localName"), property.attributeValue("displayName"));
+			propertyDescriptors[i] = descriptor;
+			Object value = null;
+			for (Object valueElement : property.elements(CMIS_VALUE)) {
+				value = addValue(value, descriptors.intern(descriptor, ((Element) valueElement).getText()));
+			}
+			propertyValues[i] = value;
+			i++;
 		}
-		
-		
-		if (properties.get(CmisProperty.OBJECT_BASETYPEID) != null){
-			baseType = properties.get(CmisProperty.OBJECT_BASETYPEID).getValue();
+	}
+
+	/**
+	 * Reads the entry (or feed) the parser is positioned on, up to its end
+	 * tag. When a collection is given, the entries of the feed are added to
+	 * it as they are read. Elements that the model does not use are skipped
+	 * without being looked at.
+	 */
+	static CmisItem createFromParser(XmlPullParser parser, CmisItemCollection collection, CmisPropertyDescriptors descriptors) throws XmlPullParserException, IOException {
+		return createFromParser(parser, collection, descriptors, 0);
+	}
+
+	/**
+	 * @param propertyCount
+	 *            expected number of properties, to size the map
+	 */
+	static CmisItem createFromParser(XmlPullParser parser, CmisItemCollection collection, CmisPropertyDescriptors descriptors, int propertyCount) throws XmlPullParserException, IOException {
+		CmisItem cmi = new CmisItem();
+		cmi.parseEntry(parser, collection, descriptors, propertyCount);
+		return cmi;
+	}
+
+	private void parseEntry(XmlPullParser parser, CmisItemCollection collection, CmisPropertyDescriptors descriptors, int propertyCount) throws XmlPullParserException, IOException {
+		downLink = "";
+		contentUrl = "";
+		mimeType = "";
+		author = "";
+		propertyDescriptors = NO_DESCRIPTORS;
+		propertyValues = NO_VALUES;
+
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			String namespace = parser.getNamespace();
+			String name = parser.getName();
+			if (FeedUtils.CMISRA_NS.equals(namespace)) {
+				if ("object".equals(name)) {
+					parseObject(parser, descriptors, propertyCount);
+				} else if (collection != null && "numItems".equals(name)) {
+					collection.setNumItems(parseInt(parser.nextText()));
+				} else {
+					// pathSegment, children...
+					FeedUtils.skip(parser);
+				}
+			} else if (!FeedUtils.ATOM_NS.equals(namespace)) {
+				FeedUtils.skip(parser);
+			} else if ("entry".equals(name) && collection != null) {
+				collection.readEntry(parser, descriptors);
+			} else if ("title".equals(name)) {
+				title = parser.nextText();
+			} else if ("id".equals(name)) {
+				id = parser.nextText();
+			} else if ("updated".equals(name)) {
+				modificationDate = parseXmlDate(parser.nextText());
+			} else if ("author".equals(name)) {
+				author = descriptors.intern(getAuthorName(parser));
+			} else if ("content".equals(name)) {
+				contentUrl = parser.getAttributeValue(null, "src");
+				mimeType = parser.getAttributeValue(null, "type");
+				if (mimeType == null){
+					mimeType = "";
+				}
+				mimeType = descriptors.intern(mimeType);
+				FeedUtils.skip(parser);
+			} else if ("link".equals(name)) {
+				parseLink(parser);
+				FeedUtils.skip(parser);
+			} else {
+				FeedUtils.skip(parser);
+			}
+		}
+
+		readProperties();
+	}
+
+	/**
+	 * Reads the properties of the cmisra:object element the parser is
+	 * positioned on. Everything else (allowable actions, relationships,
+	 * ACL...) is skipped.
+	 * 
+	 * @param expectedCount
+	 *            number of properties expected, 0 if unknown
+	 */
+	private void parseObject(XmlPullParser parser, CmisPropertyDescriptors descriptors, int expectedCount) throws XmlPullParserException, IOException {
+		int capacity = expectedCount > 0 ? expectedCount : 16;
+		CmisPropertyDescriptor[] parsedDescriptors = new CmisPropertyDescriptor[capacity];
+		Object[] values = new Object[capacity];
+		int length = 0;
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			if (FeedUtils.CMIS_NS.equals(parser.getNamespace()) && "properties".equals(parser.getName())) {
+				while (parser.nextTag() == XmlPullParser.START_TAG) {
+					if (length == parsedDescriptors.length) {
+						parsedDescriptors = resize(parsedDescriptors, length * 2);
+						values = resize(values, length * 2);
+					}
+					CmisPropertyDescriptor descriptor = descriptors.get(parser.getName(), parser.getAttributeValue(null, "propertyDefinitionId"),
+							parser.getAttributeValue(null, "localName"), parser.getAttributeValue(null, "displayName"));
+					Object value = null;
+					while (parser.nextTag() == XmlPullParser.START_TAG) {
+						if (FeedUtils.CMIS_NS.equals(parser.getNamespace()) && "value".equals(parser.getName())) {
+							value = addValue(value, descriptors.intern(descriptor, parser.nextText()));
+						} else {
+							FeedUtils.skip(parser);
+						}
+					}
+					parsedDescriptors[length] = descriptor;
+					values[length++] = value;
+				}
+			} else {
+				FeedUtils.skip(parser);
+			}
+		}
+		propertyDescriptors = length == parsedDescriptors.length ? parsedDescriptors : resize(parsedDescriptors, length);
+		propertyValues = length == values.length ? values : resize(values, length);
+	}
+
+	private static CmisPropertyDescriptor[] resize(CmisPropertyDescriptor[] array, int length) {
+		CmisPropertyDescriptor[] resized = new CmisPropertyDescriptor[length];
+		System.arraycopy(array, 0, resized, 0, Math.min(length, array.length));
+		return resized;
+	}
+
+	private static Object[] resize(Object[] array, int length) {
+		Object[] resized = new Object[length];
+		System.arraycopy(array, 0, resized, 0, Math.min(length, array.length));
+		return resized;
+	}
+
+	private static String[] resize(String[] array, int length) {
+		String[] resized = new String[length];
+		System.arraycopy(array, 0, resized, 0, Math.min(length, array.length));
+		return resized;
+	}
+
+	private void parseLink(XmlPullParser parser) {
+		String rel = parser.getAttributeValue(null, "rel");
+		if (CmisModel.ITEM_LINK_DOWN.equals(rel)) {
+			String type = parser.getAttributeValue(null, "type");
+			if (type != null && type.startsWith("application/atom+xml")) {
+				downLink = parser.getAttributeValue(null, "href");
+			}
+		} else if (CmisModel.ITEM_LINK_SELF.equals(rel)) {
+			selfUrl = parser.getAttributeValue(null, "href");
+		} else if (CmisModel.ITEM_LINK_UP.equals(rel)) {
+			parentUrl = parser.getAttributeValue(null, "href");
+		}
+	}
+
+	private String getAuthorName(XmlPullParser parser) throws XmlPullParserException, IOException {
+		String name = "";
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			if ("name".equals(parser.getName())) {
+				name = parser.nextText();
+			} else {
+				FeedUtils.skip(parser);
+			}
+		}
+		return name;
+	}
+
+	private static long parseLong(String value) {
+		try {
+			return value != null ? Long.parseLong(value.trim()) : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static int parseInt(String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private void readProperties() {
+		size = null;
+		contentLength = -1;
+		CmisPropertyDescriptor[] descriptors = propertyDescriptors;
+		for (int i = 0; i < descriptors.length; i++) {
+			String id = descriptors[i].getDefinitionId();
+			if (CmisProperty.CONTENT_STREAMLENGTH.equals(id)) {
+				size = firstValue(propertyValues[i]);
+				contentLength = parseLong(size);
+			} else if (CmisProperty.FOLDER_PATH.equals(id)) {
+				path = firstValue(propertyValues[i]);
+			} else if (CmisProperty.OBJECT_BASETYPEID.equals(id)) {
+				baseType = firstValue(propertyValues[i]);
+			}
 		}
-		
 	}
 
 	private Date getModificationDate(Element entry) {
@@ -120,15 +475,77 @@ public class CmisItem extends CmisItemLazy {
 		return "";
 	}
 
-	private Date parseXmlDate(String date) {
+	private static Date parseXmlDate(String date) {
 		// 2009-11-03T11:55:39.495Z
-		Date modfiedDate = null;
-		SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.S'Z'");
-		try {
-			modfiedDate = df.parse(date);
-		} catch (ParseException e) {
-			// meh
+		long millis = DateUtils.parseIso8601(date);
+		return millis != DateUtils.INVALID ? new Date(millis) : null;
+	}
+
+	/**
+	 * Also writes the properties : the descriptors are looked up again in the
+	 * shared table when the item is read.
+	 */
+	@Override
+	protected void writeFields(CompactOutput out) {
+		super.writeFields(out);
+		out.writeInt(propertyDescriptors.length);
+		for (int i = 0; i < propertyDescriptors.length; i++) {
+			CmisPropertyDescriptor descriptor = propertyDescriptors[i];
+			out.writeString(descriptor.getType());
+			out.writeString(descriptor.getDefinitionId());
+			out.writeString(descriptor.getLocalName());
+			out.writeString(descriptor.getDisplayName());
+			Object value = propertyValues[i];
+			if (value == null) {
+				out.writeInt(0);
+			} else if (value instanceof String) {
+				out.writeInt(1);
+				out.writeString((String) value);
+			} else {
+				String[] values = (String[]) value;
+				out.writeInt(values.length);
+				for (String v : values) {
+					out.writeString(v);
+				}
+			}
 		}
-		return modfiedDate;
 	}
+
+	@Override
+	protected void readFields(CompactInput in) {
+		super.readFields(in);
+		int count = in.readInt();
+		if (count < 0) {
+			throw new IllegalArgumentException("Malformed properties");
+		}
+		CmisPropertyDescriptors descriptors = CmisPropertyDescriptors.getShared();
+		propertyDescriptors = count > 0 ? new CmisPropertyDescriptor[count] : NO_DESCRIPTORS;
+		propertyValues = count > 0 ? new Object[count] : NO_VALUES;
+		for (int i = 0; i < count; i++) {
+			propertyDescriptors[i] = descriptors.get(in.readString(), in.readString(), in.readString(), in.readString());
+			int valueCount = in.readInt();
+			if (valueCount == 1) {
+				propertyValues[i] = in.readString();
+			} else if (valueCount > 1) {
+				String[] values = new String[valueCount];
+				for (int j = 0; j < valueCount; j++) {
+					values[j] = in.readString();
+				}
+				propertyValues[i] = values;
+			}
+		}
+		properties = null;
+	}
+
+	public static final Parcelable.Creator<CmisItem> CREATOR = new Parcelable.Creator<CmisItem>() {
+		public CmisItem createFromParcel(Parcel in) {
+			CmisItem item = new CmisItem();
+			item.readFromParcel(in);
+			return item;
+		}
+
+		public CmisItem[] newArray(int size) {
+			return new CmisItem[size];
+		}
+	};
 }
@@ -15,19 +15,70 @@
  */
 package jp.aegif.android.cmis.repo;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.dom4j.Document;
 import org.dom4j.Element;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 public class CmisItemCollection {
 
+	/**
+	 * Receives the entries of a feed while it is parsed.
+	 */
+	public interface EntryListener {
+		/**
+		 * Called on the parsing thread with a copy of the entries read since
+		 * the previous call, start being the position of the first one. A feed
+		 * parsed again (after a failed cache read) starts over at 0.
+		 */
+		void onEntriesParsed(int start, List<CmisItem> entries);
+	}
+
+	/** Small first batch so the first rows show up early. */
+	private static final int FIRST_BATCH_SIZE = 8;
+	private static final int BATCH_SIZE = 32;
+
+	/**
+	 * Entries read on the parsing thread before the next ones go to the
+	 * decoder threads, see {@link #setParallelThreshold(int)}.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 128;
+	private static final int MAX_DECODERS = 4;
+	/** Decoded entries waiting for an earlier one, at most. */
+	private static final int MAX_PENDING = 64;
+
+	private static volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+	private static int decoderCount = Math.min(MAX_DECODERS, Runtime.getRuntime().availableProcessors() - 1);
+	private static ThreadPoolExecutor decoders;
+
 	private List<CmisItem> items = new ArrayList<CmisItem>();
 	private String upLink;
 	private String title;
-
-
+	private int numItems;
+	private CmisItem feedItem;
+	private EntryListener listener;
+	private int published;
+	private int entriesRead;
+	/** Parallel threshold of this feed, 0 when it is decoded serially. */
+	private int threshold;
+	private int propertyCount;
+	private LinkedList<Future<CmisItem>> pending;
+	private long estimatedSize = -1;
+	private long fetchedAt;
+	private boolean stale;
 
 	private CmisItemCollection() {
 	}
@@ -48,19 +99,285 @@ public class CmisItemCollection {
 		return upLink;
 	}
 
+	/**
+	 * Total number of items of the feed (cmisra:numItems), over all pages.
+	 */
+	public int getNumItems() {
+		return numItems;
+	}
+
+	void setNumItems(int numItems) {
+		this.numItems = numItems;
+	}
+
+	/**
+	 * True when the collection comes from a cached copy that is being
+	 * revalidated, see {@link CmisRepository#revalidateCollection(String, CmisItemCollection)}.
+	 */
+	public boolean isStale() {
+		return stale;
+	}
+
+	/**
+	 * When the feed was downloaded, or last found unchanged.
+	 */
+	public long getFetchedAt() {
+		return fetchedAt;
+	}
+
+	void setFreshness(long fetchedAt, boolean stale) {
+		this.fetchedAt = fetchedAt;
+		this.stale = stale;
+	}
+
+	/**
+	 * Rough heap footprint of the items once they are all decoded, for
+	 * {@link CollectionCache}.
+	 */
+	public long getEstimatedSize() {
+		if (estimatedSize < 0) {
+			long size = 64;
+			for (CmisItem item : items) {
+				size += 4 + item.getEstimatedSize();
+			}
+			if (feedItem != null) {
+				size += feedItem.getEstimatedSize();
+			}
+			estimatedSize = size;
+		}
+		return estimatedSize;
+	}
+
+	/**
+	 * For collections whose items are not decoded yet.
+	 */
+	void setEstimatedSize(long estimatedSize) {
+		this.estimatedSize = estimatedSize;
+	}
+
+	void setFeedItem(CmisItem feedItem) {
+		this.feedItem = feedItem;
+	}
+
+	/**
+	 * The feed itself as an item (title, links...), only for collections read
+	 * with {@link #createFromParser(XmlPullParser)} or from their cached copy.
+	 */
+	public CmisItem getFeedItem() {
+		return feedItem;
+	}
+
+	/**
+	 * Reads a feed from a parser positioned on its root element : entries go
+	 * straight to {@link CmisItem}s, no document is built.
+	 */
+	public static CmisItemCollection createFromParser(XmlPullParser parser) throws XmlPullParserException, IOException {
+		return createFromParser(parser, CmisPropertyDescriptors.getShared(), null);
+	}
+
+	/**
+	 * Same, handing the entries to the listener in batches while the feed is
+	 * read. The last entries are not handed over : they are in the returned
+	 * collection. Large feeds are decoded on a few threads, see
+	 * {@link #setParallelThreshold(int)}.
+	 * 
+	 * @param descriptors
+	 *            property descriptors of the repository
+	 */
+	public static CmisItemCollection createFromParser(XmlPullParser parser, CmisPropertyDescriptors descriptors, EntryListener listener) throws XmlPullParserException, IOException {
+		CmisItemCollection cic = new CmisItemCollection();
+		cic.listener = listener;
+		cic.threshold = getDecoderCount() > 0 ? parallelThreshold : 0;
+		try {
+			cic.feedItem = CmisItem.createFromParser(parser, cic, descriptors);
+			cic.addDecodedEntries(true);
+		} finally {
+			cic.cancelPending();
+			cic.listener = null;
+		}
+		return cic;
+	}
+
+	/**
+	 * @param threshold
+	 *            number of entries of a feed decoded on the parsing thread
+	 *            before the next ones are handed to the decoder threads, 0 to
+	 *            decode them all on the parsing thread
+	 */
+	public static void setParallelThreshold(int threshold) {
+		parallelThreshold = threshold;
+	}
+
+	public static int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/**
+	 * @param count
+	 *            number of decoder threads, by default one per core but the
+	 *            parsing one : none on a single core device, where the
+	 *            recording of the entries costs more than it gives back
+	 */
+	public static synchronized void setDecoderCount(int count) {
+		decoderCount = count;
+		if (decoders != null && count > 0) {
+			decoders.setMaximumPoolSize(count);
+		}
+	}
+
+	public static synchronized int getDecoderCount() {
+		return decoderCount;
+	}
+
+	/**
+	 * Reads the entry the parser is positioned on. Past the parallel
+	 * threshold the entry is only recorded here, a decoder thread builds the
+	 * item : the items are added in the order of the feed all the same, as
+	 * soon as the ones before them are done.
+	 */
+	void readEntry(XmlPullParser parser, final CmisPropertyDescriptors descriptors) throws XmlPullParserException, IOException {
+		if (threshold <= 0 || entriesRead++ < threshold) {
+			// entries of a feed mostly have the same properties
+			CmisItem entry = CmisItem.createFromParser(parser, null, descriptors, propertyCount);
+			propertyCount = entry.getPropertyCount();
+			addParsedEntry(entry);
+			return;
+		}
+		final RecordedEntry recorded = RecordedEntry.record(parser);
+		final int expectedCount = propertyCount;
+		if (pending == null) {
+			pending = new LinkedList<Future<CmisItem>>();
+		}
+		pending.add(getDecoders().submit(new Callable<CmisItem>() {
+			@Override
+			public CmisItem call() throws XmlPullParserException, IOException {
+				return CmisItem.createFromParser(recorded, null, descriptors, expectedCount);
+			}
+		}));
+		if (pending.size() >= MAX_PENDING) {
+			addDecodedEntry(pending.removeFirst());
+		}
+		addDecodedEntries(false);
+	}
+
+	/**
+	 * Adds the decoded entries from the head of the pending ones : all of
+	 * them when waiting, else until one is not done yet.
+	 */
+	private void addDecodedEntries(boolean wait) throws XmlPullParserException, IOException {
+		while (pending != null && !pending.isEmpty() && (wait || pending.getFirst().isDone())) {
+			addDecodedEntry(pending.removeFirst());
+		}
+	}
+
+	private void addDecodedEntry(Future<CmisItem> future) throws XmlPullParserException, IOException {
+		CmisItem entry = getDecoded(future);
+		propertyCount = entry.getPropertyCount();
+		addParsedEntry(entry);
+	}
+
+	/**
+	 * The entries are short : an interrupted parsing thread waits for them
+	 * anyway and keeps the interrupt for later.
+	 */
+	private static CmisItem getDecoded(Future<CmisItem> future) throws XmlPullParserException, IOException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof XmlPullParserException) {
+				throw (XmlPullParserException) cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Drops the entries not added yet, when the feed could not be read to
+	 * its end.
+	 */
+	private void cancelPending() {
+		if (pending != null) {
+			for (Future<CmisItem> future : pending) {
+				future.cancel(false);
+			}
+			pending = null;
+		}
+	}
+
+	/**
+	 * There is no core thread, the decoders go away 30 seconds after the
+	 * last large listing. An entry no decoder is free for is decoded by the
+	 * parsing thread itself (caller-runs), it never waits behind another
+	 * listing.
+	 */
+	private static synchronized ExecutorService getDecoders() {
+		if (decoders == null) {
+			decoders = new ThreadPoolExecutor(0, Math.max(1, decoderCount), 30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+				private int created = 0;
+
+				@Override
+				public synchronized Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "EntryDecoder-" + (++created));
+					thread.setDaemon(true);
+					return thread;
+				}
+			}, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return decoders;
+	}
+
+	private void addParsedEntry(CmisItem item) {
+		items.add(item);
+		if (listener != null && items.size() - published >= (published == 0 ? FIRST_BATCH_SIZE : BATCH_SIZE)) {
+			listener.onEntriesParsed(published, new ArrayList<CmisItem>(items.subList(published, items.size())));
+			published = items.size();
+		}
+	}
+
 	public static CmisItemCollection createFromFeed(Document doc) {
+		return createFromFeed(doc, CmisPropertyDescriptors.getShared());
+	}
+
+	public static CmisItemCollection createFromFeed(Document doc, CmisPropertyDescriptors descriptors) {
 		CmisItemCollection cic = new CmisItemCollection();
-		cic.parseEntries(doc);
+		cic.parseEntries(doc, descriptors);
 		return cic;
 	}
 
 	@SuppressWarnings("unchecked")
-	private void parseEntries(Document doc) {
+	private void parseEntries(Document doc, CmisPropertyDescriptors descriptors) {
 		List<Element> entries = doc.getRootElement().elements("entry");
 		for (Element entry : entries) {
-			items.add(CmisItem.createFromFeed(entry));
+			items.add(CmisItem.createFromFeed(entry, descriptors));
 		}
+	}
 
+	/**
+	 * A collection over items read elsewhere, see {@link CmisCollectionFile}.
+	 */
+	static CmisItemCollection create(List<CmisItem> items, int numItems) {
+		CmisItemCollection cic = new CmisItemCollection();
+		cic.items = items;
+		cic.numItems = numItems;
+		return cic;
 	}
 
 	public static CmisItemCollection emptyCollection() {
@@ -16,17 +16,27 @@
 package jp.aegif.android.cmis.repo;
 
 import java.io.File;
-import java.io.Serializable;
 import java.util.Date;
 
 import android.app.Application;
+import android.os.BadParcelableException;
+import android.os.Parcel;
+import android.os.Parcelable;
 
+import jp.aegif.android.cmis.utils.CompactInput;
+import jp.aegif.android.cmis.utils.CompactOutput;
 import jp.aegif.android.cmis.utils.StorageException;
 import jp.aegif.android.cmis.utils.StorageUtils;
 
-public class CmisItemLazy implements Serializable {
+/**
+ * Item passed between activities. It is parcelled field by field, tagged
+ * with {@link #PARCEL_VERSION} : no reflection and no class descriptors as
+ * with serialization.
+ */
+public class CmisItemLazy implements Parcelable {
 
-	private static final long serialVersionUID = -8274543604325636130L;
+	/** Layout of the parcelled items, to increment when it changes. */
+	private static final int PARCEL_VERSION = 2;
 	
 	protected String title;
 	protected String downLink;
@@ -37,8 +47,12 @@ public class CmisItemLazy implements Serializable {
 	protected String id;
 	protected String mimeType;
 	protected String size;
+	/** The size parsed once, -1 when unknown. */
+	protected long contentLength = -1;
 	protected String path;
 	protected String baseType;
+	protected String changeToken;
+	protected String contentStreamId;
 
 	protected Date modificationDate;
 	
@@ -56,9 +70,12 @@ public class CmisItemLazy implements Serializable {
 		this.id =  item.getId();
 		this.mimeType =  item.getMimeType();
 		this.size =  item.getSize();
+		this.contentLength = item.getContentLength();
 		this.modificationDate =  item.getModificationDate();
 		this.path = item.getPath();
 		this.baseType = item.getBaseType();
+		this.changeToken = item.getChangeToken();
+		this.contentStreamId = item.getContentStreamId();
 	}
 
 	public String getTitle() {
@@ -106,6 +123,14 @@ public class CmisItemLazy implements Serializable {
 		return size;
 	}
 	
+	/**
+	 * Size of the content in bytes, -1 when the item has no content or its
+	 * size is unknown.
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+	
 	public String getPath() {
 		return path;
 	}
@@ -118,6 +143,17 @@ public class CmisItemLazy implements Serializable {
 		return baseType;
 	}
 	
+	/**
+	 * cmis:changeToken, null when the repository does not send it.
+	 */
+	public String getChangeToken() {
+		return changeToken;
+	}
+
+	public String getContentStreamId() {
+		return contentStreamId;
+	}
+	
 	public File getContent(Application application, String repositoryWorkspace) throws StorageException {
 		return StorageUtils.getStorageFile(application, repositoryWorkspace, StorageUtils.TYPE_CONTENT, getId(), getTitle());
 	}
@@ -126,4 +162,107 @@ public class CmisItemLazy implements Serializable {
 		return StorageUtils.getStorageFile(application, saveFolder, getTitle());
 	}
 	
+	@Override
+	public int describeContents() {
+		return 0;
+	}
+
+	@Override
+	public void writeToParcel(Parcel dest, int flags) {
+		CompactOutput out = new CompactOutput();
+		out.writeInt(PARCEL_VERSION);
+		writeFields(out);
+		dest.writeByteArray(out.toByteArray());
+	}
+
+	/**
+	 * Reads what {@link #writeToParcel} wrote.
+	 */
+	protected void readFromParcel(Parcel in) {
+		try {
+			CompactInput input = new CompactInput(in.createByteArray());
+			int version = input.readInt();
+			if (version != PARCEL_VERSION) {
+				throw new BadParcelableException("Unsupported item version " + version);
+			}
+			readFields(input);
+		} catch (IllegalArgumentException e) {
+			throw new BadParcelableException(e);
+		} catch (IndexOutOfBoundsException e) {
+			throw new BadParcelableException(e);
+		}
+	}
+
+	protected void writeFields(CompactOutput out) {
+		writeLazyFields(out);
+	}
+
+	protected void readFields(CompactInput in) {
+		readLazyFields(in);
+	}
+
+	/**
+	 * Writes the fields of this class only, even for a {@link CmisItem} :
+	 * read back with {@link #readLazy}. Used for the navigation stacks.
+	 */
+	public final void writeLazy(CompactOutput out) {
+		writeLazyFields(out);
+	}
+
+	public static CmisItemLazy readLazy(CompactInput in) {
+		CmisItemLazy item = new CmisItemLazy();
+		item.readLazyFields(in);
+		return item;
+	}
+
+	private void writeLazyFields(CompactOutput out) {
+		out.writeString(title);
+		out.writeString(downLink);
+		out.writeString(author);
+		out.writeString(contentUrl);
+		out.writeString(selfUrl);
+		out.writeString(parentUrl);
+		out.writeString(id);
+		out.writeString(mimeType);
+		out.writeString(size);
+		out.writeString(path);
+		out.writeString(baseType);
+		out.writeInt(modificationDate != null ? 1 : 0);
+		if (modificationDate != null) {
+			out.writeLong(modificationDate.getTime());
+		}
+		out.writeLong(contentLength + 1);
+		out.writeString(getChangeToken());
+		out.writeString(getContentStreamId());
+	}
+
+	private void readLazyFields(CompactInput in) {
+		title = in.readString();
+		downLink = in.readString();
+		author = in.readString();
+		contentUrl = in.readString();
+		selfUrl = in.readString();
+		parentUrl = in.readString();
+		id = in.readString();
+		mimeType = in.readString();
+		size = in.readString();
+		path = in.readString();
+		baseType = in.readString();
+		modificationDate = in.readInt() != 0 ? new Date(in.readLong()) : null;
+		contentLength = in.readLong() - 1;
+		changeToken = in.readString();
+		contentStreamId = in.readString();
+	}
+
+	public static final Parcelable.Creator<CmisItemLazy> CREATOR = new Parcelable.Creator<CmisItemLazy>() {
+		public CmisItemLazy createFromParcel(Parcel in) {
+			CmisItemLazy item = new CmisItemLazy();
+			item.readFromParcel(in);
+			return item;
+		}
+
+		public CmisItemLazy[] newArray(int size) {
+			return new CmisItemLazy[size];
+		}
+	};
 }
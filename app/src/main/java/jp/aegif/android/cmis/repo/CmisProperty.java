@@ -15,8 +15,12 @@
  */
 package jp.aegif.android.cmis.repo;
 
+import java.util.Date;
+
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.text.TextUtils;
+import jp.aegif.android.cmis.utils.DateUtils;
 
 public class CmisProperty implements Parcelable {
 
@@ -52,46 +56,195 @@ public class CmisProperty implements Parcelable {
 	public static final String FOLDER_ALLOWCHILDREN = "cmis:allowedChildObjectTypeIds";
 	
 	
-	private final String type;
-	private final String definitionId;
-	private final String localName;
-	private final String displayName;
-	private final String value;
+	public static final String TYPE_BOOLEAN = "propertyBoolean";
+	public static final String TYPE_ID = "propertyId";
+	public static final String TYPE_INTEGER = "propertyInteger";
+	public static final String TYPE_DATETIME = "propertyDateTime";
+	public static final String TYPE_DECIMAL = "propertyDecimal";
+	public static final String TYPE_HTML = "propertyHtml";
+	public static final String TYPE_STRING = "propertyString";
+	public static final String TYPE_URI = "propertyUri";
+
+	private static final String[] NO_VALUES = new String[0];
+
+	private final CmisPropertyDescriptor descriptor;
+	private final String[] values;
+	/**
+	 * The values parsed according to the type : long[] for integers and dates
+	 * (milliseconds), double[] for decimals, boolean[] for booleans. Null for
+	 * the other types or when a value can not be parsed.
+	 */
+	private final Object typedValues;
 
 	public CmisProperty(String type, String definitionId, String localName, String displayName, String value) {
-		this.type = type;
-		this.definitionId = definitionId;
-		this.localName = localName;
-		this.displayName = displayName;
-		this.value = value;
+		this(new CmisPropertyDescriptor(type, definitionId, localName, displayName), value);
+	}
+
+	public CmisProperty(CmisPropertyDescriptor descriptor, String value) {
+		this(descriptor, value != null ? new String[] { value } : NO_VALUES);
+	}
+
+	public CmisProperty(CmisPropertyDescriptor descriptor, String[] values) {
+		this.descriptor = descriptor;
+		this.values = values;
+		this.typedValues = parse(descriptor.getType(), values);
 	}
 
 	public CmisProperty(Parcel in) {
-		type = in.readString();
-		definitionId = in.readString();
-		localName = in.readString();
-		displayName = in.readString();
-		value = in.readString();
+		String type = in.readString();
+		String definitionId = in.readString();
+		String localName = in.readString();
+		String displayName = in.readString();
+		descriptor = CmisPropertyDescriptors.getShared().get(type, definitionId, localName, displayName);
+		values = in.createStringArray();
+		typedValues = parse(type, values);
+	}
+
+	private static Object parse(String type, String[] values) {
+		try {
+			if (TYPE_INTEGER.equals(type)) {
+				long[] longs = new long[values.length];
+				for (int i = 0; i < values.length; i++) {
+					longs[i] = Long.parseLong(values[i].trim());
+				}
+				return longs;
+			} else if (TYPE_DATETIME.equals(type)) {
+				long[] dates = new long[values.length];
+				for (int i = 0; i < values.length; i++) {
+					dates[i] = DateUtils.parseIso8601(values[i]);
+					if (dates[i] == DateUtils.INVALID) {
+						return null;
+					}
+				}
+				return dates;
+			} else if (TYPE_DECIMAL.equals(type)) {
+				double[] doubles = new double[values.length];
+				for (int i = 0; i < values.length; i++) {
+					doubles[i] = Double.parseDouble(values[i].trim());
+				}
+				return doubles;
+			} else if (TYPE_BOOLEAN.equals(type)) {
+				boolean[] booleans = new boolean[values.length];
+				for (int i = 0; i < values.length; i++) {
+					booleans[i] = Boolean.parseBoolean(values[i].trim());
+				}
+				return booleans;
+			}
+		} catch (RuntimeException e) {
+			// null value or not a number : only the text is available
+		}
+		return null;
+	}
+
+	public CmisPropertyDescriptor getDescriptor() {
+		return descriptor;
 	}
 
 	public String getDefinitionId() {
-		return definitionId;
+		return descriptor.getDefinitionId();
 	}
 
 	public String getDisplayName() {
-		return displayName;
+		return descriptor.getDisplayName();
 	}
 
 	public String getLocalName() {
-		return localName;
+		return descriptor.getLocalName();
 	}
 
 	public String getType() {
-		return type;
+		return descriptor.getType();
 	}
 
+	/**
+	 * The value as text, the values separated by commas for a multi-valued
+	 * property.
+	 */
 	public String getValue() {
-		return value;
+		if (values.length == 0) {
+			return null;
+		} else if (values.length == 1) {
+			return values[0];
+		}
+		return TextUtils.join(", ", values);
+	}
+
+	public String[] getValues() {
+		return values.clone();
+	}
+
+	public boolean isMultiValued() {
+		return values.length > 1;
+	}
+
+	/**
+	 * @return the first value of an integer property, or defaultValue
+	 */
+	public long getLongValue(long defaultValue) {
+		if (TYPE_INTEGER.equals(getType()) && typedValues != null && values.length > 0) {
+			return ((long[]) typedValues)[0];
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * @return the values of an integer property, null if they can not be read
+	 */
+	public long[] getLongValues() {
+		if (TYPE_INTEGER.equals(getType()) && typedValues != null) {
+			return ((long[]) typedValues).clone();
+		}
+		return null;
+	}
+
+	public double getDoubleValue(double defaultValue) {
+		if (typedValues instanceof double[] && values.length > 0) {
+			return ((double[]) typedValues)[0];
+		}
+		return defaultValue;
+	}
+
+	public double[] getDoubleValues() {
+		if (typedValues instanceof double[]) {
+			return ((double[]) typedValues).clone();
+		}
+		return null;
+	}
+
+	public boolean getBooleanValue(boolean defaultValue) {
+		if (typedValues instanceof boolean[] && values.length > 0) {
+			return ((boolean[]) typedValues)[0];
+		}
+		return defaultValue;
+	}
+
+	public boolean[] getBooleanValues() {
+		if (typedValues instanceof boolean[]) {
+			return ((boolean[]) typedValues).clone();
+		}
+		return null;
+	}
+
+	/**
+	 * @return the first value of a date property, or null
+	 */
+	public Date getDateValue() {
+		if (TYPE_DATETIME.equals(getType()) && typedValues != null && values.length > 0) {
+			return new Date(((long[]) typedValues)[0]);
+		}
+		return null;
+	}
+
+	public Date[] getDateValues() {
+		if (TYPE_DATETIME.equals(getType()) && typedValues != null) {
+			long[] millis = (long[]) typedValues;
+			Date[] dates = new Date[millis.length];
+			for (int i = 0; i < millis.length; i++) {
+				dates[i] = new Date(millis[i]);
+			}
+			return dates;
+		}
+		return null;
 	}
 
 	@Override
@@ -101,12 +254,11 @@ public class CmisProperty implements Parcelable {
 
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
-		dest.writeString(type);
-		dest.writeString(definitionId);
-		dest.writeString(localName);
-		dest.writeString(displayName);
-		dest.writeString(value);
-
+		dest.writeString(descriptor.getType());
+		dest.writeString(descriptor.getDefinitionId());
+		dest.writeString(descriptor.getLocalName());
+		dest.writeString(descriptor.getDisplayName());
+		dest.writeStringArray(values);
 	}
 
 	public static final Parcelable.Creator<CmisProperty> CREATOR = new Parcelable.Creator<CmisProperty>() {
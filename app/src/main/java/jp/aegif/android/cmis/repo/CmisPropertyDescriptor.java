@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+/**
+ * What a property is, as opposed to its value : shared by all the properties
+ * with the same definition, see {@link CmisPropertyDescriptors}.
+ */
+public class CmisPropertyDescriptor {
+
+	private final String type;
+	private final String definitionId;
+	private final String localName;
+	private final String displayName;
+
+	public CmisPropertyDescriptor(String type, String definitionId, String localName, String displayName) {
+		this.type = type;
+		this.definitionId = definitionId;
+		this.localName = localName;
+		this.displayName = displayName;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getDefinitionId() {
+		return definitionId;
+	}
+
+	public String getLocalName() {
+		return localName;
+	}
+
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	boolean matches(String type, String localName, String displayName) {
+		return equal(this.type, type) && equal(this.localName, localName) && equal(this.displayName, displayName);
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jp.aegif.android.cmis.utils.FeedUtils;
+
+/**
+ * Table of the property descriptors of a repository. Every entry of a feed
+ * repeats the same type, id, local name and display name for each property :
+ * items only keep a reference to the shared descriptor.
+ *
+ * Values that repeat across items (type ids, user names, mime types...) are
+ * interned in a bounded pool as well.
+ *
+ * Entries are decoded on several threads (see
+ * {@link CmisItemCollection#setParallelThreshold(int)}) : known descriptors
+ * and values are found without a lock, only new ones take it.
+ */
+public class CmisPropertyDescriptors {
+
+	private static final int MAX_VALUES = 2048;
+
+	/** Properties whose values are shared by many objects. */
+	private static final Set<String> REPEATED_VALUES = new HashSet<String>();
+
+	static {
+		REPEATED_VALUES.add(CmisProperty.OBJECT_TYPEID);
+		REPEATED_VALUES.add(CmisProperty.OBJECT_BASETYPEID);
+		REPEATED_VALUES.add(CmisProperty.OBJECT_CREATEDBY);
+		REPEATED_VALUES.add(CmisProperty.OBJECT_LASTMODIFIEDBY);
+		REPEATED_VALUES.add(CmisProperty.CONTENT_STREAMMIMETYPE);
+		REPEATED_VALUES.add(CmisProperty.DOC_VERSIONLABEL);
+		REPEATED_VALUES.add(CmisProperty.FOLDER_PARENTID);
+		REPEATED_VALUES.add(CmisProperty.FOLDER_ALLOWCHILDREN);
+	}
+
+	private static final CmisPropertyDescriptors shared = new CmisPropertyDescriptors();
+
+	/** By definition id, the ids are never null here. */
+	private final Map<String, CmisPropertyDescriptor> descriptors = new ConcurrentHashMap<String, CmisPropertyDescriptor>();
+	/** Under the lock. */
+	private final Map<String, CmisPropertyDescriptor> variants = new HashMap<String, CmisPropertyDescriptor>();
+	private final Map<String, String> values = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Table for items parsed outside of a repository (single entries).
+	 */
+	public static CmisPropertyDescriptors getShared() {
+		return shared;
+	}
+
+	public CmisPropertyDescriptor get(String type, String definitionId, String localName, String displayName) {
+		CmisPropertyDescriptor descriptor = definitionId != null ? descriptors.get(definitionId) : null;
+		if (descriptor != null && descriptor.matches(type, localName, displayName)) {
+			return descriptor;
+		}
+		return addDescriptor(type, definitionId, localName, displayName);
+	}
+
+	private synchronized CmisPropertyDescriptor addDescriptor(String type, String definitionId, String localName, String displayName) {
+		CmisPropertyDescriptor descriptor = definitionId != null ? descriptors.get(definitionId) : null;
+		if (descriptor == null && definitionId != null) {
+			descriptor = newDescriptor(type, definitionId, localName, displayName);
+			descriptors.put(definitionId, descriptor);
+		} else if (descriptor == null || !descriptor.matches(type, localName, displayName)) {
+			// same id with other names, e.g. redefined by a subtype, or no id
+			String key = type + '\n' + definitionId + '\n' + localName + '\n' + displayName;
+			descriptor = variants.get(key);
+			if (descriptor == null) {
+				descriptor = newDescriptor(type, definitionId, localName, displayName);
+				variants.put(key, descriptor);
+			}
+		}
+		return descriptor;
+	}
+
+	private CmisPropertyDescriptor newDescriptor(String type, String definitionId, String localName, String displayName) {
+		return new CmisPropertyDescriptor(FeedUtils.canonical(type), FeedUtils.canonical(definitionId), intern(localName), intern(displayName));
+	}
+
+	/**
+	 * Interns the value of the property if values of this kind repeat,
+	 * booleans included.
+	 */
+	public String intern(CmisPropertyDescriptor descriptor, String value) {
+		if (REPEATED_VALUES.contains(descriptor.getDefinitionId()) || CmisProperty.TYPE_BOOLEAN.equals(descriptor.getType())) {
+			return intern(value);
+		}
+		return value;
+	}
+
+	public String intern(String value) {
+		if (value == null) {
+			return null;
+		}
+		String interned = values.get(value);
+		return interned != null ? interned : addValue(value);
+	}
+
+	private synchronized String addValue(String value) {
+		String interned = values.get(value);
+		if (interned == null) {
+			if (values.size() >= MAX_VALUES) {
+				values.clear();
+			}
+			values.put(value, value);
+			interned = value;
+		}
+		return interned;
+	}
+}
@@ -15,6 +15,10 @@
  */
 package jp.aegif.android.cmis.repo;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.dom4j.Element;
 
 public class CmisPropertyTypeDefinition {
@@ -55,6 +59,42 @@ public class CmisPropertyTypeDefinition {
 		return cpd;
 	}
 
+	public static CmisPropertyTypeDefinition readFrom(DataInput in) throws IOException {
+		CmisPropertyTypeDefinition cpd = new CmisPropertyTypeDefinition();
+		cpd.id = CmisTypeDefinition.readString(in);
+		cpd.localName = CmisTypeDefinition.readString(in);
+		cpd.localNamespace = CmisTypeDefinition.readString(in);
+		cpd.displayName = CmisTypeDefinition.readString(in);
+		cpd.queryName = CmisTypeDefinition.readString(in);
+		cpd.description = CmisTypeDefinition.readString(in);
+		cpd.propertyType = CmisTypeDefinition.readString(in);
+		cpd.cardinality = CmisTypeDefinition.readString(in);
+		cpd.updatability = CmisTypeDefinition.readString(in);
+		cpd.inherited = in.readBoolean();
+		cpd.required = in.readBoolean();
+		cpd.queryable = in.readBoolean();
+		cpd.orderable = in.readBoolean();
+		cpd.openChoice = in.readBoolean();
+		return cpd;
+	}
+
+	public void writeTo(DataOutput out) throws IOException {
+		CmisTypeDefinition.writeString(out, id);
+		CmisTypeDefinition.writeString(out, localName);
+		CmisTypeDefinition.writeString(out, localNamespace);
+		CmisTypeDefinition.writeString(out, displayName);
+		CmisTypeDefinition.writeString(out, queryName);
+		CmisTypeDefinition.writeString(out, description);
+		CmisTypeDefinition.writeString(out, propertyType);
+		CmisTypeDefinition.writeString(out, cardinality);
+		CmisTypeDefinition.writeString(out, updatability);
+		out.writeBoolean(inherited);
+		out.writeBoolean(required);
+		out.writeBoolean(queryable);
+		out.writeBoolean(orderable);
+		out.writeBoolean(openChoice);
+	}
+
 	public String getId() {
 		return id;
 	}
@@ -15,26 +15,35 @@
  */
 package jp.aegif.android.cmis.repo;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.List;
 
-import org.apache.http.client.ClientProtocolException;
 import org.dom4j.Document;
 import org.dom4j.Element;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
 import android.text.TextUtils;
 import android.util.Log;
 import jp.aegif.android.cmis.FilterPrefs;
 import jp.aegif.android.cmis.SearchPrefs;
 import jp.aegif.android.cmis.model.Server;
+import jp.aegif.android.cmis.repo.CmisItemCollection.EntryListener;
+import jp.aegif.android.cmis.utils.CacheMetadata;
 import jp.aegif.android.cmis.utils.FeedLoadException;
 import jp.aegif.android.cmis.utils.FeedUtils;
 import jp.aegif.android.cmis.utils.HttpUtils;
+import jp.aegif.android.cmis.utils.NetworkMonitor;
+import jp.aegif.android.cmis.utils.NetworkStats;
+import jp.aegif.android.cmis.utils.NetworkStats.Operation;
 import jp.aegif.android.cmis.utils.StorageException;
 import jp.aegif.android.cmis.utils.StorageUtils;
 
@@ -45,15 +54,31 @@ public class CmisRepository {
 
 	private static final String TAG = "CmisRepository";
 	
-	private final String feedRootCollection;
-	private final String feedTypesCollection;
-	private final String uriTemplateQuery;
-	private final String uriTemplateTypeById;
+	/**
+	 * Properties requested in lean mode : what the listing and the actions on
+	 * an item need. The details screen loads the full entry again, see
+	 * {@link #getEntry(String)}.
+	 */
+	public static final String LEAN_FILTER = CmisProperty.OBJECT_ID + "," + CmisProperty.OBJECT_TYPEID + ","
+			+ CmisProperty.OBJECT_BASETYPEID + "," + CmisProperty.OBJECT_NAME + "," + CmisProperty.OBJECT_LASTMODIFICATION + ","
+			+ CmisProperty.CONTENT_STREAMLENGTH + "," + CmisProperty.CONTENT_STREAMMIMETYPE + "," + CmisProperty.FOLDER_PATH + ","
+			+ CmisProperty.OBJECT_CHANGETOKEN + "," + CmisProperty.CONTENT_STREAMID;
+	/** Page size in lean mode, or less when the user asked for less. */
+	public static final int LEAN_MAX_ITEMS = 25;
+	/** Part of the heap of the application given to the listings in memory. */
+	private static final int COLLECTION_CACHE_SHARE = 8;
+	
+	private volatile String feedRootCollection;
+	private volatile String feedTypesCollection;
+	private volatile String uriTemplateQuery;
+	private volatile String uriTemplateTypeById;
+	private volatile CmisServiceDocument serviceDocument;
 	private final String repositoryUser;
 	private final String repositoryPassword;
 	private final String repositoryWorkspace;
 	private String feedParams;
 	private Boolean useFeedParams;
+	private boolean leanParams;
 	private final Application application;
 	private final String repositoryName;
 	private String repositoryUrl;
@@ -63,6 +88,13 @@ public class CmisRepository {
 	private Boolean paging;
 	private int numItems;
 	private CmisItem rootItem;
+	private final CmisPropertyDescriptors descriptors = new CmisPropertyDescriptors();
+	private final CollectionCache collections;
+	private final TypeDefinitionCache types;
+	/** Cached listings downloaded before are revalidated before use. */
+	private final long connectedAt = System.currentTimeMillis();
+	private static volatile boolean staleWhileRevalidate = true;
+	private static volatile boolean prefetchTypes = true;
 	
 	/**
 	 * Connects to a CMIS Repository with the given connection information FIXME
@@ -75,7 +107,7 @@ public class CmisRepository {
 	 * @param password
 	 *            The password to login to the repository
 	 */
-	private CmisRepository(Application application, Server server) {
+	private CmisRepository(Application application, Server server, CmisServiceDocument serviceDocument) {
 		this.application = application;
 		this.repositoryUser = server.getUsername();
 		this.repositoryPassword = server.getPassword();
@@ -83,15 +115,29 @@ public class CmisRepository {
 		this.repositoryName = server.getName();
 		this.repositoryUrl = server.getUrl();
 		this.server = server;
+		int memoryClass = ((ActivityManager) application.getSystemService(Context.ACTIVITY_SERVICE)).getMemoryClass();
+		this.collections = new CollectionCache(memoryClass * 1024L * 1024L / COLLECTION_CACHE_SHARE);
+		File typesRoot = null;
+		try {
+			typesRoot = StorageUtils.getTypeDefinitionRoot(application, server);
+		} catch (StorageException e) {
+			// memory only
+		}
+		this.types = new TypeDefinitionCache(typesRoot, StorageUtils.TYPE_DEFINITION_TTL);
 
-		Document doc = FeedUtils.readAtomFeed(repositoryUrl, repositoryUser, repositoryPassword);
-		
-		Element wsElement = FeedUtils.getWorkspace(doc, repositoryWorkspace);
-		
-		feedRootCollection = FeedUtils.getCollectionUrlFromRepoFeed("root", wsElement);
-		feedTypesCollection = FeedUtils.getCollectionUrlFromRepoFeed("types", wsElement);
-		uriTemplateQuery = FeedUtils.getUriTemplateFromRepoFeed("query", wsElement);
-		uriTemplateTypeById = FeedUtils.getUriTemplateFromRepoFeed("typebyid", wsElement);
+		CmisServiceDocument.Workspace workspace = serviceDocument.getWorkspace(repositoryWorkspace);
+		if (workspace == null) {
+			throw new FeedLoadException(new IllegalArgumentException("No workspace " + repositoryWorkspace + " on " + repositoryUrl));
+		}
+		this.serviceDocument = serviceDocument;
+		setWorkspace(workspace);
+	}
+
+	private void setWorkspace(CmisServiceDocument.Workspace workspace) {
+		feedRootCollection = workspace.getRootCollection();
+		feedTypesCollection = workspace.getTypesCollection();
+		uriTemplateQuery = workspace.getUriTemplateQuery();
+		uriTemplateTypeById = workspace.getUriTemplateTypeById();
 	}
 
 	public String getFeedRootCollection() {
@@ -117,7 +163,149 @@ public class CmisRepository {
 	 * @return
 	 */
 	public static CmisRepository create(Application app, final Server server) {
-		return new CmisRepository(app, server);
+		CmisServiceDocument cached = getCachedServiceDocument(app, server);
+		if (cached != null && cached.getWorkspace(server.getWorkspace()) != null) {
+			// known server : no request before the first listing
+			CmisRepository repository = new CmisRepository(app, server, cached);
+			repository.startBackgroundTasks(true);
+			return repository;
+		}
+		CmisRepository repository = new CmisRepository(app, server, downloadServiceDocument(app, server, null));
+		repository.startBackgroundTasks(false);
+		return repository;
+	}
+
+	/**
+	 * Returns the service document of the server, the stored one when there
+	 * is one.
+	 */
+	public static CmisServiceDocument loadServiceDocument(Application app, Server server) throws FeedLoadException {
+		CmisServiceDocument cached = getCachedServiceDocument(app, server);
+		return cached != null ? cached : downloadServiceDocument(app, server, null);
+	}
+
+	private static CmisServiceDocument getCachedServiceDocument(Application app, Server server) {
+		try {
+			return StorageUtils.getServiceDocumentFromCache(app, server);
+		} catch (StorageException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Downloads the service document, or revalidates the cached one, and
+	 * stores it.
+	 */
+	private static CmisServiceDocument downloadServiceDocument(Application app, Server server, CmisServiceDocument cached) throws FeedLoadException {
+		CacheMetadata metadata = cached != null ? new CacheMetadata(cached.getMetadata()) : new CacheMetadata();
+		CmisServiceDocument document = FeedUtils.readServiceDocument(server, metadata);
+		if (document == null) {
+			// 304 Not Modified
+			document = cached.withMetadata(metadata);
+		}
+		try {
+			StorageUtils.storeServiceDocumentInCache(app, server, document);
+		} catch (StorageException e) {
+			// used for this connection only
+		}
+		return document;
+	}
+
+	/**
+	 * Revalidates the stored service document, then prefetches the type
+	 * hierarchy, in the background.
+	 */
+	private void startBackgroundTasks(final boolean revalidate) {
+		if (!revalidate && !isTypePrefetchNeeded()) {
+			return;
+		}
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				if (revalidate) {
+					revalidateServiceDocument();
+				}
+				if (isTypePrefetchNeeded()) {
+					prefetchTypes();
+				}
+			}
+		}, "RepositoryBackground");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * New URLs are used as soon as they are known, other changes (repository
+	 * information, workspaces) are only stored.
+	 */
+	private void revalidateServiceDocument() {
+		try {
+			CmisServiceDocument document = downloadServiceDocument(application, server, serviceDocument);
+			CmisServiceDocument.Workspace workspace = document.getWorkspace(repositoryWorkspace);
+			if (workspace != null && !workspace.hasSameUrls(serviceDocument.getWorkspace(repositoryWorkspace))) {
+				Log.d(TAG, "Service document changed : " + repositoryUrl);
+				setWorkspace(workspace);
+			}
+			serviceDocument = document;
+		} catch (FeedLoadException e) {
+			Log.d(TAG, "Service document not revalidated : " + e.getCause());
+		}
+	}
+
+	/**
+	 * Not on slow or metered networks (lean mode), nor when the hierarchy
+	 * stored is recent enough.
+	 */
+	private boolean isTypePrefetchNeeded() {
+		return prefetchTypes && !NetworkMonitor.isLean() && !TextUtils.isEmpty(feedTypesCollection) && !types.isPrefetched();
+	}
+
+	/**
+	 * Stores the definitions of the base types of the types collection and
+	 * of all their descendants, so that the details screen finds them.
+	 */
+	private void prefetchTypes() {
+		try {
+			Document doc = FeedUtils.readAtomFeed(server, withPropertyDefinitions(feedTypesCollection), Operation.PREFETCH);
+			List<CmisTypeDefinition> definitions = new ArrayList<CmisTypeDefinition>();
+			CmisTypeDefinition.createFromTypeFeed(doc.getRootElement(), definitions);
+			for (Object entry : doc.getRootElement().elements("entry")) {
+				String descendantsUrl = CmisTypeDefinition.getDescendantsUrl((Element) entry);
+				if (descendantsUrl != null) {
+					Document descendants = FeedUtils.readAtomFeed(server, withPropertyDefinitions(descendantsUrl), Operation.PREFETCH);
+					CmisTypeDefinition.createFromTypeFeed(descendants.getRootElement(), definitions);
+				}
+			}
+			for (CmisTypeDefinition definition : definitions) {
+				types.put(definition);
+			}
+			types.setPrefetched();
+			Log.d(TAG, "Prefetched " + definitions.size() + " type definitions");
+		} catch (FeedLoadException e) {
+			Log.d(TAG, "Type hierarchy not prefetched : " + e.getCause());
+		}
+	}
+
+	/**
+	 * Type feeds leave the property definitions out unless asked for them.
+	 */
+	private static String withPropertyDefinitions(String url) {
+		if (url.contains("includePropertyDefinitions=")) {
+			return url.replace("includePropertyDefinitions=false", "includePropertyDefinitions=true");
+		}
+		return url + (url.indexOf('?') < 0 ? "?" : "&") + "includePropertyDefinitions=true";
+	}
+
+	public static void setPrefetchTypes(boolean enabled) {
+		prefetchTypes = enabled;
+	}
+
+	/**
+	 * The service document the repository connected with : workspaces,
+	 * repository information and capabilities.
+	 */
+	public CmisServiceDocument getServiceDocument() {
+		return serviceDocument;
 	}
 	
 	/**
@@ -134,6 +322,10 @@ public class CmisRepository {
 	public CmisItemCollection getRootCollection(String params) throws FeedLoadException, StorageException {
 		return getCollectionFromFeed(feedRootCollection + params);
 	}
+	
+	public CmisItemCollection getRootCollection(String params, EntryListener listener) throws FeedLoadException, StorageException {
+		return getCollectionFromFeed(feedRootCollection + params, listener);
+	}
 
 	/**
 	 * Returns the ATOM feed that can be used to perform a search for the
@@ -171,62 +363,226 @@ public class CmisRepository {
 	 * @throws FeedLoadException 
 	 */
 	public CmisItemCollection getCollectionFromFeed(final String feedUrl) throws FeedLoadException, StorageException {
-		Document doc;
+		return getCollectionFromFeed(feedUrl, null);
+	}
+
+	/**
+	 * Same, handing the entries to the listener while the feed is parsed.
+	 */
+	public CmisItemCollection getCollectionFromFeed(final String feedUrl, final EntryListener listener) throws FeedLoadException, StorageException {
+		return getCollectionFromFeed(feedUrl, listener, false);
+	}
+
+	/**
+	 * Same. A cached copy downloaded before this connection, or whose max-age
+	 * is over, needs a revalidation : when allowStale is set and the stale
+	 * copy may be used, it is returned right away marked
+	 * {@link CmisItemCollection#isStale()}, and the caller revalidates it
+	 * with {@link #revalidateCollection(String, CmisItemCollection)}. Otherwise it is revalidated
+	 * before it is returned.
+	 */
+	public CmisItemCollection getCollectionFromFeed(final String feedUrl, final EntryListener listener, boolean allowStale) throws FeedLoadException, StorageException {
+		CmisItemCollection collection = null;
 		Log.d(TAG, "feedUrl : " + feedUrl);
-		if (StorageUtils.isFeedInCache(application, feedUrl, repositoryWorkspace)) {
-			doc = StorageUtils.getFeedFromCache(application, feedUrl, repositoryWorkspace);
-		} else {
-			doc = FeedUtils.readAtomFeed(feedUrl, repositoryUser, repositoryPassword);
-			if (doc != null) {
-				StorageUtils.storeFeedInCache(application, feedUrl, doc, repositoryWorkspace);
+		CollectionCache.Entry memory = collections.get(feedUrl);
+		if (memory != null && memory.isFresh()) {
+			NetworkStats.addCacheHit(getHostname(), Operation.LISTING, feedUrl, 0);
+			return setCurrentCollection(memory.getCollection());
+		}
+
+		// null when the feed is not cached
+		CacheMetadata metadata = StorageUtils.getFeedMetadata(application, feedUrl, server);
+		boolean fresh = metadata != null && isFresh(metadata);
+		if (fresh || (metadata != null && allowStale && staleWhileRevalidate && metadata.isUsableWhileStale())) {
+			long start = System.nanoTime();
+			if (memory != null) {
+				collection = memory.getCollection();
+			} else {
+				collection = StorageUtils.getCollectionFromCache(application, feedUrl, server, descriptors);
+			}
+			NetworkStats.addCacheHit(getHostname(), Operation.LISTING, feedUrl, System.nanoTime() - start);
+			if (collection != null) {
+				collection.setFreshness(metadata.getFetchedAt(), !fresh);
+				if (fresh) {
+					collections.put(feedUrl, collection, metadata);
+				}
+				return setCurrentCollection(collection);
 			}
 		}
-		
-		numItems = FeedUtils.getNumItemsFeed(doc);
-		rootItem = CmisItem.createFromFeed(doc.getRootElement());
+		return setCurrentCollection(loadCollection(feedUrl, metadata, memory != null ? memory.getCollection() : null, listener));
+	}
+
+	/**
+	 * Fetches the feed of a stale collection again, conditionally. Returns
+	 * the same collection when the server answers 304, a new one when the
+	 * feed has changed : neither is stale.
+	 */
+	public CmisItemCollection revalidateCollection(final String feedUrl, CmisItemCollection staleCollection) throws FeedLoadException, StorageException {
+		return loadCollection(feedUrl, StorageUtils.getFeedMetadata(application, feedUrl, server), staleCollection, null);
+	}
+
+	/**
+	 * Fresh for this connection : downloaded or revalidated since, and
+	 * within its max-age. Copies left by a previous connection are
+	 * revalidated once.
+	 */
+	private boolean isFresh(CacheMetadata metadata) {
+		return metadata.isFresh() && metadata.getFetchedAt() >= connectedAt;
+	}
+
+	public static void setStaleWhileRevalidate(boolean enabled) {
+		staleWhileRevalidate = enabled;
+	}
+
+	/**
+	 * Downloads the feed, or revalidates the cached copy when there is one
+	 * (metadata not null) : on 304 the given copy, or else the one on disk,
+	 * is reused.
+	 */
+	private CmisItemCollection loadCollection(final String feedUrl, CacheMetadata metadata, CmisItemCollection cached, EntryListener listener) throws FeedLoadException, StorageException {
+		if (metadata == null) {
+			metadata = new CacheMetadata();
+		}
+		CmisItemCollection collection = loadCollection(feedUrl, metadata, listener);
+		if (collection == null) {
+			// 304 Not Modified
+			Log.d(TAG, "Feed not modified : " + feedUrl);
+			collection = cached != null ? cached : StorageUtils.getCollectionFromCache(application, feedUrl, server, descriptors);
+			if (collection == null) {
+				// unreadable cache file, fall back to a full download
+				metadata = new CacheMetadata();
+				collection = loadCollection(feedUrl, metadata, listener);
+			} else {
+				StorageUtils.storeFeedMetadata(application, feedUrl, server, metadata);
+			}
+		}
+		collection.setFreshness(metadata.getFetchedAt(), false);
+		if (metadata.isStorable()) {
+			collections.put(feedUrl, collection, metadata);
+		}
+		return collection;
+	}
+
+	private CmisItemCollection setCurrentCollection(CmisItemCollection collection) {
+		numItems = collection.getNumItems();
+		rootItem = collection.getFeedItem();
 		Log.d(TAG, "NumItems : " + numItems);
-		
-		return CmisItemCollection.createFromFeed(doc);
+		return collection;
 	}
 
+	/**
+	 * Marks a feed as stale, in memory and on disk, so that it is loaded
+	 * again : see {@link StorageUtils#expireFeedInCache}.
+	 */
+	public boolean expireCollection(String feedUrl) throws StorageException {
+		collections.invalidate(feedUrl);
+		return StorageUtils.expireFeedInCache(application, server, feedUrl);
+	}
+
+	/**
+	 * Listings kept in memory, for the diagnostics.
+	 */
+	public CollectionCache getCollectionCache() {
+		return collections;
+	}
+
+	/**
+	 * See {@link CollectionCache#trimMemory(int)}. Once the UI is hidden the
+	 * accesses to the cached listings are written as well.
+	 */
+	public void trimMemory(int level) {
+		collections.trimMemory(level);
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+			try {
+				StorageUtils.flushFeedCache(application);
+			} catch (StorageException e) {
+				// storage gone, nothing to write to
+			}
+		}
+	}
+
+	/**
+	 * Downloads and parses a feed, then stores the listing in the cache.
+	 * Returns null when the cached copy is still valid (304).
+	 */
+	private CmisItemCollection loadCollection(final String feedUrl, CacheMetadata metadata, EntryListener listener) throws FeedLoadException, StorageException {
+		CmisItemCollection collection = FeedUtils.readCmisCollection(server, feedUrl, metadata, descriptors, listener);
+		if (collection != null && metadata.isStorable()) {
+			StorageUtils.storeCollectionInCache(application, feedUrl, server, collection, metadata);
+		}
+		return collection;
+	}
+
+	/**
+	 * Returns the definition of the type, from the {@link TypeDefinitionCache}
+	 * when it is there.
+	 */
 	public CmisTypeDefinition getTypeDefinition(String documentTypeId) {
 		String url = uriTemplateTypeById.replace("{id}", documentTypeId);
-		Document doc = FeedUtils.readAtomFeed(url, repositoryUser, repositoryPassword);
-		return CmisTypeDefinition.createFromFeed(doc);
+		CmisTypeDefinition typeDefinition = types.get(documentTypeId);
+		if (typeDefinition != null) {
+			NetworkStats.addCacheHit(getHostname(), Operation.TYPE_DEFINITION, url, 0);
+			return typeDefinition;
+		}
+		Document doc = FeedUtils.readAtomFeed(server, url, Operation.TYPE_DEFINITION);
+		typeDefinition = CmisTypeDefinition.createFromFeed(doc);
+		types.put(typeDefinition);
+		return typeDefinition;
+	}
+
+	/**
+	 * Loads a single entry with all its properties, for the items of a lean
+	 * listing.
+	 */
+	public CmisItem getEntry(String selfUrl) throws FeedLoadException {
+		Document doc = FeedUtils.readAtomFeed(server, selfUrl, Operation.ENTRY);
+		return CmisItem.createFromFeed(doc.getRootElement(), descriptors);
 	}
 
 	/**
 	 * Fetches the contents from the CMIS repository for the given
 	 * {@link CmisItem}.
 	 */
-	private void downloadContent(CmisItemLazy item, OutputStream os) throws ClientProtocolException, IOException {
-		HttpUtils.getWebRessource(item.getContentUrl(), repositoryUser, repositoryPassword).getEntity().writeTo(os);
+	private void downloadContent(CmisItemLazy item, OutputStream os) throws IOException {
+		HttpUtils.getWebRessource(server, item.getContentUrl(), Operation.CONTENT).writeTo(os);
 	}
 
-	public void clearCache(String workspace) throws StorageException {
-		StorageUtils.deleteRepositoryFiles(application, workspace);
+	public void clearCache() throws StorageException {
+		collections.clear();
+		StorageUtils.deleteRepositoryFiles(application, server);
 	}
 	
+	/**
+	 * Lean mode (see {@link NetworkMonitor}) adds its own parameters even when
+	 * the user did not enable any.
+	 */
 	public void generateParams(Activity activity){
 		FilterPrefs pref = new FilterPrefs(activity);
-		if (pref.getParams()){
+		leanParams = NetworkMonitor.isLean();
+		if (pref.getParams() || leanParams){
 			setUseFeedParams(true);
-			if (pref.getPaging()){
+			if (isPaging(pref)){
 				setPaging(true);
 			} else {
 				setPaging(false);
 			}
 			setFeedParams(createParams(pref));
 		} else {
+			setPaging(false);
 			setUseFeedParams(false);
 		}
 	}
 	
 	public void generateParams(Activity activity, Boolean isAdd){
 		FilterPrefs pref = new FilterPrefs(activity);
-		if (pref.getParams()){
+		if (leanParams != NetworkMonitor.isLean()){
+			// the page size changes : start again from the first page
+			generateParams(activity);
+			return;
+		}
+		if (pref.getParams() || leanParams){
 			setUseFeedParams(true);
-			if (pref.getPaging()){
+			if (isPaging(pref)){
 				setPaging(true);
 			} else {
 				setPaging(false);
@@ -238,29 +594,69 @@ public class CmisRepository {
 		}
 	}
 	
+	/**
+	 * True when the listings are loaded with {@link #LEAN_FILTER}.
+	 */
+	public boolean isLean() {
+		return leanParams;
+	}
+	
+	/**
+	 * True when the parameters were generated for the other network mode.
+	 */
+	public boolean isParamsStale() {
+		return leanParams != NetworkMonitor.isLean();
+	}
+	
+	private boolean isPaging(FilterPrefs pref) {
+		// lean listings are cut to a page, the next ones must be reachable
+		return pref.getParams() ? pref.getPaging() : leanParams;
+	}
+	
+	private String getMaxItems(FilterPrefs pref) {
+		String value = pref.getParams() ? pref.getMaxItems() : null;
+		if (leanParams) {
+			int max = 0;
+			try {
+				max = value != null && value.length() > 0 ? Integer.parseInt(value) : 0;
+			} catch (NumberFormatException e) {
+			}
+			if (max <= 0 || max > LEAN_MAX_ITEMS){
+				value = String.valueOf(LEAN_MAX_ITEMS);
+			}
+		}
+		return value;
+	}
+	
 	private String createParams(FilterPrefs pref, Boolean isAdd, Boolean isFirst){
 		String params = "";
 		String value = "";
 		ArrayList<String> listParams = new ArrayList<String>(4);
 		
-		if (pref != null && pref.getParams()){
+		if (pref != null && (pref.getParams() || leanParams)){
 			
-			value = pref.getTypes();
+			value = pref.getParams() ? pref.getTypes() : null;
 			if (value != null && value.length() > 0){
 				listParams.add("types" + "=" +  pref.getTypes());
 			}
 			
-			/*
-			if (pref.getFilter() != null){
-				paramsList.put("filter", pref.getFilter());
-			}*/
+			value = pref.getParams() ? pref.getFilter() : null;
+			if (value != null && value.length() > 0){
+				listParams.add("filter" + "=" + value);
+			} else if (leanParams){
+				listParams.add("filter" + "=" + LEAN_FILTER);
+			}
+			
+			if (leanParams){
+				listParams.add("renditionFilter" + "=cmis:none");
+			}
 			
-			if (pref.getPaging()){
+			if (isPaging(pref)){
 				if (isFirst){
 					listParams.add("skipCount" + "=0");
 					setSkipCount(0);
 				} else {
-					value = pref.getMaxItems();
+					value = getMaxItems(pref);
 					if (value != null) {
 						if (value.length() == 0 ){
 							value = "0";
@@ -281,14 +677,14 @@ public class CmisRepository {
 				}
 			}
 			
-			value = pref.getMaxItems();
+			value = getMaxItems(pref);
 			if (value != null && value.length() > 0 && Integer.parseInt(value) > 0){
-				listParams.add("maxItems" + "=" + pref.getMaxItems());
+				listParams.add("maxItems" + "=" + value);
 				setMaxItems(Integer.parseInt(value));
 			}
 			
-			value = pref.getOrder() ;
-			if (pref.getOrder() != null && pref.getOrder().length() > 0){
+			value = pref.getParams() ? pref.getOrder() : null;
+			if (value != null && value.length() > 0){
 				listParams.add("orderBy" + "=" + pref.getOrder());
 			}
 			
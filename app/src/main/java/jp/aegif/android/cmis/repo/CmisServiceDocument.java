@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dom4j.Document;
+import org.dom4j.Element;
+
+import jp.aegif.android.cmis.model.Server;
+import jp.aegif.android.cmis.utils.CacheMetadata;
+import jp.aegif.android.cmis.utils.FeedUtils;
+
+/**
+ * What the application keeps of the AtomPub service document of a server :
+ * for each workspace its collection URLs, URI templates and repository
+ * information, and the HTTP validators of the document. Stored per server by
+ * {@link jp.aegif.android.cmis.utils.StorageUtils} so that a known server
+ * opens without downloading it.
+ */
+public class CmisServiceDocument {
+
+	private static final int MAGIC = 0x434d5344; // CMSD
+	/** Layout of the file, to increment when it changes. */
+	private static final int VERSION = 1;
+
+	/** Categories of the repository information, see {@link Server#INFO_GENERAL}. */
+	private static final String[] INFO_CATEGORIES = { Server.INFO_GENERAL, Server.INFO_CAPABILITIES, Server.INFO_ACL_CAPABILITIES };
+
+	/**
+	 * A repository of the server.
+	 */
+	public static class Workspace {
+
+		private final String name;
+		private final String rootCollection;
+		private final String typesCollection;
+		private final String uriTemplateQuery;
+		private final String uriTemplateTypeById;
+		/** Name and value pairs, per category. */
+		private final Map<String, String[]> info;
+
+		Workspace(String name, String rootCollection, String typesCollection, String uriTemplateQuery, String uriTemplateTypeById, Map<String, String[]> info) {
+			this.name = name;
+			this.rootCollection = rootCollection;
+			this.typesCollection = typesCollection;
+			this.uriTemplateQuery = uriTemplateQuery;
+			this.uriTemplateTypeById = uriTemplateTypeById;
+			this.info = info;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getRootCollection() {
+			return rootCollection;
+		}
+
+		public String getTypesCollection() {
+			return typesCollection;
+		}
+
+		public String getUriTemplateQuery() {
+			return uriTemplateQuery;
+		}
+
+		public String getUriTemplateTypeById() {
+			return uriTemplateTypeById;
+		}
+
+		/**
+		 * Repository information and capabilities, as shown by the server
+		 * info screen.
+		 */
+		public Map<String, ArrayList<CmisProperty>> getProperties() {
+			Map<String, ArrayList<CmisProperty>> properties = new HashMap<String, ArrayList<CmisProperty>>();
+			for (String category : INFO_CATEGORIES) {
+				String[] pairs = info.get(category);
+				ArrayList<CmisProperty> list = new ArrayList<CmisProperty>(pairs.length / 2);
+				for (int i = 0; i < pairs.length; i += 2) {
+					list.add(new CmisProperty(null, null, null, pairs[i], pairs[i + 1]));
+				}
+				properties.put(category, list);
+			}
+			return properties;
+		}
+
+		/**
+		 * True when the URLs the repository connects with are the same.
+		 */
+		boolean hasSameUrls(Workspace other) {
+			return equals(rootCollection, other.rootCollection) && equals(typesCollection, other.typesCollection)
+					&& equals(uriTemplateQuery, other.uriTemplateQuery) && equals(uriTemplateTypeById, other.uriTemplateTypeById);
+		}
+
+		private static boolean equals(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+
+	private final List<Workspace> workspaces;
+	private final CacheMetadata metadata;
+
+	private CmisServiceDocument(List<Workspace> workspaces, CacheMetadata metadata) {
+		this.workspaces = workspaces;
+		this.metadata = metadata;
+	}
+
+	public static CmisServiceDocument createFromFeed(Document doc, CacheMetadata metadata) {
+		List<?> elements = doc.getRootElement().elements("workspace");
+		List<Workspace> workspaces = new ArrayList<Workspace>(elements.size());
+		List<String> names = FeedUtils.getWorkspacesFromRepoFeed(doc);
+		for (int i = 0; i < elements.size(); i++) {
+			Element wsElement = (Element) elements.get(i);
+			Map<String, ArrayList<CmisProperty>> properties = FeedUtils.getCmisRepositoryProperties(wsElement);
+			Map<String, String[]> info = new HashMap<String, String[]>();
+			for (String category : INFO_CATEGORIES) {
+				List<CmisProperty> list = properties.get(category);
+				int count = list != null ? list.size() : 0;
+				String[] pairs = new String[count * 2];
+				for (int j = 0; j < count; j++) {
+					pairs[2 * j] = list.get(j).getDisplayName();
+					pairs[2 * j + 1] = list.get(j).getValue();
+				}
+				info.put(category, pairs);
+			}
+			workspaces.add(new Workspace(names.get(i),
+					FeedUtils.getCollectionUrlFromRepoFeed("root", wsElement),
+					FeedUtils.getCollectionUrlFromRepoFeed("types", wsElement),
+					FeedUtils.getUriTemplateFromRepoFeed("query", wsElement),
+					FeedUtils.getUriTemplateFromRepoFeed("typebyid", wsElement), info));
+		}
+		return new CmisServiceDocument(Collections.unmodifiableList(workspaces), metadata);
+	}
+
+	/**
+	 * Same document, revalidated with the server (304).
+	 */
+	CmisServiceDocument withMetadata(CacheMetadata metadata) {
+		return new CmisServiceDocument(workspaces, metadata);
+	}
+
+	public List<String> getWorkspaceNames() {
+		List<String> names = new ArrayList<String>(workspaces.size());
+		for (Workspace workspace : workspaces) {
+			names.add(workspace.getName());
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the workspace of that name, null when the server has none.
+	 */
+	public Workspace getWorkspace(String name) {
+		for (Workspace workspace : workspaces) {
+			if (workspace.getName().equals(name)) {
+				return workspace;
+			}
+		}
+		return null;
+	}
+
+	public CacheMetadata getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * Writes the document next to the previous one, then renames it.
+	 */
+	public static void write(CmisServiceDocument document, File file) throws IOException {
+		file.getParentFile().mkdirs();
+		File tempFile = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			FileOutputStream stream = new FileOutputStream(tempFile);
+			out = new DataOutputStream(new BufferedOutputStream(stream));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			document.metadata.writeTo(out);
+			out.writeInt(document.workspaces.size());
+			for (Workspace workspace : document.workspaces) {
+				writeString(out, workspace.name);
+				writeString(out, workspace.rootCollection);
+				writeString(out, workspace.typesCollection);
+				writeString(out, workspace.uriTemplateQuery);
+				writeString(out, workspace.uriTemplateTypeById);
+				for (String category : INFO_CATEGORIES) {
+					String[] pairs = workspace.info.get(category);
+					out.writeInt(pairs.length);
+					for (String value : pairs) {
+						writeString(out, value);
+					}
+				}
+			}
+			// on disk before the rename, or a crash may leave an empty file
+			out.flush();
+			stream.getFD().sync();
+			out.close();
+			out = null;
+			if (!tempFile.renameTo(file)) {
+				throw new IOException("Can not rename " + tempFile);
+			}
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+				tempFile.delete();
+			}
+		}
+	}
+
+	public static CmisServiceDocument read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Unsupported service document file");
+			}
+			CacheMetadata metadata = CacheMetadata.readFrom(in);
+			int count = in.readInt();
+			List<Workspace> workspaces = new ArrayList<Workspace>(count);
+			for (int i = 0; i < count; i++) {
+				String name = readString(in);
+				String rootCollection = readString(in);
+				String typesCollection = readString(in);
+				String uriTemplateQuery = readString(in);
+				String uriTemplateTypeById = readString(in);
+				Map<String, String[]> info = new HashMap<String, String[]>();
+				for (String category : INFO_CATEGORIES) {
+					String[] pairs = new String[in.readInt()];
+					for (int j = 0; j < pairs.length; j++) {
+						pairs[j] = readString(in);
+					}
+					info.put(category, pairs);
+				}
+				workspaces.add(new Workspace(name, rootCollection, typesCollection, uriTemplateQuery, uriTemplateTypeById, info));
+			}
+			return new CmisServiceDocument(Collections.unmodifiableList(workspaces), metadata);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+}
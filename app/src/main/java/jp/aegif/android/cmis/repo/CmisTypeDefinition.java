@@ -15,6 +15,9 @@
  */
 package jp.aegif.android.cmis.repo;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,13 +48,20 @@ public class CmisTypeDefinition {
 
 	Map<String, CmisPropertyTypeDefinition> propertyDefinition = new HashMap<String, CmisPropertyTypeDefinition>();
 
-	public static CmisTypeDefinition createFromFeed(Document doc) {
-		CmisTypeDefinition td = new CmisTypeDefinition();
+	private static final Namespace CMISRA = Namespace.get("http://docs.oasis-open.org/ns/cmis/restatom/200908/");
+	static final QName CMISRA_TYPE = QName.get("type", CMISRA);
+	private static final QName CMISRA_CHILDREN = QName.get("children", CMISRA);
+	private static final String TYPE_TREE = "application/cmistree+xml";
 
-		final Namespace CMISRA = Namespace.get("http://docs.oasis-open.org/ns/cmis/restatom/200908/");
+	public static CmisTypeDefinition createFromFeed(Document doc) {
+		return createFromElement(doc.getRootElement().element(CMISRA_TYPE));
+	}
 
-		final QName CMISRA_TYPE = QName.get("type", CMISRA);
-		Element type = doc.getRootElement().element(CMISRA_TYPE);
+	/**
+	 * Reads the cmisra:type element of a type entry.
+	 */
+	public static CmisTypeDefinition createFromElement(Element type) {
+		CmisTypeDefinition td = new CmisTypeDefinition();
 
 		td.id = type.elementTextTrim("id");
 		td.localName = type.elementTextTrim("localName");
@@ -70,8 +80,8 @@ public class CmisTypeDefinition {
 		td.versionable = Boolean.valueOf(type.elementTextTrim("versionable"));
 		td.contentStreamAllowed = type.elementTextTrim("contentStreamAllowed");
 
-		List<Element> allElements = doc.getRootElement().element(CMISRA_TYPE).elements();
-		for (Element element : allElements) {
+		for (Object node : type.elements()) {
+			Element element = (Element) node;
 			if (element.getName().startsWith("property")) {
 				CmisPropertyTypeDefinition propTypeDef = CmisPropertyTypeDefinition.createFromElement(element);
 				td.propertyDefinition.put(propTypeDef.getId(), propTypeDef);
@@ -81,6 +91,98 @@ public class CmisTypeDefinition {
 		return td;
 	}
 
+	/**
+	 * Adds the types of a feed of type entries (types collection, type
+	 * children or descendants), and of the feeds nested in cmisra:children.
+	 */
+	public static void createFromTypeFeed(Element feed, List<CmisTypeDefinition> types) {
+		for (Object node : feed.elements("entry")) {
+			Element entry = (Element) node;
+			Element type = entry.element(CMISRA_TYPE);
+			if (type != null) {
+				types.add(createFromElement(type));
+			}
+			Element children = entry.element(CMISRA_CHILDREN);
+			if (children != null && children.element("feed") != null) {
+				createFromTypeFeed(children.element("feed"), types);
+			}
+		}
+	}
+
+	/**
+	 * Returns the link to the descendants of a type entry, null when the
+	 * server has none.
+	 */
+	public static String getDescendantsUrl(Element entry) {
+		for (Object node : entry.elements("link")) {
+			Element link = (Element) node;
+			if (CmisModel.ITEM_LINK_DOWN.equals(link.attributeValue("rel")) && TYPE_TREE.equals(link.attributeValue("type"))) {
+				return link.attributeValue("href");
+			}
+		}
+		return null;
+	}
+
+	public static CmisTypeDefinition readFrom(DataInput in) throws IOException {
+		CmisTypeDefinition td = new CmisTypeDefinition();
+		td.id = readString(in);
+		td.localName = readString(in);
+		td.localNamespace = readString(in);
+		td.displayName = readString(in);
+		td.queryName = readString(in);
+		td.description = readString(in);
+		td.baseId = readString(in);
+		td.creatable = in.readBoolean();
+		td.fileable = in.readBoolean();
+		td.queryable = in.readBoolean();
+		td.fulltextIndexed = in.readBoolean();
+		td.includedInSupertypeQuery = in.readBoolean();
+		td.controllablePolicy = in.readBoolean();
+		td.controllableACL = in.readBoolean();
+		td.versionable = in.readBoolean();
+		td.contentStreamAllowed = readString(in);
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			CmisPropertyTypeDefinition propTypeDef = CmisPropertyTypeDefinition.readFrom(in);
+			td.propertyDefinition.put(propTypeDef.getId(), propTypeDef);
+		}
+		return td;
+	}
+
+	public void writeTo(DataOutput out) throws IOException {
+		writeString(out, id);
+		writeString(out, localName);
+		writeString(out, localNamespace);
+		writeString(out, displayName);
+		writeString(out, queryName);
+		writeString(out, description);
+		writeString(out, baseId);
+		out.writeBoolean(creatable);
+		out.writeBoolean(fileable);
+		out.writeBoolean(queryable);
+		out.writeBoolean(fulltextIndexed);
+		out.writeBoolean(includedInSupertypeQuery);
+		out.writeBoolean(controllablePolicy);
+		out.writeBoolean(controllableACL);
+		out.writeBoolean(versionable);
+		writeString(out, contentStreamAllowed);
+		out.writeInt(propertyDefinition.size());
+		for (CmisPropertyTypeDefinition propTypeDef : propertyDefinition.values()) {
+			propTypeDef.writeTo(out);
+		}
+	}
+
+	static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	static void writeString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
 	public String getId() {
 		return id;
 	}
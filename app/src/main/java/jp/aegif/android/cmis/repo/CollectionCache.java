@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.ComponentCallbacks2;
+
+import jp.aegif.android.cmis.utils.CacheMetadata;
+
+/**
+ * Collections recently displayed, least recently used first, bounded by
+ * their estimated size. Going back to a folder shows it without reading its
+ * cached copy again, as long as that copy is fresh.
+ */
+public class CollectionCache {
+
+	/**
+	 * A cached collection and the metadata of its feed : fresh as long as
+	 * the metadata is (see {@link CacheMetadata#isFresh()}).
+	 */
+	public static class Entry {
+		private final CmisItemCollection collection;
+		private final CacheMetadata metadata;
+		private final long size;
+
+		private Entry(CmisItemCollection collection, CacheMetadata metadata, long size) {
+			this.collection = collection;
+			this.metadata = metadata;
+			this.size = size;
+		}
+
+		public CmisItemCollection getCollection() {
+			return collection;
+		}
+
+		public CacheMetadata getMetadata() {
+			return metadata;
+		}
+
+		public boolean isFresh() {
+			return metadata.isFresh();
+		}
+	}
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private final long maxSize;
+	private long size = 0;
+	private int hits = 0;
+	private int misses = 0;
+
+	/**
+	 * @param maxSize
+	 *            estimated bytes the collections may retain
+	 */
+	public CollectionCache(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the entry of the feed, even stale : its collection is still
+	 * good when the server answers 304. Only fresh entries count as hits.
+	 */
+	public synchronized Entry get(String feedUrl) {
+		Entry entry = entries.get(normalize(feedUrl));
+		if (entry != null && entry.isFresh()) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return entry;
+	}
+
+	/**
+	 * Collections larger than a quarter of the cache are not kept : they
+	 * would push everything else out.
+	 */
+	public synchronized void put(String feedUrl, CmisItemCollection collection, CacheMetadata metadata) {
+		String key = normalize(feedUrl);
+		remove(entries.get(key), key);
+		long collectionSize = collection.getEstimatedSize();
+		if (collectionSize > maxSize / 4) {
+			return;
+		}
+		entries.put(key, new Entry(collection, metadata, collectionSize));
+		size += collectionSize;
+		trimToSize(maxSize);
+	}
+
+	/**
+	 * Drops the feed, with any parameters added to it (paging, filter...).
+	 */
+	public synchronized void invalidate(String feedUrl) {
+		String[] query = splitQuery(normalize(feedUrl));
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, Entry> cached = iterator.next();
+			String[] cachedQuery = splitQuery(cached.getKey());
+			if (cachedQuery[0].equals(query[0]) && Arrays.asList(cachedQuery).containsAll(Arrays.asList(query))) {
+				size -= cached.getValue().size;
+				iterator.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * Gives memory back when the system asks for it, see
+	 * {@link ComponentCallbacks2#onTrimMemory(int)} : half of it when the UI
+	 * is hidden or memory gets low, everything when the process may be
+	 * killed.
+	 */
+	public synchronized void trimMemory(int level) {
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+			clear();
+		} else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+			trimToSize(size / 2);
+		}
+	}
+
+	public synchronized int getHitCount() {
+		return hits;
+	}
+
+	public synchronized int getMissCount() {
+		return misses;
+	}
+
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized int getCount() {
+		return entries.size();
+	}
+
+	private void trimToSize(long targetSize) {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (size > targetSize && iterator.hasNext()) {
+			size -= iterator.next().size;
+			iterator.remove();
+		}
+	}
+
+	private void remove(Entry entry, String key) {
+		if (entry != null) {
+			entries.remove(key);
+			size -= entry.size;
+		}
+	}
+
+	/**
+	 * Same key for the same feed : scheme and host in lower case, query
+	 * parameters sorted.
+	 */
+	static String normalize(String url) {
+		int schemeEnd = url.indexOf("://");
+		if (schemeEnd > 0) {
+			int hostEnd = url.indexOf('/', schemeEnd + 3);
+			if (hostEnd < 0) {
+				hostEnd = url.length();
+			}
+			url = url.substring(0, hostEnd).toLowerCase() + url.substring(hostEnd);
+		}
+		String[] parts = splitQuery(url);
+		if (parts.length == 1) {
+			return url;
+		}
+		Arrays.sort(parts, 1, parts.length);
+		StringBuilder builder = new StringBuilder(url.length());
+		builder.append(parts[0]);
+		for (int i = 1; i < parts.length; i++) {
+			builder.append(i == 1 ? '?' : '&').append(parts[i]);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * The URL without its query, then the non empty parameters.
+	 */
+	private static String[] splitQuery(String url) {
+		int queryStart = url.indexOf('?');
+		if (queryStart < 0) {
+			return new String[] { url };
+		}
+		String[] parameters = url.substring(queryStart + 1).split("&");
+		String[] parts = new String[parameters.length + 1];
+		parts[0] = url.substring(0, queryStart);
+		int count = 1;
+		for (String parameter : parameters) {
+			if (parameter.length() > 0) {
+				parts[count++] = parameter;
+			}
+		}
+		if (count < parts.length) {
+			String[] resized = new String[count];
+			System.arraycopy(parts, 0, resized, 0, count);
+			return resized;
+		}
+		return parts;
+	}
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * The events of an entry, read from the parser of the feed by the parsing
+ * thread and played back to {@link CmisItem} on a decoder thread : the feed
+ * is tokenized once, the entries are decoded elsewhere.
+ *
+ * Only what the model reads is kept : tags, their attributes and the text.
+ * Whitespace is dropped unless it is the whole content of an element.
+ * Replaying is a namespace aware parser positioned on the start tag of the
+ * entry, the document ends after its end tag.
+ */
+final class RecordedEntry implements XmlPullParser {
+
+	/** Type, index of the first string and attribute count of an event. */
+	private static final int EVENT_SIZE = 3;
+
+	/**
+	 * The events one after the other. A start tag has the namespace, the
+	 * name, then the namespace, name and value of each attribute as
+	 * strings ; an end tag its namespace and name ; a text its text.
+	 */
+	private final int[] events;
+	private final String[] strings;
+	private final int lineNumber;
+
+	private int event = 0;
+	private int depth = 1;
+
+	private RecordedEntry(int[] events, String[] strings, int lineNumber) {
+		this.events = events;
+		this.strings = strings;
+		this.lineNumber = lineNumber;
+	}
+
+	/**
+	 * Reads the entry the parser is positioned on, up to its end tag.
+	 */
+	static RecordedEntry record(XmlPullParser parser) throws XmlPullParserException, IOException {
+		Recorder recorder = new Recorder();
+		int lineNumber = parser.getLineNumber();
+		recorder.startTag(parser);
+		int depth = 1;
+		int previous = START_TAG;
+		while (depth > 0) {
+			switch (parser.next()) {
+			case START_TAG:
+				depth++;
+				recorder.startTag(parser);
+				previous = START_TAG;
+				break;
+			case END_TAG:
+				depth--;
+				recorder.endTag(parser);
+				previous = END_TAG;
+				break;
+			case TEXT:
+				// whitespace between tags is skipped by nextTag() anyway
+				if (previous == START_TAG || !parser.isWhitespace()) {
+					recorder.text(parser.getText());
+					previous = TEXT;
+				}
+				break;
+			case END_DOCUMENT:
+				throw new XmlPullParserException("Unexpected end of document", parser, null);
+			}
+		}
+		return recorder.toEntry(lineNumber);
+	}
+
+	/**
+	 * Growing arrays of events and strings.
+	 */
+	private static class Recorder {
+		private int[] events = new int[32 * EVENT_SIZE];
+		private int eventCount = 0;
+		private String[] strings = new String[128];
+		private int stringCount = 0;
+
+		void startTag(XmlPullParser parser) {
+			int attributeCount = parser.getAttributeCount();
+			add(START_TAG, attributeCount);
+			strings[stringCount++] = parser.getNamespace();
+			strings[stringCount++] = parser.getName();
+			for (int i = 0; i < attributeCount; i++) {
+				strings[stringCount++] = parser.getAttributeNamespace(i);
+				strings[stringCount++] = parser.getAttributeName(i);
+				strings[stringCount++] = parser.getAttributeValue(i);
+			}
+		}
+
+		void endTag(XmlPullParser parser) {
+			add(END_TAG, 0);
+			strings[stringCount++] = parser.getNamespace();
+			strings[stringCount++] = parser.getName();
+		}
+
+		void text(String text) {
+			add(TEXT, 0);
+			strings[stringCount++] = text;
+		}
+
+		private void add(int type, int attributeCount) {
+			int stringsNeeded = type == TEXT ? 1 : 2 + 3 * attributeCount;
+			if (eventCount + EVENT_SIZE > events.length) {
+				int[] grown = new int[events.length * 2];
+				System.arraycopy(events, 0, grown, 0, eventCount);
+				events = grown;
+			}
+			if (stringCount + stringsNeeded > strings.length) {
+				String[] grown = new String[Math.max(strings.length * 2, stringCount + stringsNeeded)];
+				System.arraycopy(strings, 0, grown, 0, stringCount);
+				strings = grown;
+			}
+			events[eventCount++] = type;
+			events[eventCount++] = stringCount;
+			events[eventCount++] = attributeCount;
+		}
+
+		RecordedEntry toEntry(int lineNumber) {
+			int[] keptEvents = new int[eventCount];
+			System.arraycopy(events, 0, keptEvents, 0, eventCount);
+			String[] keptStrings = new String[stringCount];
+			System.arraycopy(strings, 0, keptStrings, 0, stringCount);
+			return new RecordedEntry(keptEvents, keptStrings, lineNumber);
+		}
+	}
+
+	private int getStringIndex() {
+		return events[event + 1];
+	}
+
+	@Override
+	public int getEventType() {
+		return event < events.length ? events[event] : END_DOCUMENT;
+	}
+
+	@Override
+	public int next() throws XmlPullParserException {
+		if (event >= events.length) {
+			throw new XmlPullParserException("Already at the end of the entry", this, null);
+		}
+		if (events[event] == END_TAG) {
+			depth--;
+		}
+		event += EVENT_SIZE;
+		int type = getEventType();
+		if (type == START_TAG) {
+			depth++;
+		}
+		return type;
+	}
+
+	@Override
+	public int nextToken() throws XmlPullParserException {
+		return next();
+	}
+
+	@Override
+	public int nextTag() throws XmlPullParserException {
+		int type = next();
+		if (type == TEXT && isWhitespace()) {
+			type = next();
+		}
+		if (type != START_TAG && type != END_TAG) {
+			throw new XmlPullParserException("Expected start or end tag", this, null);
+		}
+		return type;
+	}
+
+	@Override
+	public String nextText() throws XmlPullParserException {
+		if (getEventType() != START_TAG) {
+			throw new XmlPullParserException("Expected start tag", this, null);
+		}
+		String text = "";
+		int type = next();
+		if (type == TEXT) {
+			text = getText();
+			type = next();
+		}
+		if (type != END_TAG) {
+			throw new XmlPullParserException("Expected end tag", this, null);
+		}
+		return text;
+	}
+
+	@Override
+	public void require(int type, String namespace, String name) throws XmlPullParserException {
+		if (type != getEventType() || (namespace != null && !namespace.equals(getNamespace())) || (name != null && !name.equals(getName()))) {
+			throw new XmlPullParserException("Expected " + TYPES[type], this, null);
+		}
+	}
+
+	@Override
+	public int getDepth() {
+		return getEventType() == END_DOCUMENT ? 0 : depth;
+	}
+
+	@Override
+	public String getNamespace() {
+		int type = getEventType();
+		return type == START_TAG || type == END_TAG ? strings[getStringIndex()] : null;
+	}
+
+	@Override
+	public String getName() {
+		int type = getEventType();
+		return type == START_TAG || type == END_TAG ? strings[getStringIndex() + 1] : null;
+	}
+
+	@Override
+	public String getText() {
+		return getEventType() == TEXT ? strings[getStringIndex()] : null;
+	}
+
+	@Override
+	public boolean isWhitespace() throws XmlPullParserException {
+		String text = getText();
+		if (text == null) {
+			throw new XmlPullParserException("Not a text", this, null);
+		}
+		for (int i = 0; i < text.length(); i++) {
+			if (!Character.isWhitespace(text.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public char[] getTextCharacters(int[] holderForStartAndLength) {
+		String text = getText();
+		if (text == null) {
+			holderForStartAndLength[0] = -1;
+			holderForStartAndLength[1] = -1;
+			return null;
+		}
+		holderForStartAndLength[0] = 0;
+		holderForStartAndLength[1] = text.length();
+		return text.toCharArray();
+	}
+
+	@Override
+	public boolean isEmptyElementTag() {
+		return false;
+	}
+
+	@Override
+	public int getAttributeCount() {
+		return getEventType() == START_TAG ? events[event + 2] : -1;
+	}
+
+	private String getAttributeString(int index, int offset) {
+		if (index < 0 || index >= getAttributeCount()) {
+			throw new IndexOutOfBoundsException("Attribute " + index);
+		}
+		return strings[getStringIndex() + 2 + 3 * index + offset];
+	}
+
+	@Override
+	public String getAttributeNamespace(int index) {
+		return getAttributeString(index, 0);
+	}
+
+	@Override
+	public String getAttributeName(int index) {
+		return getAttributeString(index, 1);
+	}
+
+	@Override
+	public String getAttributeValue(int index) {
+		return getAttributeString(index, 2);
+	}
+
+	/**
+	 * Like the parsers of the platform : the last attribute of that name,
+	 * in any namespace when namespace is null.
+	 */
+	@Override
+	public String getAttributeValue(String namespace, String name) {
+		for (int i = getAttributeCount() - 1; i >= 0; i--) {
+			if (name.equals(getAttributeName(i)) && (namespace == null || namespace.equals(getAttributeNamespace(i)))) {
+				return getAttributeValue(i);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String getAttributePrefix(int index) {
+		return null;
+	}
+
+	@Override
+	public String getAttributeType(int index) {
+		return "CDATA";
+	}
+
+	@Override
+	public boolean isAttributeDefault(int index) {
+		return false;
+	}
+
+	@Override
+	public String getPrefix() {
+		return null;
+	}
+
+	@Override
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	@Override
+	public int getColumnNumber() {
+		return -1;
+	}
+
+	@Override
+	public String getPositionDescription() {
+		return "entry at line " + lineNumber + ", event " + event / EVENT_SIZE;
+	}
+
+	@Override
+	public boolean getFeature(String name) {
+		return FEATURE_PROCESS_NAMESPACES.equals(name);
+	}
+
+	@Override
+	public void setFeature(String name, boolean state) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Object getProperty(String name) {
+		return null;
+	}
+
+	@Override
+	public void setProperty(String name, Object value) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setInput(Reader in) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setInput(InputStream inputStream, String inputEncoding) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getInputEncoding() {
+		return null;
+	}
+
+	@Override
+	public void defineEntityReplacementText(String entityName, String replacementText) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getNamespaceCount(int depth) {
+		return 0;
+	}
+
+	@Override
+	public String getNamespacePrefix(int pos) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getNamespaceUri(int pos) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getNamespace(String prefix) {
+		return null;
+	}
+}
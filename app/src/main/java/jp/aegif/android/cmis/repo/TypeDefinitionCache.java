@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.util.Log;
+import jp.aegif.android.cmis.utils.StorageUtils;
+
+/**
+ * Type definitions of a repository, in memory and in a folder of the
+ * storage (one file per type). A definition is used until it is older than
+ * the time to live, in memory as on the storage, then fetched again.
+ */
+public class TypeDefinitionCache {
+
+	private static final String TAG = "TypeDefinitionCache";
+	private static final int MAGIC = 0x434d5444; // CMTD
+	/** Layout of the files, to increment when it changes. */
+	private static final int VERSION = 1;
+	/** Written once the whole hierarchy has been stored. */
+	private static final String PREFETCHED_FILE = "prefetched";
+
+	private final File root;
+	private final long ttl;
+	private final Map<String, Entry> definitions = new HashMap<String, Entry>();
+
+	/**
+	 * A definition in memory and the time it was fetched at.
+	 */
+	private static class Entry {
+		private final CmisTypeDefinition definition;
+		private final long fetchedAt;
+
+		private Entry(CmisTypeDefinition definition, long fetchedAt) {
+			this.definition = definition;
+			this.fetchedAt = fetchedAt;
+		}
+	}
+
+	/**
+	 * @param root
+	 *            folder of the repository, null to keep the definitions in
+	 *            memory only
+	 */
+	public TypeDefinitionCache(File root, long ttl) {
+		this.root = root;
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Returns the definition of the type, null when it is not cached or too
+	 * old.
+	 */
+	public synchronized CmisTypeDefinition get(String typeId) {
+		Entry entry = definitions.get(typeId);
+		if (entry != null) {
+			if (isFresh(entry.fetchedAt)) {
+				return entry.definition;
+			}
+			definitions.remove(typeId);
+		}
+		if (root == null) {
+			return null;
+		}
+		File file = getFile(typeId);
+		if (!isFresh(file)) {
+			return null;
+		}
+		CmisTypeDefinition definition = read(file);
+		if (definition != null) {
+			definitions.put(typeId, new Entry(definition, file.lastModified()));
+		}
+		return definition;
+	}
+
+	public synchronized void put(CmisTypeDefinition definition) {
+		definitions.put(definition.getId(), new Entry(definition, System.currentTimeMillis()));
+		if (root != null) {
+			write(definition, getFile(definition.getId()));
+		}
+	}
+
+	/**
+	 * True when the type hierarchy has been stored within the time to live.
+	 */
+	public synchronized boolean isPrefetched() {
+		return root != null && isFresh(new File(root, PREFETCHED_FILE));
+	}
+
+	public synchronized void setPrefetched() {
+		if (root == null) {
+			return;
+		}
+		try {
+			File file = new File(root, PREFETCHED_FILE);
+			root.mkdirs();
+			if (!file.createNewFile()) {
+				file.setLastModified(System.currentTimeMillis());
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Type hierarchy not marked : " + e);
+		}
+	}
+
+	public synchronized int getCount() {
+		return definitions.size();
+	}
+
+	private File getFile(String typeId) {
+		return new File(root, StorageUtils.md5(typeId) + ".typ");
+	}
+
+	private boolean isFresh(File file) {
+		return file.exists() && isFresh(file.lastModified());
+	}
+
+	private boolean isFresh(long fetchedAt) {
+		return System.currentTimeMillis() - fetchedAt < ttl;
+	}
+
+	private static CmisTypeDefinition read(File file) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Unsupported type definition file");
+			}
+			return CmisTypeDefinition.readFrom(in);
+		} catch (IOException e) {
+			Log.w(TAG, "Unreadable type definition : " + e);
+			file.delete();
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the definition next to the previous one, then renames it.
+	 */
+	private static void write(CmisTypeDefinition definition, File file) {
+		file.getParentFile().mkdirs();
+		File tempFile = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			FileOutputStream stream = new FileOutputStream(tempFile);
+			out = new DataOutputStream(new BufferedOutputStream(stream));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			definition.writeTo(out);
+			// on disk before the rename, or a crash may leave an empty file
+			out.flush();
+			stream.getFD().sync();
+			out.close();
+			out = null;
+			if (!tempFile.renameTo(file)) {
+				throw new IOException("Can not rename " + tempFile);
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Type definition not stored : " + e);
+			tempFile.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+}
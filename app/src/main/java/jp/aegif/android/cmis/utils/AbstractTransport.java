@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+
+import jp.aegif.android.cmis.utils.NetworkStats.Operation;
+import jp.aegif.android.cmis.utils.RequestScheduler.Ticket;
+
+/**
+ * What every {@link Transport} does around the client library : scheduling,
+ * authentication, content negotiation and timings. Implementations only send
+ * the request as they get it.
+ */
+abstract class AbstractTransport implements Transport {
+
+	protected final AuthSession session;
+	private long compressedBytes;
+	private long uncompressedBytes;
+
+	AbstractTransport(String url, String user, String password) {
+		session = new AuthSession(url, user, password);
+	}
+
+	/**
+	 * Sends the request once the {@link RequestScheduler} grants it a slot on
+	 * its host, in the lane of its operation. The slot is held until the
+	 * response is closed, the timings of the request are then added to
+	 * {@link NetworkStats}.
+	 */
+	public TransportResponse execute(TransportRequest request) throws IOException {
+		Operation operation = request.getOperation();
+		String host = getHostKey(URI.create(request.getUrl()));
+		RequestRecord record = new RequestRecord(host, operation, request.getUrl());
+		long start = System.nanoTime();
+		Ticket ticket = RequestScheduler.acquire(host, operation.getPriority());
+		long sent = System.nanoTime();
+		record.setQueueNanos(sent - start);
+
+		// Document content is mostly compressed already, and its length has
+		// to match cmis:contentStreamLength : only XML is asked for encoded.
+		if (!request.containsHeader("Accept-Encoding")) {
+			request.setHeader("Accept-Encoding", operation.isXml() ? TransportResponse.GZIP + ", " + TransportResponse.DEFLATE : TransportResponse.IDENTITY);
+		}
+
+		TransportResponse response = null;
+		RequestRecord.setCurrent(record);
+		try {
+			session.authenticate(request, this);
+			response = send(request);
+			if (response.getStatus() == HttpURLConnection.HTTP_UNAUTHORIZED && session.onUnauthorized(request)) {
+				response.discard();
+				response = null;
+				session.addBasicHeader(request);
+				response = send(request);
+			}
+			record.setFirstByteNanos(System.nanoTime() - sent - record.getConnectNanos());
+			record.setStatus(response.getStatus());
+			record.setProtocol(response.getProtocol());
+		} finally {
+			RequestRecord.setCurrent(null);
+			if (response == null) {
+				ticket.release();
+				record.finish();
+			}
+		}
+		response.attach(this, ticket, record);
+		return response;
+	}
+
+	/**
+	 * Sends the request as is : no scheduling, authentication or decoding.
+	 * Also used by the {@link AuthSession} to log in.
+	 */
+	abstract TransportResponse send(TransportRequest request) throws IOException;
+
+	public AuthSession getSession() {
+		return session;
+	}
+
+	synchronized void addTransferredBytes(long compressed, long uncompressed) {
+		compressedBytes += compressed;
+		uncompressedBytes += uncompressed;
+	}
+
+	public synchronized long getCompressedBytes() {
+		return compressedBytes;
+	}
+
+	public synchronized long getUncompressedBytes() {
+		return uncompressedBytes;
+	}
+
+	private static String getHostKey(URI uri) {
+		return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+	}
+}
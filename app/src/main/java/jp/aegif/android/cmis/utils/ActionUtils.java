@@ -22,6 +22,7 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.ProgressDialog;
 import android.content.ActivityNotFoundException;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -49,7 +50,7 @@ public class ActionUtils {
 	public static void openDocument(final Activity contextActivity, final CmisItemLazy item) {
 		try {
 			File content = getItemFile(contextActivity,  contextActivity.getIntent().getStringExtra("workspace"), item);
-			if (content != null && content.length() > 0 && content.length() == Long.parseLong(item.getSize())){
+			if (content != null && content.length() > 0 && content.length() == item.getContentLength()){
 				viewFileInAssociatedApp(contextActivity, content, item.getMimeType());
 			} else {
 				confirmDownload(contextActivity, item, true);
@@ -62,7 +63,7 @@ public class ActionUtils {
 	public static void openWithDocument(final Activity contextActivity, final CmisItemLazy item) {
 		try {
 			File content = getItemFile(contextActivity,  contextActivity.getIntent().getStringExtra("workspace"), item);
-			if (content != null && content.length() > 0 && content.length() == Long.parseLong(item.getSize())){
+			if (content != null && content.length() > 0 && content.length() == item.getContentLength()){
 				openWith(contextActivity, content);
 			} else {
 				confirmDownload(contextActivity, item, false);
@@ -113,11 +114,11 @@ public class ActionUtils {
 	
 	
 	private static void confirmDownloadBackground(final Activity contextActivity, final CmisItemLazy item) {
-		if (getPrefs(contextActivity).isConfirmDownload() && Integer.parseInt(item.getSize()) > convertSizeToKb(getPrefs(contextActivity).getDownloadFileSize())) {
+		if (getPrefs(contextActivity).isConfirmDownload() && item.getContentLength() > convertSizeToKb(getPrefs(contextActivity).getDownloadFileSize())) {
 			AlertDialog.Builder builder = new AlertDialog.Builder(contextActivity);
 			builder.setMessage(
 					contextActivity.getText(R.string.confirm_donwload) + " " + 
-					convertAndFormatSize(contextActivity, item.getSize()) + " " + 
+					convertAndFormatSize(contextActivity, item.getContentLength()) + " " + 
 					contextActivity.getText(R.string.confirm_donwload2)
 					)
 			       .setCancelable(false)
@@ -140,25 +141,68 @@ public class ActionUtils {
 	}
 	
 	private static void startDownloadBackground(final Activity contextActivity, final CmisItemLazy item){
-		new AbstractDownloadTask(getRepository(contextActivity), contextActivity, true) {
-			@Override
-			public void onDownloadFinished(File contentFile) {
-				if (contentFile != null && contentFile.exists()) {
-					NotificationUtils.downloadNotification(contextActivity, contentFile, item.getMimeType());	
-				} else {
-					NotificationUtils.cancelDownloadNotification(contextActivity);	
-					//displayMessage(contextActivity, R.string.error_file_does_not_exists);
+		final DeferredDownload download = new DeferredDownload(getRepository(contextActivity), contextActivity.getApplicationContext(), item);
+		if (NetworkMonitor.runOrDefer(download)) {
+			return;
+		}
+		NotificationUtils.cancelDownloadNotification(contextActivity);
+		new AlertDialog.Builder(contextActivity)
+				.setMessage(R.string.download_deferred)
+				.setPositiveButton(R.string.download_now, new DialogInterface.OnClickListener() {
+					public void onClick(DialogInterface dialog, int id) {
+						// unless lean mode ended meanwhile and it already started
+						if (NetworkMonitor.cancelDeferred(download)) {
+							NotificationUtils.downloadNotification(contextActivity);
+							download.run();
+						}
+					}
+				})
+				.setNegativeButton(R.string.download_later, new DialogInterface.OnClickListener() {
+					public void onClick(DialogInterface dialog, int id) {
+						dialog.cancel();
+					}
+				})
+				.show();
+	}
+
+	/**
+	 * A background download, possibly held back until lean mode ends. It only
+	 * keeps the application : the activity that asked for it may be gone by
+	 * the time it starts.
+	 */
+	private static class DeferredDownload implements Runnable {
+
+		private final CmisRepository repository;
+		private final Context application;
+		private final CmisItemLazy item;
+
+		DeferredDownload(CmisRepository repository, Context application, CmisItemLazy item) {
+			this.repository = repository;
+			this.application = application;
+			this.item = item;
+		}
+
+		@Override
+		public void run() {
+			new AbstractDownloadTask(repository, application, true) {
+				@Override
+				public void onDownloadFinished(File contentFile) {
+					if (contentFile != null && contentFile.exists()) {
+						NotificationUtils.downloadNotification(application, contentFile, item.getMimeType());
+					} else {
+						NotificationUtils.cancelDownloadNotification(application);
+					}
 				}
-			}
-		}.execute(item);
+			}.execute(item);
+		}
 	}
 	
 	private static void confirmDownload(final Activity contextActivity, final CmisItemLazy item, final boolean notification) {
-		if (getPrefs(contextActivity).isConfirmDownload() && Integer.parseInt(item.getSize()) > convertSizeToKb(getPrefs(contextActivity).getDownloadFileSize())) {
+		if (getPrefs(contextActivity).isConfirmDownload() && item.getContentLength() > convertSizeToKb(getPrefs(contextActivity).getDownloadFileSize())) {
 			AlertDialog.Builder builder = new AlertDialog.Builder(contextActivity);
 			builder.setMessage(
 					contextActivity.getText(R.string.confirm_donwload) + " " + 
-					convertAndFormatSize(contextActivity, item.getSize()) + " " + 
+					convertAndFormatSize(contextActivity, item.getContentLength()) + " " + 
 					contextActivity.getText(R.string.confirm_donwload2)
 					)
 			       .setCancelable(false)
@@ -180,12 +224,12 @@ public class ActionUtils {
 	}
 	
 	
-	public static void displayMessage(Activity contextActivity, int messageId) {
-		Toast.makeText(contextActivity, messageId, Toast.LENGTH_LONG).show();
+	public static void displayMessage(Context context, int messageId) {
+		Toast.makeText(context, messageId, Toast.LENGTH_LONG).show();
 	}
 	
-	public static void displayMessage(Activity contextActivity, String messageId) {
-		Toast.makeText(contextActivity, messageId, Toast.LENGTH_LONG).show();
+	public static void displayMessage(Context context, String messageId) {
+		Toast.makeText(context, messageId, Toast.LENGTH_LONG).show();
 	}
 	
 	public static void viewFileInAssociatedApp(final Activity contextActivity, final File tempFile, String mimeType) {
@@ -205,14 +249,16 @@ public class ActionUtils {
 	public static void saveAs(final Activity contextActivity, final String workspace, final CmisItemLazy item){
 		try {
 			File content = item.getContentDownload(contextActivity.getApplication(), ((CmisApp) contextActivity.getApplication()).getPrefs().getDownloadFolder());
-			if (content != null && content.length() > 0 && content.length() == Long.parseLong(item.getSize())){
+			if (StorageUtils.isContentValid(contextActivity.getApplication(), workspace, item, content, true)){
 				viewFileInAssociatedApp(contextActivity, content, item.getMimeType());
 			} else {
 				File cacheContent = item.getContent(contextActivity.getApplication(), workspace);
-				if (cacheContent != null && cacheContent.length() > 0 && cacheContent.length() == Long.parseLong(item.getSize())){
+				if (StorageUtils.isContentValid(contextActivity.getApplication(), workspace, item, cacheContent, false)){
 					//TODO AsyncTask
 					ProgressDialog pg = ProgressDialog.show(contextActivity, "", contextActivity.getText(R.string.loading), true, true);
+					StorageUtils.deleteContentMetadata(contextActivity.getApplication(), workspace, item, true);
 					StorageUtils.copy(cacheContent, content);
+					StorageUtils.storeContentMetadata(contextActivity.getApplication(), workspace, item, content, true);
 					pg.dismiss();
 					viewFileInAssociatedApp(contextActivity, cacheContent, item.getMimeType());
 				} else {
@@ -230,7 +276,7 @@ public class ActionUtils {
 			File content = getItemFile(activity, workspace, item);
 			if (item.getMimeType().length() == 0){
 				shareFileInAssociatedApp(activity, content, item);
-			//} else if (content != null && content.length() > 0 && content.length() == Long.parseLong(item.getSize())) {
+			//} else if (content != null && content.length() > 0 && content.length() == item.getContentLength()) {
 			//	shareFileInAssociatedApp(contextActivity, content, item);
 			} else {
 				AlertDialog.Builder builder = new AlertDialog.Builder(activity);
@@ -285,14 +331,18 @@ public class ActionUtils {
 		contextActivity.startActivity(Intent.createChooser(i, contextActivity.getText(R.string.share)));
 	}
 	
+	/**
+	 * Returns the stored content of the item, null when there is none or it
+	 * is not the current content anymore : see {@link StorageUtils#isContentValid}.
+	 */
 	private static File getItemFile(final Activity contextActivity, final String workspace, final CmisItemLazy item) throws StorageException{
 			File content = item.getContent(contextActivity.getApplication(), workspace);
-			if (content != null && content.length() > 0 && content.length() == Long.parseLong(item.getSize())) {
+			if (StorageUtils.isContentValid(contextActivity.getApplication(), workspace, item, content, false)) {
 				return content; 
 			} 
 			
 			content = item.getContentDownload(contextActivity.getApplication(), ((CmisApp) contextActivity.getApplication()).getPrefs().getDownloadFolder());
-			if (content != null && content.length() > 0 && content.length() == Long.parseLong(item.getSize())) {
+			if (StorageUtils.isContentValid(contextActivity.getApplication(), workspace, item, content, true)) {
 				return content; 
 			} 
 			
@@ -391,9 +441,10 @@ public class ActionUtils {
 			intent.putParcelableArrayListExtra("properties", propList);
 			
 			intent.putExtra("workspace", server.getWorkspace());
-			intent.putExtra("objectTypeId", doc.getProperties().get("cmis:objectTypeId").getValue());
-			intent.putExtra("baseTypeId", doc.getProperties().get("cmis:baseTypeId").getValue());
+			intent.putExtra("objectTypeId", doc.getPropertyValue(CmisProperty.OBJECT_TYPEID));
+			intent.putExtra("baseTypeId", doc.getPropertyValue(CmisProperty.OBJECT_BASETYPEID));
 			intent.putExtra("item", new CmisItemLazy(doc));
+			intent.putExtra("lean", getRepository(activity).isLean());
 			
 			return intent;
 		} catch (Exception e) {
@@ -402,25 +453,24 @@ public class ActionUtils {
 	}
 	
 	
-	private static int convertSizeToKb(String size){
-		return Integer.parseInt(size) * 1024;
+	private static long convertSizeToKb(String size){
+		return Long.parseLong(size) * 1024;
 	}
 	
 	public static String convertAndFormatSize(Activity activity, String size) {
-		int sizeInByte = Integer.parseInt(size);
-	    return convertAndFormatSize(activity, sizeInByte);
+	    return convertAndFormatSize(activity, Long.parseLong(size));
 	}
 	
 	
-	public static String convertAndFormatSize(Activity activity, int sizeInByte) {
+	public static String convertAndFormatSize(Activity activity, long sizeInByte) {
 		if (sizeInByte < 1024) {
 			return String.valueOf(sizeInByte) + " " + activity.getText(R.string.file_size_bytes);
 		} else {
-			int sizeInKB = sizeInByte / 1024;
+			long sizeInKB = sizeInByte / 1024;
 			if (sizeInKB < 1024) {
 				return String.valueOf(sizeInKB) + " " + activity.getText(R.string.file_size_kilobytes);
 			} else {
-				int sizeInMB = sizeInKB / 1024;
+				long sizeInMB = sizeInKB / 1024;
 				if (sizeInMB < 1024) {
 					return String.valueOf(sizeInMB) + " " + activity.getText(R.string.file_size_megabytes);
 				} else {
@@ -494,6 +544,16 @@ public class ActionUtils {
     				quickActionsServer
 	    			)
     			);
+    	
+    	try {
+    		RequestScheduler.setMaxRequestsPerHost(Integer.parseInt(sharePrefs.getString(activity.getText(R.string.cmis_max_requests).toString(), String.valueOf(RequestScheduler.DEFAULT_MAX_REQUESTS_PER_HOST))));
+    	} catch (NumberFormatException e) {
+    		RequestScheduler.setMaxRequestsPerHost(RequestScheduler.DEFAULT_MAX_REQUESTS_PER_HOST);
+    	}
+    	NetworkMonitor.setAutomatic(sharePrefs.getBoolean(activity.getText(R.string.cmis_lean_mode).toString(), true));
+    	HttpUtils.setModernTransportEnabled(sharePrefs.getBoolean(activity.getText(R.string.cmis_modern_http).toString(), true));
+    	CmisRepository.setStaleWhileRevalidate(sharePrefs.getBoolean(activity.getText(R.string.cmis_stale_while_revalidate).toString(), true));
+    	CmisRepository.setPrefetchTypes(sharePrefs.getBoolean(activity.getText(R.string.cmis_prefetch_types).toString(), true));
 	}
 	
 	
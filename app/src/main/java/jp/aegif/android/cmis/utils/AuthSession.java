@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
+
+import android.util.Log;
+
+/**
+ * Authentication state of one server, shared by every request of its
+ * transport.
+ *
+ * Basic credentials are sent preemptively so a request costs one round trip
+ * instead of a 401 challenge followed by a retry. Session cookies set by the
+ * server (JSESSIONID on Nuxeo, eXo) are kept in the cookie store of the
+ * transport for as long as the transport lives.
+ *
+ * Alfresco repositories get a login ticket instead : it is requested once
+ * from the login web script, the credentials posted as JSON, and appended to
+ * every url as alf_ticket. When the ticket is refused the session falls back
+ * to Basic authentication.
+ */
+public class AuthSession {
+
+	private static final String TAG = "AuthSession";
+
+	private static final String ALFRESCO_CONTEXT = "/alfresco/";
+	private static final String ALFRESCO_LOGIN = "service/api/login";
+	private static final String ALFRESCO_TICKET_PARAM = "alf_ticket";
+	private static final String JSON = "application/json";
+
+	private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	private final String repositoryUrl;
+	private final String user;
+	private final String password;
+	private String ticket;
+	private boolean ticketUnsupported;
+	private boolean loggingIn;
+
+	AuthSession(String repositoryUrl, String user, String password) {
+		this.repositoryUrl = repositoryUrl;
+		this.user = user;
+		this.password = password;
+		this.ticketUnsupported = getAlfrescoContextUrl() == null;
+	}
+
+	public boolean hasCredentials() {
+		return user != null && user.length() > 0;
+	}
+
+	/**
+	 * Adds the authentication of this session to a request about to be sent.
+	 */
+	void authenticate(TransportRequest request, AbstractTransport transport) {
+		if (!hasCredentials()) {
+			return;
+		}
+		String currentTicket = getTicket(transport);
+		if (currentTicket != null) {
+			request.setUrl(appendTicket(URI.create(request.getUrl()), currentTicket).toString());
+		} else {
+			addBasicHeader(request);
+		}
+	}
+
+	/**
+	 * Called when a request authenticated by this session was refused. Returns
+	 * true when another attempt with different credentials makes sense.
+	 */
+	synchronized boolean onUnauthorized(TransportRequest request) {
+		if (ticket != null) {
+			Log.d(TAG, "Ticket refused, falling back to Basic authentication");
+			request.setUrl(removeTicket(URI.create(request.getUrl())).toString());
+			ticket = null;
+			ticketUnsupported = true;
+			return true;
+		}
+		return false;
+	}
+
+	void addBasicHeader(TransportRequest request) {
+		if (hasCredentials() && !request.containsHeader("Authorization")) {
+			try {
+				request.setHeader("Authorization", "Basic " + encodeBase64((user + ":" + (password != null ? password : "")).getBytes("UTF-8")));
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the ticket of the session, logging in when there is none yet.
+	 * The login runs outside the lock and only once : requests sent meanwhile
+	 * use Basic authentication instead of waiting for its round trip.
+	 */
+	private String getTicket(AbstractTransport transport) {
+		synchronized (this) {
+			if (ticket != null || ticketUnsupported || loggingIn) {
+				return ticket;
+			}
+			loggingIn = true;
+		}
+		String newTicket = null;
+		try {
+			newTicket = login(transport);
+		} finally {
+			synchronized (this) {
+				loggingIn = false;
+				if (!ticketUnsupported) {
+					ticket = newTicket;
+					ticketUnsupported = newTicket == null;
+				}
+			}
+		}
+		synchronized (this) {
+			return ticket;
+		}
+	}
+
+	/**
+	 * Posts the credentials to the login web script, so that the password
+	 * never shows up in a url.
+	 */
+	private String login(AbstractTransport transport) {
+		InputStream in = null;
+		TransportResponse response = null;
+		try {
+			JSONObject credentials = new JSONObject();
+			credentials.put("username", user);
+			credentials.put("password", password != null ? password : "");
+			TransportRequest request = new TransportRequest(getAlfrescoContextUrl() + ALFRESCO_LOGIN);
+			request.setHeader("Accept", JSON);
+			request.setBody(JSON, credentials.toString().getBytes("UTF-8"));
+			response = transport.send(request);
+			if (response.getStatus() != HttpURLConnection.HTTP_OK) {
+				return null;
+			}
+			in = response.getContent();
+			JSONObject result = new JSONObject(IOUtils.toString(in, "UTF-8"));
+			JSONObject data = result.optJSONObject("data");
+			String value = data != null ? data.optString("ticket", "") : "";
+			return value.length() > 0 ? value : null;
+		} catch (Exception e) {
+			Log.d(TAG, "Alfresco login failed : " + e.getMessage());
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (Exception e) {
+				}
+			} else if (response != null) {
+				response.close();
+			}
+		}
+	}
+
+	private String getAlfrescoContextUrl() {
+		if (repositoryUrl == null) {
+			return null;
+		}
+		int index = repositoryUrl.indexOf(ALFRESCO_CONTEXT);
+		if (index == -1) {
+			return null;
+		}
+		return repositoryUrl.substring(0, index + ALFRESCO_CONTEXT.length());
+	}
+
+	private static URI appendTicket(URI uri, String ticket) {
+		String url = uri.toString();
+		if (url.contains(ALFRESCO_TICKET_PARAM + "=")) {
+			return uri;
+		}
+		return URI.create(url + (uri.getRawQuery() == null ? "?" : "&") + ALFRESCO_TICKET_PARAM + "=" + ticket);
+	}
+
+	private static URI removeTicket(URI uri) {
+		return URI.create(uri.toString().replaceAll("[?&]" + ALFRESCO_TICKET_PARAM + "=[^&]*$", "").replaceAll("([?&])" + ALFRESCO_TICKET_PARAM + "=[^&]*&", "$1"));
+	}
+
+	private static String encodeBase64(byte[] data) {
+		StringBuilder builder = new StringBuilder((data.length + 2) / 3 * 4);
+		for (int i = 0; i < data.length; i += 3) {
+			int b = (data[i] & 0xff) << 16;
+			if (i + 1 < data.length) {
+				b |= (data[i + 1] & 0xff) << 8;
+			}
+			if (i + 2 < data.length) {
+				b |= data[i + 2] & 0xff;
+			}
+			builder.append(BASE64[(b >> 18) & 0x3f]);
+			builder.append(BASE64[(b >> 12) & 0x3f]);
+			builder.append(i + 1 < data.length ? BASE64[(b >> 6) & 0x3f] : '=');
+			builder.append(i + 2 < data.length ? BASE64[b & 0x3f] : '=');
+		}
+		return builder.toString();
+	}
+}
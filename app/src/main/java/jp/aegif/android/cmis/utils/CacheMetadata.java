@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * HTTP validators and freshness information of a cached feed, stored in the
+ * {@link FeedCacheIndex}.
+ *
+ * A cached feed is fresh while its Cache-Control max-age has not expired. A
+ * response without any freshness directive stays fresh until it is expired
+ * explicitly (refresh button), which keeps the former session cache
+ * behaviour. Stale entries are revalidated with If-None-Match /
+ * If-Modified-Since and reused when the server answers 304.
+ */
+public class CacheMetadata {
+
+	private static final long NO_MAX_AGE = -1;
+
+	private String etag;
+	private String lastModified;
+	private String cacheControl;
+	private long fetchedAt;
+	private boolean expired;
+
+	public CacheMetadata() {
+		this.fetchedAt = System.currentTimeMillis();
+	}
+
+	public static CacheMetadata fromResponse(TransportResponse response) {
+		CacheMetadata metadata = new CacheMetadata();
+		metadata.update(response);
+		return metadata;
+	}
+
+	/**
+	 * For a copy whose validators were lost : as old as its file, it is
+	 * downloaded again at the next revalidation.
+	 */
+	static CacheMetadata withoutValidators(long fetchedAt) {
+		CacheMetadata metadata = new CacheMetadata();
+		metadata.fetchedAt = fetchedAt;
+		return metadata;
+	}
+
+	public CacheMetadata(CacheMetadata other) {
+		this.etag = other.etag;
+		this.lastModified = other.lastModified;
+		this.cacheControl = other.cacheControl;
+		this.fetchedAt = other.fetchedAt;
+		this.expired = other.expired;
+	}
+
+	public static CacheMetadata readFrom(DataInput in) throws IOException {
+		CacheMetadata metadata = new CacheMetadata();
+		metadata.etag = readString(in);
+		metadata.lastModified = readString(in);
+		metadata.cacheControl = readString(in);
+		metadata.fetchedAt = in.readLong();
+		metadata.expired = in.readBoolean();
+		return metadata;
+	}
+
+	public void writeTo(DataOutput out) throws IOException {
+		writeString(out, etag);
+		writeString(out, lastModified);
+		writeString(out, cacheControl);
+		out.writeLong(fetchedAt);
+		out.writeBoolean(expired);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	/**
+	 * Adds the conditional headers to a request revalidating this entry.
+	 */
+	public void applyValidators(TransportRequest request) {
+		if (etag != null) {
+			request.setHeader("If-None-Match", etag);
+		}
+		if (lastModified != null) {
+			request.setHeader("If-Modified-Since", lastModified);
+		}
+	}
+
+	/**
+	 * Replaces this entry with the validators of a full (200) response.
+	 */
+	public void update(TransportResponse response) {
+		etag = response.getHeader("ETag");
+		lastModified = response.getHeader("Last-Modified");
+		cacheControl = response.getHeader("Cache-Control");
+		fetchedAt = System.currentTimeMillis();
+		expired = false;
+	}
+
+	/**
+	 * Merges a 304 response into this entry : the server may send updated
+	 * validators and freshness, and the fetch time restarts.
+	 */
+	public void revalidated(TransportResponse response) {
+		String value = response.getHeader("ETag");
+		if (value != null) {
+			etag = value;
+		}
+		value = response.getHeader("Last-Modified");
+		if (value != null) {
+			lastModified = value;
+		}
+		value = response.getHeader("Cache-Control");
+		if (value != null) {
+			cacheControl = value;
+		}
+		fetchedAt = System.currentTimeMillis();
+		expired = false;
+	}
+
+	public boolean isFresh() {
+		if (expired || hasDirective("no-cache")) {
+			return false;
+		}
+		long maxAge = getMaxAge();
+		if (maxAge == NO_MAX_AGE) {
+			return true;
+		}
+		return System.currentTimeMillis() - fetchedAt < maxAge * 1000;
+	}
+
+	/**
+	 * True when a stale copy may be shown while it is revalidated : not
+	 * expired by the user, and the server did not ask for a revalidation
+	 * before any use (no-cache, must-revalidate).
+	 */
+	public boolean isUsableWhileStale() {
+		return !expired && !hasDirective("no-cache") && !hasDirective("must-revalidate");
+	}
+
+	public boolean isStorable() {
+		return !hasDirective("no-store");
+	}
+
+	public boolean hasValidators() {
+		return etag != null || lastModified != null;
+	}
+
+	public void expire() {
+		expired = true;
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	public long getFetchedAt() {
+		return fetchedAt;
+	}
+
+	private long getMaxAge() {
+		if (cacheControl == null) {
+			return NO_MAX_AGE;
+		}
+		for (String directive : cacheControl.split(",")) {
+			directive = directive.trim().toLowerCase();
+			if (directive.startsWith("max-age=")) {
+				try {
+					return Long.parseLong(directive.substring("max-age=".length()).replace("\"", ""));
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+		return NO_MAX_AGE;
+	}
+
+	private boolean hasDirective(String name) {
+		if (cacheControl == null) {
+			return false;
+		}
+		for (String directive : cacheControl.split(",")) {
+			if (name.equalsIgnoreCase(directive.trim())) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
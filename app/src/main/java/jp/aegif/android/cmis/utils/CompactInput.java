@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Reads what {@link CompactOutput} wrote. Malformed data raises an
+ * IllegalArgumentException.
+ */
+public class CompactInput {
+
+	private final byte[] data;
+	private final String[] recent = new String[CompactOutput.RECENT];
+	private int position = 0;
+	private int next = 0;
+
+	public CompactInput(byte[] data) {
+		if (data == null) {
+			throw new IllegalArgumentException("No data");
+		}
+		this.data = data;
+	}
+
+	public int readInt() {
+		return (int) readLong();
+	}
+
+	public long readLong() {
+		long value = 0;
+		int shift = 0;
+		while (true) {
+			if (position >= data.length || shift > 63) {
+				throw new IllegalArgumentException("Truncated number at " + position);
+			}
+			int b = data[position++];
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+			shift += 7;
+		}
+	}
+
+	public String readString() {
+		int slot = readInt();
+		if (slot == 0) {
+			return null;
+		}
+		int prefix = readInt();
+		int length = readInt();
+		if (slot > CompactOutput.RECENT || length < 0 || length > data.length - position) {
+			throw new IllegalArgumentException("Malformed string at " + position);
+		}
+		String shared = recent[slot - 1];
+		if (prefix < 0 || prefix > (shared != null ? shared.length() : 0)) {
+			throw new IllegalArgumentException("Malformed string at " + position);
+		}
+		String suffix = fromUtf8(data, position, length);
+		position += length;
+		String value = prefix > 0 ? shared.substring(0, prefix).concat(suffix) : suffix;
+		recent[next] = value;
+		next = (next + 1) % CompactOutput.RECENT;
+		return value;
+	}
+
+	private static String fromUtf8(byte[] data, int offset, int length) {
+		try {
+			return new String(data, offset, length, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
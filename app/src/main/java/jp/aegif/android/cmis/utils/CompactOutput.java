@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Compact binary form of the model passed between activities : variable
+ * length numbers and UTF-8 strings sharing their prefix with one of the last
+ * strings written. The links of an item mostly differ by their last
+ * characters, so do the items of a navigation stack. Read back with
+ * {@link CompactInput}.
+ */
+public class CompactOutput {
+
+	static final int RECENT = 16;
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+	private final String[] recent = new String[RECENT];
+	private int next = 0;
+
+	public void writeInt(int value) {
+		writeLong(value & 0xFFFFFFFFL);
+	}
+
+	public void writeLong(long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * Null, or the slot of the recent string to share a prefix with, the
+	 * length of that prefix and the UTF-8 bytes of the rest.
+	 */
+	public void writeString(String value) {
+		if (value == null) {
+			writeInt(0);
+			return;
+		}
+		int bestSlot = 0;
+		int bestPrefix = 0;
+		for (int i = 0; i < RECENT; i++) {
+			int prefix = commonPrefix(recent[i], value);
+			if (prefix > bestPrefix) {
+				bestSlot = i;
+				bestPrefix = prefix;
+			}
+		}
+		writeInt(bestSlot + 1);
+		writeInt(bestPrefix);
+		byte[] bytes = toUtf8(value.substring(bestPrefix));
+		writeInt(bytes.length);
+		out.write(bytes, 0, bytes.length);
+		recent[next] = value;
+		next = (next + 1) % RECENT;
+	}
+
+	public byte[] toByteArray() {
+		return out.toByteArray();
+	}
+
+	private static int commonPrefix(String a, String b) {
+		if (a == null) {
+			return 0;
+		}
+		int length = Math.min(a.length(), b.length());
+		int i = 0;
+		while (i < length && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+		// never split a surrogate pair
+		if (i > 0 && i < b.length() && Character.isHighSurrogate(b.charAt(i - 1))) {
+			i--;
+		}
+		return i;
+	}
+
+	private static byte[] toUtf8(String value) {
+		try {
+			return value.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+
+import jp.aegif.android.cmis.repo.CmisItemLazy;
+
+/**
+ * What the content file of an item was downloaded for : the change token,
+ * last modification date, length and stream id of the item at that time.
+ * The file is reused as long as the item still has the same ones.
+ */
+public class ContentMetadata {
+
+	private static final long UNKNOWN = -1;
+
+	private String path;
+	private String changeToken;
+	private long lastModification = UNKNOWN;
+	private long contentLength = UNKNOWN;
+	private String contentStreamId;
+
+	private ContentMetadata() {
+	}
+
+	/**
+	 * The validators of the item as listed, for its content stored in file.
+	 */
+	public static ContentMetadata fromItem(CmisItemLazy item, File file) {
+		ContentMetadata metadata = new ContentMetadata();
+		metadata.path = file.getAbsolutePath();
+		metadata.changeToken = item.getChangeToken();
+		metadata.lastModification = item.getModificationDate() != null ? item.getModificationDate().getTime() : UNKNOWN;
+		metadata.contentLength = item.getContentLength();
+		metadata.contentStreamId = item.getContentStreamId();
+		return metadata;
+	}
+
+	public static ContentMetadata readFrom(DataInput in) throws IOException {
+		ContentMetadata metadata = new ContentMetadata();
+		metadata.path = in.readUTF();
+		metadata.changeToken = readString(in);
+		metadata.lastModification = in.readLong();
+		metadata.contentLength = in.readLong();
+		metadata.contentStreamId = readString(in);
+		return metadata;
+	}
+
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeUTF(path);
+		writeString(out, changeToken);
+		out.writeLong(lastModification);
+		out.writeLong(contentLength);
+		writeString(out, contentStreamId);
+	}
+
+	/**
+	 * True when the file stored with these validators is still the content
+	 * of the item : same file, same length, and the change token and
+	 * modification date the repository sends did not change. Without any of
+	 * them only the length can be compared, as before.
+	 */
+	public boolean matches(ContentMetadata current) {
+		if (!path.equals(current.path) || contentLength != current.contentLength) {
+			return false;
+		}
+		if (current.contentStreamId != null && !current.contentStreamId.equals(contentStreamId)) {
+			return false;
+		}
+		if (current.changeToken != null && !current.changeToken.equals(changeToken)) {
+			return false;
+		}
+		if (current.lastModification != UNKNOWN && current.lastModification != lastModification) {
+			return false;
+		}
+		return true;
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.util.TimeZone;
+
+/**
+ * Parses the xsd:dateTime values of feeds (updated, propertyDateTime) without
+ * going through a SimpleDateFormat : nothing is allocated, except the local
+ * time zone for the rare values without offset. Any number of fraction
+ * digits is accepted.
+ */
+public class DateUtils {
+
+	/** Returned when a value can not be parsed. */
+	public static final long INVALID = Long.MIN_VALUE;
+
+	private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+	private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+
+	/**
+	 * Parses yyyy-MM-dd['T'HH:mm[:ss[.SSS...]]][Z|+hh:mm|-hhmm]. A value
+	 * without offset is in local time.
+	 * 
+	 * @return milliseconds since the epoch, or {@link #INVALID}
+	 */
+	public static long parseIso8601(String value) {
+		if (value == null) {
+			return INVALID;
+		}
+		int length = value.length();
+		int start = 0;
+		while (start < length && value.charAt(start) <= ' ') {
+			start++;
+		}
+		while (length > start && value.charAt(length - 1) <= ' ') {
+			length--;
+		}
+		if (length - start < 10 || value.charAt(start + 4) != '-' || value.charAt(start + 7) != '-') {
+			return INVALID;
+		}
+		int year = digits(value, start, 4);
+		int month = digits(value, start + 5, 2);
+		int day = digits(value, start + 8, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+			return INVALID;
+		}
+		int i = start + 10;
+		long millis = 0;
+		if (i < length && (value.charAt(i) == 'T' || value.charAt(i) == 't' || value.charAt(i) == ' ')) {
+			if (i + 6 > length || value.charAt(i + 3) != ':') {
+				return INVALID;
+			}
+			int hour = digits(value, i + 1, 2);
+			int minute = digits(value, i + 4, 2);
+			if (hour < 0 || hour > 24 || minute < 0 || minute > 59) {
+				return INVALID;
+			}
+			millis = (hour * 60L + minute) * MILLIS_PER_MINUTE;
+			i += 6;
+			if (i < length && value.charAt(i) == ':') {
+				int second = i + 3 <= length ? digits(value, i + 1, 2) : -1;
+				if (second < 0 || second > 60) {
+					return INVALID;
+				}
+				millis += second * 1000L;
+				i += 3;
+				if (i < length && (value.charAt(i) == '.' || value.charAt(i) == ',')) {
+					// milliseconds, further digits are ignored
+					int scale = 100;
+					i++;
+					int fractionStart = i;
+					while (i < length && isDigit(value.charAt(i))) {
+						millis += (value.charAt(i) - '0') * scale;
+						scale /= 10;
+						i++;
+					}
+					if (i == fractionStart) {
+						return INVALID;
+					}
+				}
+			}
+		}
+		long local = toEpochDay(year, month, day) * MILLIS_PER_DAY + millis;
+		if (i == length) {
+			return local - TimeZone.getDefault().getOffset(local);
+		}
+		char c = value.charAt(i);
+		if ((c == 'Z' || c == 'z') && i + 1 == length) {
+			return local;
+		}
+		if (c != '+' && c != '-') {
+			return INVALID;
+		}
+		int offsetHours = i + 3 <= length ? digits(value, i + 1, 2) : -1;
+		int offsetMinutes = 0;
+		i += 3;
+		if (i < length && value.charAt(i) == ':') {
+			i++;
+		}
+		if (i < length) {
+			offsetMinutes = i + 2 == length ? digits(value, i, 2) : -1;
+		}
+		if (offsetHours < 0 || offsetMinutes < 0) {
+			return INVALID;
+		}
+		long offset = (offsetHours * 60L + offsetMinutes) * MILLIS_PER_MINUTE;
+		return c == '+' ? local - offset : local + offset;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Reads count digits at index, returns -1 if any of them is not a digit.
+	 */
+	private static int digits(String value, int index, int count) {
+		int result = 0;
+		for (int i = index; i < index + count; i++) {
+			char c = value.charAt(i);
+			if (!isDigit(c)) {
+				return -1;
+			}
+			result = result * 10 + (c - '0');
+		}
+		return result;
+	}
+
+	/**
+	 * Days since 1970-01-01 of a date of the proleptic Gregorian calendar.
+	 */
+	static long toEpochDay(int year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+}
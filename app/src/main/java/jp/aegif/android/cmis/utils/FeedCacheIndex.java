@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import android.util.Log;
+
+/**
+ * Index of the cached listings, kept in memory and in a small file at the
+ * root of the feed cache : size, last access, fetch time, expiry and HTTP
+ * validators of each file. Lookups only read the index, the files are
+ * opened when they are there.
+ *
+ * The least recently used files are deleted once the cache is over its
+ * quota, a file is deleted once its time to live is over. Accesses are
+ * written with the next change of the index : a crash only loses the order
+ * of the last accesses.
+ */
+public class FeedCacheIndex {
+
+	private static final String TAG = "FeedCacheIndex";
+	private static final String INDEX_FILE = "index";
+	private static final int MAGIC = 0x434d4958; // CMIX
+	/** Layout of the index file, to increment when it changes. */
+	private static final int VERSION = 1;
+
+	/**
+	 * A cached file, by its path relative to the root of the cache.
+	 */
+	private static class Entry {
+		private final String key;
+		private long size;
+		private long lastAccess;
+		private long expiresAt;
+		private CacheMetadata metadata;
+
+		private Entry(String key) {
+			this.key = key;
+		}
+	}
+
+	private final File root;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long size = 0;
+	private boolean loaded = false;
+
+	public FeedCacheIndex(File root) {
+		this.root = root;
+	}
+
+	public File getRoot() {
+		return root;
+	}
+
+	public synchronized boolean contains(String key) {
+		return getEntry(key) != null;
+	}
+
+	/**
+	 * Notes an access to the file : it moves to the end of the eviction
+	 * order.
+	 */
+	public synchronized void touch(String key) {
+		Entry entry = getEntry(key);
+		if (entry != null) {
+			entry.lastAccess = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Returns a copy of the validators of the file, null when it is not
+	 * cached.
+	 */
+	public synchronized CacheMetadata getMetadata(String key) {
+		Entry entry = getEntry(key);
+		return entry != null ? new CacheMetadata(entry.metadata) : null;
+	}
+
+	/**
+	 * Records a file just written to the cache.
+	 * 
+	 * @param ttl
+	 *            milliseconds after which the file is deleted, fresh or not
+	 */
+	public synchronized void put(String key, CacheMetadata metadata, long ttl) {
+		load();
+		removeEntry(entries.get(key));
+		Entry entry = new Entry(key);
+		entry.size = new File(root, key).length();
+		entry.lastAccess = System.currentTimeMillis();
+		entry.expiresAt = entry.lastAccess + ttl;
+		entry.metadata = new CacheMetadata(metadata);
+		entries.put(key, entry);
+		size += entry.size;
+		save();
+	}
+
+	/**
+	 * Replaces the validators of a cached file (revalidated, expired).
+	 */
+	public synchronized boolean updateMetadata(String key, CacheMetadata metadata) {
+		Entry entry = getEntry(key);
+		if (entry == null) {
+			return false;
+		}
+		entry.metadata = new CacheMetadata(metadata);
+		save();
+		return true;
+	}
+
+	/**
+	 * Deletes the file and forgets it.
+	 */
+	public synchronized boolean remove(String key) {
+		load();
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return false;
+		}
+		delete(entry);
+		save();
+		return true;
+	}
+
+	/**
+	 * Deletes the files whose key starts with the prefix (the folder of an
+	 * account and repository).
+	 */
+	public synchronized void removeAll(String prefix) {
+		load();
+		for (Entry entry : new ArrayList<Entry>(entries.values())) {
+			if (entry.key.startsWith(prefix)) {
+				delete(entry);
+			}
+		}
+		save();
+	}
+
+	/**
+	 * Forgets every file, after the folder has been deleted.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+		loaded = true;
+		new File(root, INDEX_FILE).delete();
+	}
+
+	/**
+	 * Deletes the expired files, then the least recently used ones until
+	 * the cache fits in maxSize bytes.
+	 */
+	public synchronized void trimToSize(long maxSize) {
+		load();
+		int before = entries.size();
+		long now = System.currentTimeMillis();
+		List<Entry> byAccess = new ArrayList<Entry>(entries.values());
+		for (Entry entry : byAccess) {
+			if (entry.expiresAt <= now) {
+				delete(entry);
+			}
+		}
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (size > maxSize && iterator.hasNext()) {
+			Entry entry = iterator.next();
+			iterator.remove();
+			size -= entry.size;
+			new File(root, entry.key).delete();
+		}
+		if (entries.size() != before) {
+			save();
+		}
+	}
+
+	public synchronized long getSize() {
+		load();
+		return size;
+	}
+
+	public synchronized int getCount() {
+		load();
+		return entries.size();
+	}
+
+	/**
+	 * Write the accesses noted since the last change.
+	 */
+	public synchronized void flush() {
+		if (loaded) {
+			save();
+		}
+	}
+
+	private Entry getEntry(String key) {
+		load();
+		Entry entry = entries.get(key);
+		if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+			delete(entry);
+			save();
+			return null;
+		}
+		return entry;
+	}
+
+	private void delete(Entry entry) {
+		removeEntry(entry);
+		new File(root, entry.key).delete();
+	}
+
+	private void removeEntry(Entry entry) {
+		if (entry != null) {
+			entries.remove(entry.key);
+			size -= entry.size;
+		}
+	}
+
+	/**
+	 * Reads the index on first use. Without a readable index it is built
+	 * again from the files of the cache : their validators are lost, they
+	 * are shown while stale and downloaded again.
+	 */
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		File indexFile = new File(root, INDEX_FILE);
+		if (!indexFile.exists()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Unsupported cache index");
+			}
+			int count = in.readInt();
+			List<Entry> read = new ArrayList<Entry>(count);
+			for (int i = 0; i < count; i++) {
+				Entry entry = new Entry(in.readUTF());
+				entry.size = in.readLong();
+				entry.lastAccess = in.readLong();
+				entry.expiresAt = in.readLong();
+				entry.metadata = CacheMetadata.readFrom(in);
+				read.add(entry);
+			}
+			// least recently used first
+			for (Entry entry : read) {
+				entries.put(entry.key, entry);
+				size += entry.size;
+			}
+			return;
+		} catch (IOException e) {
+			Log.w(TAG, "Unreadable cache index : " + e);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		rebuild();
+	}
+
+	/**
+	 * Indexes the files found under the root, oldest first.
+	 */
+	private void rebuild() {
+		entries.clear();
+		size = 0;
+		List<File> files = new ArrayList<File>();
+		listFiles(root, files);
+		Collections.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long lhsTime = lhs.lastModified();
+				long rhsTime = rhs.lastModified();
+				return lhsTime < rhsTime ? -1 : (lhsTime == rhsTime ? 0 : 1);
+			}
+		});
+		String rootPath = root.getPath() + File.separator;
+		for (File file : files) {
+			Entry entry = new Entry(file.getPath().substring(rootPath.length()).replace(File.separatorChar, '/'));
+			entry.size = file.length();
+			entry.lastAccess = file.lastModified();
+			entry.expiresAt = entry.lastAccess + StorageUtils.FEED_CACHE_TTL;
+			entry.metadata = CacheMetadata.withoutValidators(entry.lastAccess);
+			entries.put(entry.key, entry);
+			size += entry.size;
+		}
+		save();
+	}
+
+	private void listFiles(File folder, List<File> files) {
+		File[] children = folder.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (File child : children) {
+			if (child.isDirectory()) {
+				listFiles(child, files);
+			} else if (child.getName().endsWith(".tmp")) {
+				// left by an interrupted write
+				child.delete();
+			} else if (!(folder.equals(root) && child.getName().equals(INDEX_FILE))) {
+				files.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Writes the index next to the previous one, then renames it.
+	 */
+	private void save() {
+		root.mkdirs();
+		File tempFile = new File(root, INDEX_FILE + ".tmp");
+		DataOutputStream out = null;
+		try {
+			FileOutputStream file = new FileOutputStream(tempFile);
+			out = new DataOutputStream(new BufferedOutputStream(file));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (Entry entry : entries.values()) {
+				out.writeUTF(entry.key);
+				out.writeLong(entry.size);
+				out.writeLong(entry.lastAccess);
+				out.writeLong(entry.expiresAt);
+				entry.metadata.writeTo(out);
+			}
+			// on disk before the rename, or a crash may leave an empty index
+			out.flush();
+			file.getFD().sync();
+			out.close();
+			out = null;
+			if (!tempFile.renameTo(new File(root, INDEX_FILE))) {
+				throw new IOException("Can not rename " + tempFile);
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Cache index not saved : " + e);
+			tempFile.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+}
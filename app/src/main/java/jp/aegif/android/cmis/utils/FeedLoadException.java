@@ -27,6 +27,10 @@ public class FeedLoadException extends RuntimeException {
 		super(e);
 	}
 
+	public FeedLoadException(String message) {
+		super(message);
+	}
+
 	/**
 	 * 
 	 */
@@ -18,28 +18,40 @@ package jp.aegif.android.cmis.utils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.http.client.ClientProtocolException;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.Element;
 import org.dom4j.Namespace;
 import org.dom4j.QName;
 import org.dom4j.io.SAXReader;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 import android.text.TextUtils;
+import android.util.Xml;
 import jp.aegif.android.cmis.model.Server;
+import jp.aegif.android.cmis.repo.CmisItemCollection;
+import jp.aegif.android.cmis.repo.CmisItemCollection.EntryListener;
 import jp.aegif.android.cmis.repo.CmisProperty;
+import jp.aegif.android.cmis.repo.CmisPropertyDescriptors;
+import jp.aegif.android.cmis.repo.CmisServiceDocument;
+import jp.aegif.android.cmis.utils.NetworkStats.Operation;
 
 public class FeedUtils {
 
-	private static final Namespace CMISRA = Namespace.get("http://docs.oasis-open.org/ns/cmis/restatom/200908/");
-	private static final Namespace CMIS = Namespace.get("http://docs.oasis-open.org/ns/cmis/core/200908/");
+	public static final String ATOM_NS = "http://www.w3.org/2005/Atom";
+	public static final String CMISRA_NS = "http://docs.oasis-open.org/ns/cmis/restatom/200908/";
+	public static final String CMIS_NS = "http://docs.oasis-open.org/ns/cmis/core/200908/";
+
+	private static final Namespace CMISRA = Namespace.get(CMISRA_NS);
+	private static final Namespace CMIS = Namespace.get(CMIS_NS);
 
 	private static final QName CMISRA_REPO_INFO = QName.get("repositoryInfo", CMISRA);
 	private static final QName CMIS_REPO_NAME = QName.get("repositoryName", CMIS);
@@ -49,26 +61,225 @@ public class FeedUtils {
 	private static final QName CMISRA_URI_TEMPLATE = QName.get("uritemplate", CMISRA);
 	private static final QName CMISRA_TYPE = QName.get("type", CMISRA);
 	private static final QName CMISRA_TEMPLATE = QName.get("template", CMISRA);
-	private static final QName CMISRA_OBJECT = QName.get("object", CMISRA);
 	private static final QName CMISRA_NUMITEMS = QName.get("numItems", CMISRA);
-	private static final QName CMIS_PROPERTIES = QName.get("properties", CMIS);
-	private static final QName CMIS_VALUE = QName.get("value", CMIS);
+
+	private static final Map<String, String> CONSTANTS = new HashMap<String, String>();
+
+	static {
+		String[] constants = {
+				CmisProperty.TYPE_BOOLEAN, CmisProperty.TYPE_ID, CmisProperty.TYPE_INTEGER, CmisProperty.TYPE_DATETIME,
+				CmisProperty.TYPE_DECIMAL, CmisProperty.TYPE_HTML, CmisProperty.TYPE_STRING, CmisProperty.TYPE_URI,
+				CmisProperty.OBJECT_ID, CmisProperty.OBJECT_TYPEID, CmisProperty.OBJECT_BASETYPEID,
+				CmisProperty.OBJECT_NAME, CmisProperty.OBJECT_CREATIONDATE, CmisProperty.OBJECT_LASTMODIFIEDBY,
+				CmisProperty.OBJECT_CREATEDBY, CmisProperty.OBJECT_LASTMODIFICATION, CmisProperty.OBJECT_CHANGETOKEN,
+				CmisProperty.DOC_ISLATESTEVERSION, CmisProperty.DOC_ISLATESTMAJORVERSION, CmisProperty.DOC_VERSIONSERIESID,
+				CmisProperty.DOC_VERSIONLABEL, CmisProperty.DOC_ISMAJORVERSION, CmisProperty.DOC_ISVERSIONCHECKEDOUT,
+				CmisProperty.DOC_ISVERSIONCHECKEDOUTBY, CmisProperty.DOC_ISVERSIONCHECKEDOUTID, CmisProperty.DOC_ISIMMUTABLE,
+				CmisProperty.DOC_CHECINCOMMENT, CmisProperty.CONTENT_STREAMID, CmisProperty.CONTENT_STREAMLENGTH,
+				CmisProperty.CONTENT_STREAMMIMETYPE, CmisProperty.CONTENT_STREAMFILENAME, CmisProperty.FOLDER_PARENTID,
+				CmisProperty.FOLDER_PATH, CmisProperty.FOLDER_ALLOWCHILDREN };
+		for (String constant : constants) {
+			CONSTANTS.put(constant, constant);
+		}
+	}
+
+	public static Document readAtomFeed(final Server server, final String feed) throws FeedLoadException {
+		return readAtomFeed(server, feed, Operation.LISTING);
+	}
+
+	public static Document readAtomFeed(final Server server, final String feed, final Operation operation) throws FeedLoadException {
+		TransportResponse response = null;
+		InputStream is = null;
+		try {
+			response = HttpUtils.getWebRessource(server, feed, operation);
+			is = response.getContent();
+			return parse(is, response.getRecord());
+		} catch (Exception e) {
+			throw new FeedLoadException(e);
+		} finally {
+			if (is != null) {
+				try {
+					is.close();
+				} catch (IOException e) {
+				}
+			} else if (response != null) {
+				response.close();
+			}
+		}
+	}
+
+	/**
+	 * Loads a feed straight into a {@link CmisItemCollection}, revalidating a
+	 * cached copy when the metadata holds validators. Returns null when the
+	 * server answers 304 Not Modified, the cached feed is still valid then. The
+	 * metadata is updated from the response in both cases, any other status
+	 * than 200 and 304 raises a FeedLoadException and leaves it as it was.
+	 * 
+	 * @param descriptors
+	 *            property descriptors of the repository
+	 * @param listener
+	 *            receives the entries while they are parsed, may be null
+	 */
+	public static CmisItemCollection readCmisCollection(final Server server, final String feed, final CacheMetadata metadata, final CmisPropertyDescriptors descriptors, final EntryListener listener) throws FeedLoadException {
+		TransportRequest request = new TransportRequest(feed, Operation.LISTING);
+		metadata.applyValidators(request);
+		TransportResponse response = null;
+		InputStream is = null;
+		try {
+			response = HttpUtils.getTransport(server).execute(request);
+			if (response.getStatus() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				metadata.revalidated(response);
+				return null;
+			}
+			checkStatus(response, feed);
+			metadata.update(response);
+			is = response.getContent();
+			return parseCollection(is, response.getRecord(), descriptors, listener);
+		} catch (FeedLoadException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new FeedLoadException(e);
+		} finally {
+			if (is != null) {
+				try {
+					is.close();
+				} catch (IOException e) {
+				}
+			} else if (response != null) {
+				response.close();
+			}
+		}
+	}
+
+	/**
+	 * Loads the service document of the server, revalidating the cached copy
+	 * when the metadata holds validators. Returns null when the server
+	 * answers 304 Not Modified. The metadata is updated from the response in
+	 * both cases, other errors leave it as it was.
+	 */
+	public static CmisServiceDocument readServiceDocument(final Server server, final CacheMetadata metadata) throws FeedLoadException {
+		TransportRequest request = new TransportRequest(server.getUrl(), Operation.SERVICE_DOCUMENT);
+		metadata.applyValidators(request);
+		TransportResponse response = null;
+		InputStream is = null;
+		try {
+			response = HttpUtils.getTransport(server).execute(request);
+			if (response.getStatus() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				metadata.revalidated(response);
+				return null;
+			}
+			checkStatus(response, server.getUrl());
+			metadata.update(response);
+			is = response.getContent();
+			return CmisServiceDocument.createFromFeed(parse(is, response.getRecord()), metadata);
+		} catch (FeedLoadException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new FeedLoadException(e);
+		} finally {
+			if (is != null) {
+				try {
+					is.close();
+				} catch (IOException e) {
+				}
+			} else if (response != null) {
+				response.close();
+			}
+		}
+	}
+
+	/**
+	 * Only a 200 response carries the document : an error page must neither
+	 * replace the validators of the cached copy nor reach the parser.
+	 */
+	private static void checkStatus(TransportResponse response, String url) {
+		if (response.getStatus() != HttpURLConnection.HTTP_OK) {
+			throw new FeedLoadException("HTTP " + response.getStatus() + " for " + url);
+		}
+	}
+
+	static CmisItemCollection parseCollection(InputStream is, RequestRecord record, CmisPropertyDescriptors descriptors, EntryListener listener) throws XmlPullParserException, IOException {
+		long start = System.nanoTime();
+		CmisItemCollection collection = CmisItemCollection.createFromParser(newPullParser(is), descriptors, listener);
+		if (record != null) {
+			record.setParserNanos(System.nanoTime() - start);
+		}
+		return collection;
+	}
+
+	/**
+	 * Returns a namespace aware parser positioned on the root element.
+	 */
+	public static XmlPullParser newPullParser(InputStream is) throws XmlPullParserException, IOException {
+		XmlPullParser parser = Xml.newPullParser();
+		parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+		parser.setInput(is, null);
+		parser.nextTag();
+		return parser;
+	}
+
+	/**
+	 * Moves the parser from a start tag to its end tag without looking at what
+	 * is in between.
+	 */
+	public static void skip(XmlPullParser parser) throws XmlPullParserException, IOException {
+		int depth = 1;
+		while (depth > 0) {
+			switch (parser.next()) {
+			case XmlPullParser.START_TAG:
+				depth++;
+				break;
+			case XmlPullParser.END_TAG:
+				depth--;
+				break;
+			case XmlPullParser.END_DOCUMENT:
+				throw new XmlPullParserException("Unexpected end of document", parser, null);
+			}
+		}
+	}
+
+	/**
+	 * Parses a feed already at hand (cached copy, capture).
+	 */
+	public static Document readAtomFeed(InputStream is) throws DocumentException {
+		return parse(is, null);
+	}
+
+	private static Document parse(InputStream is, RequestRecord record) throws DocumentException {
+		long start = System.nanoTime();
+		Document document = new SAXReader().read(is);
+		if (record != null) {
+			record.setParserNanos(System.nanoTime() - start);
+		}
+		return document;
+	}
 
 	public static Document readAtomFeed(final String feed, final String user, final String password) throws FeedLoadException {
 		Document document = null;
+		TransportResponse response = null;
+		InputStream is = null;
 		try {
-			InputStream is = HttpUtils.getWebRessourceAsStream(feed, user, password);
+			response = HttpUtils.getWebRessource(feed, user, password);
+			is = response.getContent();
 			SAXReader reader = new SAXReader(); // dom4j SAXReader
 			document = reader.read(is); // dom4j Document
 
-		} catch (ClientProtocolException e) {
-			throw new FeedLoadException(e);
 		} catch (IOException e) {
 			throw new FeedLoadException(e);
 		} catch (DocumentException e) {
 			throw new FeedLoadException(e);
 		} catch (Exception e) {
 			throw new FeedLoadException(e);
+		} finally {
+			// hands the connection back to the pool
+			if (is != null) {
+				try {
+					is.close();
+				} catch (IOException e) {
+				}
+			} else if (response != null) {
+				response.close();
+			}
 		}
 		return document;
 	}
@@ -205,31 +416,22 @@ public class FeedUtils {
 		return null;
 	}
 
-	public static Map<String, CmisProperty> getCmisPropertiesForEntry(Element feedEntry) {
-		Map<String, CmisProperty> props = new HashMap<String, CmisProperty>();
+	/**
+	 * Initial capacity of a HashMap holding count entries without rehashing.
+	 */
+	public static int mapCapacity(int count) {
+		return count * 4 / 3 + 1;
+	}
 
-		Element objectElement = feedEntry.element(CMISRA_OBJECT);
-		if (objectElement != null) {
-			Element properitesElement = objectElement.element(CMIS_PROPERTIES);
-			if (properitesElement != null) {
-				List<Element> properties = properitesElement.elements();
-
-				for (Element property : properties) {
-					final String id = property.attributeValue("propertyDefinitionId");
-
-					props.put(id, new CmisProperty(
-							property.getName(), 
-							id, 
-							property.attributeValue("localName"), 
-							property.attributeValue("displayName"),
-							property.elementText(CMIS_VALUE))
-					);
-				}
-			}
-		}
-		return props;
+	/**
+	 * Returns the constant instance of the well known property ids and
+	 * property element names, so that items only retain shared strings.
+	 */
+	public static String canonical(String value) {
+		String constant = value != null ? CONSTANTS.get(value) : null;
+		return constant != null ? constant : value;
 	}
-	
+
 	public static Map<String, ArrayList<CmisProperty>> getCmisRepositoryProperties(Element feedEntry) {
 		Map<String, ArrayList<CmisProperty>> infoServerList = new HashMap<String, ArrayList<CmisProperty>>();
 		ArrayList<CmisProperty> propsList = new ArrayList<CmisProperty>();
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+
+/**
+ * {@link Transport} on the Apache client bundled with Android, the fallback
+ * when {@link OkHttpTransport} can not be used. HTTP/1.1 only : one thread
+ * safe pool of keep-alive connections per server, so only the first requests
+ * pay the TCP/TLS handshake.
+ *
+ * Session cookies are kept in the cookie store of the client.
+ */
+public class HttpTransport extends AbstractTransport {
+
+	private static final int MAX_TOTAL_CONNECTIONS = 8;
+	private static final int CONNECTION_TIMEOUT = 20 * 1000;
+	private static final int SOCKET_TIMEOUT = 60 * 1000;
+	private static final int SOCKET_BUFFER_SIZE = 8192;
+
+	private final DefaultHttpClient client;
+
+	HttpTransport(String url, String user, String password) {
+		super(url, user, password);
+
+		HttpParams params = new BasicHttpParams();
+		HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+		HttpProtocolParams.setContentCharset(params, "UTF-8");
+		HttpConnectionParams.setConnectionTimeout(params, CONNECTION_TIMEOUT);
+		HttpConnectionParams.setSoTimeout(params, SOCKET_TIMEOUT);
+		HttpConnectionParams.setSocketBufferSize(params, SOCKET_BUFFER_SIZE);
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		HttpConnectionParams.setTcpNoDelay(params, true);
+		ConnManagerParams.setMaxTotalConnections(params, MAX_TOTAL_CONNECTIONS);
+		ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(RequestScheduler.MAX_REQUESTS_PER_HOST));
+
+		SchemeRegistry registry = new SchemeRegistry();
+		registry.register(new Scheme("http", TimingSocketFactory.wrap(PlainSocketFactory.getSocketFactory()), 80));
+		registry.register(new Scheme("https", TimingSocketFactory.wrap(SSLSocketFactory.getSocketFactory()), 443));
+
+		client = new DefaultHttpClient(new ThreadSafeClientConnManager(params, registry), params);
+
+		// still answers challenges for schemes other than Basic
+		if (user != null && user.length() > 0) {
+			client.getCredentialsProvider().setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(user, password));
+		}
+	}
+
+	@Override
+	TransportResponse send(TransportRequest request) throws IOException {
+		final HttpRequestBase method;
+		if (request.getBody() != null) {
+			HttpPost post = new HttpPost(request.getUrl());
+			ByteArrayEntity entity = new ByteArrayEntity(request.getBody());
+			entity.setContentType(request.getContentType());
+			post.setEntity(entity);
+			method = post;
+		} else {
+			method = new HttpGet(request.getUrl());
+		}
+		for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			method.setHeader(header.getKey(), header.getValue());
+		}
+		request.setCanceller(new Runnable() {
+			@Override
+			public void run() {
+				method.abort();
+			}
+		});
+		return new ApacheResponse(client.execute(method));
+	}
+
+	public void shutdown() {
+		client.getConnectionManager().shutdown();
+	}
+
+	private static class ApacheResponse extends TransportResponse {
+
+		private final HttpResponse response;
+
+		ApacheResponse(HttpResponse response) {
+			this.response = response;
+		}
+
+		@Override
+		public int getStatus() {
+			return response.getStatusLine().getStatusCode();
+		}
+
+		@Override
+		public String getHeader(String name) {
+			Header header = response.getFirstHeader(name);
+			return header != null ? header.getValue() : null;
+		}
+
+		@Override
+		public String getProtocol() {
+			return response.getStatusLine().getProtocolVersion().toString().toLowerCase();
+		}
+
+		@Override
+		protected long getWireContentLength() {
+			HttpEntity entity = response.getEntity();
+			return entity != null ? entity.getContentLength() : 0;
+		}
+
+		@Override
+		protected InputStream getWireContent() throws IOException {
+			HttpEntity entity = response.getEntity();
+			return entity != null ? entity.getContent() : null;
+		}
+
+		@Override
+		protected void discard() {
+			HttpEntity entity = response.getEntity();
+			if (entity != null) {
+				try {
+					// reads what is left so the connection can be reused
+					entity.consumeContent();
+				} catch (IOException e) {
+					// connection is discarded by the pool
+				}
+			}
+		}
+	}
+}
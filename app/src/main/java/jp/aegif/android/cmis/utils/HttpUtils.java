@@ -16,46 +16,92 @@
 package jp.aegif.android.cmis.utils;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 
-import org.apache.http.HttpResponse;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.Credentials;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.DefaultHttpClient;
+import android.util.Log;
+import jp.aegif.android.cmis.model.Server;
+import jp.aegif.android.cmis.utils.NetworkStats.Operation;
 
 /**
- * Wrapper against commons http client which is included in android.
- * Unfortunately it is an older version with an old syntax. Better encapsulate
- * all everything here to support easier migration.
+ * Entry point to the HTTP layer : one shared {@link Transport} per server.
+ * Callers only see {@link TransportRequest} and {@link TransportResponse}, the
+ * client library behind is chosen here.
  * 
  * @author Florian Maul
  * 
  */
 public class HttpUtils {
 
-	public static HttpResponse getWebRessource(String url, String user, String password) throws IOException, ClientProtocolException {
-		HttpGet get = new HttpGet(url);
-		HttpClient client = createClient(user, password);
-		return client.execute(get);
+	private static final String TAG = "HttpUtils";
+
+	private static final Map<String, Transport> transports = new HashMap<String, Transport>();
+	private static boolean modernTransportEnabled = true;
+
+	public static TransportResponse getWebRessource(String url, String user, String password) throws IOException {
+		return getTransport(url, user, password).execute(new TransportRequest(url));
+	}
+
+	public static TransportResponse getWebRessource(Server server, String url) throws IOException {
+		return getWebRessource(server, url, Operation.LISTING);
 	}
 
-	public static InputStream getWebRessourceAsStream(String url, String user, String password) throws IOException, ClientProtocolException {
-		return getWebRessource(url, user, password).getEntity().getContent();
+	public static TransportResponse getWebRessource(Server server, String url, Operation operation) throws IOException {
+		return getTransport(server).execute(new TransportRequest(url, operation));
 	}
 
-	private static HttpClient createClient(String user, String password) {
-		DefaultHttpClient client = new DefaultHttpClient();
+	public static Transport getTransport(Server server) {
+		return getTransport(server.getUrl(), server.getUsername(), server.getPassword());
+	}
+
+	/**
+	 * Returns the shared transport for the server behind the given url. A
+	 * server is identified by its host and credentials, so a server that is
+	 * being edited with other credentials gets its own pool.
+	 */
+	public static synchronized Transport getTransport(String url, String user, String password) {
+		String key = getHost(url) + "|" + user + "|" + password;
+		Transport transport = transports.get(key);
+		if (transport == null) {
+			transport = createTransport(url, user, password);
+			transports.put(key, transport);
+		}
+		return transport;
+	}
 
-		if (user != null && user.length() > 0) {
-			Credentials defaultcreds = new UsernamePasswordCredentials(user, password);
-			client.getCredentialsProvider().setCredentials(AuthScope.ANY, defaultcreds);
+	private static Transport createTransport(String url, String user, String password) {
+		if (modernTransportEnabled && OkHttpTransport.isSupported()) {
+			try {
+				return new OkHttpTransport(url, user, password);
+			} catch (LinkageError e) {
+				Log.w(TAG, "OkHttp unavailable, using the bundled client : " + e);
+			}
 		}
+		return new HttpTransport(url, user, password);
+	}
+
+	/**
+	 * Chooses between {@link OkHttpTransport} (default) and the bundled
+	 * {@link HttpTransport}. Existing transports are dropped when the choice
+	 * changes.
+	 */
+	public static synchronized void setModernTransportEnabled(boolean enabled) {
+		if (modernTransportEnabled != enabled) {
+			modernTransportEnabled = enabled;
+			shutdown();
+		}
+	}
+
+	public static synchronized void shutdown() {
+		for (Transport transport : transports.values()) {
+			transport.shutdown();
+		}
+		transports.clear();
+	}
 
-		return client;
+	private static String getHost(String url) {
+		String[] parts = url.split("/");
+		return parts.length > 2 ? parts[2] : url;
 	}
 
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+import jp.aegif.android.cmis.utils.NetworkStats.Operation;
+
+/**
+ * Decides when the app should send lean requests : on a metered network, or
+ * on a slow one. A link is slow when its type says so (2G) until transfers
+ * have been measured, then when the measured throughput is low.
+ *
+ * In lean mode listings ask for a minimal set of properties and fewer items,
+ * and background downloads are held back until the link gets better.
+ */
+public class NetworkMonitor {
+
+	private static final String TAG = "NetworkMonitor";
+
+	/** Below this throughput (bytes/s) the link is slow... */
+	static final long SLOW_BYTES_PER_SECOND = 32 * 1024;
+	/** ...and it has recovered above this one. */
+	static final long FAST_BYTES_PER_SECOND = 96 * 1024;
+	/** Smaller transfers are dominated by latency and say nothing about bandwidth. */
+	private static final long MIN_SAMPLE_BYTES = 16 * 1024;
+
+	private static final List<Runnable> deferred = new ArrayList<Runnable>();
+	private static Handler handler;
+	private static ConnectivityManager connectivity;
+
+	private static boolean automatic = true;
+	private static boolean metered;
+	private static boolean slowType;
+	/** Smoothed throughput of the current network, 0 when not measured yet. */
+	private static long bytesPerSecond;
+	private static boolean slowMeasured;
+	private static boolean lean;
+
+	/**
+	 * Starts following connectivity changes, once per process.
+	 */
+	public static synchronized void init(Context context) {
+		if (handler != null) {
+			return;
+		}
+		Context application = context.getApplicationContext();
+		handler = new Handler(Looper.getMainLooper());
+		connectivity = (ConnectivityManager) application.getSystemService(Context.CONNECTIVITY_SERVICE);
+		application.registerReceiver(new BroadcastReceiver() {
+			@Override
+			public void onReceive(Context context, Intent intent) {
+				onConnectivityChanged();
+			}
+		}, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+		onConnectivityChanged();
+	}
+
+	/**
+	 * Lean mode is only ever entered automatically when enabled in the
+	 * preferences.
+	 */
+	public static void setAutomatic(boolean enabled) {
+		synchronized (NetworkMonitor.class) {
+			automatic = enabled;
+		}
+		update();
+	}
+
+	public static synchronized boolean isLean() {
+		return lean;
+	}
+
+	public static synchronized long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * Runs the task now, or on the main thread once lean mode is over.
+	 * 
+	 * @return false if the task has been deferred
+	 */
+	public static boolean runOrDefer(Runnable task) {
+		synchronized (NetworkMonitor.class) {
+			if (lean) {
+				deferred.add(task);
+				Log.d(TAG, "Deferred " + deferred.size() + " task(s)");
+				return false;
+			}
+		}
+		task.run();
+		return true;
+	}
+
+	/**
+	 * Takes back a task given to {@link #runOrDefer}, to run it at once
+	 * whatever the network.
+	 * 
+	 * @return false if the task is not waiting any more : it has already run
+	 *         or is about to
+	 */
+	public static synchronized boolean cancelDeferred(Runnable task) {
+		return deferred.remove(task);
+	}
+
+	private static void onConnectivityChanged() {
+		NetworkInfo info = connectivity != null ? connectivity.getActiveNetworkInfo() : null;
+		synchronized (NetworkMonitor.class) {
+			// a new network, its throughput has to be measured again
+			bytesPerSecond = 0;
+			slowMeasured = false;
+			if (info == null || !info.isConnected()) {
+				metered = false;
+				slowType = false;
+			} else {
+				// before API 16 : by network type, unknown types are metered
+				metered = ConnectivityManagerCompat.isActiveNetworkMetered(connectivity);
+				slowType = isSlowType(info);
+			}
+		}
+		update();
+	}
+
+
+	private static boolean isSlowType(NetworkInfo info) {
+		if (info.getType() != ConnectivityManager.TYPE_MOBILE) {
+			return false;
+		}
+		switch (info.getSubtype()) {
+		case TelephonyManager.NETWORK_TYPE_GPRS:
+		case TelephonyManager.NETWORK_TYPE_EDGE:
+		case TelephonyManager.NETWORK_TYPE_CDMA:
+		case TelephonyManager.NETWORK_TYPE_1xRTT:
+		case TelephonyManager.NETWORK_TYPE_IDEN:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Feeds the throughput estimate with a finished request, called by
+	 * {@link NetworkStats}.
+	 */
+	static void onRecord(RequestRecord record) {
+		if (record.isCacheHit() || record.getOperation() == Operation.SERVICE_DOCUMENT) {
+			return;
+		}
+		long millis = record.getTransferMillis();
+		if (record.getBytes() < MIN_SAMPLE_BYTES || millis <= 0) {
+			return;
+		}
+		long sample = record.getBytes() * 1000 / millis;
+		synchronized (NetworkMonitor.class) {
+			bytesPerSecond = bytesPerSecond == 0 ? sample : (bytesPerSecond * 3 + sample) / 4;
+			if (bytesPerSecond < SLOW_BYTES_PER_SECOND) {
+				slowMeasured = true;
+			} else if (bytesPerSecond > FAST_BYTES_PER_SECOND) {
+				slowMeasured = false;
+			}
+		}
+		update();
+	}
+
+	private static void update() {
+		List<Runnable> resumed = null;
+		boolean changed;
+		boolean current;
+		synchronized (NetworkMonitor.class) {
+			boolean slow = bytesPerSecond > 0 ? slowMeasured : slowType;
+			current = automatic && (metered || slow);
+			changed = current != lean;
+			lean = current;
+			if (changed && !lean && !deferred.isEmpty()) {
+				resumed = new ArrayList<Runnable>(deferred);
+				deferred.clear();
+			}
+		}
+		if (!changed) {
+			return;
+		}
+		Log.d(TAG, "Lean mode " + (current ? "on" : "off") + " (metered " + metered + ", " + bytesPerSecond + " B/s)");
+		if (resumed != null && handler != null) {
+			for (Runnable task : resumed) {
+				handler.post(task);
+			}
+		}
+	}
+}
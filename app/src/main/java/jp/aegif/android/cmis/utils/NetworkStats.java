@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import jp.aegif.android.cmis.utils.RequestScheduler.Priority;
+
+/**
+ * Bounded in-memory log of the last requests with percentile summaries per
+ * server and per operation. Shown by the diagnostics screen and exported as
+ * JSON for support tickets.
+ */
+public class NetworkStats {
+
+	/**
+	 * What a request is for. Each operation runs in a scheduler lane.
+	 */
+	public enum Operation {
+		SERVICE_DOCUMENT(Priority.INTERACTIVE, true),
+		LISTING(Priority.INTERACTIVE, true),
+		ENTRY(Priority.DETAILS, true),
+		TYPE_DEFINITION(Priority.DETAILS, true),
+		CONTENT(Priority.DETAILS, false),
+		DOWNLOAD(Priority.BACKGROUND, false),
+		PREFETCH(Priority.PREFETCH, true);
+
+		private final Priority priority;
+		private final boolean xml;
+
+		private Operation(Priority priority, boolean xml) {
+			this.priority = priority;
+			this.xml = xml;
+		}
+
+		public Priority getPriority() {
+			return priority;
+		}
+
+		/**
+		 * True for Atom feeds, entries and service documents : text that is
+		 * worth compressing, unlike document content.
+		 */
+		public boolean isXml() {
+			return xml;
+		}
+	}
+
+	public static final int CAPACITY = 256;
+
+	private static final RequestRecord[] records = new RequestRecord[CAPACITY];
+	private static int next = 0;
+	private static int count = 0;
+
+	static synchronized void add(RequestRecord record) {
+		records[next] = record;
+		next = (next + 1) % CAPACITY;
+		if (count < CAPACITY) {
+			count++;
+		}
+		NetworkMonitor.onRecord(record);
+	}
+
+	/**
+	 * Records a listing served from the local cache without any request.
+	 */
+	public static void addCacheHit(String server, Operation operation, String url, long parserNanos) {
+		RequestRecord record = new RequestRecord(server, operation, url);
+		record.setCacheHit(true);
+		record.setParserNanos(parserNanos);
+		record.finish();
+	}
+
+	/**
+	 * Returns the recorded requests, oldest first.
+	 */
+	public static synchronized List<RequestRecord> getRecords() {
+		List<RequestRecord> list = new ArrayList<RequestRecord>(count);
+		int start = (next - count + CAPACITY) % CAPACITY;
+		for (int i = 0; i < count; i++) {
+			list.add(records[(start + i) % CAPACITY]);
+		}
+		return list;
+	}
+
+	public static synchronized void clear() {
+		Arrays.fill(records, null);
+		next = 0;
+		count = 0;
+	}
+
+	public static Map<String, Summary> getSummariesByServer() {
+		Map<String, Summary> summaries = new LinkedHashMap<String, Summary>();
+		for (RequestRecord record : getRecords()) {
+			getSummary(summaries, record.getServer()).add(record);
+		}
+		return summaries;
+	}
+
+	public static Map<String, Summary> getSummariesByOperation() {
+		Map<String, Summary> summaries = new LinkedHashMap<String, Summary>();
+		for (RequestRecord record : getRecords()) {
+			getSummary(summaries, record.getOperation().name()).add(record);
+		}
+		return summaries;
+	}
+
+	private static Summary getSummary(Map<String, Summary> summaries, String key) {
+		Summary summary = summaries.get(key);
+		if (summary == null) {
+			summary = new Summary(key);
+			summaries.put(key, summary);
+		}
+		return summary;
+	}
+
+	public static JSONObject toJson() throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("generated", System.currentTimeMillis());
+
+		JSONObject byServer = new JSONObject();
+		for (Summary summary : getSummariesByServer().values()) {
+			byServer.put(summary.getName(), summary.toJson());
+		}
+		json.put("byServer", byServer);
+
+		JSONObject byOperation = new JSONObject();
+		for (Summary summary : getSummariesByOperation().values()) {
+			byOperation.put(summary.getName(), summary.toJson());
+		}
+		json.put("byOperation", byOperation);
+
+		JSONArray requests = new JSONArray();
+		for (RequestRecord record : getRecords()) {
+			requests.put(record.toJson());
+		}
+		json.put("requests", requests);
+		return json;
+	}
+
+	/**
+	 * Percentiles of a group of requests.
+	 */
+	public static class Summary {
+
+		private final String name;
+		private final List<RequestRecord> records = new ArrayList<RequestRecord>();
+
+		Summary(String name) {
+			this.name = name;
+		}
+
+		void add(RequestRecord record) {
+			records.add(record);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getCount() {
+			return records.size();
+		}
+
+		public int getCacheHits() {
+			int hits = 0;
+			for (RequestRecord record : records) {
+				if (record.isCacheHit()) {
+					hits++;
+				}
+			}
+			return hits;
+		}
+
+		public long getBytes() {
+			long bytes = 0;
+			for (RequestRecord record : records) {
+				bytes += record.getBytes();
+			}
+			return bytes;
+		}
+
+		public long getTotalPercentile(int percentile) {
+			long[] values = new long[records.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = records.get(i).getTotalMillis();
+			}
+			return percentile(values, percentile);
+		}
+
+		public long getFirstBytePercentile(int percentile) {
+			long[] values = new long[records.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = records.get(i).getFirstByteMillis();
+			}
+			return percentile(values, percentile);
+		}
+
+		public long getParsePercentile(int percentile) {
+			long[] values = new long[records.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = records.get(i).getParseMillis();
+			}
+			return percentile(values, percentile);
+		}
+
+		public JSONObject toJson() throws JSONException {
+			JSONObject json = new JSONObject();
+			json.put("count", getCount());
+			json.put("cacheHits", getCacheHits());
+			json.put("bytes", getBytes());
+			json.put("totalP50", getTotalPercentile(50));
+			json.put("totalP90", getTotalPercentile(90));
+			json.put("totalP99", getTotalPercentile(99));
+			json.put("firstByteP50", getFirstBytePercentile(50));
+			json.put("firstByteP90", getFirstBytePercentile(90));
+			json.put("parseP50", getParsePercentile(50));
+			json.put("parseP90", getParsePercentile(90));
+			return json;
+		}
+
+		private static long percentile(long[] values, int percentile) {
+			if (values.length == 0) {
+				return 0;
+			}
+			Arrays.sort(values);
+			int index = (int) Math.ceil(percentile / 100.0 * values.length) - 1;
+			return values[Math.max(0, Math.min(values.length - 1, index))];
+		}
+	}
+}
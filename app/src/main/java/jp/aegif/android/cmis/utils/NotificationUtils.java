@@ -2,7 +2,6 @@ package jp.aegif.android.cmis.utils;
 
 import java.io.File;
 
-import android.app.Activity;
 import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
@@ -17,10 +16,10 @@ public class NotificationUtils {
 	
 	public static final int DOWNLOAD_ID = 3313;
 	
-	public static void downloadNotification(Activity activity, File contentFile, String mimetype){
+	public static void downloadNotification(Context context, File contentFile, String mimetype){
 		
-		NotificationManager notificationManager = (NotificationManager) activity.getSystemService(Context.NOTIFICATION_SERVICE);
-		Notification notification = new Notification(R.drawable.cmisexplorer, activity.getText(R.string.notif_download_finish), System.currentTimeMillis());
+		NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+		Notification notification = new Notification(R.drawable.cmisexplorer, context.getText(R.string.notif_download_finish), System.currentTimeMillis());
 		notification.flags = Notification.FLAG_AUTO_CANCEL;
 		
 		Intent viewIntent = new Intent(Intent.ACTION_VIEW);
@@ -28,40 +27,40 @@ public class NotificationUtils {
 		viewIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
 		viewIntent.setDataAndType(data, mimetype.toLowerCase());
 		
-		PendingIntent pendingIntent = PendingIntent.getActivity(activity, 0, viewIntent, 0);
-		String titreNotification = activity.getText(R.string.notif_download_title).toString();
-		String texteNotification = activity.getText(R.string.notif_download_texte) + contentFile.getName();
-		notification.setLatestEventInfo(activity, titreNotification, texteNotification, pendingIntent);
+		PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, viewIntent, 0);
+		String titreNotification = context.getText(R.string.notif_download_title).toString();
+		String texteNotification = context.getText(R.string.notif_download_texte) + contentFile.getName();
+		notification.setLatestEventInfo(context, titreNotification, texteNotification, pendingIntent);
 		notificationManager.notify(DOWNLOAD_ID, notification);
 	}
 	
-	public static void downloadNotification(Activity activity){
-		NotificationManager notificationManager = (NotificationManager) activity.getSystemService(Context.NOTIFICATION_SERVICE);
-		Notification notification = new Notification(R.drawable.cmisexplorer, activity.getText(R.string.download_progress), System.currentTimeMillis());
-		Intent viewIntent = new Intent(activity, DownloadProgressActivity.class);
+	public static void downloadNotification(Context context){
+		NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+		Notification notification = new Notification(R.drawable.cmisexplorer, context.getText(R.string.download_progress), System.currentTimeMillis());
+		Intent viewIntent = new Intent(context, DownloadProgressActivity.class);
 		viewIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-		PendingIntent pendingIntent = PendingIntent.getActivity(activity, 0, viewIntent, 0);
-		String titreNotification =  activity.getText(R.string.download_progress).toString();
-		String texteNotification =  activity.getText(R.string.notif_open).toString();
-		notification.setLatestEventInfo(activity, titreNotification, texteNotification, pendingIntent);
+		PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, viewIntent, 0);
+		String titreNotification =  context.getText(R.string.download_progress).toString();
+		String texteNotification =  context.getText(R.string.notif_open).toString();
+		notification.setLatestEventInfo(context, titreNotification, texteNotification, pendingIntent);
 		notificationManager.notify(DOWNLOAD_ID, notification);
 	}
 	
-	public static void cancelDownloadNotification(Activity contextActivity){
-		NotificationManager notificationManager = (NotificationManager) contextActivity.getSystemService(Context.NOTIFICATION_SERVICE);
+	public static void cancelDownloadNotification(Context context){
+		NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
 		notificationManager.cancel(DOWNLOAD_ID);
 	}
 	
-	public static void updateDownloadNotification(Activity activity, String message){
+	public static void updateDownloadNotification(Context context, String message){
 		
-		NotificationManager notificationManager = (NotificationManager) activity.getSystemService(Context.NOTIFICATION_SERVICE);
-		Notification notification = new Notification(R.drawable.cmisexplorer, activity.getText(R.string.download_progress), System.currentTimeMillis());
-		Intent viewIntent = new Intent(activity, DownloadProgressActivity.class);
+		NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+		Notification notification = new Notification(R.drawable.cmisexplorer, context.getText(R.string.download_progress), System.currentTimeMillis());
+		Intent viewIntent = new Intent(context, DownloadProgressActivity.class);
 		viewIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-		PendingIntent pendingIntent = PendingIntent.getActivity(activity, 0, viewIntent, 0);
-		String titreNotification =  activity.getText(R.string.download_progress).toString();
+		PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, viewIntent, 0);
+		String titreNotification =  context.getText(R.string.download_progress).toString();
 		String texteNotification =  message;
-		notification.setLatestEventInfo(activity, titreNotification, texteNotification, pendingIntent);
+		notification.setLatestEventInfo(context, titreNotification, texteNotification, pendingIntent);
 		notificationManager.notify(DOWNLOAD_ID, notification);
 	}
 	
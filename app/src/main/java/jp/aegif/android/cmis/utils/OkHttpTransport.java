@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Build;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+/**
+ * {@link Transport} on OkHttp. Servers that negotiate HTTP/2 get a single
+ * connection per host carrying every request in parallel : listings,
+ * prefetches and downloads share one TCP/TLS handshake and one congestion
+ * window. Other servers fall back to a pool of HTTP/1.1 keep-alive
+ * connections.
+ *
+ * The connection pool is shared by all servers, each transport keeps its own
+ * session cookies.
+ */
+public class OkHttpTransport extends AbstractTransport {
+
+	private static final int MAX_IDLE_CONNECTIONS = RequestScheduler.MAX_REQUESTS_PER_HOST;
+	private static final long KEEP_ALIVE_DURATION = 5 * 60 * 1000;
+	private static final int CONNECTION_TIMEOUT = 20 * 1000;
+	private static final int SOCKET_TIMEOUT = 60 * 1000;
+
+	private static OkHttpClient sharedClient;
+
+	private final OkHttpClient client;
+
+	OkHttpTransport(String url, String user, String password) {
+		super(url, user, password);
+		client = getSharedClient().clone();
+		client.setCookieHandler(new CookieManager(null, CookiePolicy.ACCEPT_ORIGINAL_SERVER));
+	}
+
+	/**
+	 * OkHttp needs Android 2.3, HTTP/2 is negotiated from Android 5.0 (ALPN).
+	 */
+	static boolean isSupported() {
+		return Build.VERSION.SDK_INT >= 9;
+	}
+
+	private static synchronized OkHttpClient getSharedClient() {
+		if (sharedClient == null) {
+			sharedClient = new OkHttpClient();
+			sharedClient.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+			sharedClient.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION));
+			sharedClient.setConnectTimeout(CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS);
+			sharedClient.setReadTimeout(SOCKET_TIMEOUT, TimeUnit.MILLISECONDS);
+			sharedClient.setSocketFactory(TimingSocketFactory.createPlainSocketFactory());
+		}
+		return sharedClient;
+	}
+
+	@Override
+	TransportResponse send(TransportRequest request) throws IOException {
+		Request.Builder builder = new Request.Builder().url(request.getUrl());
+		for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			builder.header(header.getKey(), header.getValue());
+		}
+		if (request.getBody() != null) {
+			builder.post(RequestBody.create(MediaType.parse(request.getContentType()), request.getBody()));
+		}
+		final Call call = client.newCall(builder.build());
+		request.setCanceller(new Runnable() {
+			@Override
+			public void run() {
+				call.cancel();
+			}
+		});
+		return new OkResponse(call.execute());
+	}
+
+	/**
+	 * The pool is shared with the other servers, idle connections are closed
+	 * by its keep-alive timeout.
+	 */
+	public void shutdown() {
+	}
+
+	private static class OkResponse extends TransportResponse {
+
+		private final Response response;
+
+		OkResponse(Response response) {
+			this.response = response;
+		}
+
+		@Override
+		public int getStatus() {
+			return response.code();
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return response.header(name);
+		}
+
+		@Override
+		public String getProtocol() {
+			return response.protocol().toString();
+		}
+
+		@Override
+		protected long getWireContentLength() {
+			try {
+				return response.body().contentLength();
+			} catch (IOException e) {
+				return -1;
+			}
+		}
+
+		@Override
+		protected InputStream getWireContent() throws IOException {
+			return response.body().byteStream();
+		}
+
+		@Override
+		protected void discard() {
+			ResponseBody body = response.body();
+			try {
+				// on HTTP/2 only the stream is reset, the connection stays
+				body.close();
+			} catch (IOException e) {
+				// connection is discarded by the pool
+			}
+		}
+	}
+}
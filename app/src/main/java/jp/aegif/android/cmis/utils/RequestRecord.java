@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import jp.aegif.android.cmis.utils.NetworkStats.Operation;
+
+/**
+ * Timings of one request, see {@link NetworkStats}.
+ *
+ * Transfer time is the time spent blocked reading the response body, parse
+ * time is what remains of the time spent in the parser : the two do not
+ * overlap even though feeds are parsed while they are downloaded.
+ */
+public class RequestRecord {
+
+	private static final ThreadLocal<RequestRecord> current = new ThreadLocal<RequestRecord>();
+
+	private final String server;
+	private final Operation operation;
+	private final String url;
+	private final long timestamp;
+	private int status;
+	private String protocol;
+	private long queueNanos;
+	private long connectNanos;
+	private long firstByteNanos;
+	private long transferNanos;
+	private long parseNanos;
+	private long bytes;
+	private long decodedBytes;
+	private boolean cacheHit;
+	private boolean finished;
+
+	public RequestRecord(String server, Operation operation, String url) {
+		this.server = server;
+		this.operation = operation;
+		this.url = url;
+		this.timestamp = System.currentTimeMillis();
+	}
+
+	/**
+	 * The record of the request being sent by the current thread, used by the
+	 * socket factories to report connect times.
+	 */
+	static RequestRecord current() {
+		return current.get();
+	}
+
+	static void setCurrent(RequestRecord record) {
+		if (record == null) {
+			current.remove();
+		} else {
+			current.set(record);
+		}
+	}
+
+	/**
+	 * Hands the record over to {@link NetworkStats}, only once.
+	 */
+	public synchronized void finish() {
+		if (!finished) {
+			finished = true;
+			NetworkStats.add(this);
+		}
+	}
+
+	public synchronized void addConnectNanos(long nanos) {
+		connectNanos += nanos;
+	}
+
+	public synchronized void addTransferNanos(long nanos) {
+		transferNanos += nanos;
+	}
+
+	public synchronized void setQueueNanos(long queueNanos) {
+		this.queueNanos = queueNanos;
+	}
+
+	public synchronized void setFirstByteNanos(long firstByteNanos) {
+		this.firstByteNanos = firstByteNanos;
+	}
+
+	/**
+	 * @param parserNanos
+	 *            wall time spent in the parser, including the reads it made
+	 */
+	public synchronized void setParserNanos(long parserNanos) {
+		this.parseNanos = Math.max(0, parserNanos - transferNanos);
+	}
+
+	public synchronized void setBytes(long bytes, long decodedBytes) {
+		this.bytes = bytes;
+		this.decodedBytes = decodedBytes;
+	}
+
+	public synchronized void setStatus(int status) {
+		this.status = status;
+	}
+
+	public synchronized void setProtocol(String protocol) {
+		this.protocol = protocol;
+	}
+
+	public synchronized void setCacheHit(boolean cacheHit) {
+		this.cacheHit = cacheHit;
+	}
+
+	public String getServer() {
+		return server;
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	public synchronized int getStatus() {
+		return status;
+	}
+
+	public synchronized String getProtocol() {
+		return protocol;
+	}
+
+	public synchronized boolean isCacheHit() {
+		return cacheHit || status == 304;
+	}
+
+	synchronized long getConnectNanos() {
+		return connectNanos;
+	}
+
+	public synchronized long getQueueMillis() {
+		return queueNanos / 1000000;
+	}
+
+	public synchronized long getConnectMillis() {
+		return connectNanos / 1000000;
+	}
+
+	public synchronized long getFirstByteMillis() {
+		return firstByteNanos / 1000000;
+	}
+
+	public synchronized long getTransferMillis() {
+		return transferNanos / 1000000;
+	}
+
+	public synchronized long getParseMillis() {
+		return parseNanos / 1000000;
+	}
+
+	public synchronized long getTotalMillis() {
+		return (queueNanos + connectNanos + firstByteNanos + transferNanos + parseNanos) / 1000000;
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized long getDecodedBytes() {
+		return decodedBytes;
+	}
+
+	public synchronized JSONObject toJson() throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("timestamp", timestamp);
+		json.put("server", server);
+		json.put("operation", operation.name());
+		json.put("url", url);
+		json.put("status", status);
+		if (protocol != null) {
+			json.put("protocol", protocol);
+		}
+		json.put("cacheHit", isCacheHit());
+		json.put("queueMs", getQueueMillis());
+		json.put("connectMs", getConnectMillis());
+		json.put("firstByteMs", getFirstByteMillis());
+		json.put("transferMs", getTransferMillis());
+		json.put("parseMs", getParseMillis());
+		json.put("totalMs", getTotalMillis());
+		json.put("bytes", bytes);
+		json.put("decodedBytes", decodedBytes);
+		return json;
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Admission control in front of the HTTP transports. Every request takes a
+ * slot on its host before it is sent and gives it back once its response
+ * body has been closed.
+ *
+ * Waiting requests are served by priority lane, first come first served
+ * within a lane. Background downloads may never hold every slot of a host :
+ * one is always left for the listing the user is waiting for, so a large
+ * transfer can not starve the interactive lanes.
+ */
+public class RequestScheduler {
+
+	public enum Priority {
+		/** Folder listings and searches the user is waiting for. */
+		INTERACTIVE,
+		/** Document details, type definitions, opening a file. */
+		DETAILS,
+		/** Data loaded ahead of time. */
+		PREFETCH,
+		/** Downloads to the download folder. */
+		BACKGROUND
+	}
+
+	public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 4;
+	/** Upper bound, also the size of the connection pool of a host. */
+	public static final int MAX_REQUESTS_PER_HOST = 6;
+
+	private static final Map<String, Host> hosts = new HashMap<String, Host>();
+	private static int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+	private static long sequence = 0;
+
+	/**
+	 * A slot held by one request.
+	 */
+	public static class Ticket {
+		private final Host host;
+		private final Priority priority;
+		private boolean released;
+
+		private Ticket(Host host, Priority priority) {
+			this.host = host;
+			this.priority = priority;
+		}
+
+		public void release() {
+			synchronized (RequestScheduler.class) {
+				if (!released) {
+					released = true;
+					host.running--;
+					if (priority == Priority.BACKGROUND) {
+						host.runningBackground--;
+					}
+					RequestScheduler.class.notifyAll();
+				}
+			}
+		}
+
+		public Priority getPriority() {
+			return priority;
+		}
+	}
+
+	private static class Host {
+		private final PriorityQueue<Waiter> waiting = new PriorityQueue<Waiter>();
+		private int running;
+		private int runningBackground;
+	}
+
+	private static class Waiter implements Comparable<Waiter> {
+		private final Priority priority;
+		private final long order;
+
+		private Waiter(Priority priority, long order) {
+			this.priority = priority;
+			this.order = order;
+		}
+
+		@Override
+		public int compareTo(Waiter other) {
+			int result = priority.compareTo(other.priority);
+			if (result == 0) {
+				result = order < other.order ? -1 : (order > other.order ? 1 : 0);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Blocks until the request may be sent to the host.
+	 */
+	public static Ticket acquire(String host, Priority priority) throws InterruptedIOException {
+		synchronized (RequestScheduler.class) {
+			Host h = hosts.get(host);
+			if (h == null) {
+				h = new Host();
+				hosts.put(host, h);
+			}
+			Waiter waiter = new Waiter(priority, sequence++);
+			h.waiting.add(waiter);
+			try {
+				while (h.waiting.peek() != waiter || !canRun(h, priority)) {
+					RequestScheduler.class.wait();
+				}
+			} catch (InterruptedException e) {
+				h.waiting.remove(waiter);
+				RequestScheduler.class.notifyAll();
+				throw new InterruptedIOException("Request cancelled while waiting for a connection");
+			}
+			h.waiting.poll();
+			h.running++;
+			if (priority == Priority.BACKGROUND) {
+				h.runningBackground++;
+			}
+			// the next waiter may be allowed to run as well
+			RequestScheduler.class.notifyAll();
+			return new Ticket(h, priority);
+		}
+	}
+
+	private static boolean canRun(Host host, Priority priority) {
+		if (host.running >= maxRequestsPerHost) {
+			return false;
+		}
+		if (priority == Priority.BACKGROUND) {
+			return host.runningBackground < Math.max(1, maxRequestsPerHost - 1);
+		}
+		return true;
+	}
+
+	public static synchronized void setMaxRequestsPerHost(int max) {
+		maxRequestsPerHost = Math.min(MAX_REQUESTS_PER_HOST, Math.max(1, max));
+		RequestScheduler.class.notifyAll();
+	}
+
+	public static synchronized int getMaxRequestsPerHost() {
+		return maxRequestsPerHost;
+	}
+}
@@ -15,27 +15,32 @@
  */
 package jp.aegif.android.cmis.utils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 import org.apache.commons.io.FileUtils;
-import org.dom4j.Document;
-import org.dom4j.DocumentException;
-import org.dom4j.io.SAXReader;
-import org.dom4j.io.XMLWriter;
 
 import jp.aegif.android.cmis.CmisApp;
+import jp.aegif.android.cmis.model.Server;
+import jp.aegif.android.cmis.repo.CmisCollectionFile;
+import jp.aegif.android.cmis.repo.CmisItemCollection;
+import jp.aegif.android.cmis.repo.CmisItemLazy;
+import jp.aegif.android.cmis.repo.CmisPropertyDescriptors;
+import jp.aegif.android.cmis.repo.CmisServiceDocument;
 
 import android.app.Application;
 import android.os.Environment;
+import android.os.StatFs;
 import android.util.Log;
 
 public class StorageUtils {
@@ -43,52 +48,291 @@ public class StorageUtils {
 	public static final String TYPE_FEEDS = "cache";
 	public static final String TYPE_CONTENT = "files";
 	public static final String TYPE_DOWNLOAD = "download";
+	public static final String TYPE_SERVICES = "services";
+	public static final String TYPE_TYPES = "types";
 	public static final String ROOT_FOLDER_APP = "android-cmis-browser";
 
-	public static boolean isFeedInCache(Application app, String url, String workspace) throws StorageException {
-		File cacheFile = getFeedFile(app, workspace, md5(url));
-		return cacheFile != null && cacheFile.exists();
+	/** Bytes the cached listings may take. */
+	public static final long FEED_CACHE_QUOTA = 16 * 1024 * 1024;
+	/** A cached listing is deleted a week after it was downloaded. */
+	public static final long FEED_CACHE_TTL = 7 * 24 * 60 * 60 * 1000L;
+	/** A stored type definition is fetched again after a week. */
+	public static final long TYPE_DEFINITION_TTL = 7 * 24 * 60 * 60 * 1000L;
+	/** Below this free space the feed cache gives half of its files back. */
+	private static final long LOW_STORAGE = 32 * 1024 * 1024;
+
+	/** Validators of the content file of an item, in its content folder. */
+	private static final String CONTENT_METADATA = ".metadata";
+	/** Same for the copy saved in the download folder. */
+	private static final String DOWNLOAD_METADATA = ".download";
+
+	private static FeedCacheIndex feedIndex;
+
+	/**
+	 * The index of the feed cache of the current storage.
+	 */
+	private static synchronized FeedCacheIndex getFeedIndex(Application app) throws StorageException {
+		File root = getStorageFile(app, null, TYPE_FEEDS, null, null);
+		if (feedIndex == null || !feedIndex.getRoot().equals(root)) {
+			feedIndex = new FeedCacheIndex(root);
+		}
+		return feedIndex;
+	}
+
+	/**
+	 * Each account of a server sees its own listings : the key starts with
+	 * the account, then the repository.
+	 */
+	private static String getFeedKey(Server server, String url) {
+		return getFeedPrefix(server) + md5(url) + ".lst";
+	}
+
+	private static String getFeedPrefix(Server server) {
+		return getAccountKey(server) + "/" + server.getWorkspace() + "/";
+	}
+
+	private static String getAccountKey(Server server) {
+		return md5(server.getUrl() + " " + server.getUsername());
+	}
+
+	/**
+	 * Only looks at the index : no file is touched when the feed is not
+	 * cached.
+	 */
+	public static boolean isFeedInCache(Application app, String url, Server server) throws StorageException {
+		return getFeedIndex(app).contains(getFeedKey(server, url));
 	}
 
-	public static Document getFeedFromCache(Application app, String url, String workspace) throws StorageException {
-		File cacheFile = getFeedFile(app, workspace, md5(url));
+	/**
+	 * Opens a cached listing, returns null when it is not cached or can not
+	 * be read. The items are read from the file when the list first asks for
+	 * them.
+	 */
+	public static CmisItemCollection getCollectionFromCache(Application app, String url, Server server, CmisPropertyDescriptors descriptors) throws StorageException {
+		FeedCacheIndex index = getFeedIndex(app);
+		String key = getFeedKey(server, url);
+		if (!index.contains(key)) {
+			return null;
+		}
+		File cacheFile = new File(index.getRoot(), key);
 		Log.d("CmisRepository", cacheFile.getAbsolutePath());
-		Document document = null;
-		SAXReader reader = new SAXReader(); // dom4j SAXReader
 		try {
-			document = reader.read(cacheFile);
-		} catch (DocumentException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} // dom4j Document
+			CmisItemCollection collection = CmisCollectionFile.read(cacheFile, descriptors);
+			index.touch(key);
+			return collection;
+		} catch (IOException e) {
+			Log.w("CmisRepository", "Unreadable cached listing : " + e);
+			index.remove(key);
+			return null;
+		}
+	}
+
+	/**
+	 * Replaces the cached listing of the feed, atomically, with its
+	 * validators : returns false and leaves the previous one when it can not
+	 * be written. The least recently used listings make room for it.
+	 */
+	public static boolean storeCollectionInCache(Application app, String url, Server server, CmisItemCollection collection, CacheMetadata metadata) throws StorageException {
+		FeedCacheIndex index = getFeedIndex(app);
+		String key = getFeedKey(server, url);
+		File cacheFile = new File(index.getRoot(), key);
+		cacheFile.getParentFile().mkdirs();
+		try {
+			CmisCollectionFile.write(collection, cacheFile);
+		} catch (IOException e) {
+			Log.w("CmisRepository", "Listing not cached : " + e);
+			return false;
+		}
+		index.put(key, metadata, FEED_CACHE_TTL);
+		trimFeedCache(index);
+		return true;
+	}
+
+	/**
+	 * Deletes the expired listings and keeps the cache under its quota, or
+	 * under half of its size when the storage is almost full.
+	 */
+	private static void trimFeedCache(FeedCacheIndex index) {
+		long maxSize = FEED_CACHE_QUOTA;
+		if (getAvailableSpace() < LOW_STORAGE) {
+			maxSize = Math.min(maxSize, index.getSize() / 2);
+		}
+		index.trimToSize(maxSize);
+	}
+
+	@SuppressWarnings("deprecation")
+	private static long getAvailableSpace() {
+		try {
+			StatFs stat = new StatFs(Environment.getExternalStorageDirectory().getPath());
+			return (long) stat.getAvailableBlocks() * stat.getBlockSize();
+		} catch (IllegalArgumentException e) {
+			return Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Returns the HTTP validators stored with a cached feed, or null when the
+	 * feed is not cached.
+	 */
+	public static CacheMetadata getFeedMetadata(Application app, String url, Server server) throws StorageException {
+		return getFeedIndex(app).getMetadata(getFeedKey(server, url));
+	}
+
+	public static void storeFeedMetadata(Application app, String url, Server server, CacheMetadata metadata) throws StorageException {
+		getFeedIndex(app).updateMetadata(getFeedKey(server, url), metadata);
+	}
 
-		return document;
+	/**
+	 * Marks a cached feed as stale so the next load revalidates it with the
+	 * server instead of downloading it again. Returns false when the feed is
+	 * not cached.
+	 */
+	public static boolean expireFeedInCache(Application app, Server server, String url) throws StorageException {
+		CacheMetadata metadata = getFeedMetadata(app, url, server);
+		if (metadata == null) {
+			return false;
+		}
+		if (!metadata.hasValidators()) {
+			return deleteFeedFile(app, server, url);
+		}
+		metadata.expire();
+		storeFeedMetadata(app, url, server, metadata);
+		return true;
 	}
 
-	private static File getFeedFile(Application app, String repoId, String feedHash) throws StorageException {
-		return getStorageFile(app, repoId, TYPE_FEEDS, null, feedHash + ".xml");
+	/**
+	 * Writes the accesses to the cached listings, see {@link FeedCacheIndex}.
+	 */
+	public static void flushFeedCache(Application app) throws StorageException {
+		getFeedIndex(app).flush();
 	}
 
-	public static void storeFeedInCache(Application app, String url, Document doc, String workspace) throws StorageException {
-		File cacheFile = getFeedFile(app, workspace, md5(url));
-		ensureOrCreatePathAndFile(cacheFile);
+	/**
+	 * Number and size of the cached listings.
+	 */
+	public static int getFeedCacheCount(Application app) throws StorageException {
+		return getFeedIndex(app).getCount();
+	}
 
+	public static long getFeedCacheSize(Application app) throws StorageException {
+		return getFeedIndex(app).getSize();
+	}
+
+	/**
+	 * The service document file of a server : each account may see other
+	 * workspaces.
+	 */
+	private static File getServiceDocumentFile(Application app, Server server) throws StorageException {
+		return getStorageFile(app, null, TYPE_SERVICES, null, getAccountKey(server) + ".svc");
+	}
+
+	/**
+	 * Returns the stored service document of the server, null when it is not
+	 * stored or can not be read.
+	 */
+	public static CmisServiceDocument getServiceDocumentFromCache(Application app, Server server) throws StorageException {
+		File file = getServiceDocumentFile(app, server);
+		if (!file.exists()) {
+			return null;
+		}
 		try {
-			XMLWriter writer = new XMLWriter(new FileOutputStream(cacheFile));
-			writer.write(doc);
-		} catch (UnsupportedEncodingException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (FileNotFoundException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			return CmisServiceDocument.read(file);
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			Log.w("CmisRepository", "Unreadable service document : " + e);
+			file.delete();
+			return null;
 		}
+	}
 
+	public static boolean storeServiceDocumentInCache(Application app, Server server, CmisServiceDocument document) throws StorageException {
+		try {
+			CmisServiceDocument.write(document, getServiceDocumentFile(app, server));
+			return true;
+		} catch (IOException e) {
+			Log.w("CmisRepository", "Service document not cached : " + e);
+			return false;
+		}
 	}
-	
+
+	/**
+	 * Folder of the type definitions of a repository, see
+	 * {@link jp.aegif.android.cmis.repo.TypeDefinitionCache}.
+	 */
+	public static File getTypeDefinitionRoot(Application app, Server server) throws StorageException {
+		return getStorageFile(app, md5(server.getUrl() + " " + server.getWorkspace()), TYPE_TYPES, null, null);
+	}
+
+	private static File getContentMetadataFile(Application app, String workspace, CmisItemLazy item, boolean download) throws StorageException {
+		return getStorageFile(app, workspace, TYPE_CONTENT, item.getId(), download ? DOWNLOAD_METADATA : CONTENT_METADATA);
+	}
+
+	/**
+	 * True when file holds the current content of the item : it has the
+	 * expected length and was downloaded for the same change token,
+	 * modification date and stream, see {@link ContentMetadata}.
+	 * 
+	 * @param download
+	 *            file is the copy saved in the download folder
+	 */
+	public static boolean isContentValid(Application app, String workspace, CmisItemLazy item, File file, boolean download) throws StorageException {
+		if (file == null || !file.exists() || file.length() == 0 || file.length() != item.getContentLength()) {
+			return false;
+		}
+		File metadataFile = getContentMetadataFile(app, workspace, item, download);
+		if (!metadataFile.exists()) {
+			return false;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(metadataFile)));
+			return ContentMetadata.readFrom(in).matches(ContentMetadata.fromItem(item, file));
+		} catch (IOException e) {
+			Log.w("CmisRepository", "Unreadable content metadata : " + e);
+			metadataFile.delete();
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records what file was downloaded for, once it is complete.
+	 */
+	public static void storeContentMetadata(Application app, String workspace, CmisItemLazy item, File file, boolean download) throws StorageException {
+		File metadataFile = getContentMetadataFile(app, workspace, item, download);
+		metadataFile.getParentFile().mkdirs();
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(metadataFile)));
+			ContentMetadata.fromItem(item, file).writeTo(out);
+			out.close();
+			out = null;
+		} catch (IOException e) {
+			Log.w("CmisRepository", "Content metadata not stored : " + e);
+			metadataFile.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forgets the validators before the file is written again : an
+	 * interrupted download is never taken for valid content.
+	 */
+	public static void deleteContentMetadata(Application app, String workspace, CmisItemLazy item, boolean download) throws StorageException {
+		getContentMetadataFile(app, workspace, item, download).delete();
+	}
+
 	public static void copy(File src, File dst) throws IOException {
 	    InputStream in = new FileInputStream(src);
 	    ensureOrCreatePathAndFile(dst);
@@ -205,8 +449,9 @@ public class StorageUtils {
 		return "";
 	}
 
-	public static boolean deleteRepositoryFiles(Application app, String repoId) throws StorageException {
-		File repoDir = getStorageFile(app, repoId, TYPE_FEEDS, null, null);
+	public static boolean deleteRepositoryFiles(Application app, Server server) throws StorageException {
+		getFeedIndex(app).removeAll(getFeedPrefix(server));
+		File repoDir = getStorageFile(app, getFeedPrefix(server), TYPE_FEEDS, null, null);
 		try {
 			FileUtils.deleteDirectory(repoDir);
 			return true;
@@ -215,12 +460,34 @@ public class StorageUtils {
 		}
 	}
 
+	/**
+	 * Deletes the listings and the service document cached for the account
+	 * of the server : once the server is removed, or edited with another url
+	 * or user, nothing that account could see stays on the storage.
+	 */
+	public static boolean deleteAccountFiles(Application app, Server server) throws StorageException {
+		getFeedIndex(app).removeAll(getAccountKey(server) + "/");
+		getServiceDocumentFile(app, server).delete();
+		File accountDir = getStorageFile(app, getAccountKey(server), TYPE_FEEDS, null, null);
+		try {
+			FileUtils.deleteDirectory(accountDir);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
 	public static boolean deleteCacheFolder(Application app) throws StorageException {
 		File contentDir = getStorageFile(app, null, TYPE_CONTENT, null, null);
 		File feedsDir = getStorageFile(app, null, TYPE_FEEDS, null, null);
+		File servicesDir = getStorageFile(app, null, TYPE_SERVICES, null, null);
+		File typesDir = getStorageFile(app, null, TYPE_TYPES, null, null);
+		getFeedIndex(app).clear();
 		try {
 			FileUtils.deleteDirectory(contentDir);
 			FileUtils.deleteDirectory(feedsDir);
+			FileUtils.deleteDirectory(servicesDir);
+			FileUtils.deleteDirectory(typesDir);
 			return true;
 		} catch (IOException e) {
 			return false;
@@ -228,9 +495,10 @@ public class StorageUtils {
 	}
 	
 	
-	public static boolean deleteRepositoryCacheFiles(Application app, String repoId) throws StorageException {
-		File contentDir = getStorageFile(app, repoId, TYPE_CONTENT, null, null);
-		File feedsDir = getStorageFile(app, repoId, TYPE_FEEDS, null, null);
+	public static boolean deleteRepositoryCacheFiles(Application app, Server server) throws StorageException {
+		File contentDir = getStorageFile(app, server.getWorkspace(), TYPE_CONTENT, null, null);
+		File feedsDir = getStorageFile(app, getFeedPrefix(server), TYPE_FEEDS, null, null);
+		getFeedIndex(app).removeAll(getFeedPrefix(server));
 		try {
 			FileUtils.deleteDirectory(contentDir);
 			FileUtils.deleteDirectory(feedsDir);
@@ -240,14 +508,7 @@ public class StorageUtils {
 		}
 	}
 	
-	public static boolean deleteFeedFile(Application app, String repoId, String url) throws StorageException {
-		File feedFile = getFeedFile(app, repoId, md5(url));
-		Log.d("CmisRepository", feedFile.getAbsolutePath());
-		if (feedFile.exists()){
-			feedFile.delete();
-			return true;
-		} else {
-			return false;
-		}
+	public static boolean deleteFeedFile(Application app, Server server, String url) throws StorageException {
+		return getFeedIndex(app).remove(getFeedKey(server, url));
 	}
 }
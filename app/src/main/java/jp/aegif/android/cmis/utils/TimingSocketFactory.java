@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.scheme.LayeredSocketFactory;
+import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.params.HttpParams;
+
+/**
+ * Reports the time spent opening connections (TCP and TLS handshake) to the
+ * {@link RequestRecord} of the request that needed them. Reused keep-alive
+ * connections report nothing.
+ */
+class TimingSocketFactory implements SocketFactory {
+
+	protected final SocketFactory factory;
+
+	TimingSocketFactory(SocketFactory factory) {
+		this.factory = factory;
+	}
+
+	static SocketFactory wrap(SocketFactory factory) {
+		if (factory instanceof LayeredSocketFactory) {
+			return new Layered((LayeredSocketFactory) factory);
+		}
+		return new TimingSocketFactory(factory);
+	}
+
+	/**
+	 * Same for clients taking a javax.net.SocketFactory (OkHttp) : times the
+	 * TCP connect of the sockets it creates. Their TLS handshake is counted as
+	 * time to first byte.
+	 */
+	static javax.net.SocketFactory createPlainSocketFactory() {
+		return new javax.net.SocketFactory() {
+			@Override
+			public Socket createSocket() {
+				return new TimedSocket();
+			}
+
+			@Override
+			public Socket createSocket(String host, int port) throws IOException {
+				return createSocket(new InetSocketAddress(host, port), null);
+			}
+
+			@Override
+			public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+				return createSocket(new InetSocketAddress(host, port), new InetSocketAddress(localHost, localPort));
+			}
+
+			@Override
+			public Socket createSocket(InetAddress host, int port) throws IOException {
+				return createSocket(new InetSocketAddress(host, port), null);
+			}
+
+			@Override
+			public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+				return createSocket(new InetSocketAddress(address, port), new InetSocketAddress(localAddress, localPort));
+			}
+
+			private Socket createSocket(SocketAddress remote, SocketAddress local) throws IOException {
+				Socket socket = new TimedSocket();
+				if (local != null) {
+					socket.bind(local);
+				}
+				socket.connect(remote);
+				return socket;
+			}
+		};
+	}
+
+	@Override
+	public Socket createSocket() throws IOException {
+		return factory.createSocket();
+	}
+
+	@Override
+	public Socket connectSocket(Socket sock, String host, int port, InetAddress localAddress, int localPort, HttpParams params) throws IOException, UnknownHostException, ConnectTimeoutException {
+		long start = System.nanoTime();
+		try {
+			return factory.connectSocket(sock, host, port, localAddress, localPort, params);
+		} finally {
+			report(start);
+		}
+	}
+
+	@Override
+	public boolean isSecure(Socket sock) throws IllegalArgumentException {
+		return factory.isSecure(sock);
+	}
+
+	protected static void report(long start) {
+		RequestRecord record = RequestRecord.current();
+		if (record != null) {
+			record.addConnectNanos(System.nanoTime() - start);
+		}
+	}
+
+	private static class TimedSocket extends Socket {
+
+		@Override
+		public void connect(SocketAddress endpoint, int timeout) throws IOException {
+			long start = System.nanoTime();
+			try {
+				super.connect(endpoint, timeout);
+			} finally {
+				report(start);
+			}
+		}
+	}
+
+	private static class Layered extends TimingSocketFactory implements LayeredSocketFactory {
+
+		Layered(LayeredSocketFactory factory) {
+			super(factory);
+		}
+
+		@Override
+		public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException, UnknownHostException {
+			long start = System.nanoTime();
+			try {
+				return ((LayeredSocketFactory) factory).createSocket(socket, host, port, autoClose);
+			} finally {
+				report(start);
+			}
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.IOException;
+
+/**
+ * HTTP client of one server connection. Callers only deal with
+ * {@link TransportRequest} and {@link TransportResponse} so the client
+ * library behind can be swapped : {@link OkHttpTransport} multiplexes the
+ * requests of a host over HTTP/2 when the server supports it,
+ * {@link HttpTransport} is the Apache client bundled with Android and stays
+ * as a fallback.
+ *
+ * Every implementation schedules requests through {@link RequestScheduler},
+ * authenticates them through its {@link AuthSession}, negotiates gzip and
+ * records the timings in {@link NetworkStats}.
+ */
+public interface Transport {
+
+	/**
+	 * Sends a GET request and returns once the response headers have been
+	 * received. The response must be closed, the body is streamed.
+	 */
+	TransportResponse execute(TransportRequest request) throws IOException;
+
+	AuthSession getSession();
+
+	/**
+	 * Total bytes received on the wire by this transport.
+	 */
+	long getCompressedBytes();
+
+	/**
+	 * Total bytes handed to the readers after gzip/deflate decoding.
+	 */
+	long getUncompressedBytes();
+
+	void shutdown();
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jp.aegif.android.cmis.utils.NetworkStats.Operation;
+
+/**
+ * A GET request sent by a {@link Transport}, or a POST when it has a body.
+ * It can be cancelled from another thread, which aborts the transfer of its
+ * response.
+ */
+public class TransportRequest {
+
+	private String url;
+	private final Operation operation;
+	private final Map<String, String> headers = new LinkedHashMap<String, String>();
+	private String contentType;
+	private byte[] body;
+	private Runnable canceller;
+	private boolean cancelled;
+
+	public TransportRequest(String url) {
+		this(url, Operation.LISTING);
+	}
+
+	public TransportRequest(String url, Operation operation) {
+		this.url = url;
+		this.operation = operation;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	void setUrl(String url) {
+		this.url = url;
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	public void setHeader(String name, String value) {
+		headers.put(name, value);
+	}
+
+	public boolean containsHeader(String name) {
+		return headers.containsKey(name);
+	}
+
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Sends the request as a POST of the given body.
+	 */
+	void setBody(String contentType, byte[] body) {
+		this.contentType = contentType;
+		this.body = body;
+	}
+
+	String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * The body to post, null for a GET.
+	 */
+	byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * Aborts the request : a pending call fails and a response being read
+	 * stops with an IOException. The connection is not reused.
+	 */
+	public void cancel() {
+		Runnable current;
+		synchronized (this) {
+			cancelled = true;
+			current = canceller;
+		}
+		if (current != null) {
+			current.run();
+		}
+	}
+
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Set by the transport once the request is handed to its client.
+	 */
+	void setCanceller(Runnable canceller) {
+		boolean cancelNow;
+		synchronized (this) {
+			this.canceller = canceller;
+			cancelNow = cancelled;
+		}
+		if (cancelNow) {
+			canceller.run();
+		}
+	}
+}
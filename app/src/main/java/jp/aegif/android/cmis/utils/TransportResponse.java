@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import android.util.Log;
+import jp.aegif.android.cmis.utils.RequestScheduler.Ticket;
+
+/**
+ * Response of a {@link Transport}, subclassed by each client library.
+ *
+ * The body is streamed and decoded on the fly when the server sent it gzip
+ * or deflate encoded : the XML parser reads straight from the inflater. Wire
+ * and decoded byte counts are reported once the body is closed, which also
+ * gives the {@link RequestScheduler} slot back and hands the timings of the
+ * request to {@link NetworkStats}.
+ *
+ * Call {@link #close()} when the body is not needed so the connection can be
+ * reused.
+ */
+public abstract class TransportResponse implements Closeable {
+
+	private static final String TAG = "TransportResponse";
+
+	public static final String GZIP = "gzip";
+	public static final String DEFLATE = "deflate";
+	public static final String IDENTITY = "identity";
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private AbstractTransport transport;
+	private Ticket ticket;
+	private RequestRecord record;
+	private InputStream content;
+	private CountingInputStream wireStream;
+	private CountingInputStream decodedStream;
+	private boolean done;
+
+	public abstract int getStatus();
+
+	/**
+	 * Returns the first value of the header, null when it is missing.
+	 */
+	public abstract String getHeader(String name);
+
+	/**
+	 * Protocol the response came with, "h2" or "http/1.1" for instance.
+	 */
+	public abstract String getProtocol();
+
+	/**
+	 * Length of the body on the wire, -1 when unknown.
+	 */
+	protected abstract long getWireContentLength();
+
+	/**
+	 * The body as received, null when there is none.
+	 */
+	protected abstract InputStream getWireContent() throws IOException;
+
+	/**
+	 * Gives the connection back without reading the body, or drops it.
+	 */
+	protected abstract void discard();
+
+	/**
+	 * Called by the transport once the response is handed to the caller.
+	 */
+	void attach(AbstractTransport transport, Ticket ticket, RequestRecord record) {
+		this.transport = transport;
+		this.ticket = ticket;
+		this.record = record;
+	}
+
+	/**
+	 * The timings of this request, so that readers can add their parse time.
+	 */
+	public RequestRecord getRecord() {
+		return record;
+	}
+
+	/**
+	 * Length of the decoded body, -1 when unknown (always for encoded bodies).
+	 */
+	public long getContentLength() {
+		return isEncoded() ? -1 : getWireContentLength();
+	}
+
+	public String getContentType() {
+		return getHeader("Content-Type");
+	}
+
+	/**
+	 * The decoded body. Closing it releases the connection.
+	 */
+	public synchronized InputStream getContent() throws IOException {
+		if (content == null) {
+			InputStream wire = getWireContent();
+			wireStream = new CountingInputStream(wire != null ? wire : new ByteArrayInputStream(new byte[0]));
+			InputStream decoded;
+			String encoding = getHeader("Content-Encoding");
+			if (GZIP.equalsIgnoreCase(encoding)) {
+				decoded = new GZIPInputStream(wireStream, BUFFER_SIZE);
+			} else if (DEFLATE.equalsIgnoreCase(encoding)) {
+				decoded = new InflaterInputStream(wireStream);
+			} else {
+				decoded = wireStream;
+			}
+			decodedStream = new CountingInputStream(decoded);
+			content = new TimedInputStream(decodedStream);
+		}
+		return content;
+	}
+
+	/**
+	 * Copies the decoded body to out and closes it.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		InputStream in = getContent();
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Releases the response, whether its body was read or not.
+	 */
+	public void close() {
+		InputStream current;
+		synchronized (this) {
+			current = content;
+		}
+		if (current != null) {
+			try {
+				current.close();
+			} catch (IOException e) {
+				// connection is discarded
+			}
+		} else {
+			discard();
+			done();
+		}
+	}
+
+	private boolean isEncoded() {
+		String encoding = getHeader("Content-Encoding");
+		return GZIP.equalsIgnoreCase(encoding) || DEFLATE.equalsIgnoreCase(encoding);
+	}
+
+	private void done() {
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+			done = true;
+		}
+		long wireBytes = wireStream != null ? wireStream.getCount() : 0;
+		long decodedBytes = decodedStream != null ? decodedStream.getCount() : 0;
+		if (wireStream != null) {
+			String encoding = getHeader("Content-Encoding");
+			Log.d(TAG, (encoding != null ? encoding : IDENTITY) + " : " + wireBytes + " bytes received, " + decodedBytes + " bytes decoded");
+		}
+		if (transport != null) {
+			transport.addTransferredBytes(wireBytes, decodedBytes);
+		}
+		if (ticket != null) {
+			ticket.release();
+		}
+		if (record != null) {
+			record.setBytes(wireBytes, decodedBytes);
+			record.finish();
+		}
+	}
+
+	/**
+	 * Times the reads of the body as transfer time.
+	 */
+	private class TimedInputStream extends FilterInputStream {
+
+		TimedInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			long start = System.nanoTime();
+			try {
+				return super.read();
+			} finally {
+				addTransferNanos(start);
+			}
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			long start = System.nanoTime();
+			try {
+				return super.read(buffer, offset, length);
+			} finally {
+				addTransferNanos(start);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				done();
+			}
+		}
+
+		private void addTransferNanos(long start) {
+			if (record != null) {
+				record.addTransferNanos(System.nanoTime() - start);
+			}
+		}
+	}
+}
@@ -18,6 +18,7 @@ import jp.aegif.android.cmis.CmisApp;
 import jp.aegif.android.cmis.Prefs;
 import jp.aegif.android.cmis.R;
 import jp.aegif.android.cmis.repo.CmisItem;
+import jp.aegif.android.cmis.repo.CmisProperty;
 import jp.aegif.android.cmis.repo.CmisRepository;
 
 public class UIUtils {
@@ -46,7 +47,7 @@ public class UIUtils {
 		menu.add(0, 2, Menu.NONE, activity.getString(R.string.menu_item_details));
 		menu.add(0, 3, Menu.NONE, activity.getString(R.string.menu_item_share));
 
-		if (doc != null && doc.getProperties().get("cmis:contentStreamLength") != null){
+		if (doc != null && doc.hasProperty(CmisProperty.CONTENT_STREAMLENGTH)){
 			menu.add(0, 1, Menu.NONE, activity.getString(R.string.download));
 		}
 		
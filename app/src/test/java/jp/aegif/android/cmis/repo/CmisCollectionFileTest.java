@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CmisCollectionFileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void listingRoundTrip() throws Exception {
+		CmisItemCollection collection = TestFeeds.parse(TestFeeds.feed(30));
+		File file = folder.newFile("listing.lst");
+		CmisCollectionFile.write(collection, file);
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		CmisItemCollection read = CmisCollectionFile.read(file, new CmisPropertyDescriptors());
+		assertEquals(30, read.getNumItems());
+		TestFeeds.assertSameItems(collection.getItems(), read.getItems());
+		TestFeeds.assertSameItem(collection.getFeedItem(), read.getFeedItem());
+		assertTrue(read.getEstimatedSize() > 0);
+	}
+
+	@Test
+	public void itemsAreDecodedOnceAndShareTheirStrings() throws Exception {
+		CmisPropertyDescriptors descriptors = new CmisPropertyDescriptors();
+		CmisItemCollection read = CmisCollectionFile.read(write(TestFeeds.feed(8)), descriptors);
+
+		CmisItem item = read.getItems().get(3);
+		assertSame(item, read.getItems().get(3));
+		assertSame(read.getItems().get(0).getAuthor(), read.getItems().get(6).getAuthor());
+		CmisProperty first = read.getItems().get(1).getProperties().get(CmisProperty.OBJECT_CREATEDBY);
+		CmisProperty second = read.getItems().get(7).getProperties().get(CmisProperty.OBJECT_CREATEDBY);
+		assertSame(first.getDescriptor(), second.getDescriptor());
+		assertSame(first.getValue(), second.getValue());
+	}
+
+	@Test
+	public void emptyListingRoundTrip() throws Exception {
+		File file = folder.newFile("empty.lst");
+		CmisCollectionFile.write(CmisItemCollection.emptyCollection(), file);
+
+		CmisItemCollection read = CmisCollectionFile.read(file, new CmisPropertyDescriptors());
+		assertTrue(read.getItems().isEmpty());
+		assertNull(read.getFeedItem());
+	}
+
+	@Test
+	public void writeReplacesThePreviousListing() throws Exception {
+		File file = write(TestFeeds.feed(10));
+		CmisCollectionFile.write(TestFeeds.parse(TestFeeds.feed(2)), file);
+		assertEquals(2, CmisCollectionFile.read(file, new CmisPropertyDescriptors()).getItems().size());
+	}
+
+	@Test(expected = IOException.class)
+	public void emptyListingIsRejected() throws Exception {
+		readTruncated(0);
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedHeaderIsRejected() throws Exception {
+		readTruncated(16);
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedColumnsAreRejected() throws Exception {
+		File file = write(TestFeeds.feed(5));
+		TestFeeds.truncate(file, file.length() / 2);
+		CmisCollectionFile.read(file, new CmisPropertyDescriptors());
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedStringsAreRejected() throws Exception {
+		File file = write(TestFeeds.feed(5));
+		TestFeeds.truncate(file, file.length() - 1);
+		CmisCollectionFile.read(file, new CmisPropertyDescriptors());
+	}
+
+	@Test(expected = IOException.class)
+	public void otherFileIsRejected() throws Exception {
+		File file = folder.newFile("other.lst");
+		TestFeeds.overwrite(file, TestFeeds.feed(1));
+		CmisCollectionFile.read(file, new CmisPropertyDescriptors());
+	}
+
+	@Test(expected = IOException.class)
+	public void missingFileIsRejected() throws Exception {
+		CmisCollectionFile.read(new File(folder.getRoot(), "missing.lst"), new CmisPropertyDescriptors());
+	}
+
+	private File write(String xml) throws Exception {
+		File file = folder.newFile();
+		CmisCollectionFile.write(TestFeeds.parse(xml), file);
+		return file;
+	}
+
+	private void readTruncated(long length) throws Exception {
+		File file = write(TestFeeds.feed(5));
+		TestFeeds.truncate(file, length);
+		CmisCollectionFile.read(file, new CmisPropertyDescriptors());
+	}
+}
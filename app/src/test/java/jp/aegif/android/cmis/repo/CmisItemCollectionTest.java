@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jp.aegif.android.cmis.repo.CmisItemCollection.EntryListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+public class CmisItemCollectionTest {
+
+	private final int decoderCount = CmisItemCollection.getDecoderCount();
+
+	@Before
+	public void setUp() {
+		// whatever the cores of the machine running the tests
+		CmisItemCollection.setDecoderCount(2);
+	}
+
+	@After
+	public void tearDown() {
+		CmisItemCollection.setParallelThreshold(CmisItemCollection.DEFAULT_PARALLEL_THRESHOLD);
+		CmisItemCollection.setDecoderCount(decoderCount);
+	}
+
+	@Test
+	public void pullParserReadsEntries() throws Exception {
+		CmisItemCollection collection = TestFeeds.parse(TestFeeds.feed(3));
+		assertEquals(3, collection.getNumItems());
+		assertEquals(3, collection.getItems().size());
+
+		CmisItem folder = collection.getItems().get(0);
+		assertEquals("Folder 0", folder.getTitle());
+		assertEquals("urn:uuid:item-0", folder.getId());
+		assertEquals("admin", folder.getAuthor());
+		assertEquals(TestFeeds.SERVER + "/i/item-0", folder.getSelfUrl());
+		assertEquals(TestFeeds.SERVER + "/i/item-0/children", folder.getDownLink());
+		assertEquals(TestFeeds.SERVER + "/i/root", folder.getParentUrl());
+		assertEquals("cmis:folder", folder.getBaseType());
+		assertEquals("/Folder 0", folder.getPath());
+		// inline content : no content stream
+		assertNull(folder.getContentUrl());
+		assertEquals(-1, folder.getContentLength());
+
+		CmisItem document = collection.getItems().get(1);
+		assertEquals("Document 1.txt", document.getTitle());
+		assertEquals("", document.getDownLink());
+		assertEquals(TestFeeds.SERVER + "/i/item-1/content.txt", document.getContentUrl());
+		assertEquals("text/plain", document.getMimeType());
+		assertEquals(1001, document.getContentLength());
+		assertEquals("token-1", document.getChangeToken());
+		assertEquals("store://item-1.bin", document.getContentStreamId());
+		assertTrue(document.getModificationDate() != null);
+
+		CmisProperty tags = document.getProperties().get("test:tags");
+		assertTrue(tags.isMultiValued());
+		assertArrayEquals(new String[] { "tag-1", "shared", "日本語" }, tags.getValues());
+		assertEquals(0.25, document.getProperties().get("test:rating").getDoubleValue(0), 0);
+		assertTrue(document.getProperties().get(CmisProperty.DOC_ISLATESTEVERSION).getBooleanValue(false));
+		// declared without a value
+		assertTrue(folder.hasProperty(CmisProperty.OBJECT_CHANGETOKEN));
+		assertNull(folder.getPropertyValue(CmisProperty.OBJECT_CHANGETOKEN));
+	}
+
+	@Test
+	public void pullParserReadsTheFeedItself() throws Exception {
+		CmisItem feed = TestFeeds.parse(TestFeeds.feed(1)).getFeedItem();
+		assertEquals("Company Home", feed.getTitle());
+		assertEquals("urn:uuid:root-children", feed.getId());
+		assertEquals(TestFeeds.SERVER + "/i/root", feed.getParentUrl());
+	}
+
+	@Test
+	public void pullParserAgreesWithTheDocumentModel() throws Exception {
+		String xml = TestFeeds.feed(50);
+		CmisItemCollection parsed = TestFeeds.parse(xml);
+		CmisItemCollection built = CmisItemCollection.createFromFeed(TestFeeds.document(xml), new CmisPropertyDescriptors());
+		TestFeeds.assertSameItems(built.getItems(), parsed.getItems());
+	}
+
+	@Test
+	public void parallelDecodingKeepsTheFeedOrder() throws Exception {
+		String xml = TestFeeds.feed(1000);
+		CmisItemCollection.setParallelThreshold(0);
+		CmisItemCollection serial = TestFeeds.parse(xml);
+		CmisItemCollection.setParallelThreshold(1);
+		CmisItemCollection parallel = TestFeeds.parse(xml);
+
+		assertEquals(1000, parallel.getNumItems());
+		assertEquals(1000, parallel.getItems().size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("urn:uuid:item-" + i, parallel.getItems().get(i).getId());
+		}
+		TestFeeds.assertSameItems(serial.getItems(), parallel.getItems());
+		TestFeeds.assertSameItem(serial.getFeedItem(), parallel.getFeedItem());
+	}
+
+	@Test
+	public void recordedEntriesKeepWhitespaceContent() throws Exception {
+		String xml = TestFeeds.feed(4).replace("<title>Folder 2</title>", "<title>  </title>").replace("<cmis:value>admin</cmis:value>",
+				"<cmis:value> </cmis:value>");
+		CmisItemCollection.setParallelThreshold(1);
+		List<CmisItem> items = TestFeeds.parse(xml).getItems();
+		assertEquals("  ", items.get(2).getTitle());
+		assertEquals(" ", items.get(2).getPropertyValue(CmisProperty.OBJECT_CREATEDBY));
+		CmisItemCollection.setParallelThreshold(0);
+		TestFeeds.assertSameItems(TestFeeds.parse(xml).getItems(), items);
+	}
+
+	@Test(expected = XmlPullParserException.class)
+	public void malformedEntryFailsOnTheParsingThread() throws Exception {
+		CmisItemCollection.setParallelThreshold(1);
+		TestFeeds.parse(TestFeeds.feed(20).replace("<id>urn:uuid:item-12</id>", "text<id>urn:uuid:item-12</id>"));
+	}
+
+	@Test
+	public void entriesShareDescriptorsAndRepeatedValues() throws Exception {
+		List<CmisItem> items = TestFeeds.parse(TestFeeds.feed(6)).getItems();
+		CmisProperty first = items.get(1).getProperties().get(CmisProperty.OBJECT_CREATEDBY);
+		CmisProperty second = items.get(3).getProperties().get(CmisProperty.OBJECT_CREATEDBY);
+		assertSame(first.getDescriptor(), second.getDescriptor());
+		assertSame(first.getValue(), second.getValue());
+		assertSame(items.get(0).getAuthor(), items.get(3).getAuthor());
+	}
+
+	@Test
+	public void listenerGetsTheEntriesInBatches() throws Exception {
+		final List<Integer> starts = new ArrayList<Integer>();
+		final List<CmisItem> published = new ArrayList<CmisItem>();
+		CmisItemCollection collection = CmisItemCollection.createFromParser(TestFeeds.parser(TestFeeds.feed(45)), new CmisPropertyDescriptors(),
+				new EntryListener() {
+					public void onEntriesParsed(int start, List<CmisItem> entries) {
+						assertEquals(published.size(), start);
+						starts.add(start);
+						published.addAll(entries);
+					}
+				});
+
+		// a small first batch, then larger ones : the rest comes with the collection
+		assertEquals(2, starts.size());
+		assertEquals(Integer.valueOf(0), starts.get(0));
+		assertEquals(Integer.valueOf(8), starts.get(1));
+		assertEquals(40, published.size());
+		for (int i = 0; i < published.size(); i++) {
+			assertSame(collection.getItems().get(i), published.get(i));
+		}
+		assertEquals(45, collection.getItems().size());
+	}
+
+	@Test
+	public void parallelDecodingKeepsTheBatches() throws Exception {
+		CmisItemCollection.setParallelThreshold(4);
+		final List<Integer> starts = new ArrayList<Integer>();
+		final List<CmisItem> published = new ArrayList<CmisItem>();
+		CmisItemCollection collection = CmisItemCollection.createFromParser(TestFeeds.parser(TestFeeds.feed(45)), new CmisPropertyDescriptors(),
+				new EntryListener() {
+					public void onEntriesParsed(int start, List<CmisItem> entries) {
+						assertEquals(published.size(), start);
+						starts.add(start);
+						published.addAll(entries);
+					}
+				});
+
+		assertEquals(2, starts.size());
+		assertEquals(Integer.valueOf(8), starts.get(1));
+		for (int i = 0; i < published.size(); i++) {
+			assertSame(collection.getItems().get(i), published.get(i));
+			assertEquals("urn:uuid:item-" + i, published.get(i).getId());
+		}
+		assertEquals(45, collection.getItems().size());
+	}
+
+	@Test
+	public void emptyFeed() throws Exception {
+		CmisItemCollection collection = TestFeeds.parse(TestFeeds.feed(0));
+		assertTrue(collection.getItems().isEmpty());
+		assertEquals(0, collection.getNumItems());
+		assertFalse(collection.isStale());
+	}
+
+	@Test
+	public void freshnessOfACachedCopy() throws Exception {
+		CmisItemCollection collection = TestFeeds.parse(TestFeeds.feed(1));
+		collection.setFreshness(1000, true);
+		assertTrue(collection.isStale());
+		assertEquals(1000, collection.getFetchedAt());
+
+		collection.setFreshness(2000, false);
+		assertFalse(collection.isStale());
+		assertEquals(2000, collection.getFetchedAt());
+	}
+}
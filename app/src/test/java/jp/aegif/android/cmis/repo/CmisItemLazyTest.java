@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import jp.aegif.android.cmis.utils.CompactInput;
+import jp.aegif.android.cmis.utils.CompactOutput;
+
+import org.junit.Test;
+
+/**
+ * The compact form of the items, without the Parcel around it.
+ */
+public class CmisItemLazyTest {
+
+	@Test
+	public void lazyFieldsRoundTrip() throws Exception {
+		List<CmisItem> items = TestFeeds.parse(TestFeeds.feed(20)).getItems();
+		CompactOutput out = new CompactOutput();
+		for (CmisItem item : items) {
+			item.writeLazy(out);
+		}
+
+		CompactInput in = new CompactInput(out.toByteArray());
+		for (CmisItem item : items) {
+			TestFeeds.assertSameLazyItem(item, CmisItemLazy.readLazy(in));
+		}
+	}
+
+	@Test
+	public void emptyItemRoundTrip() {
+		CmisItemLazy item = new CmisItemLazy();
+		CompactOutput out = new CompactOutput();
+		item.writeLazy(out);
+
+		CmisItemLazy read = CmisItemLazy.readLazy(new CompactInput(out.toByteArray()));
+		TestFeeds.assertSameLazyItem(item, read);
+		assertNull(read.getModificationDate());
+		assertEquals(-1, read.getContentLength());
+	}
+
+	@Test
+	public void copyKeepsTheLazyFields() throws Exception {
+		for (CmisItem item : TestFeeds.parse(TestFeeds.feed(4)).getItems()) {
+			TestFeeds.assertSameLazyItem(item, new CmisItemLazy(item));
+		}
+	}
+
+	@Test
+	public void itemsRoundTripWithTheirProperties() throws Exception {
+		List<CmisItem> items = TestFeeds.parse(TestFeeds.feed(10)).getItems();
+		CompactOutput out = new CompactOutput();
+		for (CmisItem item : items) {
+			item.writeFields(out);
+		}
+
+		CompactInput in = new CompactInput(out.toByteArray());
+		for (CmisItem item : items) {
+			CmisItem read = new CmisItem();
+			read.readFields(in);
+			TestFeeds.assertSameItem(item, read);
+		}
+	}
+
+	@Test
+	public void truncatedItemIsRejected() throws Exception {
+		CmisItem item = TestFeeds.parse(TestFeeds.feed(2)).getItems().get(1);
+		CompactOutput out = new CompactOutput();
+		item.writeFields(out);
+		byte[] data = out.toByteArray();
+		byte[] truncated = new byte[data.length / 2];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		try {
+			new CmisItem().readFields(new CompactInput(truncated));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import jp.aegif.android.cmis.model.Server;
+import jp.aegif.android.cmis.repo.CmisServiceDocument.Workspace;
+import jp.aegif.android.cmis.utils.CacheMetadata;
+import jp.aegif.android.cmis.utils.FeedUtils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CmisServiceDocumentTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void workspacesOfTheServiceDocument() throws Exception {
+		CacheMetadata metadata = new CacheMetadata();
+		CmisServiceDocument document = CmisServiceDocument.createFromFeed(TestFeeds.document(service()), metadata);
+
+		assertEquals(Arrays.asList("Main Repository", "Archive"), document.getWorkspaceNames());
+		assertSame(metadata, document.getMetadata());
+		assertNull(document.getWorkspace("Other"));
+
+		Workspace main = document.getWorkspace("Main Repository");
+		assertEquals(TestFeeds.SERVER + "/main/children", main.getRootCollection());
+		assertEquals(TestFeeds.SERVER + "/main/types", main.getTypesCollection());
+		assertEquals(TestFeeds.SERVER + "/main/query?q={q}", main.getUriTemplateQuery());
+		assertEquals(TestFeeds.SERVER + "/main/type?id={id}", main.getUriTemplateTypeById());
+
+		Map<String, ArrayList<CmisProperty>> properties = main.getProperties();
+		assertEquals(Arrays.asList("repositoryId=main", "repositoryName=Main Repository", "productName=Test"), pairs(properties.get(Server.INFO_GENERAL)));
+		assertEquals(Arrays.asList("ACL=manage", "GetDescendants=true"), pairs(properties.get(Server.INFO_CAPABILITIES)));
+		assertTrue(properties.get(Server.INFO_ACL_CAPABILITIES).isEmpty());
+
+		Workspace archive = document.getWorkspace("Archive");
+		assertEquals("", archive.getTypesCollection());
+		assertNull(archive.getUriTemplateQuery());
+		assertTrue(archive.getProperties().get(Server.INFO_CAPABILITIES).isEmpty());
+	}
+
+	@Test
+	public void documentRoundTrip() throws Exception {
+		CmisServiceDocument document = CmisServiceDocument.createFromFeed(TestFeeds.document(service()), new CacheMetadata());
+		File file = new File(folder.getRoot(), "services/server.svc");
+		CmisServiceDocument.write(document, file);
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		CmisServiceDocument read = CmisServiceDocument.read(file);
+		assertEquals(document.getWorkspaceNames(), read.getWorkspaceNames());
+		assertEquals(document.getMetadata().getFetchedAt(), read.getMetadata().getFetchedAt());
+		for (String name : document.getWorkspaceNames()) {
+			Workspace expected = document.getWorkspace(name);
+			Workspace actual = read.getWorkspace(name);
+			assertTrue(name, expected.hasSameUrls(actual));
+			assertEquals(expected.getUriTemplateQuery(), actual.getUriTemplateQuery());
+			for (String category : new String[] { Server.INFO_GENERAL, Server.INFO_CAPABILITIES, Server.INFO_ACL_CAPABILITIES }) {
+				assertEquals(pairs(expected.getProperties().get(category)), pairs(actual.getProperties().get(category)));
+			}
+		}
+	}
+
+	@Test
+	public void withMetadataKeepsTheWorkspaces() throws Exception {
+		CmisServiceDocument document = CmisServiceDocument.createFromFeed(TestFeeds.document(service()), new CacheMetadata());
+		CacheMetadata revalidated = new CacheMetadata();
+		CmisServiceDocument copy = document.withMetadata(revalidated);
+		assertSame(revalidated, copy.getMetadata());
+		assertSame(document.getWorkspace("Archive"), copy.getWorkspace("Archive"));
+	}
+
+	@Test
+	public void sameUrlsComparesTheConnectionUrlsOnly() throws Exception {
+		CmisServiceDocument document = CmisServiceDocument.createFromFeed(TestFeeds.document(service()), new CacheMetadata());
+		CmisServiceDocument renamed = CmisServiceDocument.createFromFeed(TestFeeds.document(service().replace("productName>Test", "productName>Other")),
+				new CacheMetadata());
+		Workspace main = document.getWorkspace("Main Repository");
+		assertTrue(main.hasSameUrls(renamed.getWorkspace("Main Repository")));
+		assertFalse(main.hasSameUrls(document.getWorkspace("Archive")));
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedFileIsRejected() throws Exception {
+		File file = write();
+		TestFeeds.truncate(file, file.length() / 2);
+		CmisServiceDocument.read(file);
+	}
+
+	@Test(expected = IOException.class)
+	public void otherFileIsRejected() throws Exception {
+		File file = write();
+		TestFeeds.overwrite(file, service());
+		CmisServiceDocument.read(file);
+	}
+
+	private File write() throws Exception {
+		File file = new File(folder.getRoot(), "server.svc");
+		CmisServiceDocument.write(CmisServiceDocument.createFromFeed(TestFeeds.document(service()), new CacheMetadata()), file);
+		return file;
+	}
+
+	private static List<String> pairs(List<CmisProperty> properties) {
+		List<String> pairs = new ArrayList<String>();
+		for (CmisProperty property : properties) {
+			pairs.add(property.getDisplayName() + "=" + property.getValue());
+		}
+		return pairs;
+	}
+
+	private static String service() {
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		xml.append("<service xmlns=\"http://www.w3.org/2007/app\" xmlns:atom=\"").append(FeedUtils.ATOM_NS);
+		xml.append("\" xmlns:cmisra=\"").append(FeedUtils.CMISRA_NS).append("\" xmlns:cmis=\"").append(FeedUtils.CMIS_NS).append("\">\n");
+
+		xml.append("<workspace>\n<atom:title>Main Repository</atom:title>\n");
+		xml.append("<cmisra:repositoryInfo>\n");
+		xml.append("<cmis:repositoryId>main</cmis:repositoryId>\n");
+		xml.append("<cmis:repositoryName>Main Repository</cmis:repositoryName>\n");
+		xml.append("<cmis:productName>Test</cmis:productName>\n");
+		xml.append("<cmis:capabilities><cmis:capabilityACL>manage</cmis:capabilityACL>");
+		xml.append("<cmis:capabilityGetDescendants>true</cmis:capabilityGetDescendants></cmis:capabilities>\n");
+		xml.append("<cmis:aclCapability><cmis:supportedPermissions>basic</cmis:supportedPermissions></cmis:aclCapability>\n");
+		xml.append("</cmisra:repositoryInfo>\n");
+		collection(xml, "/main/children", "root");
+		collection(xml, "/main/types", "types");
+		template(xml, "/main/query?q={q}", "query");
+		template(xml, "/main/type?id={id}", "typebyid");
+		xml.append("</workspace>\n");
+
+		xml.append("<workspace>\n<atom:title>Archive</atom:title>\n");
+		xml.append("<cmisra:repositoryInfo><cmis:repositoryId>archive</cmis:repositoryId>");
+		xml.append("<cmis:repositoryName>Archive</cmis:repositoryName></cmisra:repositoryInfo>\n");
+		collection(xml, "/archive/children", "root");
+		xml.append("</workspace>\n");
+		xml.append("</service>\n");
+		return xml.toString();
+	}
+
+	private static void collection(StringBuilder xml, String path, String type) {
+		xml.append("<collection href=\"").append(TestFeeds.SERVER).append(path).append("\"><atom:title>").append(type);
+		xml.append("</atom:title><cmisra:collectionType>").append(type).append("</cmisra:collectionType></collection>\n");
+	}
+
+	private static void template(StringBuilder xml, String path, String type) {
+		xml.append("<cmisra:uritemplate><cmisra:template>").append(TestFeeds.SERVER).append(path);
+		xml.append("</cmisra:template><cmisra:type>").append(type).append("</cmisra:type></cmisra:uritemplate>\n");
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import jp.aegif.android.cmis.utils.FeedUtils;
+import jp.aegif.android.cmis.utils.TestData;
+
+import org.dom4j.Element;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CmisTypeDefinitionTest {
+
+	private static final long TTL = 60 * 60 * 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void typeFeedWithNestedChildren() throws Exception {
+		List<CmisTypeDefinition> types = new ArrayList<CmisTypeDefinition>();
+		CmisTypeDefinition.createFromTypeFeed(TestFeeds.document(typeFeed()).getRootElement(), types);
+
+		assertEquals(4, types.size());
+		assertEquals("cmis:document", types.get(0).getId());
+		assertEquals("test:invoice", types.get(1).getId());
+		assertEquals("test:signedInvoice", types.get(2).getId());
+		assertEquals("cmis:folder", types.get(3).getId());
+
+		CmisTypeDefinition invoice = types.get(1);
+		assertEquals("Invoice", invoice.getDisplayName());
+		assertEquals("Invoice type", invoice.getDescription());
+		assertEquals("cmis:document", invoice.getBaseId());
+		assertTrue(invoice.isCreatable());
+		assertFalse(invoice.isVersionable());
+		assertEquals("allowed", invoice.getContentStreamAllowed());
+		assertEquals(2, invoice.getPropertyDefinition().size());
+		assertEquals("integer", invoice.getPropertyDefinition().get("test:amount").getPropertyType());
+		assertEquals("Amount", invoice.getDisplayNameForProperty(new CmisProperty(null, "test:amount", null, null, "12")));
+		assertEquals("", invoice.getDisplayNameForProperty(new CmisProperty(null, "test:unknown", null, null, "12")));
+	}
+
+	@Test
+	public void descendantsLinkOfAnEntry() throws Exception {
+		List<?> entries = TestFeeds.document(typeFeed()).getRootElement().elements("entry");
+		assertEquals(TestFeeds.SERVER + "/t/cmis:document/descendants", CmisTypeDefinition.getDescendantsUrl((Element) entries.get(0)));
+		assertNull(CmisTypeDefinition.getDescendantsUrl((Element) entries.get(1)));
+	}
+
+	@Test
+	public void definitionRoundTrip() throws Exception {
+		CmisTypeDefinition invoice = invoice();
+		TestData data = new TestData();
+		invoice.writeTo(data.output());
+		assertSameDefinition(invoice, CmisTypeDefinition.readFrom(data.input()));
+	}
+
+	@Test
+	public void cacheReadsTheStoredDefinitions() throws Exception {
+		File root = new File(folder.getRoot(), "types");
+		TypeDefinitionCache cache = new TypeDefinitionCache(root, TTL);
+		CmisTypeDefinition invoice = invoice();
+		cache.put(invoice);
+		assertSame(invoice, cache.get("test:invoice"));
+		assertNull(cache.get("test:other"));
+
+		TypeDefinitionCache reloaded = new TypeDefinitionCache(root, TTL);
+		assertEquals(0, reloaded.getCount());
+		assertSameDefinition(invoice, reloaded.get("test:invoice"));
+		assertEquals(1, reloaded.getCount());
+	}
+
+	@Test
+	public void oldDefinitionsAreFetchedAgain() throws Exception {
+		File root = new File(folder.getRoot(), "types");
+		new TypeDefinitionCache(root, TTL).put(invoice());
+		for (File file : root.listFiles()) {
+			file.setLastModified(System.currentTimeMillis() - 2 * TTL);
+		}
+		assertNull(new TypeDefinitionCache(root, TTL).get("test:invoice"));
+	}
+
+	@Test
+	public void oldDefinitionsInMemoryAreFetchedAgain() throws Exception {
+		TypeDefinitionCache cache = new TypeDefinitionCache(null, 0);
+		cache.put(invoice());
+		assertNull(cache.get("test:invoice"));
+		assertEquals(0, cache.getCount());
+	}
+
+	@Test
+	public void unreadableDefinitionIsDeleted() throws Exception {
+		File root = new File(folder.getRoot(), "types");
+		new TypeDefinitionCache(root, TTL).put(invoice());
+		File file = root.listFiles()[0];
+		TestFeeds.overwrite(file, "not a definition");
+
+		assertNull(new TypeDefinitionCache(root, TTL).get("test:invoice"));
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void prefetchedWithinTheTimeToLive() throws Exception {
+		File root = new File(folder.getRoot(), "types");
+		TypeDefinitionCache cache = new TypeDefinitionCache(root, TTL);
+		assertFalse(cache.isPrefetched());
+		cache.setPrefetched();
+		assertTrue(cache.isPrefetched());
+		assertTrue(new TypeDefinitionCache(root, TTL).isPrefetched());
+		assertFalse(new TypeDefinitionCache(root, 0).isPrefetched());
+	}
+
+	@Test
+	public void memoryOnlyCache() throws Exception {
+		TypeDefinitionCache cache = new TypeDefinitionCache(null, TTL);
+		CmisTypeDefinition invoice = invoice();
+		cache.put(invoice);
+		assertSame(invoice, cache.get("test:invoice"));
+		cache.setPrefetched();
+		assertFalse(cache.isPrefetched());
+	}
+
+	private static CmisTypeDefinition invoice() throws Exception {
+		List<CmisTypeDefinition> types = new ArrayList<CmisTypeDefinition>();
+		CmisTypeDefinition.createFromTypeFeed(TestFeeds.document(typeFeed()).getRootElement(), types);
+		return types.get(1);
+	}
+
+	private static void assertSameDefinition(CmisTypeDefinition expected, CmisTypeDefinition actual) {
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getLocalName(), actual.getLocalName());
+		assertEquals(expected.getLocalNamespace(), actual.getLocalNamespace());
+		assertEquals(expected.getDisplayName(), actual.getDisplayName());
+		assertEquals(expected.getQueryName(), actual.getQueryName());
+		assertEquals(expected.getDescription(), actual.getDescription());
+		assertEquals(expected.getBaseId(), actual.getBaseId());
+		assertEquals(expected.isCreatable(), actual.isCreatable());
+		assertEquals(expected.isFileable(), actual.isFileable());
+		assertEquals(expected.isQueryable(), actual.isQueryable());
+		assertEquals(expected.isVersionable(), actual.isVersionable());
+		assertEquals(expected.getContentStreamAllowed(), actual.getContentStreamAllowed());
+		assertEquals(expected.getPropertyDefinition().keySet(), actual.getPropertyDefinition().keySet());
+		for (String id : expected.getPropertyDefinition().keySet()) {
+			CmisPropertyTypeDefinition expectedProperty = expected.getPropertyDefinition().get(id);
+			CmisPropertyTypeDefinition actualProperty = actual.getPropertyDefinition().get(id);
+			assertEquals(id, expectedProperty.getDisplayName(), actualProperty.getDisplayName());
+			assertEquals(id, expectedProperty.getPropertyType(), actualProperty.getPropertyType());
+			assertEquals(id, expectedProperty.getCardinality(), actualProperty.getCardinality());
+			assertEquals(id, expectedProperty.isRequired(), actualProperty.isRequired());
+		}
+	}
+
+	private static String typeFeed() {
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		xml.append("<feed xmlns=\"").append(FeedUtils.ATOM_NS).append("\" xmlns:cmisra=\"").append(FeedUtils.CMISRA_NS);
+		xml.append("\" xmlns:cmis=\"").append(FeedUtils.CMIS_NS).append("\">\n");
+		xml.append("<title>Types</title>\n");
+		xml.append("<entry>\n");
+		type(xml, "cmis:document", "Document", "cmis:document", true);
+		xml.append("<cmisra:children><feed>\n<entry>\n");
+		type(xml, "test:invoice", "Invoice", "cmis:document", false);
+		xml.append("<cmisra:children><feed>\n<entry>\n");
+		type(xml, "test:signedInvoice", "Signed invoice", "cmis:document", false);
+		xml.append("</entry>\n</feed></cmisra:children>\n");
+		xml.append("</entry>\n</feed></cmisra:children>\n");
+		xml.append("</entry>\n");
+		xml.append("<entry>\n");
+		type(xml, "cmis:folder", "Folder", "cmis:folder", false);
+		xml.append("</entry>\n");
+		xml.append("</feed>\n");
+		return xml.toString();
+	}
+
+	private static void type(StringBuilder xml, String id, String displayName, String baseId, boolean descendants) {
+		String url = TestFeeds.SERVER + "/t/" + id;
+		xml.append("<id>urn:type:").append(id).append("</id>\n");
+		xml.append("<title>").append(displayName).append("</title>\n");
+		xml.append("<link rel=\"self\" href=\"").append(url).append("\"/>\n");
+		if (descendants) {
+			xml.append("<link rel=\"down\" href=\"").append(url).append("/children\" type=\"application/atom+xml;type=feed\"/>\n");
+			xml.append("<link rel=\"down\" href=\"").append(url).append("/descendants\" type=\"application/cmistree+xml\"/>\n");
+		}
+		xml.append("<cmisra:type>\n");
+		xml.append("<cmis:id>").append(id).append("</cmis:id>\n");
+		xml.append("<cmis:localName>").append(id.substring(id.indexOf(':') + 1)).append("</cmis:localName>\n");
+		xml.append("<cmis:localNamespace>http://example.com/model</cmis:localNamespace>\n");
+		xml.append("<cmis:displayName>").append(displayName).append("</cmis:displayName>\n");
+		xml.append("<cmis:queryName>").append(id).append("</cmis:queryName>\n");
+		xml.append("<cmis:description> ").append(displayName).append(" type </cmis:description>\n");
+		xml.append("<cmis:baseId>").append(baseId).append("</cmis:baseId>\n");
+		xml.append("<cmis:creatable>true</cmis:creatable>\n");
+		xml.append("<cmis:fileable>true</cmis:fileable>\n");
+		xml.append("<cmis:queryable>true</cmis:queryable>\n");
+		xml.append("<cmis:versionable>false</cmis:versionable>\n");
+		xml.append("<cmis:contentStreamAllowed>allowed</cmis:contentStreamAllowed>\n");
+		property(xml, "propertyStringDefinition", "cmis:name", "Name", "string", true);
+		if (id.startsWith("test:")) {
+			property(xml, "propertyIntegerDefinition", "test:amount", "Amount", "integer", false);
+		}
+		xml.append("</cmisra:type>\n");
+	}
+
+	private static void property(StringBuilder xml, String element, String id, String displayName, String type, boolean required) {
+		xml.append("<cmis:").append(element).append(">");
+		xml.append("<cmis:id>").append(id).append("</cmis:id>");
+		xml.append("<cmis:displayName>").append(displayName).append("</cmis:displayName>");
+		xml.append("<cmis:propertyType>").append(type).append("</cmis:propertyType>");
+		xml.append("<cmis:cardinality>single</cmis:cardinality>");
+		xml.append("<cmis:required>").append(required).append("</cmis:required>");
+		xml.append("</cmis:").append(element).append(">\n");
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+
+import jp.aegif.android.cmis.utils.CacheMetadata;
+
+import org.junit.Test;
+
+import android.content.ComponentCallbacks2;
+
+public class CollectionCacheTest {
+
+	private static final String FEED = TestFeeds.SERVER + "/i/item-0/children";
+
+	@Test
+	public void sameFeedSameEntry() {
+		CollectionCache cache = new CollectionCache(1000);
+		CmisItemCollection collection = collection(100);
+		cache.put("HTTP://CMIS.Example.com/service/cmis/i/item-0/children?maxItems=20&skipCount=0", collection, new CacheMetadata());
+
+		assertSame(collection, cache.get(FEED + "?skipCount=0&maxItems=20").getCollection());
+		assertNull(cache.get(FEED));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(100, cache.getSize());
+	}
+
+	@Test
+	public void staleEntryIsReturnedAsAMiss() {
+		CollectionCache cache = new CollectionCache(1000);
+		CacheMetadata metadata = new CacheMetadata();
+		metadata.expire();
+		cache.put(FEED, collection(100), metadata);
+
+		CollectionCache.Entry entry = cache.get(FEED);
+		assertNotNull(entry);
+		assertFalse(entry.isFresh());
+		assertSame(metadata, entry.getMetadata());
+		assertEquals(0, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void putReplacesTheEntry() {
+		CollectionCache cache = new CollectionCache(1000);
+		cache.put(FEED, collection(100), new CacheMetadata());
+		CmisItemCollection replacement = collection(200);
+		cache.put(FEED, replacement, new CacheMetadata());
+
+		assertSame(replacement, cache.get(FEED).getCollection());
+		assertEquals(1, cache.getCount());
+		assertEquals(200, cache.getSize());
+	}
+
+	@Test
+	public void largeCollectionIsNotKept() {
+		CollectionCache cache = new CollectionCache(1000);
+		cache.put(FEED, collection(100), new CacheMetadata());
+		// drops the previous copy too
+		cache.put(FEED, collection(251), new CacheMetadata());
+
+		assertNull(cache.get(FEED));
+		assertEquals(0, cache.getCount());
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void leastRecentlyUsedGoesFirst() {
+		CollectionCache cache = new CollectionCache(1000);
+		for (int i = 0; i < 4; i++) {
+			cache.put(FEED + i, collection(250), new CacheMetadata());
+		}
+		assertEquals(4, cache.getCount());
+		cache.get(FEED + 0);
+		cache.put(FEED + 4, collection(250), new CacheMetadata());
+
+		assertEquals(4, cache.getCount());
+		assertEquals(1000, cache.getSize());
+		assertNotNull(cache.get(FEED + 0));
+		assertNull(cache.get(FEED + 1));
+		assertNotNull(cache.get(FEED + 4));
+	}
+
+	@Test
+	public void invalidateDropsTheFeedWithAnyParameters() {
+		CollectionCache cache = new CollectionCache(1000);
+		cache.put(FEED, collection(10), new CacheMetadata());
+		cache.put(FEED + "?skipCount=20&maxItems=20", collection(10), new CacheMetadata());
+		cache.put(FEED + "?maxItems=20&filter=*", collection(10), new CacheMetadata());
+		cache.put(FEED + "2", collection(10), new CacheMetadata());
+		cache.put(TestFeeds.SERVER + "/i/item-0", collection(10), new CacheMetadata());
+
+		cache.invalidate(FEED + "?maxItems=20");
+		assertEquals(3, cache.getCount());
+		assertNotNull(cache.get(FEED));
+		assertNull(cache.get(FEED + "?maxItems=20&skipCount=20"));
+
+		cache.invalidate(FEED);
+		assertEquals(2, cache.getCount());
+		assertEquals(20, cache.getSize());
+		assertNotNull(cache.get(FEED + "2"));
+		assertNotNull(cache.get(TestFeeds.SERVER + "/i/item-0"));
+	}
+
+	@Test
+	public void trimMemoryFollowsTheLevel() {
+		CollectionCache cache = new CollectionCache(1000);
+		for (int i = 0; i < 4; i++) {
+			cache.put(FEED + i, collection(200), new CacheMetadata());
+		}
+		cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+		assertEquals(800, cache.getSize());
+
+		cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+		assertEquals(400, cache.getSize());
+		assertNull(cache.get(FEED + 0));
+		assertNotNull(cache.get(FEED + 3));
+
+		cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+		assertEquals(0, cache.getSize());
+		assertEquals(0, cache.getCount());
+	}
+
+	@Test
+	public void normalizeOnlyLowersSchemeAndHost() {
+		assertEquals("http://host/Path?a=1&b=2", CollectionCache.normalize("HTTP://HOST/Path?b=2&&a=1"));
+		assertEquals("http://host", CollectionCache.normalize("http://HOST"));
+		assertEquals("relative/Path", CollectionCache.normalize("relative/Path"));
+	}
+
+	private static CmisItemCollection collection(long size) {
+		CmisItemCollection collection = CmisItemCollection.create(new ArrayList<CmisItem>(), 0);
+		collection.setEstimatedSize(size);
+		return collection;
+	}
+}
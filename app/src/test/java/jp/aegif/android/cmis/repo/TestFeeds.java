@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.repo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import jp.aegif.android.cmis.utils.FeedUtils;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.io.SAXReader;
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Atom feeds shaped like the ones of the CMIS servers, and the checks the
+ * tests of the listing model share. Even entries are folders, odd entries
+ * documents with single, multi-valued and empty properties.
+ */
+final class TestFeeds {
+
+	static final String SERVER = "http://cmis.example.com/service/cmis";
+
+	private TestFeeds() {
+	}
+
+	static String feed(int count) {
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		xml.append("<feed xmlns=\"").append(FeedUtils.ATOM_NS).append("\" xmlns:app=\"http://www.w3.org/2007/app\"");
+		xml.append(" xmlns:cmisra=\"").append(FeedUtils.CMISRA_NS).append("\" xmlns:cmis=\"").append(FeedUtils.CMIS_NS).append("\">\n");
+		xml.append("<author><name>System</name></author>\n");
+		xml.append("<generator version=\"1.0\">Test</generator>\n");
+		xml.append("<id>urn:uuid:root-children</id>\n");
+		xml.append("<link rel=\"self\" href=\"").append(SERVER).append("/i/root/children\"/>\n");
+		xml.append("<link rel=\"up\" href=\"").append(SERVER).append("/i/root\" type=\"application/atom+xml;type=entry\"/>\n");
+		xml.append("<title>Company Home</title>\n");
+		xml.append("<updated>2010-01-05T12:56:35.404Z</updated>\n");
+		xml.append("<cmisra:numItems>").append(count).append("</cmisra:numItems>\n");
+		for (int i = 0; i < count; i++) {
+			xml.append(entry(i));
+		}
+		xml.append("</feed>\n");
+		return xml.toString();
+	}
+
+	static String entry(int i) {
+		boolean folder = i % 2 == 0;
+		String id = "item-" + i;
+		String url = SERVER + "/i/" + id;
+		StringBuilder xml = new StringBuilder();
+		xml.append("<entry>\n");
+		xml.append("<author><name>").append(i % 3 == 0 ? "admin" : "user" + i % 5).append("</name></author>\n");
+		if (folder) {
+			xml.append("<content>").append(id).append("</content>\n");
+		} else {
+			xml.append("<content type=\"text/plain\" src=\"").append(url).append("/content.txt\"/>\n");
+		}
+		xml.append("<id>urn:uuid:").append(id).append("</id>\n");
+		xml.append("<link rel=\"self\" href=\"").append(url).append("\"/>\n");
+		xml.append("<link rel=\"edit\" href=\"").append(url).append("\"/>\n");
+		xml.append("<link rel=\"up\" href=\"").append(SERVER).append("/i/root\" type=\"application/atom+xml;type=entry\"/>\n");
+		if (folder) {
+			xml.append("<link rel=\"down\" href=\"").append(url).append("/children\" type=\"application/atom+xml;type=feed\"/>\n");
+			xml.append("<link rel=\"down\" href=\"").append(url).append("/descendants\" type=\"application/cmistree+xml\"/>\n");
+		}
+		xml.append("<published>2010-01-05T12:56:35.388Z</published>\n");
+		xml.append("<summary>Entry ").append(i).append("</summary>\n");
+		xml.append("<title>").append(folder ? "Folder " : "Document ").append(i).append(folder ? "" : ".txt").append("</title>\n");
+		xml.append("<updated>2010-02-").append(10 + i % 18).append("T08:30:00.").append(100 + i % 900).append("Z</updated>\n");
+		xml.append("<app:edited>2010-02-10T08:30:00Z</app:edited>\n");
+		xml.append("<cmisra:object>\n<cmis:properties>\n");
+		property(xml, "propertyId", CmisProperty.OBJECT_ID, "workspace://SpacesStore/" + id);
+		property(xml, "propertyId", CmisProperty.OBJECT_BASETYPEID, folder ? "cmis:folder" : "cmis:document");
+		property(xml, "propertyId", CmisProperty.OBJECT_TYPEID, folder ? "cmis:folder" : "cmis:document");
+		property(xml, "propertyString", CmisProperty.OBJECT_NAME, (folder ? "Folder " : "Document ") + i);
+		property(xml, "propertyString", CmisProperty.OBJECT_CREATEDBY, "admin");
+		property(xml, "propertyDateTime", CmisProperty.OBJECT_CREATIONDATE, "2010-01-05T12:56:35.388Z");
+		property(xml, "propertyDateTime", CmisProperty.OBJECT_LASTMODIFICATION, "2010-02-10T08:30:00.000+01:00");
+		if (folder) {
+			property(xml, "propertyString", CmisProperty.FOLDER_PATH, "/Folder " + i);
+			property(xml, "propertyId", CmisProperty.FOLDER_PARENTID, "workspace://SpacesStore/root");
+			property(xml, "propertyString", CmisProperty.OBJECT_CHANGETOKEN);
+			property(xml, "propertyId", CmisProperty.FOLDER_ALLOWCHILDREN);
+		} else {
+			property(xml, "propertyInteger", CmisProperty.CONTENT_STREAMLENGTH, String.valueOf(1000 + i));
+			property(xml, "propertyString", CmisProperty.CONTENT_STREAMMIMETYPE, "text/plain");
+			property(xml, "propertyString", CmisProperty.CONTENT_STREAMFILENAME, "Document " + i + ".txt");
+			property(xml, "propertyId", CmisProperty.CONTENT_STREAMID, "store://" + id + ".bin");
+			property(xml, "propertyString", CmisProperty.OBJECT_CHANGETOKEN, "token-" + i);
+			property(xml, "propertyString", CmisProperty.DOC_VERSIONLABEL, "1." + i % 3);
+			property(xml, "propertyBoolean", CmisProperty.DOC_ISLATESTEVERSION, "true");
+			property(xml, "propertyDecimal", "test:rating", String.valueOf(i / 4.0));
+			property(xml, "propertyString", "test:tags", "tag-" + i % 4, "shared", "日本語");
+		}
+		xml.append("</cmis:properties>\n");
+		xml.append("<cmis:allowableActions><cmis:canDeleteObject>true</cmis:canDeleteObject></cmis:allowableActions>\n");
+		xml.append("</cmisra:object>\n");
+		xml.append("<cmisra:pathSegment>").append(id).append("</cmisra:pathSegment>\n");
+		xml.append("</entry>\n");
+		return xml.toString();
+	}
+
+	private static void property(StringBuilder xml, String type, String definitionId, String... values) {
+		xml.append("<cmis:").append(type).append(" propertyDefinitionId=\"").append(definitionId);
+		xml.append("\" displayName=\"").append(definitionId.substring(definitionId.indexOf(':') + 1)).append("\"");
+		if (values.length == 0) {
+			xml.append("/>\n");
+			return;
+		}
+		xml.append(">");
+		for (String value : values) {
+			xml.append("<cmis:value>").append(value).append("</cmis:value>");
+		}
+		xml.append("</cmis:").append(type).append(">\n");
+	}
+
+	/**
+	 * A namespace aware parser on the root element, as
+	 * {@link FeedUtils#newPullParser} returns.
+	 */
+	static XmlPullParser parser(String xml) throws XmlPullParserException, IOException {
+		XmlPullParser parser = new KXmlParser();
+		parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+		parser.setInput(new StringReader(xml));
+		parser.nextTag();
+		return parser;
+	}
+
+	static Document document(String xml) throws DocumentException {
+		return new SAXReader().read(new StringReader(xml));
+	}
+
+	static CmisItemCollection parse(String xml) throws XmlPullParserException, IOException {
+		return CmisItemCollection.createFromParser(parser(xml), new CmisPropertyDescriptors(), null);
+	}
+
+	/**
+	 * Cuts the file to its first length bytes, as a write interrupted by a
+	 * crash leaves it.
+	 */
+	static void truncate(File file, long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Replaces the file with some text, for files of another kind.
+	 */
+	static void overwrite(File file, String text) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	static void assertSameItems(List<CmisItem> expected, List<CmisItem> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSameItem(expected.get(i), actual.get(i));
+		}
+	}
+
+	static void assertSameItem(CmisItem expected, CmisItem actual) {
+		assertSameLazyItem(expected, actual);
+		Map<String, CmisProperty> expectedProperties = expected.getProperties();
+		Map<String, CmisProperty> actualProperties = actual.getProperties();
+		assertEquals(expectedProperties.keySet(), actualProperties.keySet());
+		for (Map.Entry<String, CmisProperty> entry : expectedProperties.entrySet()) {
+			CmisProperty expectedProperty = entry.getValue();
+			CmisProperty actualProperty = actualProperties.get(entry.getKey());
+			assertEquals(entry.getKey(), expectedProperty.getType(), actualProperty.getType());
+			assertEquals(entry.getKey(), expectedProperty.getDisplayName(), actualProperty.getDisplayName());
+			assertArrayEquals(entry.getKey(), expectedProperty.getValues(), actualProperty.getValues());
+		}
+	}
+
+	static void assertSameLazyItem(CmisItemLazy expected, CmisItemLazy actual) {
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getId(), expected.getTitle(), actual.getTitle());
+		assertEquals(expected.getId(), expected.getAuthor(), actual.getAuthor());
+		assertEquals(expected.getId(), expected.getSelfUrl(), actual.getSelfUrl());
+		assertEquals(expected.getId(), expected.getDownLink(), actual.getDownLink());
+		assertEquals(expected.getId(), expected.getParentUrl(), actual.getParentUrl());
+		assertEquals(expected.getId(), expected.getContentUrl(), actual.getContentUrl());
+		assertEquals(expected.getId(), expected.getMimeType(), actual.getMimeType());
+		assertEquals(expected.getId(), expected.getModificationDate(), actual.getModificationDate());
+		assertEquals(expected.getId(), expected.getSize(), actual.getSize());
+		assertEquals(expected.getId(), expected.getContentLength(), actual.getContentLength());
+		assertEquals(expected.getId(), expected.getPath(), actual.getPath());
+		assertEquals(expected.getId(), expected.getBaseType(), actual.getBaseType());
+		assertEquals(expected.getId(), expected.getChangeToken(), actual.getChangeToken());
+		assertEquals(expected.getId(), expected.getContentStreamId(), actual.getContentStreamId());
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+
+import org.junit.Test;
+
+public class CacheMetadataTest {
+
+	private static final String DATE = "Tue, 05 Jan 2010 12:56:35 GMT";
+
+	@Test
+	public void metadataRoundTrip() throws Exception {
+		CacheMetadata metadata = metadata("ETag", "\"v1\"", "Last-Modified", DATE, "Cache-Control", "max-age=60");
+		metadata.expire();
+		TestData data = new TestData();
+		metadata.writeTo(data.output());
+		new CacheMetadata().writeTo(data.output());
+
+		DataInputStream in = data.input();
+		CacheMetadata read = CacheMetadata.readFrom(in);
+
+		assertEquals("\"v1\"", read.getEtag());
+		assertEquals(DATE, read.getLastModified());
+		assertEquals(metadata.getFetchedAt(), read.getFetchedAt());
+		assertFalse(read.isFresh());
+		assertFalse(read.isUsableWhileStale());
+
+		CacheMetadata empty = CacheMetadata.readFrom(in);
+		assertNull(empty.getEtag());
+		assertNull(empty.getLastModified());
+		assertTrue(empty.isFresh());
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void freshnessFollowsCacheControl() {
+		// no directive : fresh until expired
+		assertTrue(metadata().isFresh());
+		assertTrue(metadata("Cache-Control", "private, max-age=3600").isFresh());
+		assertTrue(metadata("Cache-Control", "max-age=\"3600\"").isFresh());
+		assertFalse(metadata("Cache-Control", "max-age=0").isFresh());
+		assertFalse(metadata("Cache-Control", "max-age=soon").isFresh());
+		assertFalse(metadata("Cache-Control", "No-Cache").isFresh());
+	}
+
+	@Test
+	public void staleCopyUsableUnlessTheServerSaysOtherwise() {
+		assertTrue(metadata("Cache-Control", "max-age=0").isUsableWhileStale());
+		assertFalse(metadata("Cache-Control", "max-age=0, must-revalidate").isUsableWhileStale());
+		assertFalse(metadata("Cache-Control", "no-cache").isUsableWhileStale());
+		assertTrue(metadata("Cache-Control", "no-store").isUsableWhileStale());
+		assertFalse(metadata("Cache-Control", "no-store").isStorable());
+		assertTrue(metadata().isStorable());
+	}
+
+	@Test
+	public void expireUntilTheNextResponse() {
+		CacheMetadata metadata = metadata("ETag", "\"v1\"");
+		metadata.expire();
+		assertFalse(metadata.isFresh());
+		assertFalse(metadata.isUsableWhileStale());
+
+		metadata.revalidated(new TestResponse(304));
+		assertTrue(metadata.isFresh());
+		metadata.expire();
+		metadata.update(new TestResponse(200));
+		assertTrue(metadata.isFresh());
+	}
+
+	@Test
+	public void revalidatedKeepsTheValidatorsNotSentAgain() {
+		CacheMetadata metadata = metadata("ETag", "\"v1\"", "Last-Modified", DATE, "Cache-Control", "max-age=0");
+		metadata.revalidated(new TestResponse(304, "ETag", "\"v2\"", "Cache-Control", "max-age=60"));
+		assertEquals("\"v2\"", metadata.getEtag());
+		assertEquals(DATE, metadata.getLastModified());
+		assertTrue(metadata.isFresh());
+
+		// a full response replaces them all
+		metadata.update(new TestResponse(200, "ETag", "\"v3\""));
+		assertEquals("\"v3\"", metadata.getEtag());
+		assertNull(metadata.getLastModified());
+	}
+
+	@Test
+	public void validatorsGoToTheRequest() {
+		assertFalse(metadata().hasValidators());
+		assertTrue(metadata("ETag", "\"v1\"").hasValidators());
+		assertTrue(metadata("Last-Modified", DATE).hasValidators());
+
+		TransportRequest request = new TransportRequest("http://example.com/feed");
+		metadata("ETag", "\"v1\"", "Last-Modified", DATE).applyValidators(request);
+		assertEquals("\"v1\"", request.getHeaders().get("If-None-Match"));
+		assertEquals(DATE, request.getHeaders().get("If-Modified-Since"));
+
+		request = new TransportRequest("http://example.com/feed");
+		metadata().applyValidators(request);
+		assertTrue(request.getHeaders().isEmpty());
+	}
+
+	@Test
+	public void copyIsIndependent() {
+		CacheMetadata metadata = metadata("ETag", "\"v1\"");
+		CacheMetadata copy = new CacheMetadata(metadata);
+		copy.expire();
+		assertTrue(metadata.isFresh());
+		assertEquals("\"v1\"", copy.getEtag());
+	}
+
+	private static CacheMetadata metadata(String... headers) {
+		return CacheMetadata.fromResponse(new TestResponse(200, headers));
+	}
+}
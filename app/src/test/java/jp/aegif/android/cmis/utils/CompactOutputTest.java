@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CompactOutputTest {
+
+	@Test
+	public void numbersRoundTrip() {
+		int[] ints = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE };
+		long[] longs = { 0, 1, 300, 1262696195404L, Long.MAX_VALUE, -1, Long.MIN_VALUE };
+		CompactOutput out = new CompactOutput();
+		for (int value : ints) {
+			out.writeInt(value);
+		}
+		for (long value : longs) {
+			out.writeLong(value);
+		}
+
+		CompactInput in = new CompactInput(out.toByteArray());
+		for (int value : ints) {
+			assertEquals(value, in.readInt());
+		}
+		for (long value : longs) {
+			assertEquals(value, in.readLong());
+		}
+	}
+
+	@Test
+	public void smallNumbersTakeOneByte() {
+		CompactOutput out = new CompactOutput();
+		out.writeInt(127);
+		assertEquals(1, out.toByteArray().length);
+		out.writeInt(128);
+		assertEquals(3, out.toByteArray().length);
+	}
+
+	@Test
+	public void stringsRoundTrip() {
+		String[] values = { null, "", "a", "日本語のフォルダ", "😀 smile", "😀😁",
+				"😀😂", "http://example.com/i/item-1", "http://example.com/i/item-2", null,
+				"http://example.com/i/item-1/children" };
+		assertEquals(Arrays.asList(values), Arrays.asList(readBack(values)));
+	}
+
+	@Test
+	public void prefixSharingNeverSplitsASurrogatePair() {
+		// same high surrogate, different low surrogate
+		String[] values = { "x😀", "x😁", "x😀y" };
+		assertEquals(Arrays.asList(values), Arrays.asList(readBack(values)));
+	}
+
+	@Test
+	public void stringsShareTheirPrefixWithTheRecentOnes() {
+		String[] values = new String[40];
+		for (int i = 0; i < values.length; i++) {
+			// cycles through more slots than are kept
+			values[i] = "http://cmis.example.com/service/cmis/i/item-" + (i % 20) + "/children";
+		}
+		assertEquals(Arrays.asList(values), Arrays.asList(readBack(values)));
+
+		CompactOutput out = new CompactOutput();
+		int plain = 0;
+		for (String value : values) {
+			out.writeString(value);
+			plain += value.length();
+		}
+		assertTrue(out.toByteArray().length < plain / 2);
+	}
+
+	@Test
+	public void truncatedDataIsRejected() {
+		CompactOutput out = new CompactOutput();
+		out.writeString("http://example.com/i/item-1");
+		out.writeLong(Long.MAX_VALUE);
+		byte[] data = out.toByteArray();
+		for (int length = 0; length < data.length; length++) {
+			CompactInput in = new CompactInput(Arrays.copyOf(data, length));
+			try {
+				in.readString();
+				in.readLong();
+				fail("read " + length + " bytes");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void malformedStringsAreRejected() {
+		// a slot beyond the recent strings
+		assertMalformed(CompactOutput.RECENT + 1, 0, 0);
+		// a prefix of a slot never written
+		assertMalformed(1, 3, 0);
+		// more bytes than the data holds
+		assertMalformed(1, 0, 10);
+	}
+
+	@Test
+	public void overlongNumberIsRejected() {
+		byte[] data = new byte[11];
+		Arrays.fill(data, (byte) 0x80);
+		try {
+			new CompactInput(data).readLong();
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void missingDataIsRejected() {
+		new CompactInput(null);
+	}
+
+	@Test
+	public void nullStringIsOneByte() {
+		CompactOutput out = new CompactOutput();
+		out.writeString(null);
+		byte[] data = out.toByteArray();
+		assertEquals(1, data.length);
+		assertNull(new CompactInput(data).readString());
+	}
+
+	private static String[] readBack(String[] values) {
+		CompactOutput out = new CompactOutput();
+		for (String value : values) {
+			out.writeString(value);
+		}
+		CompactInput in = new CompactInput(out.toByteArray());
+		String[] read = new String[values.length];
+		for (int i = 0; i < read.length; i++) {
+			read[i] = in.readString();
+		}
+		return read;
+	}
+
+	private static void assertMalformed(int slot, int prefix, int length) {
+		CompactOutput out = new CompactOutput();
+		out.writeInt(slot);
+		out.writeInt(prefix);
+		out.writeInt(length);
+		try {
+			new CompactInput(out.toByteArray()).readString();
+			fail("slot " + slot + ", prefix " + prefix + ", length " + length);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
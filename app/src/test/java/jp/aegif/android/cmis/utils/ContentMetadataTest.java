@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+
+import jp.aegif.android.cmis.repo.CmisItemLazy;
+
+import org.junit.Test;
+
+public class ContentMetadataTest {
+
+	private static final File FILE = new File("files/repo/Document 1.txt");
+	private static final long DATE = 1265787000000L;
+
+	@Test
+	public void sameItemMatches() {
+		assertTrue(stored().matches(metadata("token-1", DATE, 1001, "store://item-1.bin")));
+	}
+
+	@Test
+	public void changedItemDoesNotMatch() {
+		ContentMetadata stored = stored();
+		assertFalse(stored.matches(metadata("token-2", DATE, 1001, "store://item-1.bin")));
+		assertFalse(stored.matches(metadata("token-1", DATE + 1000, 1001, "store://item-1.bin")));
+		assertFalse(stored.matches(metadata("token-1", DATE, 1002, "store://item-1.bin")));
+		assertFalse(stored.matches(metadata("token-1", DATE, 1001, "store://item-2.bin")));
+		assertFalse(stored.matches(ContentMetadata.fromItem(item("token-1", DATE, 1001, "store://item-1.bin"), new File("files/other.txt"))));
+	}
+
+	@Test
+	public void missingValidatorsAreNotCompared() {
+		ContentMetadata stored = stored();
+		assertTrue(stored.matches(metadata(null, DATE, 1001, "store://item-1.bin")));
+		assertTrue(stored.matches(metadata("token-1", null, 1001, "store://item-1.bin")));
+		assertTrue(stored.matches(metadata("token-1", DATE, 1001, null)));
+		// only the length is left
+		assertTrue(stored.matches(metadata(null, null, 1001, null)));
+		assertFalse(stored.matches(metadata(null, null, 1000, null)));
+	}
+
+	@Test
+	public void validatorsTheServerStartsSendingDoNotMatch() {
+		ContentMetadata stored = metadata(null, null, 1001, null);
+		assertFalse(stored.matches(metadata("token-1", null, 1001, null)));
+		assertFalse(stored.matches(metadata(null, DATE, 1001, null)));
+		assertFalse(stored.matches(metadata(null, null, 1001, "store://item-1.bin")));
+	}
+
+	@Test
+	public void metadataRoundTrip() throws Exception {
+		ContentMetadata empty = metadata(null, null, -1, null);
+		TestData data = new TestData();
+		stored().writeTo(data.output());
+		empty.writeTo(data.output());
+
+		DataInputStream in = data.input();
+		assertTrue(ContentMetadata.readFrom(in).matches(stored()));
+		ContentMetadata read = ContentMetadata.readFrom(in);
+		assertTrue(read.matches(empty));
+		assertFalse(read.matches(stored()));
+	}
+
+	private static ContentMetadata stored() {
+		return metadata("token-1", DATE, 1001, "store://item-1.bin");
+	}
+
+	private static ContentMetadata metadata(String changeToken, Long date, long contentLength, String contentStreamId) {
+		return ContentMetadata.fromItem(item(changeToken, date, contentLength, contentStreamId), FILE);
+	}
+
+	/**
+	 * An item with only the fields the validators come from, through its
+	 * compact form : its fields are not visible from here.
+	 */
+	private static CmisItemLazy item(String changeToken, Long date, long contentLength, String contentStreamId) {
+		CompactOutput out = new CompactOutput();
+		// title, links, id, mime type, size, path and base type
+		for (int i = 0; i < 11; i++) {
+			out.writeString(null);
+		}
+		out.writeInt(date != null ? 1 : 0);
+		if (date != null) {
+			out.writeLong(date);
+		}
+		out.writeLong(contentLength + 1);
+		out.writeString(changeToken);
+		out.writeString(contentStreamId);
+		return CmisItemLazy.readLazy(new CompactInput(out.toByteArray()));
+	}
+}
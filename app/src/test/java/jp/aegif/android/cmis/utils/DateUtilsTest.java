@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DateUtilsTest {
+
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	private TimeZone defaultZone;
+
+	@Before
+	public void setUp() {
+		defaultZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+	}
+
+	@After
+	public void tearDown() {
+		TimeZone.setDefault(defaultZone);
+	}
+
+	@Test
+	public void parsesUtc() {
+		assertEquals(utc(2010, 3, 15, 10, 20, 30, 0), DateUtils.parseIso8601("2010-03-15T10:20:30Z"));
+		assertEquals(utc(2010, 3, 15, 10, 20, 30, 0), DateUtils.parseIso8601("2010-03-15t10:20:30z"));
+		assertEquals(utc(2010, 3, 15, 10, 20, 0, 0), DateUtils.parseIso8601("2010-03-15T10:20Z"));
+	}
+
+	@Test
+	public void parsesFractionOfSeconds() {
+		assertEquals(utc(2010, 3, 15, 10, 20, 30, 500), DateUtils.parseIso8601("2010-03-15T10:20:30.5Z"));
+		assertEquals(utc(2010, 3, 15, 10, 20, 30, 123), DateUtils.parseIso8601("2010-03-15T10:20:30.123Z"));
+		// digits after the milliseconds are ignored
+		assertEquals(utc(2010, 3, 15, 10, 20, 30, 123), DateUtils.parseIso8601("2010-03-15T10:20:30,123999Z"));
+	}
+
+	@Test
+	public void parsesOffsets() {
+		long expected = utc(2010, 3, 15, 1, 20, 30, 0);
+		assertEquals(expected, DateUtils.parseIso8601("2010-03-15T10:20:30+09:00"));
+		assertEquals(expected, DateUtils.parseIso8601("2010-03-15T10:20:30+0900"));
+		assertEquals(expected, DateUtils.parseIso8601("2010-03-15T10:20:30+09"));
+		assertEquals(expected, DateUtils.parseIso8601("2010-03-14T20:50:30-04:30"));
+		assertEquals(expected, DateUtils.parseIso8601("2010-03-15T01:20:30.000-00:00"));
+	}
+
+	@Test
+	public void valuesWithoutOffsetAreLocal() {
+		long expected = utc(2010, 3, 15, 1, 20, 30, 0);
+		assertEquals(expected, DateUtils.parseIso8601("2010-03-15T10:20:30"));
+		assertEquals(utc(2010, 3, 14, 15, 0, 0, 0), DateUtils.parseIso8601("2010-03-15"));
+	}
+
+	@Test
+	public void ignoresSurroundingWhitespace() {
+		assertEquals(utc(2010, 3, 15, 10, 20, 30, 0), DateUtils.parseIso8601("\n  2010-03-15T10:20:30Z \t"));
+	}
+
+	@Test
+	public void rejectsMalformedValues() {
+		String[] values = { null, "", "   ", "2010", "2010/03/15", "2010-3-15", "2010-13-01", "2010-00-10", "2010-01-32",
+				"2010-03-15T", "2010-03-15T10", "2010-03-15T10:2", "2010-03-15T1a:20Z", "2010-03-15T10:20:", "2010-03-15T10:20:30.Z",
+				"2010-03-15T10:20:30X", "2010-03-15T10:20:30Zulu", "2010-03-15T10:20:30+9", "2010-03-15T10:20:30+09:3",
+				"2010-03-15T10:20:30+09:300", "2010-03-15T25:00Z", "2010-03-15T10:60Z" };
+		for (String value : values) {
+			assertEquals(value, DateUtils.INVALID, DateUtils.parseIso8601(value));
+		}
+	}
+
+	@Test
+	public void agreesWithTheCalendarOverTheYears() {
+		GregorianCalendar calendar = new GregorianCalendar(UTC);
+		// proleptic Gregorian calendar, as DateUtils
+		calendar.setGregorianChange(new Date(Long.MIN_VALUE));
+		for (int year = 1600; year <= 2400; year += 7) {
+			for (int month = 1; month <= 12; month++) {
+				int day = 1 + (year + month) % 28;
+				calendar.clear();
+				calendar.set(year, month - 1, day);
+				// midnight UTC : an exact number of days
+				long expectedDay = calendar.getTimeInMillis() / (24 * 60 * 60 * 1000L);
+				assertEquals(year + "-" + month + "-" + day, expectedDay, DateUtils.toEpochDay(year, month, day));
+			}
+		}
+		assertEquals(0, DateUtils.toEpochDay(1970, 1, 1));
+		assertEquals(-1, DateUtils.toEpochDay(1969, 12, 31));
+		assertEquals(11017, DateUtils.toEpochDay(2000, 3, 1));
+		assertEquals(11016, DateUtils.toEpochDay(2000, 2, 29));
+	}
+
+	private static long utc(int year, int month, int day, int hour, int minute, int second, int millis) {
+		Calendar calendar = new GregorianCalendar(UTC);
+		calendar.clear();
+		calendar.set(year, month - 1, day, hour, minute, second);
+		calendar.set(Calendar.MILLISECOND, millis);
+		return calendar.getTimeInMillis();
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FeedCacheIndexTest {
+
+	private static final long TTL = 60 * 60 * 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File root;
+	private FeedCacheIndex index;
+
+	@Before
+	public void createIndex() {
+		root = new File(folder.getRoot(), "feeds");
+		index = new FeedCacheIndex(root);
+		// without an index the folder is emptied : load it before the files are written
+		assertEquals(0, index.getCount());
+	}
+
+	@Test
+	public void putRecordsTheFile() throws Exception {
+		put("account/repo/a.lst", 100, "\"v1\"");
+
+		assertTrue(index.contains("account/repo/a.lst"));
+		assertFalse(index.contains("account/repo/b.lst"));
+		assertEquals(1, index.getCount());
+		assertEquals(100, index.getSize());
+		assertEquals("\"v1\"", index.getMetadata("account/repo/a.lst").getEtag());
+		assertNull(index.getMetadata("account/repo/b.lst"));
+	}
+
+	@Test
+	public void putReplacesTheFile() throws Exception {
+		put("a.lst", 100, "\"v1\"");
+		put("a.lst", 40, "\"v2\"");
+
+		assertEquals(1, index.getCount());
+		assertEquals(40, index.getSize());
+		assertEquals("\"v2\"", index.getMetadata("a.lst").getEtag());
+	}
+
+	@Test
+	public void metadataIsCopied() throws Exception {
+		put("a.lst", 10, "\"v1\"");
+		index.getMetadata("a.lst").expire();
+		assertTrue(index.getMetadata("a.lst").isFresh());
+	}
+
+	@Test
+	public void trimDeletesTheLeastRecentlyUsedFiles() throws Exception {
+		put("a.lst", 100, null);
+		put("b.lst", 100, null);
+		put("c.lst", 100, null);
+		index.touch("a.lst");
+
+		index.trimToSize(250);
+		assertEquals(2, index.getCount());
+		assertEquals(200, index.getSize());
+		assertTrue(index.contains("a.lst"));
+		assertFalse(index.contains("b.lst"));
+		assertFalse(new File(root, "b.lst").exists());
+		assertTrue(new File(root, "c.lst").exists());
+	}
+
+	@Test
+	public void expiredFilesAreDeleted() throws Exception {
+		write("old.lst", 100);
+		index.put("old.lst", new CacheMetadata(), 0);
+		put("new.lst", 100, null);
+
+		index.trimToSize(Long.MAX_VALUE);
+		assertEquals(1, index.getCount());
+		assertFalse(new File(root, "old.lst").exists());
+
+		write("gone.lst", 100);
+		index.put("gone.lst", new CacheMetadata(), 0);
+		// even without a trim
+		assertFalse(index.contains("gone.lst"));
+		assertFalse(new File(root, "gone.lst").exists());
+		assertEquals(100, index.getSize());
+	}
+
+	@Test
+	public void removeAllDeletesThePrefix() throws Exception {
+		put("account1/repo/a.lst", 10, null);
+		put("account1/repo/b.lst", 10, null);
+		put("account1/other/a.lst", 10, null);
+		put("account2/repo/a.lst", 10, null);
+
+		index.removeAll("account1/repo/");
+		assertEquals(2, index.getCount());
+		assertFalse(new File(root, "account1/repo/a.lst").exists());
+		assertTrue(index.contains("account1/other/a.lst"));
+		assertTrue(index.contains("account2/repo/a.lst"));
+
+		assertTrue(index.remove("account2/repo/a.lst"));
+		assertFalse(index.remove("account2/repo/a.lst"));
+		assertFalse(new File(root, "account2/repo/a.lst").exists());
+	}
+
+	@Test
+	public void updateMetadataKeepsTheFile() throws Exception {
+		put("a.lst", 10, "\"v1\"");
+		CacheMetadata metadata = index.getMetadata("a.lst");
+		metadata.expire();
+
+		assertTrue(index.updateMetadata("a.lst", metadata));
+		assertFalse(index.updateMetadata("b.lst", metadata));
+		assertFalse(index.getMetadata("a.lst").isFresh());
+		assertEquals("\"v1\"", index.getMetadata("a.lst").getEtag());
+		assertEquals(10, index.getSize());
+	}
+
+	@Test
+	public void indexIsReadBack() throws Exception {
+		put("a.lst", 100, "\"v1\"");
+		put("b.lst", 50, null);
+		index.touch("a.lst");
+		index.flush();
+
+		FeedCacheIndex reloaded = new FeedCacheIndex(root);
+		assertEquals(2, reloaded.getCount());
+		assertEquals(150, reloaded.getSize());
+		assertEquals("\"v1\"", reloaded.getMetadata("a.lst").getEtag());
+		// the access order was kept
+		reloaded.trimToSize(100);
+		assertTrue(reloaded.contains("a.lst"));
+		assertFalse(reloaded.contains("b.lst"));
+	}
+
+	@Test
+	public void unreadableIndexIsRebuiltFromTheFiles() throws Exception {
+		put("account/a.lst", 100, null);
+		put("b.lst", 50, "\"v1\"");
+		new File(root, "account/a.lst").setLastModified(System.currentTimeMillis() - 60 * 60 * 1000L);
+		write("b.lst.tmp", 10);
+		write("index", 20);
+
+		FeedCacheIndex reloaded = new FeedCacheIndex(root);
+		assertEquals(2, reloaded.getCount());
+		assertEquals(150, reloaded.getSize());
+		assertFalse(new File(root, "b.lst.tmp").exists());
+		// the oldest file goes first
+		reloaded.trimToSize(50);
+		assertFalse(reloaded.contains("account/a.lst"));
+		assertTrue(new File(root, "b.lst").exists());
+		CacheMetadata metadata = reloaded.getMetadata("b.lst");
+		assertFalse(metadata.hasValidators());
+		assertEquals(new File(root, "b.lst").lastModified(), metadata.getFetchedAt());
+	}
+
+	@Test
+	public void clearForgetsEverything() throws Exception {
+		put("a.lst", 100, null);
+		index.clear();
+		assertEquals(0, index.getCount());
+		assertEquals(0, index.getSize());
+		assertFalse(new File(root, "index").exists());
+	}
+
+	private void put(String key, int size, String etag) throws IOException {
+		write(key, size);
+		CacheMetadata metadata = etag != null ? CacheMetadata.fromResponse(new TestResponse(200, "ETag", etag)) : new CacheMetadata();
+		index.put(key, metadata, TTL);
+	}
+
+	private void write(String key, int size) throws IOException {
+		File file = new File(root, key);
+		file.getParentFile().mkdirs();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(new byte[size]);
+		} finally {
+			out.close();
+		}
+	}
+}
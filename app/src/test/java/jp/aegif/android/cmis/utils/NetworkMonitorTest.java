@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jp.aegif.android.cmis.utils.NetworkStats.Operation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Without {@link NetworkMonitor#init} the network is neither metered nor of
+ * a slow type : only the measured throughput decides.
+ */
+public class NetworkMonitorTest {
+
+	private static final long FAST = 4 * NetworkMonitor.FAST_BYTES_PER_SECOND;
+	private static final long SLOW = NetworkMonitor.SLOW_BYTES_PER_SECOND / 4;
+	private static final long MEDIUM = (NetworkMonitor.SLOW_BYTES_PER_SECOND + NetworkMonitor.FAST_BYTES_PER_SECOND) / 2;
+
+	@Before
+	public void setUp() {
+		NetworkMonitor.setAutomatic(true);
+		settle(FAST);
+	}
+
+	@After
+	public void tearDown() {
+		settle(FAST);
+	}
+
+	@Test
+	public void slowTransfersTurnLeanModeOn() {
+		assertFalse(NetworkMonitor.isLean());
+		settle(SLOW);
+		assertTrue(NetworkMonitor.isLean());
+		assertTrue(NetworkMonitor.getBytesPerSecond() < NetworkMonitor.SLOW_BYTES_PER_SECOND);
+	}
+
+	@Test
+	public void leanModeEndsOnlyOnceTransfersAreFast() {
+		settle(SLOW);
+		settle(MEDIUM);
+		assertTrue(NetworkMonitor.isLean());
+		settle(FAST);
+		assertFalse(NetworkMonitor.isLean());
+		settle(MEDIUM);
+		assertFalse(NetworkMonitor.isLean());
+	}
+
+	@Test
+	public void leanModeNeedsTheAutomaticSwitch() {
+		NetworkMonitor.setAutomatic(false);
+		try {
+			settle(SLOW);
+			assertFalse(NetworkMonitor.isLean());
+		} finally {
+			NetworkMonitor.setAutomatic(true);
+		}
+		assertTrue(NetworkMonitor.isLean());
+	}
+
+	@Test
+	public void ignoresSmallResponsesCacheHitsAndServiceDocuments() {
+		for (int i = 0; i < 30; i++) {
+			NetworkMonitor.onRecord(record(Operation.LISTING, 1024, 1000));
+			NetworkMonitor.onRecord(record(Operation.SERVICE_DOCUMENT, 100 * 1024, 100000));
+			RequestRecord hit = record(Operation.LISTING, 100 * 1024, 100000);
+			hit.setCacheHit(true);
+			NetworkMonitor.onRecord(hit);
+		}
+		assertFalse(NetworkMonitor.isLean());
+		assertTrue(NetworkMonitor.getBytesPerSecond() > NetworkMonitor.FAST_BYTES_PER_SECOND);
+	}
+
+	@Test
+	public void tasksRunAtOnceOutsideLeanMode() {
+		final List<String> ran = new ArrayList<String>();
+		assertTrue(NetworkMonitor.runOrDefer(new Runnable() {
+			public void run() {
+				ran.add("now");
+			}
+		}));
+		assertEquals(1, ran.size());
+
+		settle(SLOW);
+		assertFalse(NetworkMonitor.runOrDefer(new Runnable() {
+			public void run() {
+				ran.add("later");
+			}
+		}));
+		assertEquals(1, ran.size());
+	}
+
+	@Test
+	public void deferredTaskCanBeTakenBack() {
+		settle(SLOW);
+		Runnable task = new Runnable() {
+			public void run() {
+			}
+		};
+		assertFalse(NetworkMonitor.runOrDefer(task));
+		assertTrue(NetworkMonitor.cancelDeferred(task));
+		assertFalse(NetworkMonitor.cancelDeferred(task));
+	}
+
+	/**
+	 * Feeds samples of the given throughput until the estimate is close to
+	 * it.
+	 */
+	private static void settle(long bytesPerSecond) {
+		for (int i = 0; i < 40; i++) {
+			NetworkMonitor.onRecord(record(Operation.LISTING, bytesPerSecond * 2, 2000));
+		}
+	}
+
+	private static RequestRecord record(Operation operation, long bytes, long millis) {
+		RequestRecord record = new RequestRecord("host", operation, "http://host/feed");
+		record.addTransferNanos(millis * 1000000L);
+		record.setBytes(bytes, bytes);
+		return record;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jp.aegif.android.cmis.utils.RequestScheduler.Priority;
+import jp.aegif.android.cmis.utils.RequestScheduler.Ticket;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Each test uses its own host : the scheduler state is static.
+ */
+public class RequestSchedulerTest {
+
+	private static final long TIMEOUT = 5000;
+
+	@After
+	public void restoreDefaults() {
+		RequestScheduler.setMaxRequestsPerHost(RequestScheduler.DEFAULT_MAX_REQUESTS_PER_HOST);
+	}
+
+	@Test
+	public void interactiveRequestOvertakesWaitingDownload() throws Exception {
+		RequestScheduler.setMaxRequestsPerHost(1);
+		Ticket running = RequestScheduler.acquire("lanes", Priority.DETAILS);
+		List<Priority> order = Collections.synchronizedList(new ArrayList<Priority>());
+
+		Thread download = startWaiter("lanes", Priority.BACKGROUND, order);
+		Thread listing = startWaiter("lanes", Priority.INTERACTIVE, order);
+		running.release();
+		download.join(TIMEOUT);
+		listing.join(TIMEOUT);
+
+		assertEquals(2, order.size());
+		assertEquals(Priority.INTERACTIVE, order.get(0));
+		assertEquals(Priority.BACKGROUND, order.get(1));
+	}
+
+	@Test
+	public void sameLaneIsFirstComeFirstServed() throws Exception {
+		RequestScheduler.setMaxRequestsPerHost(1);
+		Ticket running = RequestScheduler.acquire("fifo", Priority.INTERACTIVE);
+		List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+		Thread first = startWaiter("fifo", Priority.DETAILS, order, "first");
+		Thread second = startWaiter("fifo", Priority.DETAILS, order, "second");
+		running.release();
+		first.join(TIMEOUT);
+		second.join(TIMEOUT);
+
+		assertEquals(2, order.size());
+		assertEquals("first", order.get(0));
+		assertEquals("second", order.get(1));
+	}
+
+	@Test
+	public void downloadsLeaveOneSlotToTheOtherLanes() throws Exception {
+		RequestScheduler.setMaxRequestsPerHost(2);
+		Ticket download = RequestScheduler.acquire("reserve", Priority.BACKGROUND);
+		List<Priority> order = Collections.synchronizedList(new ArrayList<Priority>());
+
+		Thread secondDownload = startWaiter("reserve", Priority.BACKGROUND, order);
+		// does not wait for the download
+		Ticket listing = RequestScheduler.acquire("reserve", Priority.INTERACTIVE);
+		assertTrue(order.isEmpty());
+		listing.release();
+		assertTrue(order.isEmpty());
+
+		download.release();
+		secondDownload.join(TIMEOUT);
+		assertEquals(1, order.size());
+	}
+
+	@Test
+	public void releaseTwiceFreesOneSlot() throws Exception {
+		RequestScheduler.setMaxRequestsPerHost(1);
+		Ticket first = RequestScheduler.acquire("twice", Priority.INTERACTIVE);
+		first.release();
+		first.release();
+		Ticket second = RequestScheduler.acquire("twice", Priority.INTERACTIVE);
+		List<Priority> order = Collections.synchronizedList(new ArrayList<Priority>());
+
+		Thread waiter = startWaiter("twice", Priority.INTERACTIVE, order);
+		assertTrue(order.isEmpty());
+		second.release();
+		waiter.join(TIMEOUT);
+		assertEquals(1, order.size());
+	}
+
+	@Test
+	public void interruptedWaiterGivesUp() throws Exception {
+		RequestScheduler.setMaxRequestsPerHost(1);
+		Ticket running = RequestScheduler.acquire("interrupt", Priority.INTERACTIVE);
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				try {
+					RequestScheduler.acquire("interrupt", Priority.DETAILS).release();
+				} catch (InterruptedIOException e) {
+					failures.add(e);
+				}
+			}
+		};
+		waiter.start();
+		awaitWaiting(waiter);
+		waiter.interrupt();
+		waiter.join(TIMEOUT);
+		assertEquals(1, failures.size());
+
+		// the cancelled waiter does not block the next one
+		running.release();
+		RequestScheduler.acquire("interrupt", Priority.DETAILS).release();
+	}
+
+	@Test
+	public void maxRequestsPerHostIsBounded() {
+		RequestScheduler.setMaxRequestsPerHost(0);
+		assertEquals(1, RequestScheduler.getMaxRequestsPerHost());
+		RequestScheduler.setMaxRequestsPerHost(100);
+		assertEquals(RequestScheduler.MAX_REQUESTS_PER_HOST, RequestScheduler.getMaxRequestsPerHost());
+	}
+
+	private static Thread startWaiter(String host, Priority priority, List<Priority> order) throws InterruptedException {
+		return startWaiter(host, priority, order, priority);
+	}
+
+	/**
+	 * Starts a thread that takes a slot, adds the mark to the order and gives
+	 * the slot back. Returns once the thread waits for its slot.
+	 */
+	private static <T> Thread startWaiter(final String host, final Priority priority, final List<T> order, final T mark) throws InterruptedException {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Ticket ticket = RequestScheduler.acquire(host, priority);
+					order.add(mark);
+					ticket.release();
+				} catch (InterruptedIOException e) {
+					// not interrupted by these tests
+				}
+			}
+		};
+		thread.start();
+		awaitWaiting(thread);
+		return thread;
+	}
+
+	private static void awaitWaiting(Thread thread) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+		}
+		assertEquals(Thread.State.WAITING, thread.getState());
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.utils;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A response without a body, for the headers only.
+ */
+final class TestResponse extends TransportResponse {
+
+	private final int status;
+	private final Map<String, String> headers = new HashMap<String, String>();
+
+	TestResponse(int status, String... headers) {
+		this.status = status;
+		for (int i = 0; i < headers.length; i += 2) {
+			this.headers.put(headers[i].toLowerCase(), headers[i + 1]);
+		}
+	}
+
+	@Override
+	public int getStatus() {
+		return status;
+	}
+
+	@Override
+	public String getHeader(String name) {
+		return headers.get(name.toLowerCase());
+	}
+
+	@Override
+	public String getProtocol() {
+		return "http/1.1";
+	}
+
+	@Override
+	protected long getWireContentLength() {
+		return -1;
+	}
+
+	@Override
+	protected InputStream getWireContent() {
+		return null;
+	}
+
+	@Override
+	protected void discard() {
+	}
+}
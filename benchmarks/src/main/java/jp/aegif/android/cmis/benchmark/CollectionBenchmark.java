@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import jp.aegif.android.cmis.repo.CmisItem;
+import jp.aegif.android.cmis.repo.CmisItemCollection;
+import jp.aegif.android.cmis.repo.CmisPropertyDescriptors;
+import jp.aegif.android.cmis.utils.FeedUtils;
+
+/**
+ * Folder listings : the DOM path (readAtomFeed, then the model built from
+ * the document) and the streaming path the app uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectionBenchmark {
+
+	@Param({ "alfresco-root-collection", "exo-root-collection", "synthetic-100", "synthetic-1000" })
+	public String feed;
+
+	private byte[] data;
+	private Document document;
+	private List<Element> entries;
+	private CmisPropertyDescriptors descriptors;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setUp() throws Exception {
+		data = Feeds.load(feed);
+		document = FeedUtils.readAtomFeed(Feeds.open(data));
+		entries = document.getRootElement().elements("entry");
+		// one table per repository in the app, warm after the first listing
+		descriptors = new CmisPropertyDescriptors();
+		CmisItemCollection.createFromParser(FeedUtils.newPullParser(Feeds.open(data)), descriptors, null);
+	}
+
+	@Benchmark
+	public Document readAtomFeed() throws Exception {
+		return FeedUtils.readAtomFeed(Feeds.open(data));
+	}
+
+	@Benchmark
+	public CmisItemCollection collectionFromFeed() throws Exception {
+		return CmisItemCollection.createFromFeed(FeedUtils.readAtomFeed(Feeds.open(data)));
+	}
+
+	/**
+	 * Model building alone, on an already parsed document.
+	 */
+	@Benchmark
+	public CmisItemCollection collectionFromDocument() {
+		return CmisItemCollection.createFromFeed(document);
+	}
+
+	@Benchmark
+	public void itemsFromEntries(Blackhole blackhole) {
+		for (Element entry : entries) {
+			blackhole.consume(CmisItem.createFromFeed(entry, descriptors));
+		}
+	}
+
+	@Benchmark
+	public CmisItemCollection collectionFromParser() throws Exception {
+		return CmisItemCollection.createFromParser(FeedUtils.newPullParser(Feeds.open(data)), descriptors, null);
+	}
+}
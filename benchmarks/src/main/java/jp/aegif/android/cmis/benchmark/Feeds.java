@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.QName;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+
+import jp.aegif.android.cmis.utils.FeedUtils;
+
+/**
+ * The feeds the benchmarks run on : the captures of testdata/, by file name
+ * without extension, and "synthetic-N" for the entries of the alfresco root
+ * collection repeated up to N entries with distinct ids.
+ */
+class Feeds {
+
+	private static final String TESTDATA = "testdata";
+	private static final String SYNTHETIC = "synthetic-";
+	private static final String SYNTHETIC_SOURCE = "alfresco-root-collection";
+
+	private static final QName CMISRA_NUMITEMS = QName.get("numItems", Namespace.get(FeedUtils.CMISRA_NS));
+
+	static byte[] load(String name) throws IOException, DocumentException {
+		if (name.startsWith(SYNTHETIC)) {
+			return scale(read(SYNTHETIC_SOURCE), Integer.parseInt(name.substring(SYNTHETIC.length())));
+		}
+		return read(name);
+	}
+
+	static InputStream open(byte[] feed) {
+		return new ByteArrayInputStream(feed);
+	}
+
+	private static byte[] read(String name) throws IOException {
+		File file = new File(TESTDATA, name + ".xml");
+		if (!file.isFile()) {
+			throw new IOException(file.getAbsolutePath() + " not found, run from the project root");
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static byte[] scale(byte[] source, int count) throws IOException, DocumentException {
+		Document doc = FeedUtils.readAtomFeed(open(source));
+		Element feed = doc.getRootElement();
+		List<Element> entries = new ArrayList<Element>(feed.elements("entry"));
+		for (Element entry : entries) {
+			feed.remove(entry);
+		}
+		for (int i = 0; i < count; i++) {
+			Element entry = entries.get(i % entries.size()).createCopy();
+			Element id = entry.element("id");
+			id.setText(id.getText() + "-" + i);
+			feed.add(entry);
+		}
+		Element numItems = feed.element(CMISRA_NUMITEMS);
+		if (numItems != null) {
+			numItems.setText(String.valueOf(count));
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLWriter writer = new XMLWriter(out, OutputFormat.createCompactFormat());
+		writer.write(doc);
+		writer.close();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jp.aegif.android.cmis.repo.CmisItemCollection;
+import jp.aegif.android.cmis.repo.CmisPropertyDescriptors;
+import jp.aegif.android.cmis.utils.FeedUtils;
+
+/**
+ * Listings through the pull parser : every entry decoded on the parsing
+ * thread (no decoder) against the decoder threads of
+ * {@link CmisItemCollection}, past the default threshold.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelDecodeBenchmark {
+
+	@Param({ "synthetic-300", "synthetic-1000", "synthetic-5000" })
+	public String feed;
+
+	@Param({ "0", "1", "3" })
+	public int decoders;
+
+	private byte[] data;
+	private int defaultDecoders;
+	private CmisPropertyDescriptors descriptors;
+
+	@Setup
+	public void setUp() throws Exception {
+		data = Feeds.load(feed);
+		// one table per repository in the app, warm after the first listing
+		descriptors = new CmisPropertyDescriptors();
+		CmisItemCollection.createFromParser(FeedUtils.newPullParser(Feeds.open(data)), descriptors, null);
+		defaultDecoders = CmisItemCollection.getDecoderCount();
+		CmisItemCollection.setDecoderCount(decoders);
+	}
+
+	@TearDown
+	public void tearDown() {
+		CmisItemCollection.setDecoderCount(defaultDecoders);
+	}
+
+	@Benchmark
+	public CmisItemCollection collectionFromParser() throws Exception {
+		return CmisItemCollection.createFromParser(FeedUtils.newPullParser(Feeds.open(data)), descriptors, null);
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.benchmark;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jp.aegif.android.cmis.repo.CmisProperty;
+import jp.aegif.android.cmis.utils.FeedUtils;
+
+/**
+ * Service documents : the repository information of the first workspace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryInfoBenchmark {
+
+	@Param({ "nuxeo-repository", "exo-repository" })
+	public String feed;
+
+	private byte[] data;
+	private String workspaceName;
+	private Element workspace;
+
+	@Setup
+	public void setUp() throws Exception {
+		data = Feeds.load(feed);
+		Document document = FeedUtils.readAtomFeed(Feeds.open(data));
+		workspaceName = FeedUtils.getWorkspacesFromRepoFeed(document).get(0);
+		workspace = FeedUtils.getWorkspace(document, workspaceName);
+	}
+
+	@Benchmark
+	public Map<String, ArrayList<CmisProperty>> repositoryPropertiesFromFeed() throws Exception {
+		Document document = FeedUtils.readAtomFeed(Feeds.open(data));
+		return FeedUtils.getCmisRepositoryProperties(FeedUtils.getWorkspace(document, workspaceName));
+	}
+
+	@Benchmark
+	public Map<String, ArrayList<CmisProperty>> repositoryPropertiesFromWorkspace() {
+		return FeedUtils.getCmisRepositoryProperties(workspace);
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.standin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Base of the stand-in repositories : applies the network shaping and sends
+ * AtomPub documents with an ETag, answering matching If-None-Match requests
+ * with 304 and compressing bodies for clients that accept gzip.
+ */
+abstract class AtomHandler implements HttpHandler {
+
+	static final String ATOM_SERVICE = "application/atomsvc+xml;charset=UTF-8";
+	static final String ATOM_FEED = "application/atom+xml;type=feed;charset=UTF-8";
+	static final String ATOM_ENTRY = "application/atom+xml;type=entry;charset=UTF-8";
+
+	/** Bodies smaller than this are not worth compressing. */
+	private static final int MIN_GZIP_SIZE = 512;
+
+	protected final String context;
+	protected final Shaping shaping;
+
+	/**
+	 * Thrown by the repositories for unknown paths and ids.
+	 */
+	static class NotFoundException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		NotFoundException(String message) {
+			super(message);
+		}
+	}
+
+	AtomHandler(String context, Shaping shaping) {
+		this.context = context;
+		this.shaping = shaping;
+	}
+
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			shaping.delay();
+			String path = exchange.getRequestURI().getPath().substring(context.length());
+			serve(exchange, getBaseUrl(exchange), path, parseQuery(exchange.getRequestURI().getRawQuery()));
+		} catch (NotFoundException e) {
+			sendError(exchange, 404, e.getMessage());
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			sendError(exchange, 500, e.toString());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * @param baseUrl
+	 *            absolute url of this repository, as seen by the client
+	 * @param path
+	 *            request path below the repository, empty for the service
+	 *            document
+	 */
+	protected abstract void serve(HttpExchange exchange, String baseUrl, String path, Map<String, String> params) throws IOException, NotFoundException;
+
+	/**
+	 * The links are built from the Host header so that the same server can be
+	 * used from the emulator (10.0.2.2) and from the local machine.
+	 */
+	private String getBaseUrl(HttpExchange exchange) {
+		String host = exchange.getRequestHeaders().getFirst("Host");
+		if (host == null) {
+			host = "localhost:" + exchange.getLocalAddress().getPort();
+		}
+		return "http://" + host + context;
+	}
+
+	static Map<String, String> parseQuery(String rawQuery) {
+		Map<String, String> params = new HashMap<String, String>();
+		if (rawQuery == null) {
+			return params;
+		}
+		for (String pair : rawQuery.split("&")) {
+			int index = pair.indexOf('=');
+			if (index > 0) {
+				params.put(decode(pair.substring(0, index)), decode(pair.substring(index + 1)));
+			}
+		}
+		return params;
+	}
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		} catch (IllegalArgumentException e) {
+			return value;
+		}
+	}
+
+	static int getIntParam(Map<String, String> params, String name, int defaultValue) {
+		String value = params.get(name);
+		if (value == null || value.length() == 0) {
+			return defaultValue;
+		}
+		try {
+			return Math.max(0, Integer.parseInt(value));
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	protected void sendXml(HttpExchange exchange, String contentType, String xml) throws IOException {
+		byte[] body = xml.getBytes("UTF-8");
+
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		String etag = "\"" + Long.toHexString(crc.getValue()) + "-" + body.length + "\"";
+
+		exchange.getResponseHeaders().set("ETag", etag);
+		exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+		if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+
+		String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (body.length >= MIN_GZIP_SIZE && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+			GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+			gzip.write(body);
+			gzip.close();
+			body = compressed.toByteArray();
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(200, body.length);
+		OutputStream out = shaping.throttle(exchange.getResponseBody());
+		out.write(body);
+		out.close();
+	}
+
+	protected void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] body = (message == null ? "" : message).getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "text/plain;charset=UTF-8");
+		exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+		if (body.length > 0) {
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+	}
+
+	static String escape(String text) {
+		StringBuilder builder = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '<':
+				builder.append("&lt;");
+				break;
+			case '>':
+				builder.append("&gt;");
+				break;
+			case '&':
+				builder.append("&amp;");
+				break;
+			case '"':
+				builder.append("&quot;");
+				break;
+			default:
+				builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+}
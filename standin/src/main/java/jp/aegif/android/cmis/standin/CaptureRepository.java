@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.standin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Serves the vendor captures of testdata/ under /capture/{vendor}, with the
+ * original server urls rewritten to point back to the stand-in.
+ *
+ * Only the captured documents exist : links to anything else answer 404.
+ * Captured feeds honour skipCount and maxItems by slicing their entries.
+ */
+class CaptureRepository extends AtomHandler {
+
+	/** Vendor name and the base url of the captured server. */
+	private static final String[][] VENDORS = {
+			{ "alfresco", "http://cmis.alfresco.com:80/service/cmis" },
+			{ "exo", "http://cmis.exoplatform.org/xcmis1/rest/cmisatom" },
+			{ "nuxeo", "http://cmis.demo.nuxeo.org/nuxeo/site/cmis" } };
+
+	/** Vendor, path below the base url and capture file. */
+	private static final String[][] CAPTURES = {
+			{ "alfresco", "/s/workspace:SpacesStore/i/998e23c5-570f-4fc8-a86a-e895e019c048/children", "alfresco-root-collection.xml" },
+			{ "alfresco", "/s/workspace:SpacesStore/i/1871bb0d-632e-4f21-ace7-8eb87a8b0308", "alfresco-1871bb0d-632e-4f21-ace7-8eb87a8b0308.xml" },
+			{ "alfresco", "/s/workspace:SpacesStore/i/ed51ab32-d46a-4cc6-bb93-10f3653352f0", "test.xml" },
+			{ "alfresco", "/type/cmis:document", "alfresco-types.xml" },
+			{ "exo", "", "exo-repository.xml" },
+			{ "exo", "/cmis1/children/00exo0jcr0root0uuid0000000000000", "exo-root-collection.xml" },
+			{ "nuxeo", "", "nuxeo-repository.xml" },
+			{ "nuxeo", "/repository", "nuxeo-repository.xml" },
+			{ "nuxeo", "/children/4fb1b8a1-6dfd-4da4-95b0-4ef41c27b920", "nuxeo-root-collection.xml" },
+			{ "nuxeo", "/object/4593d0e5-fa7f-4ae1-9472-3030c270bb1e", "self.xml" } };
+
+	private final Map<String, String> captures = new HashMap<String, String>();
+
+	CaptureRepository(String context, Shaping shaping, File testdata) throws IOException {
+		super(context, shaping);
+		for (String[] capture : CAPTURES) {
+			captures.put("/" + capture[0] + capture[1], read(new File(testdata, capture[2])));
+		}
+	}
+
+	/**
+	 * Paths of the captured service documents, for the start-up message.
+	 */
+	static String[] getServiceDocuments() {
+		return new String[] { "/exo", "/nuxeo" };
+	}
+
+	@Override
+	protected void serve(HttpExchange exchange, String baseUrl, String path, Map<String, String> params) throws IOException, NotFoundException {
+		String capture = captures.get(path);
+		if (capture == null) {
+			throw new NotFoundException("Not captured : " + path);
+		}
+		for (String[] vendor : VENDORS) {
+			capture = capture.replace(vendor[1], baseUrl + "/" + vendor[0]);
+		}
+
+		int prolog = capture.indexOf("?>");
+		String root = capture.substring(capture.indexOf('<', prolog < 0 ? 0 : prolog + 2));
+		if (root.startsWith("<service")) {
+			sendXml(exchange, ATOM_SERVICE, capture);
+		} else if (root.startsWith("<feed")) {
+			sendXml(exchange, ATOM_FEED, page(capture, getIntParam(params, "skipCount", 0), getIntParam(params, "maxItems", 0)));
+		} else {
+			sendXml(exchange, ATOM_ENTRY, capture);
+		}
+	}
+
+	/**
+	 * Keeps maxItems entries of the feed starting at skipCount, 0 meaning all.
+	 */
+	static String page(String feed, int skipCount, int maxItems) {
+		int first = feed.indexOf("<entry");
+		if (first < 0 || (skipCount == 0 && maxItems == 0)) {
+			return feed;
+		}
+		int end = feed.lastIndexOf("</entry>") + "</entry>".length();
+
+		StringBuilder builder = new StringBuilder(feed.length());
+		builder.append(feed, 0, first);
+		int index = 0;
+		int start = first;
+		while (start >= 0 && start < end) {
+			int next = feed.indexOf("</entry>", start) + "</entry>".length();
+			if (index >= skipCount && (maxItems == 0 || index < skipCount + maxItems)) {
+				builder.append(feed, start, next);
+			}
+			index++;
+			start = feed.indexOf("<entry", next);
+		}
+		builder.append(feed, end, feed.length());
+		return builder.toString();
+	}
+
+	private static String read(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+			return out.toString("UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+}
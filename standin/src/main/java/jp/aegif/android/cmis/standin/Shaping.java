@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.standin;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Simulated network between the stand-in server and its clients : a fixed
+ * latency plus a random jitter before every response, and a bandwidth cap
+ * shared by all responses as on a single slow link.
+ */
+class Shaping {
+
+	private static final int CHUNK_SIZE = 4096;
+
+	private final long latencyMillis;
+	private final long jitterMillis;
+	private final long bytesPerSecond;
+	private final Random random = new Random();
+
+	/** Time at which the simulated link is free again. */
+	private long linkFreeAt = 0;
+
+	/**
+	 * @param latencyMillis
+	 *            delay before each response
+	 * @param jitterMillis
+	 *            the delay varies randomly by up to this much in both
+	 *            directions
+	 * @param bytesPerSecond
+	 *            bandwidth of the link, 0 for unlimited
+	 */
+	Shaping(long latencyMillis, long jitterMillis, long bytesPerSecond) {
+		this.latencyMillis = Math.max(0, latencyMillis);
+		this.jitterMillis = Math.max(0, jitterMillis);
+		this.bytesPerSecond = Math.max(0, bytesPerSecond);
+	}
+
+	/**
+	 * Waits for the latency of one round trip.
+	 */
+	void delay() throws InterruptedIOException {
+		long millis = latencyMillis;
+		if (jitterMillis > 0) {
+			synchronized (random) {
+				millis += (long) ((random.nextDouble() * 2 - 1) * jitterMillis);
+			}
+		}
+		sleepUntil(System.nanoTime() + Math.max(0, millis) * 1000000L);
+	}
+
+	/**
+	 * Returns a stream writing to out no faster than the bandwidth cap.
+	 */
+	OutputStream throttle(OutputStream out) {
+		if (bytesPerSecond == 0) {
+			return out;
+		}
+		return new ThrottledOutputStream(out);
+	}
+
+	/**
+	 * Reserves the link for length bytes and returns when they may be sent.
+	 */
+	private synchronized long reserve(int length) {
+		long now = System.nanoTime();
+		linkFreeAt = Math.max(now, linkFreeAt) + length * 1000000000L / bytesPerSecond;
+		return linkFreeAt;
+	}
+
+	private static void sleepUntil(long nanoTime) throws InterruptedIOException {
+		long remaining;
+		while ((remaining = nanoTime - System.nanoTime()) > 0) {
+			try {
+				Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "latency " + latencyMillis + " ms, jitter " + jitterMillis + " ms, bandwidth "
+				+ (bytesPerSecond == 0 ? "unlimited" : bytesPerSecond + " bytes/s");
+	}
+
+	private class ThrottledOutputStream extends FilterOutputStream {
+
+		ThrottledOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int chunk = Math.min(len, CHUNK_SIZE);
+				sleepUntil(reserve(chunk));
+				out.write(b, off, chunk);
+				out.flush();
+				off += chunk;
+				len -= chunk;
+			}
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.standin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in CMIS AtomPub server for testing the browser without a live
+ * repository. Serves the captures of testdata/ under /capture and a
+ * generated folder tree under /synthetic, behind a simulated network.
+ *
+ * <pre>
+ * gradlew :standin:run -PstandinArgs="--latency=150 --jitter=50 --bandwidth=32000"
+ * </pre>
+ *
+ * From the emulator the server is reached at http://10.0.2.2:{port}/synthetic
+ * with the workspace "synthetic".
+ */
+public class StandInServer {
+
+	private static final String[][] OPTIONS = {
+			{ "port", "8080", "port to listen on" },
+			{ "testdata", "testdata", "directory of the vendor captures" },
+			{ "depth", "3", "levels of folders below the root" },
+			{ "folders", "5", "sub folders per folder" },
+			{ "documents", "20", "documents per folder" },
+			{ "content-size", "65536", "largest content stream, in bytes" },
+			{ "max-items", "100", "page size when the client sends no maxItems, 0 for all" },
+			{ "latency", "0", "delay before each response, in milliseconds" },
+			{ "jitter", "0", "random variation of the delay, in milliseconds" },
+			{ "bandwidth", "0", "bytes per second shared by all responses, 0 for unlimited" },
+			{ "threads", "16", "requests served in parallel" } };
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	public StandInServer(Map<String, String> options) throws IOException {
+		Shaping shaping = new Shaping(getLong(options, "latency"), getLong(options, "jitter"), getLong(options, "bandwidth"));
+
+		server = HttpServer.create(new InetSocketAddress((int) getLong(options, "port")), 0);
+		executor = Executors.newFixedThreadPool((int) Math.max(1, getLong(options, "threads")));
+		server.setExecutor(executor);
+
+		server.createContext("/synthetic", new SyntheticRepository("/synthetic", shaping, (int) getLong(options, "depth"),
+				(int) getLong(options, "folders"), (int) getLong(options, "documents"), (int) getLong(options, "content-size"),
+				(int) getLong(options, "max-items")));
+
+		File testdata = new File(options.get("testdata"));
+		if (testdata.isDirectory()) {
+			server.createContext("/capture", new CaptureRepository("/capture", shaping, testdata));
+		} else {
+			System.err.println("No captures in " + testdata.getAbsolutePath() + ", serving the synthetic tree only");
+		}
+
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = getIndex(exchange).getBytes("UTF-8");
+				exchange.getResponseHeaders().set("Content-Type", "text/plain;charset=UTF-8");
+				exchange.sendResponseHeaders(exchange.getRequestURI().getPath().equals("/") ? 200 : 404, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+
+		System.out.println("Network : " + shaping);
+	}
+
+	public void start() {
+		server.start();
+		System.out.println("Listening on port " + server.getAddress().getPort());
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private String getIndex(HttpExchange exchange) {
+		String host = exchange.getRequestHeaders().getFirst("Host");
+		StringBuilder builder = new StringBuilder("CMIS stand-in server\n\n");
+		builder.append("http://").append(host).append("/synthetic  workspace ").append(SyntheticRepository.REPOSITORY_NAME).append('\n');
+		for (String path : CaptureRepository.getServiceDocuments()) {
+			builder.append("http://").append(host).append("/capture").append(path).append('\n');
+		}
+		return builder.toString();
+	}
+
+	private static long getLong(Map<String, String> options, String name) {
+		return Long.parseLong(options.get(name));
+	}
+
+	private static void usage() {
+		System.err.println("Usage : StandInServer [--option=value ...]");
+		for (String[] option : OPTIONS) {
+			System.err.println("  --" + option[0] + "  " + option[2] + " (" + option[1] + ")");
+		}
+		System.exit(1);
+	}
+
+	public static void main(String[] args) throws IOException {
+		Map<String, String> options = new HashMap<String, String>();
+		for (String[] option : OPTIONS) {
+			options.put(option[0], option[1]);
+		}
+		for (String arg : args) {
+			int index = arg.indexOf('=');
+			if (!arg.startsWith("--") || index < 0 || !options.containsKey(arg.substring(2, index))) {
+				usage();
+			}
+			options.put(arg.substring(2, index), arg.substring(index + 1));
+		}
+
+		final StandInServer standIn;
+		try {
+			standIn = new StandInServer(options);
+		} catch (NumberFormatException e) {
+			usage();
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				standIn.stop();
+			}
+		});
+		standIn.start();
+	}
+}
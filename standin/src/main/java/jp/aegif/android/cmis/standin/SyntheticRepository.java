@@ -0,0 +1,705 @@
+/*
+ * Copyright (C) 2010 Florian Maul
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.aegif.android.cmis.standin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * A generated repository under /synthetic : a folder tree of configurable
+ * depth where every folder holds a number of sub folders and documents.
+ * Nothing is stored, objects are derived from their ids (f-2-0 is the first
+ * sub folder of the third folder of the root, d-2-0-5 a document in it) so
+ * trees of any size cost no memory and answer the same across restarts.
+ *
+ * Paths :
+ * <ul>
+ * <li>/synthetic : service document</li>
+ * <li>/synthetic/children/{id}?skipCount=&amp;maxItems= : children feed</li>
+ * <li>/synthetic/object/{id} : entry of a folder or document</li>
+ * <li>/synthetic/query?q= : cmis:name LIKE and contains() queries</li>
+ * <li>/synthetic/types, /synthetic/type/{id} : type definitions</li>
+ * <li>/synthetic/content/{id} : content stream</li>
+ * </ul>
+ */
+class SyntheticRepository extends AtomHandler {
+
+	static final String REPOSITORY_NAME = "synthetic";
+
+	private static final String ROOT_ID = "f";
+	private static final String DOCUMENT = "cmis:document";
+	private static final String FOLDER = "cmis:folder";
+
+	private static final String NAMESPACES = " xmlns=\"http://www.w3.org/2005/Atom\""
+			+ " xmlns:app=\"http://www.w3.org/2007/app\""
+			+ " xmlns:cmisra=\"http://docs.oasis-open.org/ns/cmis/restatom/200908/\""
+			+ " xmlns:cmis=\"http://docs.oasis-open.org/ns/cmis/core/200908/\""
+			+ " xmlns:opensearch=\"http://a9.com/-/spec/opensearch/1.1/\"";
+
+	/** Extension and mime type, documents cycle through them. */
+	private static final String[][] FORMATS = {
+			{ "txt", "text/plain" },
+			{ "pdf", "application/pdf" },
+			{ "jpg", "image/jpeg" },
+			{ "doc", "application/msword" },
+			{ "xml", "text/xml" } };
+
+	/** Property id, type and display name. */
+	private static final String[][] PROPERTIES = {
+			{ "cmis:objectId", "Id", "Object Id" },
+			{ "cmis:baseTypeId", "Id", "Base Type Id" },
+			{ "cmis:objectTypeId", "Id", "Object Type Id" },
+			{ "cmis:name", "String", "Name" },
+			{ "cmis:createdBy", "String", "Created by" },
+			{ "cmis:creationDate", "DateTime", "Creation Date" },
+			{ "cmis:lastModifiedBy", "String", "Last Modified By" },
+			{ "cmis:lastModificationDate", "DateTime", "Last Modified Date" },
+			{ "cmis:changeToken", "String", "Change token" },
+			{ "cmis:parentId", "Id", "Parent Id" },
+			{ "cmis:path", "String", "Path" },
+			{ "cmis:isLatestVersion", "Boolean", "Is Latest Version" },
+			{ "cmis:versionLabel", "String", "Version Label" },
+			{ "cmis:versionSeriesId", "Id", "Version series id" },
+			{ "cmis:contentStreamLength", "Integer", "Content Stream Length" },
+			{ "cmis:contentStreamMimeType", "String", "Content Stream MIME Type" },
+			{ "cmis:contentStreamFileName", "String", "Content Stream Filename" },
+			{ "cmis:contentStreamId", "Id", "Content Stream Id" } };
+
+	/** 2010-06-01T00:00:00Z, objects were modified during the year before. */
+	private static final long BASE_DATE = 1275350400000L;
+	private static final long MINUTES_PER_YEAR = 365 * 24 * 60;
+
+	private static final Pattern FROM = Pattern.compile("from\\s+(cmis:\\w+)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern NAME_LIKE = Pattern.compile("cmis:name\\s+like\\s+'([^']*)'", Pattern.CASE_INSENSITIVE);
+	private static final Pattern CONTAINS = Pattern.compile("contains\\s*\\(\\s*'([^']*)'\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+	private final int depth;
+	private final int folders;
+	private final int documents;
+	private final int contentSize;
+	private final int defaultMaxItems;
+	private final Map<String, String[]> propertyTypes = new HashMap<String, String[]>();
+
+	/**
+	 * @param depth
+	 *            levels of folders below the root
+	 * @param folders
+	 *            sub folders per folder
+	 * @param documents
+	 *            documents per folder
+	 * @param contentSize
+	 *            largest content stream, in bytes
+	 * @param defaultMaxItems
+	 *            page size when the client sends no maxItems, 0 for all
+	 */
+	SyntheticRepository(String context, Shaping shaping, int depth, int folders, int documents, int contentSize, int defaultMaxItems) {
+		super(context, shaping);
+		this.depth = Math.max(0, depth);
+		this.folders = Math.max(0, folders);
+		this.documents = Math.max(0, documents);
+		this.contentSize = Math.max(1, contentSize);
+		this.defaultMaxItems = Math.max(0, defaultMaxItems);
+		for (String[] property : PROPERTIES) {
+			propertyTypes.put(property[0], property);
+		}
+	}
+
+	/**
+	 * A folder or a document, identified by its position in the tree.
+	 */
+	private class Node {
+		private final boolean folder;
+		/** Indexes from the root, the last one is the document index. */
+		private final int[] position;
+
+		Node(boolean folder, int[] position) {
+			this.folder = folder;
+			this.position = position;
+		}
+
+		String getId() {
+			return (folder ? "f" : "d") + join("-", true);
+		}
+
+		String getBaseType() {
+			return folder ? FOLDER : DOCUMENT;
+		}
+
+		Node getParent() {
+			if (position.length == 0) {
+				return null;
+			}
+			return new Node(true, Arrays.copyOf(position, position.length - 1));
+		}
+
+		String getName() {
+			if (position.length == 0) {
+				return "Root";
+			}
+			if (folder) {
+				return "Folder " + join("-", false);
+			}
+			return "Document " + join("-", false) + "." + getFormat()[0];
+		}
+
+		String getPath() {
+			if (position.length == 0) {
+				return "/";
+			}
+			String parentPath = getParent().getPath();
+			return (parentPath.length() == 1 ? "" : parentPath) + "/" + getName();
+		}
+
+		String[] getFormat() {
+			return FORMATS[position[position.length - 1] % FORMATS.length];
+		}
+
+		private int hash() {
+			return getId().hashCode() & 0x7fffffff;
+		}
+
+		long getModificationDate() {
+			return BASE_DATE - (hash() % MINUTES_PER_YEAR) * 60000L;
+		}
+
+		long getCreationDate() {
+			return getModificationDate() - (hash() % (30 * 24 * 60)) * 60000L;
+		}
+
+		int getContentLength() {
+			return hash() % contentSize + 1;
+		}
+
+		int getChildCount() {
+			return (position.length < depth ? folders : 0) + documents;
+		}
+
+		Node getChild(int index) {
+			int[] childPosition = Arrays.copyOf(position, position.length + 1);
+			int subFolders = position.length < depth ? folders : 0;
+			if (index < subFolders) {
+				childPosition[position.length] = index;
+				return new Node(true, childPosition);
+			}
+			childPosition[position.length] = index - subFolders;
+			return new Node(false, childPosition);
+		}
+
+		private String join(String separator, boolean leading) {
+			StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < position.length; i++) {
+				if (leading || i > 0) {
+					builder.append(separator);
+				}
+				builder.append(position[i]);
+			}
+			return builder.toString();
+		}
+	}
+
+	private Node getNode(String id) throws NotFoundException {
+		if (id.length() == 0 || (id.charAt(0) != 'f' && id.charAt(0) != 'd')) {
+			throw new NotFoundException("No object " + id);
+		}
+		boolean folder = id.charAt(0) == 'f';
+		String[] segments = id.length() == 1 ? new String[0] : id.substring(2).split("-", -1);
+		if (id.length() > 1 && id.charAt(1) != '-' || !folder && segments.length == 0 || folder && segments.length > depth
+				|| !folder && segments.length > depth + 1) {
+			throw new NotFoundException("No object " + id);
+		}
+		int[] position = new int[segments.length];
+		for (int i = 0; i < segments.length; i++) {
+			int limit = !folder && i == segments.length - 1 ? documents : folders;
+			try {
+				position[i] = Integer.parseInt(segments[i]);
+			} catch (NumberFormatException e) {
+				throw new NotFoundException("No object " + id);
+			}
+			if (position[i] < 0 || position[i] >= limit) {
+				throw new NotFoundException("No object " + id);
+			}
+		}
+		return new Node(folder, position);
+	}
+
+	@Override
+	protected void serve(HttpExchange exchange, String baseUrl, String path, Map<String, String> params) throws IOException, NotFoundException {
+		if (path.length() == 0 || path.equals("/")) {
+			sendXml(exchange, ATOM_SERVICE, getServiceDocument(baseUrl));
+			return;
+		}
+
+		Set<String> filter = getFilter(params.get("filter"));
+		int skipCount = getIntParam(params, "skipCount", 0);
+		int maxItems = getIntParam(params, "maxItems", defaultMaxItems);
+
+		if (path.startsWith("/children/")) {
+			Node folder = getNode(path.substring("/children/".length()));
+			if (!folder.folder) {
+				throw new NotFoundException("Not a folder " + folder.getId());
+			}
+			List<Node> page = new ArrayList<Node>();
+			int count = folder.getChildCount();
+			int end = maxItems == 0 ? count : (int) Math.min(count, (long) skipCount + maxItems);
+			for (int i = skipCount; i < end; i++) {
+				page.add(folder.getChild(i));
+			}
+			String self = baseUrl + "/children/" + folder.getId();
+			sendXml(exchange, ATOM_FEED, getFeed(baseUrl, self, "?", folder, page, count, skipCount, maxItems, filter));
+
+		} else if (path.startsWith("/object/")) {
+			StringBuilder builder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			appendEntry(builder, baseUrl, getNode(path.substring("/object/".length())), true, filter);
+			sendXml(exchange, ATOM_ENTRY, builder.toString());
+
+		} else if (path.equals("/query")) {
+			String query = params.get("q");
+			if (query == null) {
+				throw new NotFoundException("Missing q parameter");
+			}
+			List<Node> matches = query(query);
+			int end = maxItems == 0 ? matches.size() : (int) Math.min(matches.size(), (long) skipCount + maxItems);
+			List<Node> page = skipCount < end ? matches.subList(skipCount, end) : new ArrayList<Node>();
+			String self = baseUrl + "/query?q=" + encode(query);
+			sendXml(exchange, ATOM_FEED, getFeed(baseUrl, self, "&", null, page, matches.size(), skipCount, maxItems, filter));
+
+		} else if (path.equals("/types")) {
+			StringBuilder builder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			builder.append("<feed").append(NAMESPACES).append(">\n");
+			appendTag(builder, "id", "urn:x-synthetic:types");
+			appendTag(builder, "title", "Types");
+			appendTag(builder, "updated", formatDate(BASE_DATE));
+			appendLink(builder, "self", null, baseUrl + "/types");
+			appendLink(builder, "service", "application/atomsvc+xml", baseUrl);
+			appendTag(builder, "cmisra:numItems", "2");
+			appendTypeEntry(builder, baseUrl, DOCUMENT, false);
+			appendTypeEntry(builder, baseUrl, FOLDER, false);
+			builder.append("</feed>\n");
+			sendXml(exchange, ATOM_FEED, builder.toString());
+
+		} else if (path.startsWith("/type/")) {
+			String typeId = path.substring("/type/".length());
+			if (!typeId.equals(DOCUMENT) && !typeId.equals(FOLDER)) {
+				throw new NotFoundException("No type " + typeId);
+			}
+			StringBuilder builder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			appendTypeEntry(builder, baseUrl, typeId, true);
+			sendXml(exchange, ATOM_ENTRY, builder.toString());
+
+		} else if (path.startsWith("/content/")) {
+			Node document = getNode(path.substring("/content/".length()));
+			if (document.folder) {
+				throw new NotFoundException("No content for folder " + document.getId());
+			}
+			sendContent(exchange, document);
+
+		} else {
+			throw new NotFoundException("Unknown path " + path);
+		}
+	}
+
+	/**
+	 * Returns the ids of the properties to send, null for all.
+	 */
+	private static Set<String> getFilter(String filter) {
+		if (filter == null || filter.trim().length() == 0 || filter.trim().equals("*")) {
+			return null;
+		}
+		Set<String> ids = new HashSet<String>();
+		for (String id : filter.split(",")) {
+			ids.add(id.trim());
+		}
+		return ids;
+	}
+
+	/**
+	 * Runs a query over the whole tree. Only the type in the FROM clause,
+	 * cmis:name LIKE and contains() conditions on the name are understood.
+	 */
+	private List<Node> query(String query) {
+		Matcher from = FROM.matcher(query);
+		String type = from.find() ? from.group(1).toLowerCase(Locale.ENGLISH) : DOCUMENT;
+
+		Pattern namePattern = null;
+		Matcher like = NAME_LIKE.matcher(query);
+		if (like.find()) {
+			StringBuilder regex = new StringBuilder();
+			for (String part : like.group(1).split("%", -1)) {
+				if (regex.length() > 0) {
+					regex.append(".*");
+				}
+				regex.append(Pattern.quote(part));
+			}
+			namePattern = Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+		}
+
+		List<String> words = new ArrayList<String>();
+		Matcher contains = CONTAINS.matcher(query);
+		while (contains.find()) {
+			words.add(contains.group(1).toLowerCase(Locale.ENGLISH));
+		}
+
+		List<Node> matches = new ArrayList<Node>();
+		collect(new Node(true, new int[0]), type, namePattern, words, matches);
+		return matches;
+	}
+
+	private void collect(Node folder, String type, Pattern namePattern, List<String> words, List<Node> matches) {
+		int count = folder.getChildCount();
+		for (int i = 0; i < count; i++) {
+			Node child = folder.getChild(i);
+			if (child.getBaseType().equals(type) && matches(child.getName(), namePattern, words)) {
+				matches.add(child);
+			}
+			if (child.folder) {
+				collect(child, type, namePattern, words, matches);
+			}
+		}
+	}
+
+	private static boolean matches(String name, Pattern namePattern, List<String> words) {
+		if (namePattern != null && !namePattern.matcher(name).matches()) {
+			return false;
+		}
+		String lowerCaseName = name.toLowerCase(Locale.ENGLISH);
+		for (String word : words) {
+			if (!lowerCaseName.contains(word)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void sendContent(HttpExchange exchange, Node document) throws IOException {
+		String etag = "\"" + document.getModificationDate() + "\"";
+		exchange.getResponseHeaders().set("ETag", etag);
+		if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+
+		int length = document.getContentLength();
+		exchange.getResponseHeaders().set("Content-Type", document.getFormat()[1]);
+		exchange.sendResponseHeaders(200, length);
+
+		byte[] line = (document.getName() + " " + document.getId() + "\n").getBytes("UTF-8");
+		byte[] buffer = new byte[8192];
+		for (int i = 0; i < buffer.length; i++) {
+			buffer[i] = line[i % line.length];
+		}
+		OutputStream out = shaping.throttle(exchange.getResponseBody());
+		int written = 0;
+		while (written < length) {
+			int count = Math.min(buffer.length, length - written);
+			out.write(buffer, 0, count);
+			written += count;
+		}
+		out.close();
+	}
+
+	private String getServiceDocument(String baseUrl) {
+		StringBuilder builder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		builder.append("<service xmlns=\"http://www.w3.org/2007/app\" xmlns:atom=\"http://www.w3.org/2005/Atom\"");
+		builder.append(" xmlns:cmis=\"http://docs.oasis-open.org/ns/cmis/core/200908/\"");
+		builder.append(" xmlns:cmisra=\"http://docs.oasis-open.org/ns/cmis/restatom/200908/\">\n");
+		builder.append("<workspace>\n");
+		appendTag(builder, "atom:title", REPOSITORY_NAME);
+		builder.append("<cmisra:repositoryInfo>\n");
+		appendTag(builder, "cmis:repositoryId", REPOSITORY_NAME);
+		appendTag(builder, "cmis:repositoryName", REPOSITORY_NAME);
+		appendTag(builder, "cmis:repositoryDescription", "Synthetic tree, depth " + depth + ", " + folders + " folders and "
+				+ documents + " documents per folder");
+		appendTag(builder, "cmis:vendorName", "aegif");
+		appendTag(builder, "cmis:productName", "CMIS stand-in server");
+		appendTag(builder, "cmis:productVersion", "1.0");
+		appendTag(builder, "cmis:rootFolderId", ROOT_ID);
+		builder.append("<cmis:capabilities>\n");
+		appendTag(builder, "cmis:capabilityACL", "none");
+		appendTag(builder, "cmis:capabilityAllVersionsSearchable", "false");
+		appendTag(builder, "cmis:capabilityChanges", "none");
+		appendTag(builder, "cmis:capabilityContentStreamUpdatability", "none");
+		appendTag(builder, "cmis:capabilityGetDescendants", "false");
+		appendTag(builder, "cmis:capabilityGetFolderTree", "false");
+		appendTag(builder, "cmis:capabilityMultifiling", "false");
+		appendTag(builder, "cmis:capabilityPWCSearchable", "false");
+		appendTag(builder, "cmis:capabilityPWCUpdatable", "false");
+		appendTag(builder, "cmis:capabilityQuery", "bothcombined");
+		appendTag(builder, "cmis:capabilityRenditions", "none");
+		appendTag(builder, "cmis:capabilityUnfiling", "false");
+		appendTag(builder, "cmis:capabilityVersionSpecificFiling", "false");
+		appendTag(builder, "cmis:capabilityJoin", "none");
+		builder.append("</cmis:capabilities>\n");
+		appendTag(builder, "cmis:cmisVersionSupported", "1.0");
+		builder.append("</cmisra:repositoryInfo>\n");
+		appendCollection(builder, baseUrl + "/children/" + ROOT_ID, "root", "Root collection");
+		appendCollection(builder, baseUrl + "/types", "types", "Types collection");
+		appendCollection(builder, baseUrl + "/query", "query", "Query collection");
+		appendUriTemplate(builder, "objectbyid", "application/atom+xml;type=entry", baseUrl + "/object/{id}?filter={filter}");
+		appendUriTemplate(builder, "query", "application/atom+xml;type=feed", baseUrl
+				+ "/query?q={q}&searchAllVersions={searchAllVersions}&maxItems={maxItems}&skipCount={skipCount}"
+				+ "&includeAllowableActions={includeAllowableActions}&includeRelationships={includeRelationships}");
+		appendUriTemplate(builder, "typebyid", "application/atom+xml;type=entry", baseUrl + "/type/{id}");
+		builder.append("</workspace>\n");
+		builder.append("</service>\n");
+		return builder.toString();
+	}
+
+	private String getFeed(String baseUrl, String self, String separator, Node folder, List<Node> page, int numItems, int skipCount,
+			int maxItems, Set<String> filter) {
+		SimpleDateFormat dateFormat = createDateFormat();
+		StringBuilder builder = new StringBuilder(1024 + page.size() * 4096);
+		builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		builder.append("<feed").append(NAMESPACES).append(">\n");
+		builder.append("<author><name>admin</name></author>\n");
+		if (folder != null) {
+			appendTag(builder, "id", "urn:x-synthetic:" + folder.getId() + ":children");
+			appendTag(builder, "title", folder.getName());
+			appendTag(builder, "updated", dateFormat.format(new Date(folder.getModificationDate())));
+			appendLink(builder, "via", "application/atom+xml;type=entry", baseUrl + "/object/" + folder.getId());
+			if (folder.getParent() != null) {
+				appendLink(builder, "up", "application/atom+xml;type=entry", baseUrl + "/object/" + folder.getParent().getId());
+			}
+		} else {
+			appendTag(builder, "id", "urn:x-synthetic:query");
+			appendTag(builder, "title", "Query");
+			appendTag(builder, "updated", dateFormat.format(new Date(BASE_DATE)));
+		}
+		appendLink(builder, "service", "application/atomsvc+xml", baseUrl);
+		appendLink(builder, "self", "application/atom+xml;type=feed", self + pageQuery(separator, skipCount, maxItems));
+		if (maxItems > 0) {
+			int last = numItems == 0 ? 0 : (numItems - 1) / maxItems * maxItems;
+			appendLink(builder, "first", "application/atom+xml;type=feed", self + pageQuery(separator, 0, maxItems));
+			if (skipCount > 0) {
+				appendLink(builder, "previous", "application/atom+xml;type=feed", self + pageQuery(separator, Math.max(0, skipCount - maxItems), maxItems));
+			}
+			if (skipCount + maxItems < numItems) {
+				appendLink(builder, "next", "application/atom+xml;type=feed", self + pageQuery(separator, skipCount + maxItems, maxItems));
+			}
+			appendLink(builder, "last", "application/atom+xml;type=feed", self + pageQuery(separator, last, maxItems));
+		}
+		appendTag(builder, "opensearch:totalResults", String.valueOf(numItems));
+		appendTag(builder, "opensearch:startIndex", String.valueOf(skipCount));
+		appendTag(builder, "opensearch:itemsPerPage", String.valueOf(page.size()));
+		appendTag(builder, "cmisra:numItems", String.valueOf(numItems));
+		for (Node node : page) {
+			appendEntry(builder, baseUrl, node, false, filter, dateFormat);
+		}
+		builder.append("</feed>\n");
+		return builder.toString();
+	}
+
+	private static String pageQuery(String separator, int skipCount, int maxItems) {
+		if (maxItems == 0 && skipCount == 0) {
+			return "";
+		}
+		return separator + "skipCount=" + skipCount + "&maxItems=" + maxItems;
+	}
+
+	private void appendEntry(StringBuilder builder, String baseUrl, Node node, boolean standalone, Set<String> filter) {
+		appendEntry(builder, baseUrl, node, standalone, filter, createDateFormat());
+	}
+
+	private void appendEntry(StringBuilder builder, String baseUrl, Node node, boolean standalone, Set<String> filter, SimpleDateFormat dateFormat) {
+		String id = node.getId();
+		String objectUrl = baseUrl + "/object/" + id;
+
+		builder.append("<entry").append(standalone ? NAMESPACES : "").append(">\n");
+		builder.append("<author><name>admin</name></author>\n");
+		if (!node.folder) {
+			builder.append("<content type=\"").append(node.getFormat()[1]).append("\" src=\"").append(escape(baseUrl + "/content/" + id)).append("\"/>\n");
+		}
+		appendTag(builder, "id", "urn:x-synthetic:" + id);
+		appendLink(builder, "self", "application/atom+xml;type=entry", objectUrl);
+		appendLink(builder, "edit", "application/atom+xml;type=entry", objectUrl);
+		appendLink(builder, "describedby", "application/atom+xml;type=entry", baseUrl + "/type/" + node.getBaseType());
+		appendLink(builder, "service", "application/atomsvc+xml", baseUrl);
+		if (node.getParent() != null) {
+			appendLink(builder, "up", "application/atom+xml;type=entry", baseUrl + "/object/" + node.getParent().getId());
+		}
+		if (node.folder) {
+			appendLink(builder, "down", "application/atom+xml;type=feed", baseUrl + "/children/" + id);
+		} else {
+			appendLink(builder, "edit-media", node.getFormat()[1], baseUrl + "/content/" + id);
+		}
+		appendTag(builder, "title", node.getName());
+		appendTag(builder, "summary", node.getName());
+		appendTag(builder, "updated", dateFormat.format(new Date(node.getModificationDate())));
+
+		builder.append("<cmisra:object>\n<cmis:properties>\n");
+		for (Map.Entry<String, String> property : getProperties(node, dateFormat).entrySet()) {
+			if (filter != null && !filter.contains(property.getKey())) {
+				continue;
+			}
+			String[] definition = propertyTypes.get(property.getKey());
+			String element = "cmis:property" + definition[1];
+			builder.append('<').append(element);
+			builder.append(" propertyDefinitionId=\"").append(definition[0]).append('"');
+			builder.append(" localName=\"").append(definition[0].substring("cmis:".length())).append('"');
+			builder.append(" displayName=\"").append(definition[2]).append('"');
+			builder.append(" queryName=\"").append(definition[0]).append("\">");
+			builder.append("<cmis:value>").append(escape(property.getValue())).append("</cmis:value>");
+			builder.append("</").append(element).append(">\n");
+		}
+		builder.append("</cmis:properties>\n</cmisra:object>\n");
+		builder.append("</entry>\n");
+	}
+
+	private Map<String, String> getProperties(Node node, SimpleDateFormat dateFormat) {
+		Map<String, String> properties = new LinkedHashMap<String, String>();
+		properties.put("cmis:objectId", node.getId());
+		properties.put("cmis:baseTypeId", node.getBaseType());
+		properties.put("cmis:objectTypeId", node.getBaseType());
+		properties.put("cmis:name", node.getName());
+		properties.put("cmis:createdBy", "admin");
+		properties.put("cmis:creationDate", dateFormat.format(new Date(node.getCreationDate())));
+		properties.put("cmis:lastModifiedBy", "admin");
+		properties.put("cmis:lastModificationDate", dateFormat.format(new Date(node.getModificationDate())));
+		properties.put("cmis:changeToken", String.valueOf(node.getModificationDate()));
+		if (node.folder) {
+			if (node.getParent() != null) {
+				properties.put("cmis:parentId", node.getParent().getId());
+			}
+			properties.put("cmis:path", node.getPath());
+		} else {
+			properties.put("cmis:isLatestVersion", "true");
+			properties.put("cmis:versionLabel", "1.0");
+			properties.put("cmis:versionSeriesId", node.getId());
+			properties.put("cmis:contentStreamLength", String.valueOf(node.getContentLength()));
+			properties.put("cmis:contentStreamMimeType", node.getFormat()[1]);
+			properties.put("cmis:contentStreamFileName", node.getName());
+			properties.put("cmis:contentStreamId", node.getId() + ":" + node.getModificationDate());
+		}
+		return properties;
+	}
+
+	private void appendTypeEntry(StringBuilder builder, String baseUrl, String typeId, boolean standalone) {
+		boolean folder = typeId.equals(FOLDER);
+		String displayName = folder ? "Folder" : "Document";
+
+		builder.append("<entry").append(standalone ? NAMESPACES : "").append(">\n");
+		builder.append("<author><name>admin</name></author>\n");
+		appendTag(builder, "id", "urn:x-synthetic:type:" + typeId);
+		appendLink(builder, "self", "application/atom+xml;type=entry", baseUrl + "/type/" + typeId);
+		appendLink(builder, "service", "application/atomsvc+xml", baseUrl);
+		appendTag(builder, "title", displayName);
+		appendTag(builder, "summary", displayName + " Type");
+		appendTag(builder, "updated", formatDate(BASE_DATE));
+
+		builder.append("<cmisra:type>\n");
+		appendTag(builder, "cmis:id", typeId);
+		appendTag(builder, "cmis:localName", typeId.substring("cmis:".length()));
+		appendTag(builder, "cmis:localNamespace", "http://docs.oasis-open.org/ns/cmis/core/200908/");
+		appendTag(builder, "cmis:displayName", displayName);
+		appendTag(builder, "cmis:queryName", typeId);
+		appendTag(builder, "cmis:description", displayName + " Type");
+		appendTag(builder, "cmis:baseId", typeId);
+		appendTag(builder, "cmis:creatable", "false");
+		appendTag(builder, "cmis:fileable", "true");
+		appendTag(builder, "cmis:queryable", "true");
+		appendTag(builder, "cmis:fulltextIndexed", "false");
+		appendTag(builder, "cmis:includedInSupertypeQuery", "true");
+		appendTag(builder, "cmis:controllablePolicy", "false");
+		appendTag(builder, "cmis:controllableACL", "false");
+		if (!folder) {
+			appendTag(builder, "cmis:versionable", "false");
+			appendTag(builder, "cmis:contentStreamAllowed", "required");
+		}
+		Node sample = folder ? new Node(true, new int[] { 0 }) : new Node(false, new int[] { 0 });
+		for (String propertyId : getProperties(sample, createDateFormat()).keySet()) {
+			String[] definition = propertyTypes.get(propertyId);
+			String element = "cmis:property" + definition[1] + "Definition";
+			builder.append('<').append(element).append(">\n");
+			appendTag(builder, "cmis:id", definition[0]);
+			appendTag(builder, "cmis:localName", definition[0].substring("cmis:".length()));
+			appendTag(builder, "cmis:displayName", definition[2]);
+			appendTag(builder, "cmis:queryName", definition[0]);
+			appendTag(builder, "cmis:propertyType", definition[1].toLowerCase(Locale.ENGLISH));
+			appendTag(builder, "cmis:cardinality", "single");
+			appendTag(builder, "cmis:updatability", "readonly");
+			appendTag(builder, "cmis:inherited", "false");
+			appendTag(builder, "cmis:required", "false");
+			appendTag(builder, "cmis:queryable", String.valueOf(definition[0].equals("cmis:name")));
+			appendTag(builder, "cmis:orderable", "false");
+			appendTag(builder, "cmis:openChoice", "false");
+			builder.append("</").append(element).append(">\n");
+		}
+		builder.append("</cmisra:type>\n");
+		builder.append("</entry>\n");
+	}
+
+	private static void appendCollection(StringBuilder builder, String href, String type, String title) {
+		builder.append("<collection href=\"").append(escape(href)).append("\">\n");
+		appendTag(builder, "atom:title", title);
+		appendTag(builder, "cmisra:collectionType", type);
+		builder.append("</collection>\n");
+	}
+
+	private static void appendUriTemplate(StringBuilder builder, String type, String mediaType, String template) {
+		builder.append("<cmisra:uritemplate>\n");
+		appendTag(builder, "cmisra:template", template);
+		appendTag(builder, "cmisra:type", type);
+		appendTag(builder, "cmisra:mediatype", mediaType);
+		builder.append("</cmisra:uritemplate>\n");
+	}
+
+	private static void appendLink(StringBuilder builder, String rel, String type, String href) {
+		builder.append("<link rel=\"").append(rel).append('"');
+		if (type != null) {
+			builder.append(" type=\"").append(type).append('"');
+		}
+		builder.append(" href=\"").append(escape(href)).append("\"/>\n");
+	}
+
+	private static void appendTag(StringBuilder builder, String name, String text) {
+		builder.append('<').append(name).append('>').append(escape(text)).append("</").append(name).append(">\n");
+	}
+
+	private static SimpleDateFormat createDateFormat() {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ENGLISH);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return dateFormat;
+	}
+
+	private static String formatDate(long date) {
+		return createDateFormat().format(new Date(date));
+	}
+
+	private static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}